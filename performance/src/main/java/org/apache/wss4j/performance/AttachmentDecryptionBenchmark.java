@@ -0,0 +1,166 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.wss4j.performance;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.security.auth.callback.Callback;
+import javax.security.auth.callback.CallbackHandler;
+import javax.security.auth.callback.UnsupportedCallbackException;
+import javax.xml.parsers.DocumentBuilder;
+
+import org.apache.wss4j.common.WSS4JConstants;
+import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.crypto.CryptoFactory;
+import org.apache.wss4j.common.ext.Attachment;
+import org.apache.wss4j.common.ext.AttachmentRequestCallback;
+import org.apache.wss4j.common.ext.AttachmentResultCallback;
+import org.apache.wss4j.common.util.DOM2Writer;
+import org.apache.wss4j.dom.WSConstants;
+import org.apache.wss4j.dom.engine.WSSConfig;
+import org.apache.wss4j.dom.engine.WSSecurityEngine;
+import org.apache.wss4j.dom.handler.RequestData;
+import org.apache.wss4j.dom.handler.WSHandlerResult;
+import org.apache.wss4j.dom.message.WSSecEncrypt;
+import org.apache.wss4j.dom.message.WSSecHeader;
+import org.apache.xml.security.utils.JavaUtils;
+import org.apache.xml.security.utils.XMLUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+/**
+ * Measures the decryption of a SOAP Body the ciphertext of which is stored in an attachment
+ * (xop:Include), with the DOM stack. The decrypted attachment is parsed straight from the
+ * decryption stream into the message, so the interesting result is the "gc.alloc.rate.norm"
+ * (the bytes allocated per message) of the GC profiler, which should grow with about the size of
+ * the decrypted DOM tree only. To find the minimum heap a message size needs, run a single size
+ * with a decreasing heap, e.g. "-p messageSize=100 -jvmArgsAppend -Xmx1g".
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class AttachmentDecryptionBenchmark {
+
+    // The size of the SOAP message in megabytes
+    @Param({"10", "50", "100"})
+    private int messageSize;
+
+    private Crypto crypto;
+    private CallbackHandler callbackHandler;
+    private byte[] securedMessage;
+    private Map<String, byte[]> attachments;
+
+    @Setup
+    public void setUp() throws Exception {
+        WSSConfig.init();
+        crypto = CryptoFactory.getInstance(BenchmarkCallbackHandler.CRYPTO_PROPERTIES);
+        callbackHandler = new BenchmarkCallbackHandler();
+
+        Document doc = parse(SOAPMessages.createMessage(messageSize * 1024));
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        AttachmentCallbackHandler attachmentCallbackHandler =
+            new AttachmentCallbackHandler(Collections.<String, byte[]>emptyMap());
+        WSSecEncrypt encrypt = new WSSecEncrypt(secHeader);
+        encrypt.setUserInfo(BenchmarkCallbackHandler.KEY_ALIAS);
+        encrypt.setKeyIdentifierType(WSConstants.ISSUER_SERIAL);
+        encrypt.setSymmetricEncAlgorithm(WSS4JConstants.AES_128);
+        encrypt.setKeyEncAlgo(WSS4JConstants.KEYTRANSPORT_RSAOAEP);
+        encrypt.setAttachmentCallbackHandler(attachmentCallbackHandler);
+        encrypt.setStoreBytesInAttachment(true);
+        encrypt.build(crypto);
+
+        securedMessage = DOM2Writer.nodeToString(doc).getBytes(StandardCharsets.UTF_8);
+        attachments = attachmentCallbackHandler.getResultAttachments();
+    }
+
+    @Benchmark
+    public WSHandlerResult decrypt() throws Exception {
+        RequestData requestData = new RequestData();
+        requestData.setCallbackHandler(callbackHandler);
+        requestData.setDecCrypto(crypto);
+        requestData.setAttachmentCallbackHandler(new AttachmentCallbackHandler(attachments));
+        return new WSSecurityEngine().processSecurityHeader(parse(securedMessage), requestData);
+    }
+
+    private static Document parse(byte[] bytes) throws Exception {
+        DocumentBuilder documentBuilder = XMLUtils.createDocumentBuilder(false);
+        try {
+            return documentBuilder.parse(new ByteArrayInputStream(bytes));
+        } finally {
+            XMLUtils.repoolDocumentBuilder(documentBuilder);
+        }
+    }
+
+    /**
+     * Hands out the (encrypted) attachments of the message, and collects the attachments that are
+     * created while securing the message.
+     */
+    private static final class AttachmentCallbackHandler implements CallbackHandler {
+
+        private final Map<String, byte[]> attachments;
+        private final Map<String, byte[]> resultAttachments = new HashMap<>();
+
+        AttachmentCallbackHandler(Map<String, byte[]> attachments) {
+            this.attachments = attachments;
+        }
+
+        public void handle(Callback[] callbacks) throws IOException, UnsupportedCallbackException {
+            for (Callback callback : callbacks) {
+                if (callback instanceof AttachmentRequestCallback) {
+                    AttachmentRequestCallback attachmentRequestCallback = (AttachmentRequestCallback)callback;
+                    String id = attachmentRequestCallback.getAttachmentId();
+                    Attachment attachment = new Attachment();
+                    attachment.setId(id);
+                    attachment.setSourceStream(new ByteArrayInputStream(attachments.get(id)));
+                    attachmentRequestCallback.setAttachments(Collections.singletonList(attachment));
+                } else if (callback instanceof AttachmentResultCallback) {
+                    Attachment attachment = ((AttachmentResultCallback)callback).getAttachment();
+                    resultAttachments.put(attachment.getId(), JavaUtils.getBytesFromStream(attachment.getSourceStream()));
+                } else {
+                    throw new UnsupportedCallbackException(callback, "Unrecognized Callback");
+                }
+            }
+        }
+
+        Map<String, byte[]> getResultAttachments() {
+            return resultAttachments;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.wss4j.performance;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares the CSV results of a benchmark run (as written by the BenchmarkRunner) against a baseline,
+ * e.g. the results of the previous release on the same machine. The score and the normalized allocation
+ * rate (bytes per operation) of every benchmark that is contained in both files are compared, and every
+ * change beyond the threshold is reported. The exit status is 1 if any of the changes is a regression.
+ *
+ * Usage: BaselineComparison baseline.csv current.csv [threshold in percent, default 10]
+ */
+public final class BaselineComparison {
+
+    private static final String ALLOCATION_RATE = ":\u00b7gc.alloc.rate.norm";
+
+    private BaselineComparison() {
+        // complete
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: BaselineComparison <baseline.csv> <current.csv> [threshold in percent]");
+            System.exit(2);
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 10.0;
+
+        Map<String, Result> baseline = read(args[0]);
+        Map<String, Result> current = read(args[1]);
+
+        int regressions = 0;
+        for (Map.Entry<String, Result> entry : current.entrySet()) {
+            Result baselineResult = baseline.get(entry.getKey());
+            if (baselineResult == null || baselineResult.score == 0.0) {
+                continue;
+            }
+            Result result = entry.getValue();
+            double change = (result.score - baselineResult.score) * 100.0 / baselineResult.score;
+            if (Math.abs(change) < threshold) {
+                continue;
+            }
+            boolean regression = result.higherIsBetter ? change < 0 : change > 0;
+            if (regression) {
+                regressions++;
+            }
+            System.out.println(
+                String.format("%-11s %+7.1f%%  %s: %.3f -> %.3f %s",
+                              regression ? "REGRESSION" : "improvement", change, entry.getKey(),
+                              baselineResult.score, result.score, result.unit)
+            );
+        }
+        System.out.println(regressions + " regression(s) beyond " + threshold + "%");
+        System.exit(regressions == 0 ? 0 : 1);
+    }
+
+    private static Map<String, Result> read(String file) throws IOException {
+        List<String> lines = Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8);
+        List<String> header = parseLine(lines.get(0));
+        int benchmarkIndex = header.indexOf("Benchmark");
+        int modeIndex = header.indexOf("Mode");
+        int scoreIndex = header.indexOf("Score");
+        int unitIndex = header.indexOf("Unit");
+
+        Map<String, Result> results = new LinkedHashMap<>();
+        for (int i = 1; i < lines.size(); i++) {
+            List<String> columns = parseLine(lines.get(i));
+            if (columns.size() != header.size()) {
+                continue;
+            }
+            String benchmark = columns.get(benchmarkIndex);
+            boolean allocationRate = benchmark.endsWith(ALLOCATION_RATE);
+            if (benchmark.indexOf(':') != -1 && !allocationRate) {
+                // Only the primary results and the normalized allocation rate are comparable between runs
+                continue;
+            }
+
+            // The key is made up of all columns, but the score, the score error and the number of samples
+            StringBuilder key = new StringBuilder();
+            for (int j = 0; j < columns.size(); j++) {
+                String name = header.get(j);
+                if (!name.startsWith("Score") && !"Samples".equals(name) && j != unitIndex) {
+                    if (key.length() > 0) {
+                        key.append(' ');
+                    }
+                    if (name.startsWith("Param: ")) {
+                        key.append(name.substring("Param: ".length())).append('=');
+                    }
+                    key.append(columns.get(j));
+                }
+            }
+
+            Result result = new Result();
+            result.score = Double.parseDouble(columns.get(scoreIndex));
+            result.unit = columns.get(unitIndex);
+            result.higherIsBetter = !allocationRate && "thrpt".equals(columns.get(modeIndex));
+            results.put(key.toString(), result);
+        }
+        return results;
+    }
+
+    private static List<String> parseLine(String line) {
+        List<String> columns = new ArrayList<>();
+        StringBuilder column = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    column.append(c);
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if (c == ',' && !quoted) {
+                columns.add(column.toString());
+                column.setLength(0);
+            } else {
+                column.append(c);
+            }
+        }
+        columns.add(column.toString());
+        return columns;
+    }
+
+    private static class Result {
+        private double score;
+        private String unit;
+        private boolean higherIsBetter;
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.wss4j.performance;
+
+import java.io.IOException;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+
+import javax.security.auth.callback.Callback;
+import javax.security.auth.callback.CallbackHandler;
+import javax.security.auth.callback.UnsupportedCallbackException;
+
+import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.crypto.CryptoType;
+import org.apache.wss4j.common.ext.WSPasswordCallback;
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.saml.SAMLCallback;
+import org.apache.wss4j.common.saml.bean.AuthenticationStatementBean;
+import org.apache.wss4j.common.saml.bean.KeyInfoBean;
+import org.apache.wss4j.common.saml.bean.SubjectBean;
+import org.apache.wss4j.common.saml.bean.Version;
+import org.apache.wss4j.common.saml.builder.SAML2Constants;
+
+/**
+ * The CallbackHandler of the benchmarks. It supplies the passwords of the key pair and of the user, and
+ * (if a confirmation method is configured) the content of a SAML 2.0 authentication assertion. A
+ * holder-of-key assertion is signed by the issuer, a sender-vouches assertion is not.
+ */
+public class BenchmarkCallbackHandler implements CallbackHandler {
+
+    public static final String CRYPTO_PROPERTIES = "crypto.properties";
+    public static final String KEY_ALIAS = "16c73ab6-b892-458f-abf5-2f875f74882e";
+    public static final String KEY_PASSWORD = "security";
+    public static final String USERNAME = "wernerd";
+    public static final String PASSWORD = "verySecret";
+
+    private final Crypto crypto;
+    private final String confirmationMethod;
+    private final X509Certificate[] certs;
+
+    public BenchmarkCallbackHandler() {
+        this.crypto = null;
+        this.confirmationMethod = null;
+        this.certs = null;
+    }
+
+    public BenchmarkCallbackHandler(Crypto crypto, String confirmationMethod) throws WSSecurityException {
+        this.crypto = crypto;
+        this.confirmationMethod = confirmationMethod;
+        CryptoType cryptoType = new CryptoType(CryptoType.TYPE.ALIAS);
+        cryptoType.setAlias(KEY_ALIAS);
+        this.certs = crypto.getX509Certificates(cryptoType);
+    }
+
+    public void handle(Callback[] callbacks) throws IOException, UnsupportedCallbackException {
+        for (int i = 0; i < callbacks.length; i++) {
+            if (callbacks[i] instanceof WSPasswordCallback) {
+                WSPasswordCallback pc = (WSPasswordCallback) callbacks[i];
+                if (KEY_ALIAS.equals(pc.getIdentifier())) {
+                    pc.setPassword(KEY_PASSWORD);
+                } else if (USERNAME.equals(pc.getIdentifier())) {
+                    pc.setPassword(PASSWORD);
+                }
+            } else if (callbacks[i] instanceof SAMLCallback && confirmationMethod != null) {
+                handleSAMLCallback((SAMLCallback) callbacks[i]);
+            } else {
+                throw new UnsupportedCallbackException(callbacks[i], "Unrecognized Callback");
+            }
+        }
+    }
+
+    private void handleSAMLCallback(SAMLCallback callback) {
+        callback.setSamlVersion(Version.SAML_20);
+        callback.setIssuer("www.example.com");
+
+        SubjectBean subjectBean =
+            new SubjectBean("uid=joe,ou=people,ou=saml-demo,o=example.com", "www.example.com", confirmationMethod);
+        if (SAML2Constants.CONF_HOLDER_KEY.equals(confirmationMethod)) {
+            KeyInfoBean keyInfo = new KeyInfoBean();
+            keyInfo.setCertificate(certs[0]);
+            subjectBean.setKeyInfo(keyInfo);
+
+            callback.setSignAssertion(true);
+            callback.setIssuerCrypto(crypto);
+            callback.setIssuerKeyName(KEY_ALIAS);
+            callback.setIssuerKeyPassword(KEY_PASSWORD);
+        }
+        callback.setSubject(subjectBean);
+
+        AuthenticationStatementBean authBean = new AuthenticationStatementBean();
+        authBean.setAuthenticationMethod("Password");
+        callback.setAuthenticationStatementData(Collections.singletonList(authBean));
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.wss4j.performance;
+
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatFactory;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * The main class of the benchmarks jar. It accepts the usual JMH command line options, except that "-t"
+ * takes a comma separated list of thread counts, and the selected benchmarks are run once for every thread
+ * count (without "-t", the thread counts of the benchmarks themselves apply). The GC profiler is always
+ * enabled, so that the allocation rate (per operation) is reported next to the score. The results of all the runs are written to a single CSV file ("-rff",
+ * default "jmh-result.csv"), which can be compared against a baseline with the BaselineComparison.
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+        // complete
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> jmhArgs = new ArrayList<>();
+        String threadCounts = null;
+        String resultFile = "jmh-result.csv";
+        for (int i = 0; i < args.length; i++) {
+            if ("-t".equals(args[i]) && i + 1 < args.length) {
+                threadCounts = args[++i];
+            } else if ("-rff".equals(args[i]) && i + 1 < args.length) {
+                resultFile = args[++i];
+            } else {
+                jmhArgs.add(args[i]);
+            }
+        }
+        CommandLineOptions commandLineOptions = new CommandLineOptions(jmhArgs.toArray(new String[0]));
+
+        Collection<RunResult> results = new ArrayList<>();
+        if (threadCounts == null) {
+            results.addAll(run(new OptionsBuilder().parent(commandLineOptions)));
+        } else {
+            for (String threads : threadCounts.split(",")) {
+                int threadCount = Integer.parseInt(threads.trim());
+                results.addAll(run(new OptionsBuilder().parent(commandLineOptions).threads(threadCount)));
+            }
+        }
+
+        try (PrintStream out = new PrintStream(new FileOutputStream(resultFile), true, "UTF-8")) {
+            ResultFormatFactory.getInstance(ResultFormatType.CSV, out).writeOut(results);
+        }
+    }
+
+    private static Collection<RunResult> run(ChainedOptionsBuilder optionsBuilder) throws RunnerException {
+        Options options = optionsBuilder.addProfiler(GCProfiler.class).build();
+        return new Runner(options).run();
+    }
+}
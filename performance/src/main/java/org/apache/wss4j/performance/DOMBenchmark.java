@@ -0,0 +1,194 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.wss4j.performance;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import javax.security.auth.callback.CallbackHandler;
+import javax.xml.parsers.DocumentBuilder;
+
+import org.apache.wss4j.common.WSS4JConstants;
+import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.crypto.CryptoFactory;
+import org.apache.wss4j.common.saml.SAMLCallback;
+import org.apache.wss4j.common.saml.SAMLUtil;
+import org.apache.wss4j.common.saml.SamlAssertionWrapper;
+import org.apache.wss4j.common.saml.builder.SAML2Constants;
+import org.apache.wss4j.common.util.DOM2Writer;
+import org.apache.wss4j.dom.WSConstants;
+import org.apache.wss4j.dom.engine.WSSConfig;
+import org.apache.wss4j.dom.engine.WSSecurityEngine;
+import org.apache.wss4j.dom.handler.WSHandlerResult;
+import org.apache.wss4j.dom.message.WSSecDKSign;
+import org.apache.wss4j.dom.message.WSSecEncrypt;
+import org.apache.wss4j.dom.message.WSSecEncryptedKey;
+import org.apache.wss4j.dom.message.WSSecHeader;
+import org.apache.wss4j.dom.message.WSSecSignature;
+import org.apache.wss4j.dom.message.WSSecTimestamp;
+import org.apache.wss4j.dom.message.WSSecUsernameToken;
+import org.apache.wss4j.dom.saml.WSSecSignatureSAML;
+import org.apache.xml.security.utils.XMLUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+/**
+ * Measures the DOM stack: "secure" parses a plain SOAP message, adds the security header of the given
+ * action with the WSSec* builders and serializes the result, "verify" parses a secured message and
+ * processes its security header with the WSSecurityEngine. Both the parsing and the serialization are
+ * included, so that the scores can be compared with those of the StAXBenchmark.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class DOMBenchmark {
+
+    @Param({"TIMESTAMP", "USERNAME_TOKEN", "SIGNATURE", "ENCRYPT", "SAML_HOK", "SAML_SV", "DERIVED_KEY"})
+    private SecurityAction action;
+
+    // The size of the SOAP message in kilobytes
+    @Param({"1", "64", "1024"})
+    private int messageSize;
+
+    private Crypto crypto;
+    private CallbackHandler callbackHandler;
+    private CallbackHandler samlCallbackHandler;
+    private byte[] message;
+    private byte[] securedMessage;
+
+    @Setup
+    public void setUp() throws Exception {
+        WSSConfig.init();
+        crypto = CryptoFactory.getInstance(BenchmarkCallbackHandler.CRYPTO_PROPERTIES);
+        callbackHandler = new BenchmarkCallbackHandler();
+        if (action == SecurityAction.SAML_HOK) {
+            samlCallbackHandler = new BenchmarkCallbackHandler(crypto, SAML2Constants.CONF_HOLDER_KEY);
+        } else if (action == SecurityAction.SAML_SV) {
+            samlCallbackHandler = new BenchmarkCallbackHandler(crypto, SAML2Constants.CONF_SENDER_VOUCHES);
+        }
+        message = SOAPMessages.createMessage(messageSize);
+        securedMessage = secure();
+    }
+
+    @Benchmark
+    public byte[] secure() throws Exception {
+        Document doc = parse(message);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        switch (action) {
+        case TIMESTAMP:
+            WSSecTimestamp timestamp = new WSSecTimestamp(secHeader);
+            timestamp.setTimeToLive(300);
+            timestamp.build();
+            break;
+        case USERNAME_TOKEN:
+            WSSecUsernameToken usernameToken = new WSSecUsernameToken(secHeader);
+            usernameToken.setUserInfo(BenchmarkCallbackHandler.USERNAME, BenchmarkCallbackHandler.PASSWORD);
+            usernameToken.build();
+            break;
+        case SIGNATURE:
+            WSSecSignature signature = new WSSecSignature(secHeader);
+            signature.setUserInfo(BenchmarkCallbackHandler.KEY_ALIAS, BenchmarkCallbackHandler.KEY_PASSWORD);
+            signature.setKeyIdentifierType(WSConstants.ISSUER_SERIAL);
+            signature.build(crypto);
+            break;
+        case ENCRYPT:
+            WSSecEncrypt encrypt = new WSSecEncrypt(secHeader);
+            encrypt.setUserInfo(BenchmarkCallbackHandler.KEY_ALIAS);
+            encrypt.setKeyIdentifierType(WSConstants.ISSUER_SERIAL);
+            encrypt.setSymmetricEncAlgorithm(WSS4JConstants.AES_128);
+            encrypt.setKeyEncAlgo(WSS4JConstants.KEYTRANSPORT_RSAOAEP);
+            encrypt.build(crypto);
+            break;
+        case SAML_HOK:
+        case SAML_SV:
+            SAMLCallback samlCallback = new SAMLCallback();
+            SAMLUtil.doSAMLCallback(samlCallbackHandler, samlCallback);
+            SamlAssertionWrapper samlAssertion = new SamlAssertionWrapper(samlCallback);
+            if (samlCallback.isSignAssertion()) {
+                samlAssertion.signAssertion(
+                    samlCallback.getIssuerKeyName(), samlCallback.getIssuerKeyPassword(),
+                    samlCallback.getIssuerCrypto(), samlCallback.isSendKeyValue()
+                );
+            }
+
+            WSSecSignatureSAML signatureSAML = new WSSecSignatureSAML(secHeader);
+            signatureSAML.setKeyIdentifierType(WSConstants.BST_DIRECT_REFERENCE);
+            if (action == SecurityAction.SAML_HOK) {
+                signatureSAML.setUserInfo(BenchmarkCallbackHandler.KEY_ALIAS, BenchmarkCallbackHandler.KEY_PASSWORD);
+                signatureSAML.build(crypto, samlAssertion, null, null, null);
+            } else {
+                signatureSAML.build(
+                    null, samlAssertion, crypto,
+                    BenchmarkCallbackHandler.KEY_ALIAS, BenchmarkCallbackHandler.KEY_PASSWORD
+                );
+            }
+            break;
+        case DERIVED_KEY:
+            WSSecEncryptedKey encryptedKey = new WSSecEncryptedKey(secHeader);
+            encryptedKey.setUserInfo(BenchmarkCallbackHandler.KEY_ALIAS);
+            encryptedKey.setKeyIdentifierType(WSConstants.ISSUER_SERIAL);
+            encryptedKey.setSymmetricEncAlgorithm(WSS4JConstants.AES_128);
+            encryptedKey.setKeyEncAlgo(WSS4JConstants.KEYTRANSPORT_RSAOAEP);
+            encryptedKey.prepare(crypto);
+
+            WSSecDKSign derivedKeySignature = new WSSecDKSign(secHeader);
+            derivedKeySignature.setExternalKey(encryptedKey.getEphemeralKey(), encryptedKey.getId());
+            derivedKeySignature.setSignatureAlgorithm(WSS4JConstants.HMAC_SHA1);
+            derivedKeySignature.build();
+
+            encryptedKey.prependToHeader();
+            break;
+        default:
+            throw new IllegalStateException("Unknown action: " + action);
+        }
+
+        return DOM2Writer.nodeToString(doc).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public WSHandlerResult verify() throws Exception {
+        Document doc = parse(securedMessage);
+        return new WSSecurityEngine().processSecurityHeader(doc, null, callbackHandler, crypto);
+    }
+
+    private static Document parse(byte[] bytes) throws Exception {
+        DocumentBuilder documentBuilder = XMLUtils.createDocumentBuilder(false);
+        try {
+            return documentBuilder.parse(new ByteArrayInputStream(bytes));
+        } finally {
+            XMLUtils.repoolDocumentBuilder(documentBuilder);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.wss4j.performance;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.apache.wss4j.common.WSS4JConstants;
+import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.crypto.CryptoFactory;
+import org.apache.wss4j.stax.ext.WSSConstants;
+import org.apache.wss4j.stax.ext.WSSSecurityProperties;
+import org.apache.wss4j.stax.securityToken.WSSecurityTokenConstants;
+import org.apache.wss4j.stax.setup.InboundWSSec;
+import org.apache.wss4j.stax.setup.OutboundWSSec;
+import org.apache.wss4j.stax.setup.WSSec;
+import org.apache.xml.security.stax.ext.XMLSecurityConstants;
+import org.apache.xml.security.stax.securityEvent.SecurityEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the streaming decryption of the StAX stack with a decryption thread per EncryptedData
+ * element (the default) against the inline decryption on the reading thread (see
+ * WSSSecurityProperties#setInlineDecryption), for a small and a large encrypted SOAP body. Run with
+ * e.g. "java -jar target/benchmarks.jar DecryptionBenchmark -t 1,16" to include the effect of many
+ * concurrent requests.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class DecryptionBenchmark {
+
+    @Param({"false", "true"})
+    private boolean inlineDecryption;
+
+    // The size of the SOAP message in kilobytes
+    @Param({"1", "1024"})
+    private int messageSize;
+
+    private XMLInputFactory xmlInputFactory;
+    private InboundWSSec inboundWSSec;
+    private byte[] encryptedMessage;
+
+    @Setup
+    public void setUp() throws Exception {
+        xmlInputFactory = XMLInputFactory.newInstance();
+        xmlInputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+
+        Crypto crypto = CryptoFactory.getInstance(BenchmarkCallbackHandler.CRYPTO_PROPERTIES);
+
+        WSSSecurityProperties outboundSecurityProperties = new WSSSecurityProperties();
+        outboundSecurityProperties.setActions(
+            new ArrayList<XMLSecurityConstants.Action>(Collections.singletonList(WSSConstants.ENCRYPT))
+        );
+        outboundSecurityProperties.setEncryptionCrypto(crypto);
+        outboundSecurityProperties.setEncryptionUser(BenchmarkCallbackHandler.KEY_ALIAS);
+        outboundSecurityProperties.setEncryptionKeyIdentifier(WSSecurityTokenConstants.KeyIdentifier_IssuerSerial);
+        outboundSecurityProperties.setEncryptionSymAlgorithm(WSS4JConstants.AES_128);
+        outboundSecurityProperties.setEncryptionKeyTransportAlgorithm(WSS4JConstants.KEYTRANSPORT_RSAOAEP);
+        OutboundWSSec outboundWSSec = WSSec.getOutboundWSSec(outboundSecurityProperties);
+
+        byte[] message = SOAPMessages.createMessage(messageSize);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(message.length * 2);
+        XMLStreamWriter xmlStreamWriter =
+            outboundWSSec.processOutMessage(outputStream, StandardCharsets.UTF_8.name(), new ArrayList<SecurityEvent>());
+        XMLStreamReader xmlStreamReader = xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(message));
+        StAXBenchmark.copy(xmlStreamReader, xmlStreamWriter);
+        xmlStreamWriter.close();
+        xmlStreamReader.close();
+        encryptedMessage = outputStream.toByteArray();
+
+        WSSSecurityProperties inboundSecurityProperties = new WSSSecurityProperties();
+        inboundSecurityProperties.setDecryptionCrypto(crypto);
+        inboundSecurityProperties.setCallbackHandler(new BenchmarkCallbackHandler());
+        inboundSecurityProperties.setInlineDecryption(inlineDecryption);
+        inboundWSSec = WSSec.getInboundWSSec(inboundSecurityProperties);
+    }
+
+    @Benchmark
+    public int decrypt() throws Exception {
+        XMLStreamReader xmlStreamReader =
+            inboundWSSec.processInMessage(xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(encryptedMessage)));
+        int events = 0;
+        while (xmlStreamReader.hasNext()) {
+            xmlStreamReader.next();
+            events++;
+        }
+        xmlStreamReader.close();
+        return events;
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.wss4j.performance;
+
+import java.security.MessageDigest;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.wss4j.common.util.KeyUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the throughput of KeyUtils.generateDigest (as used for thumbprints and key identifiers) for
+ * an increasing number of threads, against a digest that is guarded by a single global lock as before.
+ * Run with e.g. "java -jar target/benchmarks.jar DigestBenchmark -t 1,2,4,8".
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DigestBenchmark {
+
+    private static final Object LOCK = new Object();
+
+    @Param({"SHA-1", "SHA-256"})
+    private String algorithm;
+
+    // The size of a typical (DER encoded) X.509 certificate
+    @Param({"1024"})
+    private int size;
+
+    private byte[] input;
+    private MessageDigest sharedDigest;
+
+    @Setup
+    public void setUp() throws Exception {
+        input = new byte[size];
+        new Random(42L).nextBytes(input);
+        sharedDigest = MessageDigest.getInstance(algorithm);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public byte[] perThreadDigest1() throws Exception {
+        return KeyUtils.generateDigest(input, algorithm);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public byte[] perThreadDigest4() throws Exception {
+        return KeyUtils.generateDigest(input, algorithm);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public byte[] perThreadDigestMax() throws Exception {
+        return KeyUtils.generateDigest(input, algorithm);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void synchronizedDigest1(Blackhole blackhole) {
+        blackhole.consume(synchronizedDigest());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void synchronizedDigest4(Blackhole blackhole) {
+        blackhole.consume(synchronizedDigest());
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void synchronizedDigestMax(Blackhole blackhole) {
+        blackhole.consume(synchronizedDigest());
+    }
+
+    private byte[] synchronizedDigest() {
+        synchronized (LOCK) {
+            sharedDigest.reset();
+            sharedDigest.update(input);
+            return sharedDigest.digest();
+        }
+    }
+}
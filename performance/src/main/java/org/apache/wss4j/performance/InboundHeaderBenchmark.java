@@ -0,0 +1,136 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.performance;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.apache.wss4j.common.WSS4JConstants;
+import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.crypto.CryptoFactory;
+import org.apache.wss4j.stax.ext.WSSConstants;
+import org.apache.wss4j.stax.ext.WSSSecurityProperties;
+import org.apache.wss4j.stax.securityToken.WSSecurityTokenConstants;
+import org.apache.wss4j.stax.setup.InboundWSSec;
+import org.apache.wss4j.stax.setup.OutboundWSSec;
+import org.apache.wss4j.stax.setup.WSSec;
+import org.apache.xml.security.stax.ext.SecurePart;
+import org.apache.xml.security.stax.ext.XMLSecurityConstants;
+import org.apache.xml.security.stax.securityEvent.SecurityEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the processing of a typical security header - a Timestamp, a BinarySecurityToken, a Signature
+ * over the Timestamp and the SOAP Body that refers to the BinarySecurityToken, and an EncryptedKey for the
+ * encrypted SOAP Body - of a small message by the StAX stack. The interesting figure is the number of bytes
+ * that are allocated per message, the "gc.alloc.rate.norm" of e.g.
+ * "java -jar target/benchmarks.jar InboundHeaderBenchmark -prof gc".
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InboundHeaderBenchmark {
+
+    private XMLInputFactory xmlInputFactory;
+    private InboundWSSec inboundWSSec;
+    private byte[] securedMessage;
+
+    @Setup
+    public void setUp() throws Exception {
+        xmlInputFactory = XMLInputFactory.newInstance();
+        xmlInputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+
+        Crypto crypto = CryptoFactory.getInstance(BenchmarkCallbackHandler.CRYPTO_PROPERTIES);
+
+        WSSSecurityProperties outboundSecurityProperties = new WSSSecurityProperties();
+        outboundSecurityProperties.setActions(new ArrayList<XMLSecurityConstants.Action>(
+            Arrays.asList(WSSConstants.TIMESTAMP, WSSConstants.SIGNATURE, WSSConstants.ENCRYPT)
+        ));
+        outboundSecurityProperties.setCallbackHandler(new BenchmarkCallbackHandler());
+        outboundSecurityProperties.setTimestampTTL(300);
+        outboundSecurityProperties.setSignatureCrypto(crypto);
+        outboundSecurityProperties.setSignatureUser(BenchmarkCallbackHandler.KEY_ALIAS);
+        outboundSecurityProperties.setSignatureKeyIdentifier(
+            WSSecurityTokenConstants.KEYIDENTIFIER_SECURITY_TOKEN_DIRECT_REFERENCE
+        );
+        outboundSecurityProperties.addSignaturePart(
+            new SecurePart(WSSConstants.TAG_WSU_TIMESTAMP, SecurePart.Modifier.Element)
+        );
+        outboundSecurityProperties.addSignaturePart(
+            new SecurePart(WSSConstants.TAG_SOAP11_BODY, SecurePart.Modifier.Element)
+        );
+        outboundSecurityProperties.setEncryptionCrypto(crypto);
+        outboundSecurityProperties.setEncryptionUser(BenchmarkCallbackHandler.KEY_ALIAS);
+        outboundSecurityProperties.setEncryptionKeyIdentifier(WSSecurityTokenConstants.KeyIdentifier_IssuerSerial);
+        outboundSecurityProperties.setEncryptionSymAlgorithm(WSS4JConstants.AES_128);
+        outboundSecurityProperties.setEncryptionKeyTransportAlgorithm(WSS4JConstants.KEYTRANSPORT_RSAOAEP);
+        OutboundWSSec outboundWSSec = WSSec.getOutboundWSSec(outboundSecurityProperties);
+
+        byte[] message = SOAPMessages.createMessage(1);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(message.length * 2);
+        XMLStreamWriter xmlStreamWriter =
+            outboundWSSec.processOutMessage(outputStream, StandardCharsets.UTF_8.name(), new ArrayList<SecurityEvent>());
+        XMLStreamReader xmlStreamReader = xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(message));
+        StAXBenchmark.copy(xmlStreamReader, xmlStreamWriter);
+        xmlStreamWriter.close();
+        xmlStreamReader.close();
+        securedMessage = outputStream.toByteArray();
+
+        WSSSecurityProperties inboundSecurityProperties = new WSSSecurityProperties();
+        inboundSecurityProperties.setSignatureVerificationCrypto(crypto);
+        inboundSecurityProperties.setDecryptionCrypto(crypto);
+        inboundSecurityProperties.setCallbackHandler(new BenchmarkCallbackHandler());
+        inboundWSSec = WSSec.getInboundWSSec(inboundSecurityProperties);
+    }
+
+    @Benchmark
+    public int verify() throws Exception {
+        XMLStreamReader xmlStreamReader =
+            inboundWSSec.processInMessage(xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(securedMessage)));
+        int events = 0;
+        while (xmlStreamReader.hasNext()) {
+            xmlStreamReader.next();
+            events++;
+        }
+        xmlStreamReader.close();
+        return events;
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.wss4j.performance;
+
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.namespace.QName;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.apache.neethi.AssertionBuilderFactory;
+import org.apache.neethi.Policy;
+import org.apache.neethi.PolicyBuilder;
+import org.apache.wss4j.policy.builders.AlgorithmSuiteBuilder;
+import org.apache.wss4j.policy.builders.AsymmetricBindingBuilder;
+import org.apache.wss4j.policy.builders.EncryptedPartsBuilder;
+import org.apache.wss4j.policy.builders.HttpsTokenBuilder;
+import org.apache.wss4j.policy.builders.InitiatorTokenBuilder;
+import org.apache.wss4j.policy.builders.LayoutBuilder;
+import org.apache.wss4j.policy.builders.RecipientTokenBuilder;
+import org.apache.wss4j.policy.builders.SignedPartsBuilder;
+import org.apache.wss4j.policy.builders.SupportingTokensBuilder;
+import org.apache.wss4j.policy.builders.TransportBindingBuilder;
+import org.apache.wss4j.policy.builders.TransportTokenBuilder;
+import org.apache.wss4j.policy.builders.UsernameTokenBuilder;
+import org.apache.wss4j.policy.builders.WSS11Builder;
+import org.apache.wss4j.policy.builders.X509TokenBuilder;
+import org.apache.wss4j.policy.stax.OperationPolicy;
+import org.apache.wss4j.policy.stax.enforcer.PolicyEnforcer;
+import org.apache.wss4j.policy.stax.enforcer.PolicyEnforcerFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Measures the per-message cost of setting up a PolicyEnforcer for an operation with two policy
+ * alternatives: once with a fresh list of operation policies (so the policy tree is walked for every
+ * message), and once via a PolicyEnforcerFactory that shares the compiled enforcement plan of the
+ * operation between messages.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PolicyEnforcerBenchmark {
+
+    private static final String SOAP_ACTION = "definitions";
+
+    private List<OperationPolicy> operationPolicies;
+    private PolicyEnforcerFactory policyEnforcerFactory;
+
+    @Setup
+    public void setUp() throws Exception {
+        URL wsdl = PolicyEnforcerBenchmark.class.getClassLoader().getResource("wsdl/asymmetric-binding.wsdl");
+        policyEnforcerFactory = PolicyEnforcerFactory.newInstance(wsdl);
+
+        DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+        documentBuilderFactory.setNamespaceAware(true);
+        Document document = documentBuilderFactory.newDocumentBuilder().parse(wsdl.toString());
+        Element policyElement =
+            (Element) document.getElementsByTagNameNS("http://schemas.xmlsoap.org/ws/2004/09/policy", "Policy").item(0);
+
+        PolicyBuilder policyBuilder = new PolicyBuilder();
+        AssertionBuilderFactory assertionBuilderFactory = policyBuilder.getAssertionBuilderFactory();
+        assertionBuilderFactory.registerBuilder(new AlgorithmSuiteBuilder());
+        assertionBuilderFactory.registerBuilder(new AsymmetricBindingBuilder());
+        assertionBuilderFactory.registerBuilder(new EncryptedPartsBuilder());
+        assertionBuilderFactory.registerBuilder(new HttpsTokenBuilder());
+        assertionBuilderFactory.registerBuilder(new InitiatorTokenBuilder());
+        assertionBuilderFactory.registerBuilder(new LayoutBuilder());
+        assertionBuilderFactory.registerBuilder(new RecipientTokenBuilder());
+        assertionBuilderFactory.registerBuilder(new SignedPartsBuilder());
+        assertionBuilderFactory.registerBuilder(new SupportingTokensBuilder());
+        assertionBuilderFactory.registerBuilder(new TransportBindingBuilder());
+        assertionBuilderFactory.registerBuilder(new TransportTokenBuilder());
+        assertionBuilderFactory.registerBuilder(new UsernameTokenBuilder());
+        assertionBuilderFactory.registerBuilder(new WSS11Builder());
+        assertionBuilderFactory.registerBuilder(new X509TokenBuilder());
+        Policy policy = policyBuilder.getPolicy(policyElement);
+
+        OperationPolicy operationPolicy = new OperationPolicy(new QName(null, SOAP_ACTION));
+        operationPolicy.setOperationAction(SOAP_ACTION);
+        operationPolicy.setPolicy(policy.normalize(true));
+        operationPolicies = Collections.singletonList(operationPolicy);
+    }
+
+    @Benchmark
+    public PolicyEnforcer perMessagePolicyWalk() throws Exception {
+        return new PolicyEnforcer(operationPolicies, SOAP_ACTION, false, null, 0);
+    }
+
+    @Benchmark
+    public PolicyEnforcer compiledPlan() throws Exception {
+        return policyEnforcerFactory.newPolicyEnforcer(SOAP_ACTION, false, null, 0);
+    }
+}
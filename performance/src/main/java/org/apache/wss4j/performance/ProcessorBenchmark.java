@@ -0,0 +1,156 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.wss4j.performance;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import javax.security.auth.callback.CallbackHandler;
+import javax.xml.namespace.QName;
+import javax.xml.parsers.DocumentBuilder;
+
+import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.crypto.CryptoFactory;
+import org.apache.wss4j.common.util.DOM2Writer;
+import org.apache.wss4j.dom.WSConstants;
+import org.apache.wss4j.dom.engine.WSSConfig;
+import org.apache.wss4j.dom.engine.WSSecurityEngine;
+import org.apache.wss4j.dom.handler.WSHandlerResult;
+import org.apache.wss4j.dom.message.WSSecHeader;
+import org.apache.wss4j.dom.message.WSSecSignature;
+import org.apache.wss4j.dom.message.WSSecTimestamp;
+import org.apache.wss4j.dom.processor.BinarySecurityTokenProcessor;
+import org.apache.wss4j.dom.processor.SignatureProcessor;
+import org.apache.wss4j.dom.processor.TimestampProcessor;
+import org.apache.wss4j.dom.validate.SignatureTrustValidator;
+import org.apache.wss4j.dom.validate.TimestampValidator;
+import org.apache.xml.security.utils.XMLUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.w3c.dom.Document;
+
+/**
+ * Measures the cost of looking up the processors and validators of a security header with a Timestamp, a
+ * BinarySecurityToken and a Signature. With "sharedProcessors" the default (stateless) processors and
+ * validators are used, which are shared by all messages, otherwise the WSSConfig is configured with
+ * subclasses of them that are not annotated as stateless, and so are instantiated for every element
+ * and token as before. Compare the "gc.alloc.rate.norm" of both settings, e.g. with
+ * "java -jar target/benchmarks.jar ProcessorBenchmark -prof gc".
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProcessorBenchmark {
+
+    private static final QName[] HEADER_ELEMENTS = {
+        WSConstants.TIMESTAMP, WSConstants.BINARY_TOKEN, WSConstants.SIGNATURE,
+    };
+
+    @Param({"true", "false"})
+    private boolean sharedProcessors;
+
+    private Crypto crypto;
+    private CallbackHandler callbackHandler;
+    private WSSConfig wssConfig;
+    private byte[] securedMessage;
+
+    @Setup
+    public void setUp() throws Exception {
+        WSSConfig.init();
+        crypto = CryptoFactory.getInstance(BenchmarkCallbackHandler.CRYPTO_PROPERTIES);
+        callbackHandler = new BenchmarkCallbackHandler();
+
+        wssConfig = WSSConfig.getNewInstance();
+        if (!sharedProcessors) {
+            wssConfig.setProcessor(WSConstants.TIMESTAMP, PerMessageTimestampProcessor.class);
+            wssConfig.setProcessor(WSConstants.BINARY_TOKEN, PerMessageBinarySecurityTokenProcessor.class);
+            wssConfig.setProcessor(WSConstants.SIGNATURE, PerMessageSignatureProcessor.class);
+            wssConfig.setValidator(WSConstants.TIMESTAMP, PerMessageTimestampValidator.class);
+            wssConfig.setValidator(WSConstants.SIGNATURE, PerMessageSignatureTrustValidator.class);
+        }
+
+        Document doc = parse(SOAPMessages.createMessage(1));
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecTimestamp timestamp = new WSSecTimestamp(secHeader);
+        timestamp.setTimeToLive(3600);
+        timestamp.build();
+
+        WSSecSignature signature = new WSSecSignature(secHeader);
+        signature.setUserInfo(BenchmarkCallbackHandler.KEY_ALIAS, BenchmarkCallbackHandler.KEY_PASSWORD);
+        signature.setKeyIdentifierType(WSConstants.BST_DIRECT_REFERENCE);
+        signature.build(crypto);
+
+        securedMessage = DOM2Writer.nodeToString(doc).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public void dispatch(Blackhole blackhole) throws Exception {
+        for (QName el : HEADER_ELEMENTS) {
+            blackhole.consume(wssConfig.getProcessor(el));
+            blackhole.consume(wssConfig.getValidator(el));
+        }
+    }
+
+    @Benchmark
+    public WSHandlerResult processSecurityHeader() throws Exception {
+        WSSecurityEngine engine = new WSSecurityEngine();
+        engine.setWssConfig(wssConfig);
+        return engine.processSecurityHeader(parse(securedMessage), null, callbackHandler, crypto);
+    }
+
+    private static Document parse(byte[] bytes) throws Exception {
+        DocumentBuilder documentBuilder = XMLUtils.createDocumentBuilder(false);
+        try {
+            return documentBuilder.parse(new ByteArrayInputStream(bytes));
+        } finally {
+            XMLUtils.repoolDocumentBuilder(documentBuilder);
+        }
+    }
+
+    public static class PerMessageTimestampProcessor extends TimestampProcessor {
+    }
+
+    public static class PerMessageBinarySecurityTokenProcessor extends BinarySecurityTokenProcessor {
+    }
+
+    public static class PerMessageSignatureProcessor extends SignatureProcessor {
+    }
+
+    public static class PerMessageTimestampValidator extends TimestampValidator {
+    }
+
+    public static class PerMessageSignatureTrustValidator extends SignatureTrustValidator {
+    }
+}
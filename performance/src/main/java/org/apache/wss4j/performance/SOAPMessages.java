@@ -0,0 +1,57 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.wss4j.performance;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Creates the (unsecured) SOAP 1.1 messages of the benchmarks.
+ */
+public final class SOAPMessages {
+
+    private static final String ENVELOPE_START =
+        "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+        + "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\">"
+        + "<soapenv:Header></soapenv:Header>"
+        + "<soapenv:Body><ns1:echo xmlns:ns1=\"http://www.example.com/benchmark\">";
+    private static final String ENVELOPE_END = "</ns1:echo></soapenv:Body></soapenv:Envelope>";
+
+    private SOAPMessages() {
+        // complete
+    }
+
+    /**
+     * Create a SOAP message, the Body of which is filled with (distinct) elements until the message has
+     * (at least) the given size.
+     * @param sizeInKb the size of the message in kilobytes
+     */
+    public static byte[] createMessage(int sizeInKb) {
+        int size = sizeInKb * 1024;
+        StringBuilder message = new StringBuilder(size + 256);
+        message.append(ENVELOPE_START);
+        int item = 0;
+        while (message.length() + ENVELOPE_END.length() < size) {
+            message.append("<ns1:item ns1:index=\"").append(item).append("\">")
+                .append("The quick brown fox jumps over the lazy dog ").append(item++)
+                .append("</ns1:item>");
+        }
+        message.append(ENVELOPE_END);
+        return message.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.performance;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.DocumentBuilder;
+
+import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.crypto.CryptoFactory;
+import org.apache.wss4j.common.saml.OpenSAMLUtil;
+import org.apache.wss4j.common.saml.SAMLCallback;
+import org.apache.wss4j.common.saml.SamlAssertionWrapper;
+import org.apache.wss4j.common.saml.bean.AttributeBean;
+import org.apache.wss4j.common.saml.bean.AttributeStatementBean;
+import org.apache.wss4j.common.saml.bean.SubjectBean;
+import org.apache.wss4j.common.saml.bean.Version;
+import org.apache.wss4j.common.saml.builder.SAML2Constants;
+import org.apache.wss4j.common.util.DOM2Writer;
+import org.apache.xml.security.utils.XMLUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Measures the cost of wrapping a parsed, signed SAML 2.0 assertion with the given number of attributes in a
+ * SamlAssertionWrapper, and of reading its Id, Issuer, Subject, conditions and confirmation methods. With
+ * "lazy" the wrapper reads these values from the DOM element, otherwise the assertion is unmarshalled into
+ * the OpenSAML object model up front.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SamlAssertionBenchmark {
+
+    @Param({"true", "false"})
+    private boolean lazy;
+
+    @Param({"1", "100"})
+    private int attributes;
+
+    private Element assertionElement;
+
+    @Setup
+    public void setUp() throws Exception {
+        OpenSAMLUtil.initSamlEngine();
+        Crypto crypto = CryptoFactory.getInstance(BenchmarkCallbackHandler.CRYPTO_PROPERTIES);
+
+        SAMLCallback callback = new SAMLCallback();
+        callback.setSamlVersion(Version.SAML_20);
+        callback.setIssuer("www.example.com");
+        callback.setSubject(new SubjectBean("uid=joe,ou=people,ou=saml-demo,o=example.com",
+                                            "www.example.com", SAML2Constants.CONF_BEARER));
+
+        List<AttributeBean> attributeBeans = new ArrayList<>(attributes);
+        for (int i = 0; i < attributes; i++) {
+            attributeBeans.add(new AttributeBean(null, "urn:example:attribute:" + i,
+                                                 Collections.<Object>singletonList("value-" + i)));
+        }
+        AttributeStatementBean attributeStatement = new AttributeStatementBean();
+        attributeStatement.setSamlAttributes(attributeBeans);
+        callback.setAttributeStatementData(Collections.singletonList(attributeStatement));
+
+        SamlAssertionWrapper samlAssertion = new SamlAssertionWrapper(callback);
+        samlAssertion.signAssertion(BenchmarkCallbackHandler.KEY_ALIAS, BenchmarkCallbackHandler.KEY_PASSWORD,
+                                    crypto, false);
+        byte[] assertion = DOM2Writer.nodeToString(samlAssertion.toDOM(null)).getBytes(StandardCharsets.UTF_8);
+
+        DocumentBuilder documentBuilder = XMLUtils.createDocumentBuilder(false);
+        try {
+            Document doc = documentBuilder.parse(new ByteArrayInputStream(assertion));
+            assertionElement = doc.getDocumentElement();
+        } finally {
+            XMLUtils.repoolDocumentBuilder(documentBuilder);
+        }
+    }
+
+    @Benchmark
+    public void readAssertion(Blackhole blackhole) throws Exception {
+        SamlAssertionWrapper samlAssertion = new SamlAssertionWrapper(assertionElement, lazy);
+        blackhole.consume(samlAssertion.getId());
+        blackhole.consume(samlAssertion.getIssuerString());
+        blackhole.consume(samlAssertion.getSubjectName());
+        blackhole.consume(samlAssertion.getNotOnOrAfter());
+        blackhole.consume(samlAssertion.getConfirmationMethods());
+        blackhole.consume(samlAssertion.isSigned());
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.wss4j.performance;
+
+/**
+ * The security actions that are measured by the DOM and StAX benchmarks. Both stacks are configured to
+ * produce (and to consume) equivalent security headers for a given action.
+ */
+public enum SecurityAction {
+
+    /**
+     * A Timestamp with a time-to-live of five minutes
+     */
+    TIMESTAMP,
+
+    /**
+     * A UsernameToken with a digested password, a nonce and a created date
+     */
+    USERNAME_TOKEN,
+
+    /**
+     * An RSA-SHA1 signature over the SOAP Body, referring to the certificate via its issuer and serial number
+     */
+    SIGNATURE,
+
+    /**
+     * AES-128 encryption of the SOAP Body content, with an RSA-OAEP EncryptedKey
+     */
+    ENCRYPT,
+
+    /**
+     * An issuer-signed SAML 2.0 holder-of-key assertion, plus a signature over the SOAP Body with the
+     * subject's key
+     */
+    SAML_HOK,
+
+    /**
+     * An unsigned SAML 2.0 sender-vouches assertion, plus a signature over the assertion and the SOAP Body
+     * with the sender's key
+     */
+    SAML_SV,
+
+    /**
+     * An HMAC-SHA1 signature over the SOAP Body with a key that is derived from an EncryptedKey
+     */
+    DERIVED_KEY
+}
@@ -0,0 +1,111 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.performance;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.DocumentBuilder;
+
+import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.crypto.CryptoFactory;
+import org.apache.wss4j.common.util.DOM2Writer;
+import org.apache.wss4j.dom.WSConstants;
+import org.apache.wss4j.dom.engine.WSSConfig;
+import org.apache.wss4j.dom.message.SignatureProfile;
+import org.apache.wss4j.dom.message.WSSecHeader;
+import org.apache.wss4j.dom.message.WSSecSignature;
+import org.apache.xml.security.utils.XMLUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+/**
+ * Measures the signing of a small SOAP message with the DOM stack (parsing, signing the SOAP Body with
+ * a BinarySecurityToken, serialization). With "profile" the WSSecSignature is created from a shared
+ * SignatureProfile, otherwise the XMLSignatureFactory, the private key and the certificates are looked
+ * up for every message.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SignatureBenchmark {
+
+    @Param({"true", "false"})
+    private boolean profile;
+
+    // The size of the SOAP message in kilobytes
+    @Param({"1", "4"})
+    private int messageSize;
+
+    private Crypto crypto;
+    private SignatureProfile signatureProfile;
+    private byte[] message;
+
+    @Setup
+    public void setUp() throws Exception {
+        WSSConfig.init();
+        crypto = CryptoFactory.getInstance(BenchmarkCallbackHandler.CRYPTO_PROPERTIES);
+        signatureProfile = new SignatureProfile(crypto, BenchmarkCallbackHandler.KEY_ALIAS,
+                                                BenchmarkCallbackHandler.KEY_PASSWORD, null, null);
+        message = SOAPMessages.createMessage(messageSize);
+    }
+
+    @Benchmark
+    public byte[] sign() throws Exception {
+        Document doc = parse(message);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecSignature signature;
+        if (profile) {
+            signature = new WSSecSignature(secHeader, signatureProfile);
+        } else {
+            signature = new WSSecSignature(secHeader);
+            signature.setUserInfo(BenchmarkCallbackHandler.KEY_ALIAS, BenchmarkCallbackHandler.KEY_PASSWORD);
+        }
+        signature.setKeyIdentifierType(WSConstants.BST_DIRECT_REFERENCE);
+        signature.build(crypto);
+
+        return DOM2Writer.nodeToString(doc).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Document parse(byte[] bytes) throws Exception {
+        DocumentBuilder documentBuilder = XMLUtils.createDocumentBuilder(false);
+        try {
+            return documentBuilder.parse(new ByteArrayInputStream(bytes));
+        } finally {
+            XMLUtils.repoolDocumentBuilder(documentBuilder);
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.wss4j.performance;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.apache.wss4j.common.WSS4JConstants;
+import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.crypto.CryptoFactory;
+import org.apache.wss4j.common.saml.builder.SAML2Constants;
+import org.apache.wss4j.stax.ext.WSSConstants;
+import org.apache.wss4j.stax.ext.WSSSecurityProperties;
+import org.apache.wss4j.stax.securityToken.WSSecurityTokenConstants;
+import org.apache.wss4j.stax.setup.InboundWSSec;
+import org.apache.wss4j.stax.setup.OutboundWSSec;
+import org.apache.wss4j.stax.setup.WSSec;
+import org.apache.xml.security.stax.ext.XMLSecurityConstants;
+import org.apache.xml.security.stax.securityEvent.SecurityEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the StAX stack: "secure" streams a plain SOAP message through the OutboundWSSec of the given
+ * action, "verify" streams a secured message through the InboundWSSec. The OutboundWSSec and InboundWSSec
+ * are set up once and shared between all threads, as they would be by a web services stack.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class StAXBenchmark {
+
+    @Param({"TIMESTAMP", "USERNAME_TOKEN", "SIGNATURE", "ENCRYPT", "SAML_HOK", "SAML_SV", "DERIVED_KEY"})
+    private SecurityAction action;
+
+    // The size of the SOAP message in kilobytes
+    @Param({"1", "64", "1024"})
+    private int messageSize;
+
+    private XMLInputFactory xmlInputFactory;
+    private OutboundWSSec outboundWSSec;
+    private InboundWSSec inboundWSSec;
+    private byte[] message;
+    private byte[] securedMessage;
+
+    @Setup
+    public void setUp() throws Exception {
+        xmlInputFactory = XMLInputFactory.newInstance();
+        xmlInputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+
+        Crypto crypto = CryptoFactory.getInstance(BenchmarkCallbackHandler.CRYPTO_PROPERTIES);
+        outboundWSSec = WSSec.getOutboundWSSec(createOutboundSecurityProperties(crypto));
+
+        WSSSecurityProperties inboundSecurityProperties = new WSSSecurityProperties();
+        inboundSecurityProperties.setSignatureVerificationCrypto(crypto);
+        inboundSecurityProperties.setDecryptionCrypto(crypto);
+        inboundSecurityProperties.setCallbackHandler(new BenchmarkCallbackHandler());
+        inboundWSSec = WSSec.getInboundWSSec(inboundSecurityProperties);
+
+        message = SOAPMessages.createMessage(messageSize);
+        securedMessage = secure();
+    }
+
+    @Benchmark
+    public byte[] secure() throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(message.length * 2);
+        XMLStreamWriter xmlStreamWriter =
+            outboundWSSec.processOutMessage(outputStream, StandardCharsets.UTF_8.name(), new ArrayList<SecurityEvent>());
+        XMLStreamReader xmlStreamReader = xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(message));
+        copy(xmlStreamReader, xmlStreamWriter);
+        xmlStreamWriter.close();
+        xmlStreamReader.close();
+        return outputStream.toByteArray();
+    }
+
+    @Benchmark
+    public int verify() throws Exception {
+        XMLStreamReader xmlStreamReader =
+            inboundWSSec.processInMessage(xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(securedMessage)));
+        int events = 0;
+        while (xmlStreamReader.hasNext()) {
+            xmlStreamReader.next();
+            events++;
+        }
+        xmlStreamReader.close();
+        return events;
+    }
+
+    private WSSSecurityProperties createOutboundSecurityProperties(Crypto crypto) throws Exception {
+        WSSSecurityProperties securityProperties = new WSSSecurityProperties();
+        securityProperties.setCallbackHandler(new BenchmarkCallbackHandler());
+
+        switch (action) {
+        case TIMESTAMP:
+            securityProperties.setActions(actions(WSSConstants.TIMESTAMP));
+            securityProperties.setTimestampTTL(300);
+            break;
+        case USERNAME_TOKEN:
+            securityProperties.setActions(actions(WSSConstants.USERNAMETOKEN));
+            securityProperties.setTokenUser(BenchmarkCallbackHandler.USERNAME);
+            securityProperties.setUsernameTokenPasswordType(WSSConstants.UsernameTokenPasswordType.PASSWORD_DIGEST);
+            break;
+        case SIGNATURE:
+            securityProperties.setActions(actions(WSSConstants.SIGNATURE));
+            securityProperties.setSignatureCrypto(crypto);
+            securityProperties.setSignatureUser(BenchmarkCallbackHandler.KEY_ALIAS);
+            securityProperties.setSignatureKeyIdentifier(WSSecurityTokenConstants.KeyIdentifier_IssuerSerial);
+            break;
+        case ENCRYPT:
+            securityProperties.setActions(actions(WSSConstants.ENCRYPT));
+            securityProperties.setEncryptionCrypto(crypto);
+            securityProperties.setEncryptionUser(BenchmarkCallbackHandler.KEY_ALIAS);
+            securityProperties.setEncryptionKeyIdentifier(WSSecurityTokenConstants.KeyIdentifier_IssuerSerial);
+            securityProperties.setEncryptionSymAlgorithm(WSS4JConstants.AES_128);
+            securityProperties.setEncryptionKeyTransportAlgorithm(WSS4JConstants.KEYTRANSPORT_RSAOAEP);
+            break;
+        case SAML_HOK:
+        case SAML_SV:
+            securityProperties.setActions(actions(WSSConstants.SAML_TOKEN_SIGNED));
+            String confirmationMethod = action == SecurityAction.SAML_HOK
+                ? SAML2Constants.CONF_HOLDER_KEY : SAML2Constants.CONF_SENDER_VOUCHES;
+            securityProperties.setSamlCallbackHandler(new BenchmarkCallbackHandler(crypto, confirmationMethod));
+            securityProperties.setSignatureCrypto(crypto);
+            securityProperties.setSignatureUser(BenchmarkCallbackHandler.KEY_ALIAS);
+            securityProperties.setSignatureKeyIdentifier(
+                WSSecurityTokenConstants.KEYIDENTIFIER_SECURITY_TOKEN_DIRECT_REFERENCE
+            );
+            break;
+        case DERIVED_KEY:
+            securityProperties.setActions(actions(WSSConstants.SIGNATURE_WITH_DERIVED_KEY));
+            securityProperties.setEncryptionCrypto(crypto);
+            securityProperties.setEncryptionUser(BenchmarkCallbackHandler.KEY_ALIAS);
+            securityProperties.setEncryptionKeyIdentifier(WSSecurityTokenConstants.KeyIdentifier_IssuerSerial);
+            securityProperties.setEncryptionSymAlgorithm(WSS4JConstants.AES_128);
+            securityProperties.setEncryptionKeyTransportAlgorithm(WSS4JConstants.KEYTRANSPORT_RSAOAEP);
+            securityProperties.setDerivedKeyTokenReference(WSSConstants.DerivedKeyTokenReference.EncryptedKey);
+            securityProperties.setSignatureAlgorithm(WSS4JConstants.HMAC_SHA1);
+            break;
+        default:
+            throw new IllegalStateException("Unknown action: " + action);
+        }
+        return securityProperties;
+    }
+
+    private static List<XMLSecurityConstants.Action> actions(XMLSecurityConstants.Action action) {
+        return new ArrayList<>(Collections.singletonList(action));
+    }
+
+    static void copy(XMLStreamReader reader, XMLStreamWriter writer) throws XMLStreamException {
+        while (reader.hasNext()) {
+            switch (reader.next()) {
+            case XMLStreamConstants.START_ELEMENT:
+                writer.writeStartElement(
+                    nonNull(reader.getPrefix()), reader.getLocalName(), nonNull(reader.getNamespaceURI())
+                );
+                for (int i = 0; i < reader.getNamespaceCount(); i++) {
+                    writer.writeNamespace(nonNull(reader.getNamespacePrefix(i)), nonNull(reader.getNamespaceURI(i)));
+                }
+                for (int i = 0; i < reader.getAttributeCount(); i++) {
+                    writer.writeAttribute(
+                        nonNull(reader.getAttributePrefix(i)), nonNull(reader.getAttributeNamespace(i)),
+                        reader.getAttributeLocalName(i), reader.getAttributeValue(i)
+                    );
+                }
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                writer.writeEndElement();
+                break;
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.SPACE:
+                writer.writeCharacters(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                break;
+            case XMLStreamConstants.END_DOCUMENT:
+                writer.writeEndDocument();
+                break;
+            default:
+                break;
+            }
+        }
+    }
+
+    private static String nonNull(String value) {
+        return value == null ? "" : value;
+    }
+}
@@ -0,0 +1,362 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.cache;
+
+import java.lang.ref.WeakReference;
+import java.time.Clock;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A concurrent, bounded in-memory cache to prevent against replay attacks. Identifiers are stored in a
+ * ConcurrentHashMap, so add() and contains() never acquire a global lock. Expiry is tracked in a two-level
+ * hierarchical timing wheel (one slot per second, and one slot per 64 seconds), which is advanced by a
+ * shared background sweeper thread instead of by the request thread.
+ *
+ * The number of cached identifiers is bounded, and the cache fails closed once the maximum is reached:
+ * identifiers that have not expired are never evicted, as that would allow the corresponding messages to
+ * be replayed. Instead, when the cache is full (after removing expired identifiers), new identifiers are
+ * rejected by add(), and contains() returns true for any identifier it does not hold, so that the caller
+ * treats the message as a replay. The cache recovers as soon as cached identifiers expire. A warning is
+ * logged when the cache becomes full. The default TTL is 5 minutes and the max TTL is 60 minutes.
+ *
+ * The cache should be closed when it is no longer needed, so that it is removed from the sweeper.
+ */
+public class ConcurrentReplayCache implements ReplayCache {
+
+    public static final long DEFAULT_TTL = MemoryReplayCache.DEFAULT_TTL;
+    public static final long MAX_TTL = MemoryReplayCache.MAX_TTL;
+    public static final int DEFAULT_MAX_ENTRIES = 100000;
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(ConcurrentReplayCache.class);
+
+    private static final int WHEEL_BITS = 6;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final long TICK_MILLIS = 1000L;
+
+    private static final ScheduledExecutorService SWEEPER =
+        Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "wss4j-replay-cache-sweeper");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+    private final ConcurrentMap<String, Long> ids = new ConcurrentHashMap<>();
+    private final Queue<String>[] seconds = createWheel();
+    private final Queue<String>[] minutes = createWheel();
+    private final ReentrantLock sweepLock = new ReentrantLock();
+    private final Clock clock;
+    private final long startMillis;
+    private final int maxEntries;
+    private final ScheduledFuture<?> sweeperTask;
+    private volatile long currentTick;
+    private volatile boolean full;
+
+    private final LongAdder additions = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+
+    public ConcurrentReplayCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Create a new ConcurrentReplayCache
+     * @param maxEntries The maximum number of identifiers to hold before rejecting new identifiers
+     */
+    public ConcurrentReplayCache(int maxEntries) {
+        this(maxEntries, Clock.systemUTC());
+    }
+
+    ConcurrentReplayCache(int maxEntries, Clock clock) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.clock = clock;
+        startMillis = clock.millis();
+
+        Sweeper sweeper = new Sweeper(this);
+        sweeperTask = SWEEPER.scheduleAtFixedRate(sweeper, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+        sweeper.task = sweeperTask;
+    }
+
+    /**
+     * Add the given identifier to the cache. It will be cached for a default amount of time.
+     * @param identifier The identifier to be added
+     */
+    public void add(String identifier) {
+        add(identifier, DEFAULT_TTL);
+    }
+
+    /**
+     * Add the given identifier to the cache to be cached for the given time. If the cache is full, a new
+     * identifier is not added, and contains() will report any identifier not held as a replay until
+     * cached identifiers expire.
+     * @param identifier The identifier to be added
+     * @param timeToLive The length of time to cache the Identifier in seconds
+     */
+    public void add(String identifier, long timeToLive) {
+        if (identifier == null || "".equals(identifier)) {
+            return;
+        }
+
+        long ttl = timeToLive;
+        if (ttl < 0 || ttl > MAX_TTL) {
+            ttl = DEFAULT_TTL;
+        }
+
+        if (!ids.containsKey(identifier) && isFull()) {
+            rejections.increment();
+            return;
+        }
+
+        Long expires = clock.millis() + ttl * 1000L;
+        // If the identifier is already cached, its existing wheel entry will pick up the new expiry
+        if (ids.put(identifier, expires) == null) {
+            schedule(identifier, expires);
+        }
+        additions.increment();
+    }
+
+    /**
+     * Return true if the given identifier is contained in the cache. If the cache is full, this also
+     * returns true for an identifier that is not contained in the cache, as it could not be recorded.
+     * @param identifier The identifier to check
+     */
+    public boolean contains(String identifier) {
+        if (identifier == null || "".equals(identifier)) {
+            return false;
+        }
+
+        Long expires = ids.get(identifier);
+        if (expires != null && expires > clock.millis()) {
+            hits.increment();
+            return true;
+        }
+        if (isFull()) {
+            rejections.increment();
+            return true;
+        }
+        misses.increment();
+        return false;
+    }
+
+    /**
+     * Get the number of identifiers currently held in the cache
+     */
+    public int size() {
+        return ids.size();
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Get the number of identifiers that have been added to the cache
+     */
+    public long getAdditionCount() {
+        return additions.sum();
+    }
+
+    /**
+     * Get the number of calls to contains() that found the identifier (i.e. detected a replay)
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Get the number of calls to contains() that did not find the identifier
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Get the number of identifiers that have been removed by the sweeper on expiry
+     */
+    public long getExpirationCount() {
+        return expirations.sum();
+    }
+
+    /**
+     * Get the number of identifiers that have been rejected by add() or contains() because the cache was full
+     */
+    public long getRejectionCount() {
+        return rejections.sum();
+    }
+
+    @Override
+    public void close() {
+        sweeperTask.cancel(false);
+        sweepLock.lock();
+        try {
+            ids.clear();
+            for (int i = 0; i < WHEEL_SIZE; i++) {
+                seconds[i].clear();
+                minutes[i].clear();
+            }
+        } finally {
+            sweepLock.unlock();
+        }
+    }
+
+    /**
+     * Advance the timing wheel up to the current time, removing all expired identifiers. This is
+     * called periodically by the background sweeper.
+     */
+    protected void processTokenExpiry() {
+        if (!sweepLock.tryLock()) {
+            return;
+        }
+        try {
+            long now = clock.millis();
+            long targetTick = (now - startMillis) / TICK_MILLIS;
+            while (currentTick < targetTick) {
+                long tick = currentTick + 1;
+                currentTick = tick;
+                if ((tick & WHEEL_MASK) == 0) {
+                    // Cascade the next block of the coarse wheel down into the fine wheel
+                    Queue<String> block = minutes[(int)(tick >>> WHEEL_BITS) & WHEEL_MASK];
+                    String id;
+                    while ((id = block.poll()) != null) {
+                        Long expires = ids.get(id);
+                        if (expires != null) {
+                            schedule(id, expires);
+                        }
+                    }
+                }
+                expire(seconds[(int)tick & WHEEL_MASK], now);
+            }
+        } finally {
+            sweepLock.unlock();
+        }
+    }
+
+    private void expire(Queue<String> slot, long now) {
+        String id;
+        while ((id = slot.poll()) != null) {
+            Long expires = ids.get(id);
+            if (expires == null) {
+                continue;
+            }
+            if (expires > now) {
+                // The identifier was re-added with a later expiry
+                schedule(id, expires);
+            } else if (ids.remove(id, expires)) {
+                expirations.increment();
+            } else {
+                // Concurrently re-added, so keep tracking it
+                Long current = ids.get(id);
+                if (current != null) {
+                    schedule(id, current);
+                }
+            }
+        }
+    }
+
+    /**
+     * Return true if the cache is full, after removing any expired identifiers.
+     */
+    private boolean isFull() {
+        if (ids.size() < maxEntries) {
+            full = false;
+            return false;
+        }
+        processTokenExpiry();
+        if (ids.size() < maxEntries) {
+            full = false;
+            return false;
+        }
+        if (!full) {
+            full = true;
+            LOG.warn("The replay cache is full with {} identifiers. New messages will be rejected as replays "
+                     + "until cached identifiers expire", maxEntries);
+        }
+        return true;
+    }
+
+    private void schedule(String id, long expires) {
+        long tick = currentTick;
+        long expiryTick = (expires - startMillis + TICK_MILLIS - 1) / TICK_MILLIS;
+        if (expiryTick <= tick) {
+            expiryTick = tick + 1;
+        }
+
+        if (expiryTick - tick < WHEEL_SIZE) {
+            seconds[(int)expiryTick & WHEEL_MASK].add(id);
+        } else {
+            long block = Math.min(expiryTick >>> WHEEL_BITS, (tick >>> WHEEL_BITS) + WHEEL_SIZE - 1);
+            minutes[(int)block & WHEEL_MASK].add(id);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Queue<String>[] createWheel() {
+        Queue<String>[] wheel = new Queue[WHEEL_SIZE];
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel[i] = new ConcurrentLinkedQueue<>();
+        }
+        return wheel;
+    }
+
+    /**
+     * The sweeper only holds a weak reference to the cache, so that a cache that is not closed can still be
+     * garbage collected.
+     */
+    private static final class Sweeper implements Runnable {
+        private final WeakReference<ConcurrentReplayCache> cacheRef;
+        private volatile ScheduledFuture<?> task;
+
+        Sweeper(ConcurrentReplayCache cache) {
+            cacheRef = new WeakReference<>(cache);
+        }
+
+        @Override
+        public void run() {
+            ConcurrentReplayCache cache = cacheRef.get();
+            if (cache == null) {
+                if (task != null) {
+                    task.cancel(false);
+                }
+                return;
+            }
+            cache.processTokenExpiry();
+        }
+    }
+}
@@ -0,0 +1,276 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+
+/**
+ * A bounded, time-limited in-memory cache of the symmetric keys of received EncryptedKeys, so that an
+ * EncryptedKey that is reused across messages is only decrypted once with the (RSA) private key.
+ *
+ * The cache key is a SHA-256 digest of the CipherValue, of the key transport algorithm and its OAEP
+ * parameters, and of the public key of the recipient. Only keys that were successfully unwrapped are
+ * cached. The private key of the recipient is still retrieved, and the BSP and AlgorithmSuite checks
+ * of the EncryptedKey are still performed, for every message.
+ *
+ * The cached keys are overwritten with zeros when they expire, are evicted or are removed. The least
+ * recently used key is evicted once the maximum number of entries is reached. The default time to
+ * live is 5 minutes.
+ *
+ * The cache is not enabled by default, see RequestData#setEncryptedKeyCache (DOM) and
+ * WSSSecurityProperties#setEncryptedKeyCache (StAX).
+ */
+public class EncryptedKeyCache {
+
+    public static final long DEFAULT_TTL = 300L;
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    private final Map<String, CachedKey> keys;
+    private final int maxEntries;
+    private final long timeToLiveMillis;
+    private final Clock clock;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public EncryptedKeyCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_TTL);
+    }
+
+    /**
+     * Create a new EncryptedKeyCache
+     * @param maxEntries The maximum number of keys to hold before evicting the least recently used key
+     * @param timeToLive The length of time to cache a key in seconds
+     */
+    public EncryptedKeyCache(int maxEntries, long timeToLive) {
+        this(maxEntries, timeToLive, Clock.systemUTC());
+    }
+
+    EncryptedKeyCache(int maxEntries, long timeToLive, Clock clock) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        if (timeToLive <= 0) {
+            throw new IllegalArgumentException("timeToLive must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.timeToLiveMillis = timeToLive * 1000L;
+        this.clock = clock;
+        this.keys = new LinkedHashMap<String, CachedKey>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedKey> eldest) {
+                if (size() > EncryptedKeyCache.this.maxEntries) {
+                    eldest.getValue().destroy();
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Get the cache key of an EncryptedKey
+     * @param encryptedKey The (decoded) CipherValue of the EncryptedKey
+     * @param keyTransportAlgorithm The key transport algorithm URI
+     * @param digestAlgorithm The OAEP digest algorithm URI, or null
+     * @param mgfAlgorithm The OAEP MGF algorithm URI, or null
+     * @param oaepParams The (decoded) OAEPparams, or null
+     * @param recipientKey The public key of the recipient
+     * @return the cache key
+     * @throws WSSecurityException
+     */
+    public static String getCacheKey(
+        byte[] encryptedKey, String keyTransportAlgorithm, String digestAlgorithm, String mgfAlgorithm,
+        byte[] oaepParams, PublicKey recipientKey
+    ) throws WSSecurityException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            update(digest, encryptedKey);
+            update(digest, keyTransportAlgorithm);
+            update(digest, digestAlgorithm);
+            update(digest, mgfAlgorithm);
+            update(digest, oaepParams);
+            update(digest, recipientKey.getEncoded());
+            return Base64.getEncoder().encodeToString(digest.digest());
+        } catch (NoSuchAlgorithmException ex) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, ex);
+        }
+    }
+
+    /**
+     * Get a copy of the cached symmetric key for the given cache key
+     * @return a copy of the cached key, or null if the key is not cached or has expired
+     */
+    public byte[] get(String cacheKey) {
+        byte[] key = null;
+        synchronized (keys) {
+            CachedKey cachedKey = keys.get(cacheKey);
+            if (cachedKey != null) {
+                if (cachedKey.expires > clock.millis()) {
+                    key = cachedKey.key.clone();
+                } else {
+                    keys.remove(cacheKey);
+                    cachedKey.destroy();
+                }
+            }
+        }
+        if (key == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return key;
+    }
+
+    /**
+     * Cache (a copy of) the unwrapped symmetric key of an EncryptedKey
+     * @param cacheKey The cache key of the EncryptedKey (see #getCacheKey)
+     * @param key The unwrapped symmetric key
+     */
+    public void put(String cacheKey, byte[] key) {
+        if (cacheKey == null || key == null) {
+            return;
+        }
+        CachedKey cachedKey = new CachedKey(key.clone(), clock.millis() + timeToLiveMillis);
+        synchronized (keys) {
+            CachedKey previous = keys.put(cacheKey, cachedKey);
+            if (previous != null) {
+                previous.destroy();
+            }
+        }
+    }
+
+    /**
+     * Remove the expired keys
+     */
+    public void removeExpired() {
+        long now = clock.millis();
+        synchronized (keys) {
+            Iterator<CachedKey> iterator = keys.values().iterator();
+            while (iterator.hasNext()) {
+                CachedKey cachedKey = iterator.next();
+                if (cachedKey.expires <= now) {
+                    iterator.remove();
+                    cachedKey.destroy();
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove all keys
+     */
+    public void clear() {
+        synchronized (keys) {
+            for (CachedKey cachedKey : keys.values()) {
+                cachedKey.destroy();
+            }
+            keys.clear();
+        }
+    }
+
+    /**
+     * Get the number of cached keys (including the expired keys that were not removed yet)
+     */
+    public int size() {
+        synchronized (keys) {
+            return keys.size();
+        }
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Get the number of calls to get() that found a cached key
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Get the number of calls to get() that did not find a cached key
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Get the ratio of the hits to all the calls to get(), or 0 if get() was not called yet
+     */
+    public double getHitRate() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0.0 : (double) hitCount / total;
+    }
+
+    /**
+     * Get the number of keys that have been evicted before expiry because the cache was full
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    static void update(MessageDigest digest, String value) {
+        update(digest, value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Every value is prefixed by its length, so that the concatenation is unambiguous
+    static void update(MessageDigest digest, byte[] value) {
+        int length = value == null ? -1 : value.length;
+        digest.update(new byte[] {
+            (byte) (length >>> 24), (byte) (length >>> 16), (byte) (length >>> 8), (byte) length
+        });
+        if (value != null) {
+            digest.update(value);
+        }
+    }
+
+    private static final class CachedKey {
+        private final byte[] key;
+        private final long expires;
+
+        CachedKey(byte[] key, long expires) {
+            this.key = key;
+            this.expires = expires;
+        }
+
+        void destroy() {
+            Arrays.fill(key, (byte) 0);
+        }
+    }
+}
@@ -0,0 +1,261 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.cache;
+
+import java.security.MessageDigest;
+import java.security.PublicKey;
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.KeyUtils;
+import org.apache.xml.security.utils.XMLUtils;
+
+/**
+ * An outbound cache of "key sessions", so that a sender does not have to wrap a new symmetric key with
+ * the (RSA) public key of the recipient for every message. The first message of a session carries the
+ * EncryptedKey as usual. The following messages of the session reuse the same symmetric key and refer
+ * to it via an EncryptedKeySHA1 KeyIdentifier, until the session has expired or the maximum number of
+ * messages is reached. A new key is then generated and wrapped.
+ *
+ * A session is identified by the public key of the recipient, the symmetric encryption algorithm and
+ * the key transport algorithm (including its OAEP parameters). The session keys are overwritten with
+ * zeros when a session expires, is exhausted, is replaced or is removed. The default lifetime of a
+ * session is 5 minutes, and the default maximum number of messages per session is 1000.
+ *
+ * Note that the recipient must be able to resolve the EncryptedKeySHA1 reference to the key of the
+ * EncryptedKey that it received before, e.g. via its CallbackHandler, and that it must have received
+ * the first message of a session before the following ones.
+ *
+ * The cache is not enabled by default, see RequestData#setEncryptedKeySessionCache (DOM) and
+ * WSSSecurityProperties#setEncryptedKeySessionCache (StAX).
+ */
+public class EncryptedKeySessionCache {
+
+    public static final long DEFAULT_LIFETIME = 300L;
+    public static final int DEFAULT_MAX_MESSAGES = 1000;
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final long lifetimeMillis;
+    private final int maxMessages;
+    private final Clock clock;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public EncryptedKeySessionCache() {
+        this(DEFAULT_LIFETIME, DEFAULT_MAX_MESSAGES);
+    }
+
+    /**
+     * Create a new EncryptedKeySessionCache
+     * @param lifetime The lifetime of a session in seconds
+     * @param maxMessages The maximum number of messages (including the first one) of a session
+     */
+    public EncryptedKeySessionCache(long lifetime, int maxMessages) {
+        this(lifetime, maxMessages, Clock.systemUTC());
+    }
+
+    EncryptedKeySessionCache(long lifetime, int maxMessages, Clock clock) {
+        if (lifetime <= 0) {
+            throw new IllegalArgumentException("lifetime must be positive");
+        }
+        if (maxMessages <= 0) {
+            throw new IllegalArgumentException("maxMessages must be positive");
+        }
+        this.lifetimeMillis = lifetime * 1000L;
+        this.maxMessages = maxMessages;
+        this.clock = clock;
+    }
+
+    /**
+     * Get the identifier of the session for the given recipient and algorithms
+     * @param recipientKey The public key of the recipient
+     * @param symmetricAlgorithm The symmetric encryption algorithm URI
+     * @param keyTransportAlgorithm The key transport algorithm URI
+     * @param digestAlgorithm The OAEP digest algorithm URI, or null
+     * @param mgfAlgorithm The OAEP MGF algorithm URI, or null
+     * @return the session identifier
+     * @throws WSSecurityException
+     */
+    public static String getSessionId(
+        PublicKey recipientKey, String symmetricAlgorithm, String keyTransportAlgorithm,
+        String digestAlgorithm, String mgfAlgorithm
+    ) throws WSSecurityException {
+        MessageDigest digest = KeyUtils.getMessageDigest("SHA-256");
+        EncryptedKeyCache.update(digest, recipientKey.getEncoded());
+        EncryptedKeyCache.update(digest, symmetricAlgorithm);
+        EncryptedKeyCache.update(digest, keyTransportAlgorithm);
+        EncryptedKeyCache.update(digest, digestAlgorithm);
+        EncryptedKeyCache.update(digest, mgfAlgorithm);
+        return XMLUtils.encodeToString(digest.digest());
+    }
+
+    /**
+     * Get the key of the given session for a new message. This counts as one message of the session.
+     * @param sessionId The session identifier (see #getSessionId)
+     * @return a copy of the session key, or null if there is no session, or if the session has
+     *         expired or is exhausted. In that case a new key must be wrapped and stored via
+     *         #putSessionKey.
+     */
+    public SessionKey getSessionKey(String sessionId) {
+        Session session = sessions.get(sessionId);
+        SessionKey sessionKey = null;
+        if (session != null) {
+            sessionKey = session.use(clock.millis());
+            if (sessionKey == null) {
+                sessions.remove(sessionId, session);
+                session.destroy();
+            }
+        }
+        if (sessionKey == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return sessionKey;
+    }
+
+    /**
+     * Start a new session with a key that was just wrapped for the recipient. The message that carries
+     * the EncryptedKey counts as the first message of the session. A previous session with the same
+     * identifier is replaced.
+     * @param sessionId The session identifier (see #getSessionId)
+     * @param key The symmetric key
+     * @param encryptedKey The wrapped key (the CipherValue of the EncryptedKey)
+     * @throws WSSecurityException
+     */
+    public void putSessionKey(String sessionId, byte[] key, byte[] encryptedKey) throws WSSecurityException {
+        if (sessionId == null || key == null || encryptedKey == null) {
+            return;
+        }
+        String sha1Identifier = XMLUtils.encodeToString(KeyUtils.generateDigest(encryptedKey));
+        long now = clock.millis();
+        Session previous =
+            sessions.put(sessionId, new Session(key.clone(), sha1Identifier, now + lifetimeMillis));
+        if (previous != null) {
+            previous.destroy();
+        }
+        removeExpired(now);
+    }
+
+    /**
+     * Remove all sessions
+     */
+    public void clear() {
+        Iterator<Session> iterator = sessions.values().iterator();
+        while (iterator.hasNext()) {
+            Session session = iterator.next();
+            iterator.remove();
+            session.destroy();
+        }
+    }
+
+    /**
+     * Get the number of sessions (including the expired sessions that were not removed yet)
+     */
+    public int size() {
+        return sessions.size();
+    }
+
+    /**
+     * Get the number of calls to getSessionKey() that returned the key of a session
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Get the number of calls to getSessionKey() that did not return a key
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    private void removeExpired(long now) {
+        Iterator<Session> iterator = sessions.values().iterator();
+        while (iterator.hasNext()) {
+            Session session = iterator.next();
+            if (session.isExpired(now)) {
+                iterator.remove();
+                session.destroy();
+            }
+        }
+    }
+
+    /**
+     * The key of a session, and the EncryptedKeySHA1 identifier of the EncryptedKey that carried it.
+     */
+    public static final class SessionKey {
+        private final byte[] key;
+        private final String sha1Identifier;
+
+        SessionKey(byte[] key, String sha1Identifier) {
+            this.key = key;
+            this.sha1Identifier = sha1Identifier;
+        }
+
+        /**
+         * Get a copy of the symmetric key. The caller should overwrite it with zeros after use.
+         */
+        public byte[] getKey() {
+            return key.clone();
+        }
+
+        public String getSha1Identifier() {
+            return sha1Identifier;
+        }
+    }
+
+    private final class Session {
+        private final byte[] key;
+        private final String sha1Identifier;
+        private final long expires;
+        private int messages = 1;
+        private boolean destroyed;
+
+        Session(byte[] key, String sha1Identifier, long expires) {
+            this.key = key;
+            this.sha1Identifier = sha1Identifier;
+            this.expires = expires;
+        }
+
+        synchronized SessionKey use(long now) {
+            if (destroyed || expires <= now || messages >= maxMessages) {
+                return null;
+            }
+            messages++;
+            return new SessionKey(key.clone(), sha1Identifier);
+        }
+
+        synchronized boolean isExpired(long now) {
+            return destroyed || expires <= now;
+        }
+
+        synchronized void destroy() {
+            Arrays.fill(key, (byte) 0);
+            destroyed = true;
+        }
+    }
+}
@@ -26,7 +26,8 @@ import org.apache.wss4j.common.util.Loader;
 
 /**
  * An abstract factory to return a ReplayCache instance. It returns an EHCacheReplayCacheFactory
- * if EH-Cache is available. Otherwise it returns a MemoryReplayCacheFactory.
+ * if EH-Cache is available. Otherwise it returns a MemoryReplayCacheFactory. A ConcurrentReplayCacheFactory
+ * can be obtained via newConcurrentInstance().
  */
 public abstract class ReplayCacheFactory {
 
@@ -58,6 +59,14 @@ public abstract class ReplayCacheFactory {
         return new MemoryReplayCacheFactory();
     }
 
+    /**
+     * Return a ReplayCacheFactory that creates lock-free, bounded ConcurrentReplayCache instances,
+     * irrespective of whether EH-Cache is installed or not.
+     */
+    public static ReplayCacheFactory newConcurrentInstance() {
+        return new ConcurrentReplayCacheFactory();
+    }
+
     public abstract ReplayCache newReplayCache(String key, Object configuration);
 
     protected URL getConfigFileURL(Object o) {
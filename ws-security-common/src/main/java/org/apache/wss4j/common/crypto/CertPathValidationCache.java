@@ -0,0 +1,198 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.crypto;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.KeyUtils;
+
+/**
+ * A bounded cache of successful PKIX certificate path validations. An entry is keyed on a SHA-256
+ * fingerprint of the (encoded) certificate chain and on whether revocation checking was enabled.
+ * An entry lives for the configured time-to-live, but never beyond the "notAfter" date of any certificate
+ * in the chain, nor beyond the "nextUpdate" date of the CRLs that were used for revocation checking.
+ *
+ * Only positive results are cached. The cache must be cleared whenever the trust anchors or the CRLs
+ * that were used to validate the certificate paths change. As a validation can still be running with the
+ * old trust anchors or CRLs when the cache is cleared, every clear() starts a new generation of the cache,
+ * and the result of a validation is only cached if the cache has not been cleared since the validation
+ * started (see getGeneration()).
+ */
+public class CertPathValidationCache {
+
+    public static final long DEFAULT_TTL = 60L * 5L;
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    private final ConcurrentMap<ByteBuffer, Long> validatedPaths = new ConcurrentHashMap<>();
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final AtomicLong generation = new AtomicLong();
+
+    public CertPathValidationCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_TTL);
+    }
+
+    /**
+     * Create a new CertPathValidationCache
+     * @param maxEntries The maximum number of validated certificate paths to cache
+     * @param timeToLive The maximum length of time to cache a validated certificate path in seconds
+     */
+    public CertPathValidationCache(int maxEntries, long timeToLive) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = timeToLive * 1000L;
+    }
+
+    /**
+     * Return true if the given certificate chain has been successfully validated, and the cached result
+     * has not yet expired.
+     * @param certs The certificate chain
+     * @param enableRevocation whether revocation checking was enabled or not
+     */
+    public boolean isValidated(X509Certificate[] certs, boolean enableRevocation) throws WSSecurityException {
+        ByteBuffer key = createKey(certs, enableRevocation);
+        Long expires = validatedPaths.get(key);
+        if (expires != null) {
+            if (expires > System.currentTimeMillis()) {
+                hits.increment();
+                return true;
+            }
+            validatedPaths.remove(key, expires);
+        }
+        misses.increment();
+        return false;
+    }
+
+    /**
+     * Cache the fact that the given certificate chain has been successfully validated.
+     * @param certs The certificate chain
+     * @param enableRevocation whether revocation checking was enabled or not
+     * @param crlNextUpdate The earliest "nextUpdate" date of the CRLs used for revocation checking (can be null)
+     */
+    public void addValidated(
+        X509Certificate[] certs, boolean enableRevocation, Date crlNextUpdate
+    ) throws WSSecurityException {
+        addValidated(certs, enableRevocation, crlNextUpdate, getGeneration());
+    }
+
+    /**
+     * Cache the fact that the given certificate chain has been successfully validated, unless the cache
+     * has been cleared since the given generation, i.e. since the validation started.
+     * @param certs The certificate chain
+     * @param enableRevocation whether revocation checking was enabled or not
+     * @param crlNextUpdate The earliest "nextUpdate" date of the CRLs used for revocation checking (can be null)
+     * @param validationGeneration The generation of the cache when the validation started
+     */
+    public void addValidated(
+        X509Certificate[] certs, boolean enableRevocation, Date crlNextUpdate, long validationGeneration
+    ) throws WSSecurityException {
+        if (validationGeneration != generation.get()) {
+            return;
+        }
+        long expires = System.currentTimeMillis() + ttlMillis;
+        for (X509Certificate cert : certs) {
+            expires = Math.min(expires, cert.getNotAfter().getTime());
+        }
+        if (enableRevocation && crlNextUpdate != null) {
+            expires = Math.min(expires, crlNextUpdate.getTime());
+        }
+
+        if (validatedPaths.size() >= maxEntries) {
+            purgeExpired();
+            if (validatedPaths.size() >= maxEntries) {
+                return;
+            }
+        }
+        ByteBuffer key = createKey(certs, enableRevocation);
+        validatedPaths.put(key, expires);
+        // A concurrent clear() might have missed the entry, as it starts the new generation before it
+        // removes the entries
+        if (validationGeneration != generation.get()) {
+            validatedPaths.remove(key, expires);
+        }
+    }
+
+    /**
+     * Return the current generation of the cache, which changes whenever the cache is cleared. It must be
+     * obtained before a validation starts, and be passed to addValidated.
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Remove all cached results. This must be called when the trust anchors or CRLs change.
+     */
+    public void clear() {
+        generation.incrementAndGet();
+        validatedPaths.clear();
+    }
+
+    public int size() {
+        return validatedPaths.size();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    private void purgeExpired() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<ByteBuffer, Long>> iterator = validatedPaths.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getValue() <= now) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static ByteBuffer createKey(
+        X509Certificate[] certs, boolean enableRevocation
+    ) throws WSSecurityException {
+        MessageDigest digest = KeyUtils.getMessageDigest("SHA-256");
+        try {
+            for (X509Certificate cert : certs) {
+                digest.update(cert.getEncoded());
+            }
+            digest.update(enableRevocation ? (byte)1 : (byte)0);
+            return ByteBuffer.wrap(digest.digest());
+        } catch (CertificateEncodingException e) {
+            throw new WSSecurityException(
+                WSSecurityException.ErrorCode.SECURITY_TOKEN_UNAVAILABLE, e, "encodeError"
+            );
+        }
+    }
+}
@@ -20,7 +20,6 @@
 package org.apache.wss4j.common.crypto;
 
 import java.math.BigInteger;
-import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
@@ -41,6 +40,7 @@ import javax.security.auth.callback.CallbackHandler;
 import javax.security.auth.x500.X500Principal;
 
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.KeyUtils;
 
 /**
  * A Crypto implementation based on a simple array of X509Certificate(s). PrivateKeys are not
@@ -360,28 +360,19 @@ public class CertificateStore extends CryptoBase {
      * @throws WSSecurityException if problems during keystore handling or wrong certificate
      */
     private X509Certificate[] getX509Certificates(byte[] thumb) throws WSSecurityException {
-        MessageDigest sha = null;
-
         if (trustedCerts == null) {
             return null;
         }
 
-        try {
-            sha = MessageDigest.getInstance("SHA1");
-        } catch (NoSuchAlgorithmException e) {
-            throw new WSSecurityException(
-                WSSecurityException.ErrorCode.FAILURE, e, "decoding.general"
-            );
-        }
         for (X509Certificate trustedCert : trustedCerts) {
+            byte[] data;
             try {
-                sha.update(trustedCert.getEncoded());
+                data = KeyUtils.generateDigest(trustedCert.getEncoded());
             } catch (CertificateEncodingException ex) {
                 throw new WSSecurityException(
                     WSSecurityException.ErrorCode.SECURITY_TOKEN_UNAVAILABLE, ex, "encodeError"
                 );
             }
-            byte[] data = sha.digest();
 
             if (Arrays.equals(data, thumb)) {
                 return new X509Certificate[]{trustedCert};
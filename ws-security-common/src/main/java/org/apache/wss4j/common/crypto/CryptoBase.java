@@ -23,7 +23,6 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Constructor;
-import java.security.MessageDigest;
 import java.security.NoSuchProviderException;
 import java.security.cert.CertPath;
 import java.security.cert.CertificateEncodingException;
@@ -40,6 +39,7 @@ import java.util.regex.Pattern;
 import javax.security.auth.x500.X500Principal;
 
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.KeyUtils;
 
 /**
  * This Abstract Base Class implements the accessor and keystore-independent methods and
@@ -222,8 +222,7 @@ public abstract class CryptoBase implements Crypto {
             X509SubjectPublicKeyInfo spki = new X509SubjectPublicKeyInfo(cert.getPublicKey());
             byte[] value = spki.getSubjectPublicKey();
             try {
-                MessageDigest digest = MessageDigest.getInstance("SHA-1");
-                return digest.digest(value);
+                return KeyUtils.generateDigest(value);
             } catch (Exception ex) {
                 throw new WSSecurityException(
                     WSSecurityException.ErrorCode.UNSUPPORTED_SECURITY_TOKEN, ex, "noSKIHandling",
@@ -115,13 +115,7 @@ public abstract class CryptoFactory {
         if (cryptoClassName == null
             || cryptoClassName.equals("org.apache.wss4j.common.crypto.Merlin")
             || cryptoClassName.equals("org.apache.ws.security.components.crypto.Merlin")) {
-            try {
-                return new Merlin(properties, classLoader, passwordEncryptor);
-            } catch (java.lang.Exception e) {
-                LOG.debug("Unable to instantiate Merlin", e);
-                throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e, "empty",
-                                              new Object[] {"Cannot create Crypto class " + cryptoClassName});
-            }
+            cryptoClass = Merlin.class;
         } else {
             try {
                 // instruct the class loader to load the crypto implementation
@@ -132,6 +126,31 @@ public abstract class CryptoFactory {
                         "empty", new Object[] {cryptoClassName + " Not Found"});
             }
         }
+
+        if (CryptoRegistry.isShared(properties)) {
+            return CryptoRegistry.getInstance(cryptoClass, properties, classLoader, passwordEncryptor);
+        }
+        return newInstance(cryptoClass, properties, classLoader, passwordEncryptor);
+    }
+
+    /**
+     * Create a new (unshared) instance of the given Crypto class from the given properties.
+     */
+    static Crypto newInstance(
+        Class<? extends Crypto> cryptoClass,
+        Properties properties,
+        ClassLoader classLoader,
+        PasswordEncryptor passwordEncryptor
+    ) throws WSSecurityException {
+        if (cryptoClass == Merlin.class) {
+            try {
+                return new Merlin(properties, classLoader, passwordEncryptor);
+            } catch (java.lang.Exception e) {
+                LOG.debug("Unable to instantiate Merlin", e);
+                throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e, "empty",
+                                              new Object[] {"Cannot create Crypto class " + cryptoClass.getName()});
+            }
+        }
         return loadClass(cryptoClass, properties, classLoader);
     }
 
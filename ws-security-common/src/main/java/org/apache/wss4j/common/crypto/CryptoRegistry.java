@@ -0,0 +1,416 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.crypto;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.Loader;
+
+/**
+ * A process-wide registry of Crypto instances, which is used by the CryptoFactory for crypto properties
+ * that set SHARED (or RELOAD) to "true". Crypto instances are keyed on the Crypto class, the normalized
+ * crypto properties (trimmed keys and values, with the old "org.apache.ws.security" property prefixes
+ * mapped to the current ones), the ClassLoader and the PasswordEncryptor. Every handler (DOM or StAX) that
+ * loads the same crypto properties therefore shares the same Crypto instance, and with it the loaded
+ * keystore, truststore and CRLs, their lookup indexes and the certificate path validation cache.
+ *
+ * If RELOAD is set to "true", then the keystore, truststore and CRL files of a shared Merlin instance
+ * that are located on the file system are watched with a WatchService. When one of them changes, the
+ * Crypto is loaded again from the same properties on a background thread, and the new stores are
+ * swapped into the shared Merlin instance. Request threads are never blocked by a reload, they keep
+ * using the old stores until the new ones have been loaded successfully. If the changed files cannot
+ * be loaded, the old stores are kept.
+ */
+public final class CryptoRegistry {
+
+    /**
+     * Set this crypto property to "true" to share the Crypto instance via the registry
+     */
+    public static final String SHARED = "org.apache.wss4j.crypto.shared";
+
+    /**
+     * Set this crypto property to "true" to share the Crypto instance via the registry, and to reload
+     * its keystore, truststore and CRL files when they change on the file system
+     */
+    public static final String RELOAD = "org.apache.wss4j.crypto.reload";
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(CryptoRegistry.class);
+
+    private static final String OLD_PROPERTY_PREFIX = "org.apache.ws.security.crypto.";
+    private static final String PROPERTY_PREFIX = "org.apache.wss4j.crypto.";
+
+    // The time to wait for further changes after a file change, before reloading the stores
+    private static final long RELOAD_DELAY = 500L;
+
+    // The maximum number of shared Crypto instances. Further Crypto instances are loaded, but not shared
+    private static final int MAX_SHARED_CRYPTOS = 256;
+
+    private static final ConcurrentMap<CryptoKey, Crypto> CRYPTOS = new ConcurrentHashMap<>();
+
+    private static StoreWatcher watcher;
+
+    private CryptoRegistry() {
+        // complete
+    }
+
+    /**
+     * Return true if the given crypto properties request a shared Crypto instance
+     * @param properties the crypto properties
+     * @return true if the Crypto instance should be obtained from the registry
+     */
+    public static boolean isShared(Properties properties) {
+        return properties != null && (isEnabled(properties, SHARED) || isEnabled(properties, RELOAD));
+    }
+
+    /**
+     * Get the shared Crypto instance for the given Crypto class and properties, loading it if it is
+     * not yet registered.
+     *
+     * @param cryptoClass The Crypto implementation class
+     * @param properties The Properties that are forwarded to the crypto implementation
+     * @param classLoader The class loader to use
+     * @param passwordEncryptor The PasswordEncryptor to use to decrypt encrypted passwords
+     * @return the shared Crypto instance
+     * @throws WSSecurityException if there is an error in loading the Crypto instance
+     */
+    public static Crypto getInstance(
+        Class<? extends Crypto> cryptoClass,
+        Properties properties,
+        ClassLoader classLoader,
+        PasswordEncryptor passwordEncryptor
+    ) throws WSSecurityException {
+        CryptoKey key = new CryptoKey(cryptoClass, normalize(properties), classLoader, passwordEncryptor);
+        Crypto crypto = CRYPTOS.get(key);
+        if (crypto != null) {
+            return crypto;
+        }
+
+        Properties propertiesCopy = new Properties();
+        propertiesCopy.putAll(properties);
+        crypto = CryptoFactory.newInstance(cryptoClass, propertiesCopy, classLoader, passwordEncryptor);
+        if (CRYPTOS.size() >= MAX_SHARED_CRYPTOS) {
+            LOG.warn("The registry already holds {} shared Crypto instances, the Crypto instance of {} is not shared",
+                     MAX_SHARED_CRYPTOS, cryptoClass);
+            return crypto;
+        }
+        Crypto existingCrypto = CRYPTOS.putIfAbsent(key, crypto);
+        if (existingCrypto != null) {
+            return existingCrypto;
+        }
+        LOG.debug("Registered a shared Crypto instance of {}", cryptoClass);
+
+        if (crypto instanceof Merlin && isEnabled(properties, RELOAD)) {
+            watch(key, (Merlin)crypto, propertiesCopy);
+        }
+        return crypto;
+    }
+
+    /**
+     * Remove all the shared Crypto instances from the registry, and stop watching their files
+     */
+    public static synchronized void clear() {
+        CRYPTOS.clear();
+        if (watcher != null) {
+            watcher.close();
+            watcher = null;
+        }
+    }
+
+    private static synchronized void watch(CryptoKey key, Merlin crypto, Properties properties) {
+        List<Path> files = new ArrayList<>();
+        for (String location : getStoreLocations(key.properties)) {
+            Path file = toPath(location, key.classLoader);
+            if (file != null) {
+                files.add(file);
+            } else {
+                LOG.debug("{} is not located on the file system and is not watched for changes", location);
+            }
+        }
+        if (files.isEmpty()) {
+            return;
+        }
+
+        try {
+            if (watcher == null) {
+                watcher = new StoreWatcher();
+                Thread thread = new Thread(watcher, "wss4j-crypto-reload");
+                thread.setDaemon(true);
+                thread.start();
+            }
+            ReloadTarget target = new ReloadTarget(key, crypto, properties);
+            for (Path file : files) {
+                watcher.register(file, target);
+            }
+        } catch (IOException e) {
+            LOG.warn("The crypto store files cannot be watched for changes: " + e.getMessage(), e);
+        }
+    }
+
+    private static List<String> getStoreLocations(Map<String, String> properties) {
+        List<String> locations = new ArrayList<>();
+        String keystore = properties.get(Merlin.PREFIX + Merlin.KEYSTORE_FILE);
+        if (keystore == null) {
+            keystore = properties.get(Merlin.PREFIX + Merlin.OLD_KEYSTORE_FILE);
+        }
+        if (keystore != null) {
+            locations.add(keystore);
+        }
+        String truststore = properties.get(Merlin.PREFIX + Merlin.TRUSTSTORE_FILE);
+        if (truststore != null) {
+            locations.add(truststore);
+        }
+        String crls = properties.get(Merlin.PREFIX + Merlin.X509_CRL_FILE);
+        if (crls != null) {
+            for (String crl : crls.split(",")) {
+                locations.add(crl.trim());
+            }
+        }
+        return locations;
+    }
+
+    /**
+     * Resolve a store location in the same way as Loader.loadInputStream, and return the corresponding
+     * file, or null if the store is not located on the file system (e.g. in a jar).
+     */
+    private static Path toPath(String location, ClassLoader classLoader) {
+        try {
+            URL url = null;
+            try {
+                url = new URL(location);
+            } catch (MalformedURLException ex) { //NOPMD
+                // skip
+            }
+            if (url == null) {
+                url = Loader.getResource(classLoader, location);
+            }
+            if (url != null) {
+                return "file".equals(url.getProtocol()) ? Paths.get(url.toURI()).toAbsolutePath() : null;
+            }
+            Path path = Paths.get(location).toAbsolutePath();
+            return Files.isRegularFile(path) ? path : null;
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            LOG.debug(e.getMessage(), e);
+            return null;
+        }
+    }
+
+    private static Map<String, String> normalize(Properties properties) {
+        Map<String, String> normalized = new TreeMap<>();
+        for (String name : properties.stringPropertyNames()) {
+            String key = name.trim();
+            if (key.startsWith(Merlin.OLD_PREFIX)) {
+                key = Merlin.PREFIX + key.substring(Merlin.OLD_PREFIX.length());
+            } else if (key.startsWith(OLD_PROPERTY_PREFIX)) {
+                key = PROPERTY_PREFIX + key.substring(OLD_PROPERTY_PREFIX.length());
+            }
+            normalized.put(key, properties.getProperty(name).trim());
+        }
+        return normalized;
+    }
+
+    private static boolean isEnabled(Properties properties, String name) {
+        String value = properties.getProperty(name);
+        if (value == null) {
+            value = properties.getProperty(OLD_PROPERTY_PREFIX + name.substring(PROPERTY_PREFIX.length()));
+        }
+        return value != null && Boolean.parseBoolean(value.trim());
+    }
+
+    /**
+     * The key of a shared Crypto instance. The PasswordEncryptor is compared with equals(), as the handlers
+     * create a new PasswordEncryptor for every request: JasyptPasswordEncryptors are equal if they use the
+     * same algorithm and master password. A PasswordEncryptor that does not implement equals() only shares
+     * a Crypto instance with itself. The encryptor of the first request is used to load (and reload) the
+     * shared instance.
+     */
+    private static final class CryptoKey {
+        private final Class<? extends Crypto> cryptoClass;
+        private final Map<String, String> properties;
+        private final ClassLoader classLoader;
+        private final PasswordEncryptor passwordEncryptor;
+
+        CryptoKey(
+            Class<? extends Crypto> cryptoClass,
+            Map<String, String> properties,
+            ClassLoader classLoader,
+            PasswordEncryptor passwordEncryptor
+        ) {
+            this.cryptoClass = cryptoClass;
+            this.properties = properties;
+            this.classLoader = classLoader;
+            this.passwordEncryptor = passwordEncryptor;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = cryptoClass.hashCode();
+            result = 31 * result + properties.hashCode();
+            result = 31 * result + System.identityHashCode(classLoader);
+            return 31 * result + Objects.hashCode(passwordEncryptor);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof CryptoKey)) {
+                return false;
+            }
+            CryptoKey other = (CryptoKey)obj;
+            return cryptoClass == other.cryptoClass
+                && classLoader == other.classLoader
+                && properties.equals(other.properties)
+                && Objects.equals(passwordEncryptor, other.passwordEncryptor);
+        }
+    }
+
+    private static final class ReloadTarget {
+        private final CryptoKey key;
+        private final Merlin crypto;
+        private final Properties properties;
+
+        ReloadTarget(CryptoKey key, Merlin crypto, Properties properties) {
+            this.key = key;
+            this.crypto = crypto;
+            this.properties = properties;
+        }
+
+        void reload() {
+            if (CRYPTOS.get(key) != crypto) {
+                // The Crypto instance has been removed from the registry in the meantime
+                return;
+            }
+            try {
+                Crypto reloaded =
+                    CryptoFactory.newInstance(key.cryptoClass, properties, key.classLoader, key.passwordEncryptor);
+                if (reloaded instanceof Merlin) {
+                    Merlin reloadedMerlin = (Merlin)reloaded;
+                    crypto.setTrustStore(reloadedMerlin.getTrustStore());
+                    crypto.setCRLCertStore(reloadedMerlin.getCRLCertStore());
+                    crypto.setKeyStore(reloadedMerlin.getKeyStore());
+                    LOG.info("The crypto stores of {} have been reloaded", key.cryptoClass.getName());
+                }
+            } catch (WSSecurityException | RuntimeException e) {
+                LOG.warn("The crypto stores could not be reloaded, the previous stores are kept: "
+                    + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Watches the directories of the registered store files, and reloads the Crypto instances whose
+     * files have changed.
+     */
+    private static final class StoreWatcher implements Runnable {
+        private final WatchService watchService;
+        private final Map<Path, List<ReloadTarget>> targets = new HashMap<>();
+        private final Map<WatchKey, Path> directories = new HashMap<>();
+
+        StoreWatcher() throws IOException {
+            watchService = FileSystems.getDefault().newWatchService();
+        }
+
+        synchronized void register(Path file, ReloadTarget target) throws IOException {
+            Path directory = file.getParent();
+            if (!directories.containsValue(directory)) {
+                WatchKey watchKey =
+                    directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                                       StandardWatchEventKinds.ENTRY_MODIFY);
+                directories.put(watchKey, directory);
+            }
+            List<ReloadTarget> fileTargets = targets.get(file);
+            if (fileTargets == null) {
+                fileTargets = new ArrayList<>();
+                targets.put(file, fileTargets);
+            }
+            fileTargets.add(target);
+        }
+
+        void close() {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                LOG.debug(e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    WatchKey watchKey = watchService.take();
+                    Set<ReloadTarget> changed = new LinkedHashSet<>();
+                    // Collect all the changes until the files have settled, so that the stores are
+                    // reloaded once when several files or several parts of a file are written
+                    while (watchKey != null) {
+                        collectChanges(watchKey, changed);
+                        watchKey = watchService.poll(RELOAD_DELAY, TimeUnit.MILLISECONDS);
+                    }
+                    for (ReloadTarget target : changed) {
+                        target.reload();
+                    }
+                }
+            } catch (ClosedWatchServiceException | InterruptedException e) {
+                LOG.debug("Stopped watching the crypto store files");
+            }
+        }
+
+        private synchronized void collectChanges(WatchKey watchKey, Set<ReloadTarget> changed) {
+            Path directory = directories.get(watchKey);
+            for (WatchEvent<?> event : watchKey.pollEvents()) {
+                if (directory != null && event.context() instanceof Path) {
+                    List<ReloadTarget> fileTargets = targets.get(directory.resolve((Path)event.context()));
+                    if (fileTargets != null) {
+                        changed.addAll(fileTargets);
+                    }
+                }
+            }
+            watchKey.reset();
+        }
+    }
+
+}
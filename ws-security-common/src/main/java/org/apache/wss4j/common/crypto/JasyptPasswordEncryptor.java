@@ -41,6 +41,8 @@ public class JasyptPasswordEncryptor implements PasswordEncryptor {
         org.slf4j.LoggerFactory.getLogger(JasyptPasswordEncryptor.class);
 
     private final StandardPBEStringEncryptor passwordEncryptor;
+    private final String algorithm;
+    private final String masterPassword;
     private CallbackHandler callbackHandler;
 
     public JasyptPasswordEncryptor(String masterPassword) {
@@ -51,6 +53,8 @@ public class JasyptPasswordEncryptor implements PasswordEncryptor {
         passwordEncryptor = new StandardPBEStringEncryptor();
         passwordEncryptor.setPassword(masterPassword);
         passwordEncryptor.setAlgorithm(algorithm);
+        this.algorithm = algorithm;
+        this.masterPassword = masterPassword;
     }
 
     public JasyptPasswordEncryptor(CallbackHandler callbackHandler) {
@@ -60,6 +64,8 @@ public class JasyptPasswordEncryptor implements PasswordEncryptor {
     public JasyptPasswordEncryptor(CallbackHandler callbackHandler, String algorithm) {
         passwordEncryptor = new StandardPBEStringEncryptor();
         passwordEncryptor.setAlgorithm(algorithm);
+        this.algorithm = algorithm;
+        this.masterPassword = null;
         this.callbackHandler = callbackHandler;
     }
 
@@ -70,15 +76,9 @@ public class JasyptPasswordEncryptor implements PasswordEncryptor {
      */
     public String encrypt(String password) {
         if (callbackHandler != null) {
-            WSPasswordCallback pwCb =
-                new WSPasswordCallback("", WSPasswordCallback.PASSWORD_ENCRYPTOR_PASSWORD);
-            try {
-                callbackHandler.handle(new Callback[]{pwCb});
-            } catch (IOException | UnsupportedCallbackException e) {
-                LOG.debug("Error in getting master password: ", e);
-            }
-            if (pwCb.getPassword() != null) {
-                passwordEncryptor.setPassword(pwCb.getPassword());
+            String currentMasterPassword = getMasterPassword();
+            if (currentMasterPassword != null) {
+                passwordEncryptor.setPassword(currentMasterPassword);
             }
         }
         return passwordEncryptor.encrypt(password);
@@ -91,18 +91,51 @@ public class JasyptPasswordEncryptor implements PasswordEncryptor {
      */
     public String decrypt(String encryptedPassword) {
         if (callbackHandler != null) {
-            WSPasswordCallback pwCb =
-                new WSPasswordCallback("", WSPasswordCallback.PASSWORD_ENCRYPTOR_PASSWORD);
-            try {
-                callbackHandler.handle(new Callback[]{pwCb});
-            } catch (IOException | UnsupportedCallbackException e) {
-                LOG.debug("Error in getting master password: ", e);
-            }
-            if (pwCb.getPassword() != null) {
-                passwordEncryptor.setPassword(pwCb.getPassword());
+            String currentMasterPassword = getMasterPassword();
+            if (currentMasterPassword != null) {
+                passwordEncryptor.setPassword(currentMasterPassword);
             }
         }
         return passwordEncryptor.decrypt(encryptedPassword);
     }
 
+    /**
+     * Two JasyptPasswordEncryptors are equal if they use the same algorithm and the same master password,
+     * i.e. if they decrypt passwords in the same way. The master password is obtained from the
+     * CallbackHandler, if one is configured.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof JasyptPasswordEncryptor)) {
+            return false;
+        }
+        JasyptPasswordEncryptor other = (JasyptPasswordEncryptor)obj;
+        String currentMasterPassword = getMasterPassword();
+        return algorithm.equals(other.algorithm)
+            && currentMasterPassword != null && currentMasterPassword.equals(other.getMasterPassword());
+    }
+
+    @Override
+    public int hashCode() {
+        // The master password might only be available from the CallbackHandler
+        return algorithm.hashCode();
+    }
+
+    private String getMasterPassword() {
+        if (callbackHandler == null) {
+            return masterPassword;
+        }
+        WSPasswordCallback pwCb =
+            new WSPasswordCallback("", WSPasswordCallback.PASSWORD_ENCRYPTOR_PASSWORD);
+        try {
+            callbackHandler.handle(new Callback[]{pwCb});
+        } catch (IOException | UnsupportedCallbackException e) {
+            LOG.debug("Error in getting master password: ", e);
+        }
+        return pwCb.getPassword();
+    }
+
 }
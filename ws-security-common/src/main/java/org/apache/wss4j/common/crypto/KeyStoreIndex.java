@@ -0,0 +1,217 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.crypto;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.PublicKey;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.KeyUtils;
+
+/**
+ * An immutable index of the certificate (chains) held in a KeyStore. It allows a certificate (chain)
+ * to be located by SHA-1 thumbprint, Subject Key Identifier, issuer name and serial number, or Subject DN,
+ * and an alias to be located by (leaf) certificate or public key, without iterating over every alias in
+ * the KeyStore and re-encoding each certificate. When several aliases match, the first one returned by
+ * KeyStore.aliases() wins, as was the case for a linear search.
+ *
+ * The index does not see entries that are replaced in place in the KeyStore. Merlin.reloadStoreIndexes()
+ * must be called after such a modification.
+ */
+final class KeyStoreIndex {
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(KeyStoreIndex.class);
+
+    private final KeyStore store;
+    private final int size;
+    private final Map<ByteBuffer, Certificate[]> thumbprints = new HashMap<>();
+    private final Map<ByteBuffer, Certificate[]> skis = new HashMap<>();
+    private final Map<IssuerSerial, Certificate[]> issuerSerials = new HashMap<>();
+    private final Map<Object, List<Certificate[]>> subjects = new HashMap<>();
+    private final Map<Certificate, String> certificateAliases = new HashMap<>();
+    // Keyed on the encoded key, as keys of different providers may be equal but have different hash codes
+    private final Map<ByteBuffer, String> publicKeyAliases = new HashMap<>();
+
+    private KeyStoreIndex(KeyStore store, int size) {
+        this.store = store;
+        this.size = size;
+    }
+
+    /**
+     * Build a new index over the given KeyStore.
+     * @param store The KeyStore to index
+     * @param crypto The CryptoBase instance used to compute Subject Key Identifiers and normalised DNs
+     */
+    static KeyStoreIndex build(KeyStore store, CryptoBase crypto) throws WSSecurityException {
+        try {
+            KeyStoreIndex index = new KeyStoreIndex(store, store.size());
+            for (Enumeration<String> e = store.aliases(); e.hasMoreElements();) {
+                String alias = e.nextElement();
+                Certificate[] certs = store.getCertificateChain(alias);
+                if (certs == null || certs.length == 0) {
+                    // no cert chain, so lets check if getCertificate gives us a result.
+                    Certificate cert = store.getCertificate(alias);
+                    if (cert != null) {
+                        certs = new Certificate[]{cert};
+                    }
+                }
+
+                if (certs != null && certs.length > 0) {
+                    index.add(alias, certs, crypto);
+                }
+            }
+            LOG.debug("Indexed {} aliases of KeyStore {}", index.size, store);
+            return index;
+        } catch (KeyStoreException e) {
+            throw new WSSecurityException(
+                WSSecurityException.ErrorCode.FAILURE, e, "keystore"
+            );
+        }
+    }
+
+    private void add(
+        String alias, Certificate[] certs, CryptoBase crypto
+    ) throws WSSecurityException {
+        certificateAliases.putIfAbsent(certs[0], alias);
+        ByteBuffer encodedPublicKey = encode(certs[0].getPublicKey());
+        if (encodedPublicKey != null) {
+            publicKeyAliases.putIfAbsent(encodedPublicKey, alias);
+        }
+
+        if (!(certs[0] instanceof X509Certificate)) {
+            return;
+        }
+        X509Certificate x509cert = (X509Certificate) certs[0];
+
+        try {
+            byte[] thumbprint = KeyUtils.generateDigest(x509cert.getEncoded());
+            thumbprints.putIfAbsent(ByteBuffer.wrap(thumbprint), certs);
+        } catch (CertificateEncodingException ex) {
+            throw new WSSecurityException(
+                WSSecurityException.ErrorCode.SECURITY_TOKEN_UNAVAILABLE, ex, "encodeError"
+            );
+        }
+
+        try {
+            skis.putIfAbsent(ByteBuffer.wrap(crypto.getSKIBytesFromCert(x509cert)), certs);
+        } catch (WSSecurityException ex) {
+            LOG.debug("No SKI could be computed for keystore alias {}: {}", alias, ex.getMessage());
+        }
+
+        Object issuerName = crypto.createBCX509Name(x509cert.getIssuerX500Principal().getName());
+        issuerSerials.putIfAbsent(new IssuerSerial(issuerName, x509cert.getSerialNumber()), certs);
+
+        Object subjectName = crypto.createBCX509Name(x509cert.getSubjectX500Principal().getName());
+        List<Certificate[]> subjectCerts = subjects.get(subjectName);
+        if (subjectCerts == null) {
+            subjectCerts = new ArrayList<>(1);
+            subjects.put(subjectName, subjectCerts);
+        }
+        subjectCerts.add(certs);
+    }
+
+    /**
+     * Return true if this index is (still) an index of the given KeyStore.
+     */
+    boolean isIndexOf(KeyStore keyStore) throws KeyStoreException {
+        return store == keyStore && size == keyStore.size();
+    }
+
+    Certificate[] getCertificatesByThumbprint(byte[] thumbprint) {
+        return thumbprints.get(ByteBuffer.wrap(thumbprint));
+    }
+
+    Certificate[] getCertificatesBySKI(byte[] skiBytes) {
+        return skis.get(ByteBuffer.wrap(skiBytes));
+    }
+
+    /**
+     * @param issuerRDN either an X500Principal or a BouncyCastle X509Name instance.
+     */
+    Certificate[] getCertificatesByIssuerSerial(Object issuerRDN, BigInteger serialNumber) {
+        return issuerSerials.get(new IssuerSerial(issuerRDN, serialNumber));
+    }
+
+    /**
+     * @param subjectRDN either an X500Principal or a BouncyCastle X509Name instance.
+     */
+    List<Certificate[]> getCertificatesBySubject(Object subjectRDN) {
+        List<Certificate[]> certs = subjects.get(subjectRDN);
+        if (certs == null) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<>(certs);
+    }
+
+    String getAlias(Certificate cert) {
+        return certificateAliases.get(cert);
+    }
+
+    String getAlias(PublicKey publicKey) {
+        ByteBuffer encodedPublicKey = encode(publicKey);
+        return encodedPublicKey == null ? null : publicKeyAliases.get(encodedPublicKey);
+    }
+
+    private static ByteBuffer encode(PublicKey publicKey) {
+        byte[] encoded = publicKey == null ? null : publicKey.getEncoded();
+        return encoded == null ? null : ByteBuffer.wrap(encoded);
+    }
+
+    private static final class IssuerSerial {
+        private final Object issuer;
+        private final BigInteger serial;
+
+        IssuerSerial(Object issuer, BigInteger serial) {
+            this.issuer = issuer;
+            this.serial = serial;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * issuer.hashCode() + Objects.hashCode(serial);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof IssuerSerial)) {
+                return false;
+            }
+            IssuerSerial other = (IssuerSerial) obj;
+            return issuer.equals(other.issuer) && Objects.equals(serial, other.serial);
+        }
+    }
+}
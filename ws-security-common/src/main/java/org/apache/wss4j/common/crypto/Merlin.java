@@ -29,7 +29,6 @@ import java.security.InvalidAlgorithmParameterException;
 import java.security.Key;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
-import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.security.PrivateKey;
@@ -37,9 +36,10 @@ import java.security.PublicKey;
 import java.security.UnrecoverableKeyException;
 import java.security.cert.CertPath;
 import java.security.cert.CertPathValidator;
+import java.security.cert.CRL;
 import java.security.cert.CertStore;
+import java.security.cert.CertStoreException;
 import java.security.cert.Certificate;
-import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateExpiredException;
 import java.security.cert.CertificateFactory;
@@ -48,10 +48,12 @@ import java.security.cert.CollectionCertStoreParameters;
 import java.security.cert.PKIXParameters;
 import java.security.cert.TrustAnchor;
 import java.security.cert.X509CRL;
+import java.security.cert.X509CRLSelector;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Date;
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.List;
@@ -116,20 +118,32 @@ public class Merlin extends CryptoBase {
      */
     public static final String X509_CRL_FILE = "x509crl.file";
 
+    /*
+     * Certificate path validation cache configuration
+     */
+    public static final String CERT_PATH_CACHE_SIZE = "certpath.cache.size";
+    public static final String CERT_PATH_CACHE_TTL = "certpath.cache.ttl";
+
     private static final org.slf4j.Logger LOG =
         org.slf4j.LoggerFactory.getLogger(Merlin.class);
     private static final String COMMA_SEPARATOR = ",";
 
     protected Properties properties;
-    protected KeyStore keystore;
-    protected KeyStore truststore;
-    protected CertStore crlCertStore;
+    // The stores are volatile, as they can be replaced at runtime by the CryptoRegistry (see its RELOAD property)
+    protected volatile KeyStore keystore;
+    protected volatile KeyStore truststore;
+    protected volatile CertStore crlCertStore;
     protected boolean loadCACerts;
     protected boolean privatePasswordSet;
     protected PasswordEncryptor passwordEncryptor;
 
     private boolean certProviderHandlesNameConstraints = false;
 
+    // Immutable lookup indexes over the keystore and truststore, (re)built lazily when the stores change
+    private volatile KeyStoreIndex keystoreIndex;
+    private volatile KeyStoreIndex truststoreIndex;
+    private volatile CertPathValidationCache certPathCache;
+
     public Merlin() {
         // default constructor
     }
@@ -338,6 +352,33 @@ public class Merlin extends CryptoBase {
             }
             LOG.debug("The CRL files {} have been loaded", crlLocations);
         }
+
+        loadCertPathCache(prefix);
+    }
+
+    /**
+     * Set up the certificate path validation cache, if it is configured
+     */
+    private void loadCertPathCache(String prefix) throws WSSecurityException {
+        String certPathCacheSize = properties.getProperty(prefix + CERT_PATH_CACHE_SIZE);
+        if (certPathCacheSize != null) {
+            try {
+                int maxEntries = Integer.parseInt(certPathCacheSize.trim());
+                long ttl = CertPathValidationCache.DEFAULT_TTL;
+                String certPathCacheTTL = properties.getProperty(prefix + CERT_PATH_CACHE_TTL);
+                if (certPathCacheTTL != null) {
+                    ttl = Long.parseLong(certPathCacheTTL.trim());
+                }
+                if (maxEntries > 0) {
+                    certPathCache = new CertPathValidationCache(maxEntries, ttl);
+                }
+            } catch (NumberFormatException e) {
+                LOG.debug(e.getMessage(), e);
+                throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e, "empty",
+                                              new Object[] {"Invalid certificate path cache configuration"});
+            }
+        }
+        invalidateCertPathCache();
     }
 
     /**
@@ -396,6 +437,8 @@ public class Merlin extends CryptoBase {
      */
     public void setKeyStore(KeyStore keyStore) {
         keystore = keyStore;
+        keystoreIndex = null;
+        invalidateCertPathCache();
     }
 
     /**
@@ -414,6 +457,19 @@ public class Merlin extends CryptoBase {
      */
     public void setTrustStore(KeyStore trustStore) {
         truststore = trustStore;
+        truststoreIndex = null;
+        invalidateCertPathCache();
+    }
+
+    /**
+     * Rebuild the lookup indexes of the keystore and truststore, and clear the cache of certificate path
+     * validations. This must be called if an entry of the keystore or truststore has been changed in place,
+     * the indexes are only rebuilt automatically when a store is set or the number of its entries changes.
+     */
+    public void reloadStoreIndexes() {
+        keystoreIndex = null;
+        truststoreIndex = null;
+        invalidateCertPathCache();
     }
 
     /**
@@ -424,6 +480,7 @@ public class Merlin extends CryptoBase {
      */
     public void setCRLCertStore(CertStore crlCertStore) {
         this.crlCertStore = crlCertStore;
+        invalidateCertPathCache();
     }
 
     /**
@@ -436,6 +493,24 @@ public class Merlin extends CryptoBase {
         return crlCertStore;
     }
 
+    /**
+     * Set the cache of successful certificate path validations. If it is set, then a certificate
+     * chain that was validated successfully is not validated again by verifyTrust until the cached
+     * result expires, or until the keystore, truststore or CRL CertStore is replaced.
+     * @param certPathCache the cache of successful certificate path validations
+     */
+    public void setCertPathValidationCache(CertPathValidationCache certPathCache) {
+        this.certPathCache = certPathCache;
+    }
+
+    /**
+     * Get the cache of successful certificate path validations
+     * @return the cache of successful certificate path validations (can be null)
+     */
+    public CertPathValidationCache getCertPathValidationCache() {
+        return certPathCache;
+    }
+
     /**
      * Singleton certificate factory for this Crypto instance.
      * <p/>
@@ -768,6 +843,41 @@ public class Merlin extends CryptoBase {
             }
         }
 
+        CertPathValidationCache cache = certPathCache;
+        if (cache == null) {
+            validateCertPath(certs, enableRevocation);
+        } else {
+            // Make sure that the cache is cleared if the content of the keystore or truststore has changed
+            if (keystore != null) {
+                getIndex(keystore, false);
+            }
+            if (truststore != null) {
+                getIndex(truststore, true);
+            }
+
+            // The stores are replaced before the cache is cleared, so a validation which still uses the
+            // previous stores is not cached
+            long generation = cache.getGeneration();
+            if (cache.isValidated(certs, enableRevocation)) {
+                LOG.debug(
+                    "Using cached certificate path validation for {}", certs[0].getSubjectX500Principal().getName()
+                );
+            } else {
+                validateCertPath(certs, enableRevocation);
+                cache.addValidated(certs, enableRevocation, getCRLNextUpdate(enableRevocation), generation);
+            }
+        }
+
+        // Finally check Cert Constraints
+        if (!matchesSubjectDnPattern(certs[0], subjectCertConstraints)) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_AUTHENTICATION);
+        }
+    }
+
+    private void validateCertPath(
+        X509Certificate[] certs,
+        boolean enableRevocation
+    ) throws WSSecurityException {
         //
         // SECOND step - Search for the issuer cert (chain) of the transmitted certificate in the
         // keystore or the truststore
@@ -873,10 +983,36 @@ public class Merlin extends CryptoBase {
                     WSSecurityException.ErrorCode.FAILURE, e, "certpath"
                 );
         }
+    }
 
-        // Finally check Cert Constraints
-        if (!matchesSubjectDnPattern(certs[0], subjectCertConstraints)) {
-            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_AUTHENTICATION);
+    /**
+     * Get the earliest "nextUpdate" date of the CRLs that are used for revocation checking
+     * @return the earliest "nextUpdate" date of the CRLs, or null if there is none
+     */
+    private Date getCRLNextUpdate(boolean enableRevocation) throws WSSecurityException {
+        if (!enableRevocation || crlCertStore == null) {
+            return null;
+        }
+        Date nextUpdate = null;
+        try {
+            for (CRL crl : crlCertStore.getCRLs(new X509CRLSelector())) {
+                if (crl instanceof X509CRL) {
+                    Date crlNextUpdate = ((X509CRL)crl).getNextUpdate();
+                    if (crlNextUpdate != null && (nextUpdate == null || crlNextUpdate.before(nextUpdate))) {
+                        nextUpdate = crlNextUpdate;
+                    }
+                }
+            }
+        } catch (CertStoreException e) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e, "certpath");
+        }
+        return nextUpdate;
+    }
+
+    private void invalidateCertPathCache() {
+        CertPathValidationCache cache = certPathCache;
+        if (cache != null) {
+            cache.clear();
         }
     }
 
@@ -989,36 +1125,10 @@ public class Merlin extends CryptoBase {
             keystore = "truststore";
         }
         LOG.debug("Searching {} for cert with issuer {} and serial {}", keystore, issuerRDN, serialNumber);
-        try {
-            for (Enumeration<String> e = store.aliases(); e.hasMoreElements();) {
-                String alias = e.nextElement();
-                Certificate[] certs = store.getCertificateChain(alias);
-                if (certs == null || certs.length == 0) {
-                    // no cert chain, so lets check if getCertificate gives us a result.
-                    Certificate cert = store.getCertificate(alias);
-                    if (cert != null) {
-                        certs = new Certificate[]{cert};
-                    }
-                }
-
-                if (certs != null && certs.length > 0 && certs[0] instanceof X509Certificate) {
-                    X509Certificate x509cert = (X509Certificate) certs[0];
-                    LOG.debug("Keystore alias {} has issuer {} and serial {}", alias,
-                              x509cert.getIssuerX500Principal().getName(), x509cert.getSerialNumber());
-                    if (x509cert.getSerialNumber().compareTo(serialNumber) == 0) {
-                        Object certName =
-                            createBCX509Name(x509cert.getIssuerX500Principal().getName());
-                        if (certName.equals(issuerRDN)) {
-                            LOG.debug("Issuer Serial match found using keystore alias {}", alias);
-                            return certs;
-                        }
-                    }
-                }
-            }
-        } catch (KeyStoreException e) {
-            throw new WSSecurityException(
-                WSSecurityException.ErrorCode.FAILURE, e, "keystore"
-            );
+        Certificate[] certs = getIndex(store, truststore).getCertificatesByIssuerSerial(issuerRDN, serialNumber);
+        if (certs != null) {
+            LOG.debug("Issuer Serial match found in {}", keystore);
+            return certs;
         }
 
         LOG.debug("No issuer serial match found in {}", keystore);
@@ -1033,23 +1143,14 @@ public class Merlin extends CryptoBase {
      * @throws WSSecurityException if problems during keystore handling or wrong certificate
      */
     private X509Certificate[] getX509Certificates(byte[] thumbprint) throws WSSecurityException {
-        MessageDigest sha = null;
-
-        try {
-            sha = MessageDigest.getInstance("SHA1");
-        } catch (NoSuchAlgorithmException e) {
-            throw new WSSecurityException(
-                WSSecurityException.ErrorCode.FAILURE, e, "decoding.general"
-            );
-        }
         Certificate[] certs = null;
         if (keystore != null) {
-            certs = getCertificates(thumbprint, keystore, sha, false);
+            certs = getCertificatesByThumbprint(thumbprint, keystore, false);
         }
 
         //If we can't find the issuer in the keystore then look at the truststore
         if ((certs == null || certs.length == 0) && truststore != null) {
-            certs = getCertificates(thumbprint, truststore, sha, true);
+            certs = getCertificatesByThumbprint(thumbprint, truststore, true);
         }
 
         if (certs == null || certs.length == 0) {
@@ -1060,16 +1161,15 @@ public class Merlin extends CryptoBase {
     }
 
     /**
-     * Get an X509 Certificate (chain) of the X500Principal argument in the supplied KeyStore
+     * Get an X509 Certificate (chain) with the given SHA-1 thumbprint in the supplied KeyStore
      * @param thumbprint
      * @param store The KeyStore
      * @return an X509 Certificate (chain)
      * @throws WSSecurityException
      */
-    private Certificate[] getCertificates(
+    private Certificate[] getCertificatesByThumbprint(
         byte[] thumbprint,
         KeyStore store,
-        MessageDigest sha,
         boolean truststore
     ) throws WSSecurityException {
         String keystore = "keystore";
@@ -1077,39 +1177,10 @@ public class Merlin extends CryptoBase {
             keystore = "truststore";
         }
         LOG.debug("Searching {} for cert using a SHA-1 thumbprint", keystore);
-        try {
-            for (Enumeration<String> e = store.aliases(); e.hasMoreElements();) {
-                String alias = e.nextElement();
-                Certificate[] certs = store.getCertificateChain(alias);
-                if (certs == null || certs.length == 0) {
-                    // no cert chain, so lets check if getCertificate gives us a result.
-                    Certificate cert = store.getCertificate(alias);
-                    if (cert != null) {
-                        certs = new Certificate[]{cert};
-                    }
-                }
-
-                if (certs != null && certs.length > 0 && certs[0] instanceof X509Certificate) {
-                    X509Certificate x509cert = (X509Certificate) certs[0];
-                    try {
-                        sha.update(x509cert.getEncoded());
-                    } catch (CertificateEncodingException ex) {
-                        throw new WSSecurityException(
-                            WSSecurityException.ErrorCode.SECURITY_TOKEN_UNAVAILABLE, ex, "encodeError"
-                        );
-                    }
-                    byte[] data = sha.digest();
-
-                    if (Arrays.equals(data, thumbprint)) {
-                        LOG.debug("Thumbprint match found using keystore alias {}", alias);
-                        return certs;
-                    }
-                }
-            }
-        } catch (KeyStoreException e) {
-            throw new WSSecurityException(
-                WSSecurityException.ErrorCode.FAILURE, e, "keystore"
-            );
+        Certificate[] certs = getIndex(store, truststore).getCertificatesByThumbprint(thumbprint);
+        if (certs != null) {
+            LOG.debug("Thumbprint match found in {}", keystore);
+            return certs;
         }
 
         LOG.debug("No thumbprint match found in {}", keystore);
@@ -1157,31 +1228,10 @@ public class Merlin extends CryptoBase {
             keystore = "truststore";
         }
         LOG.debug("Searching {} for cert using Subject Key Identifier bytes", keystore);
-        try {
-            for (Enumeration<String> e = store.aliases(); e.hasMoreElements();) {
-                String alias = e.nextElement();
-                Certificate[] certs = store.getCertificateChain(alias);
-                if (certs == null || certs.length == 0) {
-                    // no cert chain, so lets check if getCertificate gives us a result.
-                    Certificate cert = store.getCertificate(alias);
-                    if (cert != null) {
-                        certs = new Certificate[]{cert};
-                    }
-                }
-
-                if (certs != null && certs.length > 0 && certs[0] instanceof X509Certificate) {
-                    X509Certificate x509cert = (X509Certificate) certs[0];
-                    byte[] data = getSKIBytesFromCert(x509cert);
-                    if (data.length == skiBytes.length && Arrays.equals(data, skiBytes)) {
-                        LOG.debug("SKI match found using keystore alias {}", alias);
-                        return certs;
-                    }
-                }
-            }
-        } catch (KeyStoreException e) {
-            throw new WSSecurityException(
-                WSSecurityException.ErrorCode.FAILURE, e, "keystore"
-            );
+        Certificate[] certs = getIndex(store, truststore).getCertificatesBySKI(skiBytes);
+        if (certs != null) {
+            LOG.debug("SKI match found in {}", keystore);
+            return certs;
         }
 
         LOG.debug("No SKI match found in {}", keystore);
@@ -1295,24 +1345,12 @@ public class Merlin extends CryptoBase {
         }
         LOG.debug("Searching {} for public key {}", keystore, publicKey);
         try {
-            for (Enumeration<String> e = keyStoreToSearch.aliases(); e.hasMoreElements();) {
-                String alias = e.nextElement();
-                Certificate[] certs = keyStoreToSearch.getCertificateChain(alias);
-                if (certs == null || certs.length == 0) {
-                    // no cert chain, so lets check if getCertificate gives us a result.
-                    Certificate cert = keyStoreToSearch.getCertificate(alias);
-                    if (cert != null) {
-                        certs = new Certificate[]{cert};
-                    }
-                }
-
-                if (certs != null && certs.length > 0 && certs[0] instanceof X509Certificate
-                    && publicKey.equals(((X509Certificate)certs[0]).getPublicKey())) {
-                    LOG.debug("PublicKey match found using keystore alias {}", alias);
-                    return true;
-                }
+            String alias = getIndex(keyStoreToSearch, truststore).getAlias(publicKey);
+            if (alias != null) {
+                LOG.debug("PublicKey match found using keystore alias {}", alias);
+                return true;
             }
-        } catch (KeyStoreException e) {
+        } catch (WSSecurityException e) {
             return false;
         }
 
@@ -1335,33 +1373,7 @@ public class Merlin extends CryptoBase {
             keystore = "truststore";
         }
         LOG.debug("Searching {} for cert with Subject {}", keystore, subjectRDN);
-        List<Certificate[]> foundCerts = new ArrayList<>();
-        try {
-            for (Enumeration<String> e = store.aliases(); e.hasMoreElements();) {
-                String alias = e.nextElement();
-                Certificate[] certs = store.getCertificateChain(alias);
-                if (certs == null || certs.length == 0) {
-                    // no cert chain, so lets check if getCertificate gives us a result.
-                    Certificate cert = store.getCertificate(alias);
-                    if (cert != null) {
-                        certs = new Certificate[]{cert};
-                    }
-                }
-                if (certs != null && certs.length > 0 && certs[0] instanceof X509Certificate) {
-                    X500Principal foundRDN = ((X509Certificate)certs[0]).getSubjectX500Principal();
-                    Object certName = createBCX509Name(foundRDN.getName());
-
-                    if (subjectRDN.equals(certName)) {
-                        LOG.debug("Subject certificate match found using keystore alias {}", alias);
-                        foundCerts.add(certs);
-                    }
-                }
-            }
-        } catch (KeyStoreException e) {
-            throw new WSSecurityException(
-                WSSecurityException.ErrorCode.FAILURE, e, "keystore"
-            );
-        }
+        List<Certificate[]> foundCerts = getIndex(store, truststore).getCertificatesBySubject(subjectRDN);
 
         if (foundCerts.isEmpty()) {
             LOG.debug("No Subject match found in {}", keystore);
@@ -1432,52 +1444,37 @@ public class Merlin extends CryptoBase {
      */
     private String getIdentifier(X509Certificate cert, KeyStore store)
         throws WSSecurityException {
-        try {
-            for (Enumeration<String> e = store.aliases(); e.hasMoreElements();) {
-                String alias = e.nextElement();
-
-                Certificate[] certs = store.getCertificateChain(alias);
-                if (certs == null || certs.length == 0) {
-                    // no cert chain, so lets check if getCertificate gives us a  result.
-                    Certificate retrievedCert = store.getCertificate(alias);
-                    if (retrievedCert != null) {
-                        certs = new Certificate[]{retrievedCert};
-                    }
-                }
-
-                if (certs != null && certs.length > 0 && certs[0].equals(cert)) {
-                    return alias;
-                }
-            }
-        } catch (KeyStoreException e) {
-            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e, "keystore");
-        }
-        return null;
+        return getIndex(store, store != keystore).getAlias(cert);
     }
 
     private String getIdentifier(PublicKey publicKey, KeyStore store)
         throws WSSecurityException {
-        try {
-            for (Enumeration<String> e = store.aliases(); e.hasMoreElements();) {
-                String alias = e.nextElement();
-
-                Certificate[] certs = store.getCertificateChain(alias);
-                if (certs == null || certs.length == 0) {
-                    // no cert chain, so lets check if getCertificate gives us a  result.
-                    Certificate retrievedCert = store.getCertificate(alias);
-                    if (retrievedCert != null) {
-                        certs = new Certificate[]{retrievedCert};
-                    }
-                }
+        return getIndex(store, store != keystore).getAlias(publicKey);
+    }
 
-                if (certs != null && certs.length > 0 && certs[0].getPublicKey().equals(publicKey)) {
-                    return alias;
+    /**
+     * Get the lookup index of the given KeyStore, (re)building it if the KeyStore has been replaced
+     * or its size has changed since the index was last built.
+     * @param store The KeyStore
+     * @param truststore whether the KeyStore is the truststore or the keystore
+     * @return the KeyStoreIndex of the KeyStore
+     */
+    private KeyStoreIndex getIndex(KeyStore store, boolean truststore) throws WSSecurityException {
+        KeyStoreIndex index = truststore ? truststoreIndex : keystoreIndex;
+        try {
+            if (index == null || !index.isIndexOf(store)) {
+                index = KeyStoreIndex.build(store, this);
+                invalidateCertPathCache();
+                if (truststore) {
+                    truststoreIndex = index;
+                } else {
+                    keystoreIndex = index;
                 }
             }
         } catch (KeyStoreException e) {
             throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e, "keystore");
         }
-        return null;
+        return index;
     }
 
     /**
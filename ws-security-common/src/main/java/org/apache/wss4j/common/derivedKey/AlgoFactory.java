@@ -23,12 +23,16 @@ import org.apache.wss4j.common.ext.WSSecurityException;
 
 public final class AlgoFactory {
 
+    private static final DerivationAlgorithm P_SHA_1 = new P_SHA1();
+    private static final DerivationAlgorithm P_SHA_256 = new P_SHA256();
+
     private AlgoFactory() {
         // Complete
     }
 
     /**
-     * This gives a DerivationAlgorithm instance from the default set of algorithms provided
+     * This gives a DerivationAlgorithm instance from the default set of algorithms provided. The
+     * instances are stateless and shared.
      *
      * @param algorithm The algorithm identifier
      * @return A derivation algorithm
@@ -38,7 +42,9 @@ public final class AlgoFactory {
     public static DerivationAlgorithm getInstance(String algorithm) throws WSSecurityException {
         if (ConversationConstants.DerivationAlgorithm.P_SHA_1_2005_12.equals(algorithm)
             || ConversationConstants.DerivationAlgorithm.P_SHA_1.equals(algorithm)) {
-            return new P_SHA1();
+            return P_SHA_1;
+        } else if (ConversationConstants.DerivationAlgorithm.P_SHA_256.equals(algorithm)) {
+            return P_SHA_256;
         } else {
             throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE,
                                           "unknownAlgorithm", new Object[] {algorithm});
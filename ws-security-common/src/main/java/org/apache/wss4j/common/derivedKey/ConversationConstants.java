@@ -181,6 +181,17 @@ public final class ConversationConstants {
         String P_SHA_1_2005_12 =
             "http://docs.oasis-open.org/ws-sx/ws-secureconversation/200512/dk/p_sha1";
 
+        /**
+         * P_SHA256 (the P_hash function of RFC 5246 with HMAC-SHA256). WS-SecureConversation 1.4 only
+         * defines P_SHA1, so this is a WSS4J specific identifier in the WSS4J namespace, rather than one in
+         * the (OASIS owned) WS-SecureConversation namespace. It is only understood by WSS4J peers, and
+         * received DerivedKeyTokens that use it are rejected unless it is explicitly allowed, see
+         * RequestData#setAllowPSha256DerivedKeyAlgorithm (DOM) and
+         * WSSSecurityProperties#setAllowPSha256DerivedKeyAlgorithm (StAX).
+         */
+        String P_SHA_256 =
+            "http://ws.apache.org/wss4j/dk/p_sha256";
+
         byte[] createKey(byte[] secret, byte[] seed, int offset, long length)
             throws WSSecurityException;
     }
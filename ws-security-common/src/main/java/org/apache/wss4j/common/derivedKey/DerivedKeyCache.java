@@ -0,0 +1,179 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.derivedKey;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.KeyUtils;
+
+/**
+ * A bounded cache of derived keys. Within a WS-SecureConversation session, the same key is often derived
+ * from the secret of a SecurityContextToken (or of an EncryptedKey) several times, for the same
+ * algorithm, label, nonce, offset and length. An entry is keyed on the identifier of the token the key is
+ * derived from, and on a SHA-256 fingerprint of the derivation parameters including the secret, so that
+ * the secret itself is not kept by the cache.
+ *
+ * When the cache is full, the least recently used key is evicted. Evicted and removed keys are
+ * overwritten with zeros, and a copy of the cached key is returned to the caller, so that the caller
+ * can erase its copy independently. All the keys that were derived from a token can be removed with
+ * {@link #remove(String)}, e.g. when a SecurityContextToken is cancelled or expires.
+ */
+public class DerivedKeyCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    private final int maxEntries;
+    private final Map<CacheKey, byte[]> keys;
+
+    public DerivedKeyCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Create a new DerivedKeyCache
+     * @param maxEntries The maximum number of derived keys to cache
+     */
+    public DerivedKeyCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.keys = new LinkedHashMap<CacheKey, byte[]>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CacheKey, byte[]> eldest) {
+                if (size() > DerivedKeyCache.this.maxEntries) {
+                    Arrays.fill(eldest.getValue(), (byte)0);
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Return the derived key, either from the cache or by deriving (and caching) it with the given
+     * algorithm.
+     * @param tokenIdentifier The identifier of the token that the key is derived from (can be null)
+     * @param algorithm The URI of the derivation algorithm
+     * @param secret The secret of the token
+     * @param seed The seed, i.e. the label followed by the nonce
+     * @param offset The offset of the derived key
+     * @param length The length of the derived key
+     * @return a copy of the derived key
+     * @throws WSSecurityException
+     */
+    public byte[] getKey(
+        String tokenIdentifier, String algorithm, byte[] secret, byte[] seed, int offset, long length
+    ) throws WSSecurityException {
+        CacheKey cacheKey = new CacheKey(tokenIdentifier, algorithm, secret, seed, offset, length);
+        byte[] key;
+        synchronized (keys) {
+            key = keys.get(cacheKey);
+            if (key != null) {
+                return key.clone();
+            }
+        }
+
+        key = AlgoFactory.getInstance(algorithm).createKey(secret, seed, offset, length);
+        synchronized (keys) {
+            byte[] previous = keys.put(cacheKey, key.clone());
+            if (previous != null) {
+                Arrays.fill(previous, (byte)0);
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Remove (and erase) all the cached keys that were derived from the given token
+     * @param tokenIdentifier The identifier of the token that the keys were derived from
+     */
+    public void remove(String tokenIdentifier) {
+        String identifier = tokenIdentifier == null ? "" : tokenIdentifier;
+        synchronized (keys) {
+            Iterator<Map.Entry<CacheKey, byte[]>> iterator = keys.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<CacheKey, byte[]> entry = iterator.next();
+                if (identifier.equals(entry.getKey().tokenIdentifier)) {
+                    Arrays.fill(entry.getValue(), (byte)0);
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove (and erase) all the cached keys
+     */
+    public void clear() {
+        synchronized (keys) {
+            for (byte[] key : keys.values()) {
+                Arrays.fill(key, (byte)0);
+            }
+            keys.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (keys) {
+            return keys.size();
+        }
+    }
+
+    private static final class CacheKey {
+
+        private final String tokenIdentifier;
+        private final ByteBuffer fingerprint;
+
+        CacheKey(
+            String tokenIdentifier, String algorithm, byte[] secret, byte[] seed, int offset, long length
+        ) throws WSSecurityException {
+            this.tokenIdentifier = tokenIdentifier == null ? "" : tokenIdentifier;
+
+            MessageDigest digest = KeyUtils.getMessageDigest("SHA-256");
+            digest.update(algorithm.getBytes(StandardCharsets.UTF_8));
+            digest.update(ByteBuffer.allocate(20).putInt(secret.length).putInt(seed.length)
+                              .putInt(offset).putLong(length).array());
+            digest.update(secret);
+            digest.update(seed);
+            this.fingerprint = ByteBuffer.wrap(digest.digest());
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * tokenIdentifier.hashCode() + fingerprint.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof CacheKey)) {
+                return false;
+            }
+            CacheKey cacheKey = (CacheKey)object;
+            return tokenIdentifier.equals(cacheKey.tokenIdentifier) && fingerprint.equals(cacheKey.fingerprint);
+        }
+    }
+}
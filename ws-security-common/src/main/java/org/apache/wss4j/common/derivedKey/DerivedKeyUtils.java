@@ -38,7 +38,20 @@ public final class DerivedKeyUtils {
      */
     public static byte[] deriveKey(String algorithm, String label, int length, byte[] secret, byte[] nonce, int offset)
         throws WSSecurityException {
-        DerivationAlgorithm algo = AlgoFactory.getInstance(algorithm);
+        return deriveKey(algorithm, label, length, secret, nonce, offset, null, null);
+    }
+
+    /**
+     * Derive a key from this DerivedKeyToken instance, via the given DerivedKeyCache (if any)
+     *
+     * @param derivedKeyCache the cache of derived keys (can be null)
+     * @param tokenIdentifier the identifier of the token the secret belongs to (can be null)
+     * @throws WSSecurityException
+     */
+    public static byte[] deriveKey(
+        String algorithm, String label, int length, byte[] secret, byte[] nonce, int offset,
+        DerivedKeyCache derivedKeyCache, String tokenIdentifier
+    ) throws WSSecurityException {
         byte[] labelBytes;
         if (label == null || label.length() == 0) {
             String defaultLabel = ConversationConstants.DEFAULT_LABEL + ConversationConstants.DEFAULT_LABEL;
@@ -55,6 +68,9 @@ public final class DerivedKeyUtils {
         if (keyLength <= 0) {
             keyLength = 32L;
         }
-        return algo.createKey(secret, seed, offset, keyLength);
+        if (derivedKeyCache != null) {
+            return derivedKeyCache.getKey(tokenIdentifier, algorithm, secret, seed, offset, keyLength);
+        }
+        return AlgoFactory.getInstance(algorithm).createKey(secret, seed, offset, keyLength);
     }
 }
@@ -0,0 +1,119 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.derivedKey;
+
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+
+/**
+ * P_hash as defined in RFC 2246 (TLS 1.0), Section 5, for a given HMAC algorithm:
+ <pre>
+ P_hash(secret, seed) = HMAC_hash(secret, A(1) + seed) +
+                        HMAC_hash(secret, A(2) + seed) + ...
+ A(0) = seed
+ A(i) = HMAC_hash(secret, A(i-1))
+ </pre>
+ * The Mac objects are cached per thread and keyed by algorithm name, so that a derivation neither
+ * looks up the Mac implementation nor contends on a shared lock. Only the output blocks that overlap
+ * with the requested [offset, offset + length) range are computed, the blocks before the offset only
+ * advance the A(i) chain.
+ */
+public abstract class P_Hash implements DerivationAlgorithm {
+
+    private static final ThreadLocal<Map<String, Mac>> MACS =
+        new ThreadLocal<Map<String, Mac>>() {
+            @Override
+            protected Map<String, Mac> initialValue() {
+                return new HashMap<>();
+            }
+        };
+
+    private final String macAlgorithm;
+
+    protected P_Hash(String macAlgorithm) {
+        this.macAlgorithm = macAlgorithm;
+    }
+
+    @Override
+    public byte[] createKey(byte[] secret, byte[] seed, int offset, long length)
+            throws WSSecurityException {
+        if (offset < 0 || length < 0 || offset + length > Integer.MAX_VALUE) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "errorInKeyDerivation");
+        }
+
+        try {
+            Mac mac = getMac(macAlgorithm);
+            mac.init(new SecretKeySpec(secret, macAlgorithm));
+            return pHash(mac, seed, offset, (int) length);
+        } catch (NoSuchAlgorithmException | InvalidKeyException | IllegalArgumentException e) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e, "errorInKeyDerivation");
+        }
+    }
+
+    /**
+     * Compute the bytes [offset, offset + length) of P_hash(secret, seed)
+     * @param mac the HMAC, initialized with the secret
+     * @param seed the seed value to start the generation - A(0)
+     * @param offset the offset of the first byte to return
+     * @param length the number of bytes to return
+     * @return a byte array that contains the secret key
+     */
+    private static byte[] pHash(Mac mac, byte[] seed, int offset, int length) {
+        byte[] out = new byte[length];
+        int blockLength = mac.getMacLength();
+        int skipBlocks = offset / blockLength;
+        int blockOffset = offset % blockLength;
+
+        byte[] a = seed; // a(0) is the seed
+        for (int i = 0; i < skipBlocks; i++) {
+            a = mac.doFinal(a);
+        }
+
+        int copied = 0;
+        while (copied < length) {
+            a = mac.doFinal(a);
+            mac.update(a);
+            mac.update(seed);
+            byte[] block = mac.doFinal();
+            int tocpy = Math.min(length - copied, blockLength - blockOffset);
+            System.arraycopy(block, blockOffset, out, copied, tocpy);
+            copied += tocpy;
+            blockOffset = 0;
+        }
+        return out;
+    }
+
+    private static Mac getMac(String algorithm) throws NoSuchAlgorithmException {
+        Map<String, Mac> macs = MACS.get();
+        Mac mac = macs.get(algorithm);
+        if (mac == null) {
+            mac = Mac.getInstance(algorithm);
+            macs.put(algorithm, mac);
+        }
+        return mac;
+    }
+}
@@ -42,6 +42,7 @@ import org.opensaml.saml.common.SAMLObject;
 import org.opensaml.saml.common.SAMLObjectContentReference;
 import org.opensaml.saml.common.SAMLVersion;
 import org.opensaml.saml.common.SignableSAMLObject;
+import org.opensaml.saml.common.xml.SAMLConstants;
 import org.opensaml.saml.saml1.core.AttributeStatement;
 import org.opensaml.saml.saml1.core.AuthenticationStatement;
 import org.opensaml.saml.saml1.core.AuthorizationDecisionStatement;
@@ -63,8 +64,10 @@ import org.opensaml.xmlsec.signature.support.SignatureConstants;
 import org.opensaml.xmlsec.signature.support.SignatureException;
 import org.opensaml.xmlsec.signature.support.SignatureValidator;
 import org.opensaml.xmlsec.signature.support.SignerProvider;
+import org.w3c.dom.Attr;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.w3c.dom.Node;
 
 /**
  * Class SamlAssertionWrapper can generate, sign, and validate both SAML v1.1
@@ -132,6 +135,12 @@ public class SamlAssertionWrapper {
      */
     private final boolean fromDOM;
 
+    /**
+     * The NotBefore/NotOnOrAfter Conditions, as read from the DOM Element in the lazy mode
+     */
+    private Instant lazyNotBefore;
+    private Instant lazyNotOnOrAfter;
+
     /**
      * Constructor SamlAssertionWrapper creates a new SamlAssertionWrapper instance.
      *
@@ -139,9 +148,32 @@ public class SamlAssertionWrapper {
      * @throws WSSecurityException
      */
     public SamlAssertionWrapper(Element element) throws WSSecurityException {
+        this(element, false);
+    }
+
+    /**
+     * Constructor SamlAssertionWrapper creates a new SamlAssertionWrapper instance.
+     *
+     * In the lazy mode the Assertion is not unmarshalled into OpenSAML objects up front. The ID,
+     * Issuer, NotBefore/NotOnOrAfter Conditions, whether the Assertion is signed and its
+     * SignatureValue, as well as the Subject name and the SubjectConfirmation methods of a
+     * SAML 2.0 Assertion, are read directly from the DOM Element. The OpenSAML objects are only
+     * created once they are needed, e.g. to access the statements or to verify the signature.
+     * Note that an error in unmarshalling the Assertion is then reported at this point (as an
+     * IllegalStateException if the method does not throw a WSSecurityException).
+     *
+     * @param element of type Element
+     * @param lazy whether to unmarshal the Assertion into OpenSAML objects on demand only
+     * @throws WSSecurityException
+     */
+    public SamlAssertionWrapper(Element element, boolean lazy) throws WSSecurityException {
         OpenSAMLUtil.initSamlEngine();
 
-        parseElement(element);
+        if (lazy) {
+            parseElementLazily(element);
+        } else {
+            parseElement(element);
+        }
         fromDOM = true;
     }
 
@@ -200,7 +232,7 @@ public class SamlAssertionWrapper {
      */
     public org.opensaml.saml.saml1.core.Assertion getSaml1() {
         if (samlVersion == SAMLVersion.VERSION_11) {
-            return (org.opensaml.saml.saml1.core.Assertion)samlObject;
+            return (org.opensaml.saml.saml1.core.Assertion)getSamlObject();
         }
         return null;
     }
@@ -212,7 +244,7 @@ public class SamlAssertionWrapper {
      */
     public org.opensaml.saml.saml2.core.Assertion getSaml2() {
         if (samlVersion == SAMLVersion.VERSION_20) {
-            return (org.opensaml.saml.saml2.core.Assertion)samlObject;
+            return (org.opensaml.saml.saml2.core.Assertion)getSamlObject();
         }
         return null;
     }
@@ -223,7 +255,7 @@ public class SamlAssertionWrapper {
      * @return the created (type boolean) of this SamlAssertionWrapper object.
      */
     public boolean isCreated() {
-        return samlObject != null;
+        return samlObject != null || isLazy();
     }
 
 
@@ -260,10 +292,16 @@ public class SamlAssertionWrapper {
     }
 
     public Instant getNotBefore() {
+        if (isLazy()) {
+            return lazyNotBefore;
+        }
+
         DateTime validFrom = null;
         if (getSamlVersion().equals(SAMLVersion.VERSION_20)) {
-            validFrom = getSaml2().getConditions().getNotBefore();
-        } else {
+            if (getSaml2().getConditions() != null) {
+                validFrom = getSaml2().getConditions().getNotBefore();
+            }
+        } else if (getSaml1().getConditions() != null) {
             validFrom = getSaml1().getConditions().getNotBefore();
         }
 
@@ -275,10 +313,16 @@ public class SamlAssertionWrapper {
     }
 
     public Instant getNotOnOrAfter() {
+        if (isLazy()) {
+            return lazyNotOnOrAfter;
+        }
+
         DateTime validTill = null;
         if (getSamlVersion().equals(SAMLVersion.VERSION_20)) {
-            validTill = getSaml2().getConditions().getNotOnOrAfter();
-        } else {
+            if (getSaml2().getConditions() != null) {
+                validTill = getSaml2().getConditions().getNotOnOrAfter();
+            }
+        } else if (getSaml1().getConditions() != null) {
             validTill = getSaml1().getConditions().getNotOnOrAfter();
         }
 
@@ -295,20 +339,28 @@ public class SamlAssertionWrapper {
      * @return the id (type String) of this SamlAssertionWrapper object.
      */
     public String getId() {
+        if (isLazy()) {
+            String id = getAttribute(assertionElement,
+                                     samlVersion == SAMLVersion.VERSION_20 ? "ID" : "AssertionID");
+            if (id != null && id.length() > 0) {
+                return id;
+            }
+        }
+
         String id = null;
         if (samlVersion == SAMLVersion.VERSION_20) {
-            id = ((org.opensaml.saml.saml2.core.Assertion)samlObject).getID();
+            id = getSaml2().getID();
             if (id == null || id.length() == 0) {
                 LOG.error("SamlAssertionWrapper: ID was null, seeting a new ID value");
                 id = IDGenerator.generateID("_");
-                ((org.opensaml.saml.saml2.core.Assertion)samlObject).setID(id);
+                getSaml2().setID(id);
             }
         } else if (samlVersion == SAMLVersion.VERSION_11) {
-            id = ((org.opensaml.saml.saml1.core.Assertion)samlObject).getID();
+            id = getSaml1().getID();
             if (id == null || id.length() == 0) {
                 LOG.error("SamlAssertionWrapper: ID was null, seeting a new ID value");
                 id = IDGenerator.generateID("_");
-                ((org.opensaml.saml.saml1.core.Assertion)samlObject).setID(id);
+                getSaml1().setID(id);
             }
         } else {
             LOG.error("SamlAssertionWrapper: unable to return ID - no saml assertion object");
@@ -322,12 +374,28 @@ public class SamlAssertionWrapper {
      * @return the issuerString (type String) of this SamlAssertionWrapper object.
      */
     public String getIssuerString() {
-        if (samlVersion == SAMLVersion.VERSION_20
-            && ((org.opensaml.saml.saml2.core.Assertion)samlObject).getIssuer() != null) {
-            return ((org.opensaml.saml.saml2.core.Assertion)samlObject).getIssuer().getValue();
+        if (isLazy()) {
+            String issuer = null;
+            if (samlVersion == SAMLVersion.VERSION_20) {
+                Element issuerElement =
+                    getChildElement(assertionElement, SAMLConstants.SAML20_NS, "Issuer");
+                if (issuerElement != null && isTextOnly(issuerElement)) {
+                    issuer = getText(issuerElement);
+                } else if (issuerElement != null) {
+                    issuer = getSaml2().getIssuer().getValue();
+                }
+            } else {
+                issuer = getAttribute(assertionElement, "Issuer");
+            }
+            if (issuer != null) {
+                return issuer;
+            }
+        } else if (samlVersion == SAMLVersion.VERSION_20
+            && getSaml2().getIssuer() != null) {
+            return getSaml2().getIssuer().getValue();
         } else if (samlVersion == SAMLVersion.VERSION_11
-            && ((org.opensaml.saml.saml1.core.Assertion)samlObject).getIssuer() != null) {
-            return ((org.opensaml.saml.saml1.core.Assertion)samlObject).getIssuer();
+            && getSaml1().getIssuer() != null) {
+            return getSaml1().getIssuer();
         }
         LOG.error(
             "SamlAssertionWrapper: unable to return Issuer string - no saml assertion "
@@ -341,15 +409,32 @@ public class SamlAssertionWrapper {
      * @return the subjectName of this SamlAssertionWrapper object
      */
     public String getSubjectName() {
+        if (isLazy() && samlVersion == SAMLVersion.VERSION_20) {
+            Element subjectElement =
+                getChildElement(assertionElement, SAMLConstants.SAML20_NS, "Subject");
+            Element nameIDElement =
+                getChildElement(subjectElement, SAMLConstants.SAML20_NS, "NameID");
+            if (nameIDElement == null || isTextOnly(nameIDElement)) {
+                String name = getText(nameIDElement);
+                if (name != null) {
+                    return name;
+                }
+                LOG.error(
+                    "SamlAssertionWrapper: unable to return SubjectName - no saml assertion "
+                        + "object or subject is null"
+                );
+                return null;
+            }
+        }
+
         if (samlVersion == SAMLVersion.VERSION_20) {
-            org.opensaml.saml.saml2.core.Subject subject =
-                ((org.opensaml.saml.saml2.core.Assertion)samlObject).getSubject();
+            org.opensaml.saml.saml2.core.Subject subject = getSaml2().getSubject();
             if (subject != null && subject.getNameID() != null) {
                 return subject.getNameID().getValue();
             }
         } else if (samlVersion == SAMLVersion.VERSION_11) {
             Subject samlSubject = null;
-            for (Statement stmt : ((org.opensaml.saml.saml1.core.Assertion)samlObject).getStatements()) {
+            for (Statement stmt : getSaml1().getStatements()) {
                 if (stmt instanceof AttributeStatement) {
                     AttributeStatement attrStmt = (AttributeStatement) stmt;
                     samlSubject = attrStmt.getSubject();
@@ -384,9 +469,21 @@ public class SamlAssertionWrapper {
      */
     public List<String> getConfirmationMethods() {
         List<String> methods = new ArrayList<>();
-        if (samlVersion == SAMLVersion.VERSION_20) {
-            org.opensaml.saml.saml2.core.Subject subject =
-                ((org.opensaml.saml.saml2.core.Assertion)samlObject).getSubject();
+        if (isLazy() && samlVersion == SAMLVersion.VERSION_20) {
+            Element subjectElement =
+                getChildElement(assertionElement, SAMLConstants.SAML20_NS, "Subject");
+            if (subjectElement != null) {
+                Element child = XMLUtils.getNextElement(subjectElement.getFirstChild());
+                while (child != null) {
+                    if (SAMLConstants.SAML20_NS.equals(child.getNamespaceURI())
+                        && "SubjectConfirmation".equals(child.getLocalName())) {
+                        methods.add(getAttribute(child, "Method"));
+                    }
+                    child = XMLUtils.getNextElement(child.getNextSibling());
+                }
+            }
+        } else if (samlVersion == SAMLVersion.VERSION_20) {
+            org.opensaml.saml.saml2.core.Subject subject = getSaml2().getSubject();
             List<org.opensaml.saml.saml2.core.SubjectConfirmation> confirmations =
                 subject.getSubjectConfirmations();
             for (org.opensaml.saml.saml2.core.SubjectConfirmation confirmation : confirmations) {
@@ -394,8 +491,7 @@ public class SamlAssertionWrapper {
             }
         } else if (samlVersion == SAMLVersion.VERSION_11) {
             List<SubjectStatement> subjectStatements = new ArrayList<>();
-            org.opensaml.saml.saml1.core.Assertion saml1 =
-                (org.opensaml.saml.saml1.core.Assertion)samlObject;
+            org.opensaml.saml.saml1.core.Assertion saml1 = getSaml1();
             subjectStatements.addAll(saml1.getSubjectStatements());
             subjectStatements.addAll(saml1.getAuthenticationStatements());
             subjectStatements.addAll(saml1.getAttributeStatements());
@@ -428,6 +524,10 @@ public class SamlAssertionWrapper {
      * @return the signed (type boolean) of this SamlAssertionWrapper object.
      */
     public boolean isSigned() {
+        if (isLazy()) {
+            return getSignatureElement() != null;
+        }
+
         if (samlObject instanceof SignableSAMLObject
             && (((SignableSAMLObject)samlObject).isSigned()
                 || ((SignableSAMLObject)samlObject).getSignature() != null)) {
@@ -452,8 +552,9 @@ public class SamlAssertionWrapper {
      * @param signatureDigestAlgorithm the signature digest algorithm to use
      */
     public void setSignature(Signature signature, String signatureDigestAlgorithm) {
-        if (samlObject instanceof SignableSAMLObject) {
-            SignableSAMLObject signableObject = (SignableSAMLObject) samlObject;
+        SAMLObject assertion = getSamlObject();
+        if (assertion instanceof SignableSAMLObject) {
+            SignableSAMLObject signableObject = (SignableSAMLObject) assertion;
             signableObject.setSignature(signature);
             String digestAlg = signatureDigestAlgorithm;
             if (digestAlg == null) {
@@ -465,7 +566,7 @@ public class SamlAssertionWrapper {
             signableObject.releaseDOM();
             signableObject.releaseChildrenDOM(true);
         } else {
-            LOG.error("Attempt to sign an unsignable object " + samlObject.getClass().getName());
+            LOG.error("Attempt to sign an unsignable object " + assertion.getClass().getName());
         }
     }
 
@@ -691,6 +792,7 @@ public class SamlAssertionWrapper {
         Crypto sigCrypto,
         CallbackHandler callbackHandler
     ) throws WSSecurityException {
+        unmarshal();
         if (samlVersion == SAMLVersion.VERSION_11) {
             subjectKeyInfo =
                 SAMLUtil.getCredentialFromSubject(
@@ -717,9 +819,10 @@ public class SamlAssertionWrapper {
             // Try to set the version.
             LOG.debug(
                 "The SAML version was null in getSamlVersion(). Recomputing SAML version...");
-            if (samlObject instanceof org.opensaml.saml.saml1.core.Assertion) {
+            SAMLObject assertion = getSamlObject();
+            if (assertion instanceof org.opensaml.saml.saml1.core.Assertion) {
                 samlVersion = SAMLVersion.VERSION_11;
-            } else if (samlObject instanceof org.opensaml.saml.saml2.core.Assertion) {
+            } else if (assertion instanceof org.opensaml.saml.saml2.core.Assertion) {
                 samlVersion = SAMLVersion.VERSION_20;
             } else {
                 // We are only supporting SAML v1.1 or SAML v2.0 at this time.
@@ -748,6 +851,16 @@ public class SamlAssertionWrapper {
         return signatureKeyInfo;
     }
 
+    /**
+     * Set the SAMLKeyInfo associated with the signature of the assertion. This is only to be used
+     * for an assertion whose signature has already been verified, e.g. an assertion that was
+     * previously verified with the same SignatureValue.
+     * @param signatureKeyInfo the SAMLKeyInfo associated with the signature of the assertion
+     */
+    public void setSignatureKeyInfo(SAMLKeyInfo signatureKeyInfo) {
+        this.signatureKeyInfo = signatureKeyInfo;
+    }
+
     /**
      * Get the SAMLKeyInfo associated with the Subject KeyInfo
      * @return the SAMLKeyInfo associated with the Subject KeyInfo
@@ -762,19 +875,21 @@ public class SamlAssertionWrapper {
      * @throws WSSecurityException
      */
     public byte[] getSignatureValue() throws WSSecurityException {
+        if (isLazy()) {
+            return getSignatureValue(getSignatureElement());
+        }
+
         Signature sig = null;
         if (samlObject instanceof SignableSAMLObject) {
             sig = ((SignableSAMLObject)samlObject).getSignature();
         }
         if (sig != null) {
-            return getSignatureValue(sig);
+            return getSignatureValue(sig.getDOM());
         }
         return null;
     }
 
-    private byte[] getSignatureValue(Signature signature) throws WSSecurityException {
-        Element signatureElement = signature.getDOM();
-
+    private byte[] getSignatureValue(Element signatureElement) throws WSSecurityException {
         if (signatureElement != null) {
             Element signedInfoElem = XMLUtils.getNextElement(signatureElement.getFirstChild());
             if (signedInfoElem != null) {
@@ -791,13 +906,26 @@ public class SamlAssertionWrapper {
     }
 
     public Signature getSignature() throws WSSecurityException {
+        unmarshal();
         if (samlObject instanceof SignableSAMLObject) {
             return ((SignableSAMLObject)samlObject).getSignature();
         }
         return null;
     }
 
+    /**
+     * Get the OpenSAML object of the Assertion. In the lazy mode, the Assertion is unmarshalled
+     * into OpenSAML objects at this point.
+     *
+     * @return the OpenSAML object of the Assertion
+     * @throws IllegalStateException if the Assertion cannot be unmarshalled in the lazy mode
+     */
     public SAMLObject getSamlObject() {
+        try {
+            unmarshal();
+        } catch (WSSecurityException ex) {
+            throw new IllegalStateException("The SAML Assertion cannot be unmarshalled", ex);
+        }
         return samlObject;
     }
 
@@ -805,29 +933,18 @@ public class SamlAssertionWrapper {
      * Check the Conditions of the Assertion.
      */
     public void checkConditions(int futureTTL) throws WSSecurityException {
-        DateTime validFrom = null;
-        DateTime validTill = null;
-
-        if (getSamlVersion().equals(SAMLVersion.VERSION_20)
-            && getSaml2().getConditions() != null) {
-            validFrom = getSaml2().getConditions().getNotBefore();
-            validTill = getSaml2().getConditions().getNotOnOrAfter();
-        } else if (getSamlVersion().equals(SAMLVersion.VERSION_11)
-            && getSaml1().getConditions() != null) {
-            validFrom = getSaml1().getConditions().getNotBefore();
-            validTill = getSaml1().getConditions().getNotOnOrAfter();
-        }
+        Instant validFrom = getNotBefore();
+        Instant validTill = getNotOnOrAfter();
 
         if (validFrom != null) {
-            DateTime currentTime = new DateTime();
-            currentTime = currentTime.plusSeconds(futureTTL);
+            Instant currentTime = Instant.now().plusSeconds(futureTTL);
             if (validFrom.isAfter(currentTime)) {
                 LOG.debug("SAML Token condition (Not Before) not met");
                 throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "invalidSAMLsecurity");
             }
         }
 
-        if (validTill != null && validTill.isBeforeNow()) {
+        if (validTill != null && validTill.isBefore(Instant.now())) {
             LOG.debug("SAML Token condition (Not On Or After) not met");
             throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "invalidSAMLsecurity");
         }
@@ -1019,6 +1136,115 @@ public class SamlAssertionWrapper {
         assertionElement = element;
     }
 
+    /**
+     * Determine the SAML version of the DOM Element, without unmarshalling it into Opensaml
+     * objects. Unexpected elements are unmarshalled straight away. The Conditions are parsed
+     * here, so that a malformed date is reported by the constructor as in the eager mode.
+     */
+    private void parseElementLazily(Element element) throws WSSecurityException {
+        if ("Assertion".equals(element.getLocalName())
+            && SAMLConstants.SAML1_NS.equals(element.getNamespaceURI())) {
+            samlVersion = SAMLVersion.VERSION_11;
+        } else if ("Assertion".equals(element.getLocalName())
+            && SAMLConstants.SAML20_NS.equals(element.getNamespaceURI())) {
+            samlVersion = SAMLVersion.VERSION_20;
+        } else {
+            parseElement(element);
+            return;
+        }
+
+        assertionElement = element;
+        lazyNotBefore = getConditionsInstant("NotBefore");
+        lazyNotOnOrAfter = getConditionsInstant("NotOnOrAfter");
+    }
+
+    /**
+     * Unmarshal the DOM Element into Opensaml objects, if this was deferred in the lazy mode.
+     */
+    private void unmarshal() throws WSSecurityException {
+        if (isLazy()) {
+            parseElement(assertionElement);
+        }
+    }
+
+    /**
+     * @return true if the DOM Element has not been unmarshalled into Opensaml objects yet
+     */
+    private boolean isLazy() {
+        return samlObject == null && assertionElement != null && samlVersion != null;
+    }
+
+    private Element getSignatureElement() {
+        return getChildElement(assertionElement, SignatureConstants.XMLSIG_NS, "Signature");
+    }
+
+    private Instant getConditionsInstant(String attributeName) throws WSSecurityException {
+        String namespace =
+            samlVersion == SAMLVersion.VERSION_20 ? SAMLConstants.SAML20_NS : SAMLConstants.SAML1_NS;
+        Element conditionsElement = getChildElement(assertionElement, namespace, "Conditions");
+        String value = getAttribute(conditionsElement, attributeName);
+        if (value == null || value.length() == 0) {
+            return null;
+        }
+        try {
+            return new DateTime(value).toDate().toInstant();
+        } catch (IllegalArgumentException ex) {
+            throw new WSSecurityException(
+                WSSecurityException.ErrorCode.INVALID_SECURITY_TOKEN, ex, "invalidSAMLsecurity",
+                new Object[] {"Invalid " + attributeName + " Condition"}
+            );
+        }
+    }
+
+    private static Element getChildElement(Element parent, String namespace, String localName) {
+        if (parent == null) {
+            return null;
+        }
+        Element child = XMLUtils.getNextElement(parent.getFirstChild());
+        while (child != null) {
+            if (namespace.equals(child.getNamespaceURI()) && localName.equals(child.getLocalName())) {
+                return child;
+            }
+            child = XMLUtils.getNextElement(child.getNextSibling());
+        }
+        return null;
+    }
+
+    private static String getAttribute(Element element, String attributeName) {
+        if (element == null) {
+            return null;
+        }
+        Attr attribute = element.getAttributeNodeNS(null, attributeName);
+        return attribute == null ? null : attribute.getValue();
+    }
+
+    /**
+     * @return true if the element only contains text (as Opensaml only uses the element
+     *         content of such elements in the same way)
+     */
+    private static boolean isTextOnly(Element element) {
+        Node child = element.getFirstChild();
+        while (child != null) {
+            if (child.getNodeType() != Node.TEXT_NODE
+                && child.getNodeType() != Node.CDATA_SECTION_NODE) {
+                return false;
+            }
+            child = child.getNextSibling();
+        }
+        return true;
+    }
+
+    /**
+     * @return the trimmed text content of a text-only element, or null if it is empty
+     */
+    private static String getText(Element element) {
+        if (element == null) {
+            return null;
+        }
+        String text = element.getTextContent().trim();
+        return text.length() == 0 ? null : text;
+    }
+
     /**
      * Parse a SAMLCallback object to create a SAML Assertion
      */
@@ -474,6 +474,24 @@ public final class AttachmentUtils {
         }
     }
 
+    /**
+     * Make the given attachment stream resettable, so that it can be handed on after it was
+     * digested. A stream that does not support mark/reset itself gets cached, in memory up to the
+     * given threshold and in a temporary file beyond it (instead of completely in memory, as a
+     * BufferedInputStream would). The returned stream is marked at its current position.
+     */
+    public static InputStream setupResettableAttachmentStream(
+        InputStream inputStream, int memoryThreshold, File tempDirectory
+    ) {
+        InputStream resettableStream = inputStream;
+        if (!resettableStream.markSupported()) {
+            resettableStream = new CachedInputStream(inputStream, memoryThreshold, tempDirectory);
+        }
+        //we can process at maximum 2G with the standard jdk streams that support mark/reset
+        resettableStream.mark(Integer.MAX_VALUE);
+        return resettableStream;
+    }
+
     public static InputStream setupAttachmentDecryptionStream(
             final String encAlgo, final Cipher cipher, final Key key, InputStream inputStream)
             throws WSSecurityException {
@@ -0,0 +1,110 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.wss4j.common.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An InputStream that supports mark and reset for streams of any size. All the bytes that are read
+ * from the underlying stream are cached in a {@link CachedOutputStream}, i.e. in memory up to a
+ * threshold and in a temporary file beyond it, so that they can be read again after a reset. The
+ * readlimit of {@link #mark(int)} is ignored. Closing the stream deletes the temporary file.
+ */
+public class CachedInputStream extends InputStream {
+
+    private final InputStream in;
+    private final CachedOutputStream cache;
+    private long position;
+    private long markPosition = -1;
+
+    /**
+     * @param in the underlying stream
+     * @param memoryThreshold the number of bytes that are kept in memory at most
+     * @param tempDirectory the directory of the temporary file, or null for the default
+     *                      temporary-file directory
+     */
+    public CachedInputStream(InputStream in, int memoryThreshold, File tempDirectory) {
+        this.in = in;
+        this.cache = new CachedOutputStream(memoryThreshold, tempDirectory);
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        int n;
+        if (position < cache.size()) {
+            n = cache.read(position, b, off, len);
+        } else {
+            n = in.read(b, off, len);
+            if (n > 0) {
+                cache.write(b, off, n);
+            }
+        }
+        if (n > 0) {
+            position += n;
+        }
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        long cached = cache.size() - position;
+        if (cached > 0) {
+            return (int)Math.min(Integer.MAX_VALUE, cached);
+        }
+        return in.available();
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+        markPosition = position;
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        if (markPosition < 0) {
+            throw new IOException("Resetting to invalid mark");
+        }
+        position = markPosition;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            in.close();
+        } finally {
+            cache.dispose();
+        }
+    }
+}
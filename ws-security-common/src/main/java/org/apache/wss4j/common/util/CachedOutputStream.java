@@ -0,0 +1,223 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.wss4j.common.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+/**
+ * An OutputStream that keeps the written bytes in memory up to a threshold, and spills them to a
+ * temporary file once the threshold is exceeded. The written bytes can be read (again) at any time
+ * via {@link #read(long, byte[], int, int)} or {@link #getInputStream()}. The temporary file is
+ * deleted by {@link #dispose()}.
+ */
+public class CachedOutputStream extends OutputStream {
+
+    /**
+     * The default number of bytes that are kept in memory (1 MB)
+     */
+    public static final int DEFAULT_MEMORY_THRESHOLD = 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final int memoryThreshold;
+    private final File tempDirectory;
+
+    private byte[] buffer;
+    private int count;
+    private File tempFile;
+    private RandomAccessFile file;
+    private long fileLength;
+
+    public CachedOutputStream() {
+        this(DEFAULT_MEMORY_THRESHOLD, null);
+    }
+
+    /**
+     * @param memoryThreshold the number of bytes that are kept in memory at most
+     * @param tempDirectory the directory of the temporary file, or null for the default
+     *                      temporary-file directory
+     */
+    public CachedOutputStream(int memoryThreshold, File tempDirectory) {
+        if (memoryThreshold < 0) {
+            throw new IllegalArgumentException("The memory threshold must not be negative");
+        }
+        this.memoryThreshold = memoryThreshold;
+        this.tempDirectory = tempDirectory;
+        buffer = new byte[Math.min(memoryThreshold, BUFFER_SIZE)];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte)b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (buffer == null) {
+            throw new IOException("The CachedOutputStream was disposed");
+        }
+        if (file == null && count + len > memoryThreshold) {
+            spill();
+        }
+        if (file == null) {
+            if (count + len > buffer.length) {
+                byte[] newBuffer = new byte[Math.min(Math.max(buffer.length * 2, count + len), memoryThreshold)];
+                System.arraycopy(buffer, 0, newBuffer, 0, count);
+                buffer = newBuffer;
+            }
+            System.arraycopy(b, off, buffer, count, len);
+            count += len;
+        } else if (len >= buffer.length) {
+            flushBuffer();
+            file.seek(fileLength);
+            file.write(b, off, len);
+            fileLength += len;
+        } else {
+            if (count + len > buffer.length) {
+                flushBuffer();
+            }
+            System.arraycopy(b, off, buffer, count, len);
+            count += len;
+        }
+    }
+
+    /**
+     * @return the number of bytes written so far
+     */
+    public long size() {
+        return fileLength + count;
+    }
+
+    /**
+     * @return true if the bytes were spilled to a temporary file
+     */
+    public boolean isSpilled() {
+        return file != null;
+    }
+
+    /**
+     * Read the written bytes, starting at the given position.
+     * @return the number of bytes read, or -1 if the position is at the end of the written bytes
+     */
+    public int read(long position, byte[] b, int off, int len) throws IOException {
+        if (buffer == null) {
+            throw new IOException("The CachedOutputStream was disposed");
+        }
+        long available = size() - position;
+        if (available <= 0) {
+            return -1;
+        }
+        int n = (int)Math.min(len, available);
+        if (file == null) {
+            System.arraycopy(buffer, (int)position, b, off, n);
+            return n;
+        }
+        flushBuffer();
+        file.seek(position);
+        return file.read(b, off, n);
+    }
+
+    /**
+     * @return an InputStream over the bytes written so far. Closing the InputStream disposes
+     *         this CachedOutputStream, i.e. it deletes the temporary file.
+     */
+    public InputStream getInputStream() {
+        return new InputStream() {
+            private long position;
+
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                int n = CachedOutputStream.this.read(position, b, off, len);
+                if (n > 0) {
+                    position += n;
+                }
+                return n;
+            }
+
+            @Override
+            public int available() {
+                return (int)Math.min(Integer.MAX_VALUE, size() - position);
+            }
+
+            @Override
+            public void close() throws IOException {
+                dispose();
+            }
+        };
+    }
+
+    /**
+     * Release the memory and delete the temporary file (if any).
+     */
+    public void dispose() throws IOException {
+        buffer = null;
+        count = 0;
+        fileLength = 0;
+        if (file != null) {
+            try {
+                file.close();
+            } finally {
+                file = null;
+                if (!tempFile.delete()) {
+                    tempFile.deleteOnExit();
+                }
+            }
+        }
+    }
+
+    private void spill() throws IOException {
+        // Files#createTempFile creates the file with owner-only permissions (on POSIX file systems),
+        // unlike File#createTempFile. The content may be a decrypted attachment.
+        if (tempDirectory == null) {
+            tempFile = Files.createTempFile("wss4j-", ".tmp").toFile();
+        } else {
+            tempFile = Files.createTempFile(tempDirectory.toPath(), "wss4j-", ".tmp").toFile();
+        }
+        file = new RandomAccessFile(tempFile, "rw");
+        file.write(buffer, 0, count);
+        fileLength = count;
+        count = 0;
+        if (buffer.length < BUFFER_SIZE) {
+            buffer = new byte[BUFFER_SIZE];
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (count > 0) {
+            file.seek(fileLength);
+            file.write(buffer, 0, count);
+            fileLength += count;
+            count = 0;
+        }
+    }
+}
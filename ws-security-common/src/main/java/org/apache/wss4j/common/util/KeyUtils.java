@@ -45,9 +45,16 @@ public final class KeyUtils {
     public static final String RSA_ECB_OAEPWITH_SHA1_AND_MGF1_PADDING = "RSA/ECB/OAEPWithSHA1AndMGF1Padding";
 
     /**
-     * A cached MessageDigest object
+     * Cached MessageDigest objects, per thread and keyed by algorithm name, so that generating a digest
+     * does not contend on a shared lock
      */
-    private static MessageDigest digest;
+    private static final ThreadLocal<Map<String, MessageDigest>> DIGESTS =
+        new ThreadLocal<Map<String, MessageDigest>>() {
+            @Override
+            protected Map<String, MessageDigest> initialValue() {
+                return new HashMap<>();
+            }
+        };
 
     static {
         DEFAULT_DERIVED_KEY_LENGTHS.put(XMLSignature.ALGO_ID_MAC_HMAC_NOT_RECOMMENDED_MD5, 128);
@@ -228,18 +235,61 @@ public final class KeyUtils {
 
     /**
      * Generate a (SHA1) digest of the input bytes. The MessageDigest instance that backs this
-     * method is cached for efficiency.
+     * method is cached (per thread) for efficiency.
      * @param inputBytes the bytes to digest
      * @return the digest of the input bytes
      * @throws WSSecurityException
      */
-    public static synchronized byte[] generateDigest(byte[] inputBytes) throws WSSecurityException {
+    public static byte[] generateDigest(byte[] inputBytes) throws WSSecurityException {
+        return generateDigest(inputBytes, "SHA-1");
+    }
+
+    /**
+     * Generate a digest of the input bytes using the given algorithm. The MessageDigest instance that
+     * backs this method is cached (per thread) for efficiency.
+     * @param inputBytes the bytes to digest
+     * @param algorithm the (JCA) name of the digest algorithm, e.g. "SHA-256"
+     * @return the digest of the input bytes
+     * @throws WSSecurityException
+     */
+    public static byte[] generateDigest(byte[] inputBytes, String algorithm) throws WSSecurityException {
+        return getCachedMessageDigest(algorithm).digest(inputBytes);
+    }
+
+    /**
+     * Get a new MessageDigest instance of the given algorithm. It is cloned from an instance that is
+     * cached for the current thread, which is cheaper than MessageDigest.getInstance. The caller owns
+     * the returned instance, so it can be held while other digests are computed by this class.
+     * @param algorithm the (JCA) name of the digest algorithm, e.g. "SHA-256"
+     * @return a MessageDigest instance of the given algorithm
+     * @throws WSSecurityException
+     */
+    public static MessageDigest getMessageDigest(String algorithm) throws WSSecurityException {
         try {
-            if (digest == null) {
-                digest = MessageDigest.getInstance("SHA-1");
-            }
-            return digest.digest(inputBytes);
-        } catch (Exception e) {
+            return (MessageDigest)getCachedMessageDigest(algorithm).clone();
+        } catch (CloneNotSupportedException e) {
+            return createMessageDigest(algorithm);
+        }
+    }
+
+    /**
+     * Get the MessageDigest instance of the given algorithm that is cached for the current thread. It
+     * must only be used for a single digest() call, which leaves it reset for the next caller.
+     */
+    private static MessageDigest getCachedMessageDigest(String algorithm) throws WSSecurityException {
+        Map<String, MessageDigest> digests = DIGESTS.get();
+        MessageDigest digest = digests.get(algorithm);
+        if (digest == null) {
+            digest = createMessageDigest(algorithm);
+            digests.put(algorithm, digest);
+        }
+        return digest;
+    }
+
+    private static MessageDigest createMessageDigest(String algorithm) throws WSSecurityException {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
             throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e, "empty",
                                           new Object[] {"Error in generating digest"}
             );
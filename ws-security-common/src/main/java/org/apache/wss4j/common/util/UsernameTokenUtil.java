@@ -21,7 +21,6 @@ package org.apache.wss4j.common.util;
 
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.xml.security.stax.ext.XMLSecurityConstants;
@@ -56,15 +55,7 @@ public final class UsernameTokenUtil {
         System.arraycopy(password, 0, pwSalt, 0, password.length);
         System.arraycopy(salt, 0, pwSalt, password.length, salt.length);
 
-        MessageDigest sha = null;
-        try {
-            sha = MessageDigest.getInstance("SHA1");
-        } catch (NoSuchAlgorithmException e) {
-            LOG.debug(e.getMessage(), e);
-            throw new WSSecurityException(
-                WSSecurityException.ErrorCode.FAILURE, e, "decoding.general"
-            );
-        }
+        MessageDigest sha = KeyUtils.getMessageDigest("SHA-1");
         //
         // Make the first hash round with start value
         //
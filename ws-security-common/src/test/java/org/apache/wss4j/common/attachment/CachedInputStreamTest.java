@@ -0,0 +1,160 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.attachment;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.EnumSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.wss4j.common.util.AttachmentUtils;
+import org.apache.wss4j.common.util.CachedInputStream;
+import org.apache.wss4j.common.util.CachedOutputStream;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+public class CachedInputStreamTest {
+
+    @Test
+    public void testInMemory() throws Exception {
+        byte[] data = randomBytes(1000);
+        CachedInputStream inputStream = new CachedInputStream(new ByteArrayInputStream(data), 4096, null);
+        inputStream.mark(0);
+        Assert.assertArrayEquals(data, readFully(inputStream));
+        inputStream.reset();
+        Assert.assertArrayEquals(data, readFully(inputStream));
+        inputStream.close();
+    }
+
+    @Test
+    public void testSpillToDisk() throws Exception {
+        File tempDirectory = Files.createTempDirectory("wss4j-cache").toFile();
+        try {
+            byte[] data = randomBytes(100000);
+            InputStream inputStream =
+                AttachmentUtils.setupResettableAttachmentStream(
+                    new NoMarkInputStream(data), 1024, tempDirectory);
+            Assert.assertTrue(inputStream instanceof CachedInputStream);
+
+            Assert.assertEquals(data[0] & 0xff, inputStream.read());
+            byte[] first = readFully(inputStream);
+            Assert.assertEquals(data.length - 1, first.length);
+            Assert.assertEquals(1, tempDirectory.list().length);
+
+            inputStream.reset();
+            Assert.assertArrayEquals(data, readFully(inputStream));
+
+            inputStream.close();
+            Assert.assertEquals(0, tempDirectory.list().length);
+        } finally {
+            tempDirectory.delete();
+        }
+    }
+
+    @Test
+    public void testMarkSupportedStream() throws Exception {
+        InputStream inputStream = new ByteArrayInputStream(new byte[10]);
+        Assert.assertSame(inputStream,
+            AttachmentUtils.setupResettableAttachmentStream(inputStream, 1024, null));
+    }
+
+    @Test
+    public void testCachedOutputStream() throws Exception {
+        File tempDirectory = Files.createTempDirectory("wss4j-cache").toFile();
+        try {
+            byte[] data = randomBytes(50000);
+            CachedOutputStream outputStream = new CachedOutputStream(2048, tempDirectory);
+            outputStream.write(data, 0, 1000);
+            Assert.assertFalse(outputStream.isSpilled());
+            for (int i = 1000; i < data.length; i++) {
+                outputStream.write(data[i]);
+            }
+            Assert.assertTrue(outputStream.isSpilled());
+            Assert.assertEquals(data.length, outputStream.size());
+
+            InputStream inputStream = outputStream.getInputStream();
+            Assert.assertArrayEquals(data, readFully(inputStream));
+            inputStream.close();
+            Assert.assertEquals(0, tempDirectory.list().length);
+        } finally {
+            tempDirectory.delete();
+        }
+    }
+
+    @Test
+    public void testTemporaryFilePermissions() throws Exception {
+        File tempDirectory = Files.createTempDirectory("wss4j-cache").toFile();
+        Assume.assumeTrue(
+            tempDirectory.toPath().getFileSystem().supportedFileAttributeViews().contains("posix"));
+        try {
+            byte[] data = randomBytes(5000);
+            CachedOutputStream outputStream = new CachedOutputStream(1024, tempDirectory);
+            outputStream.write(data, 0, data.length);
+            Assert.assertTrue(outputStream.isSpilled());
+
+            File[] files = tempDirectory.listFiles();
+            Assert.assertEquals(1, files.length);
+            Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(files[0].toPath());
+            Assert.assertEquals(
+                EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE), permissions);
+
+            InputStream inputStream = outputStream.getInputStream();
+            Assert.assertArrayEquals(data, readFully(inputStream));
+            inputStream.close();
+            Assert.assertFalse(files[0].exists());
+        } finally {
+            tempDirectory.delete();
+        }
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+    private static byte[] readFully(InputStream inputStream) throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[777];
+        int n;
+        while ((n = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, n);
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static class NoMarkInputStream extends ByteArrayInputStream {
+
+        NoMarkInputStream(byte[] data) {
+            super(data);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Some tests for the ConcurrentReplayCache.
+ */
+public class ConcurrentReplayCacheTest extends Assert {
+
+    @Test
+    public void testAddAndContains() throws Exception {
+        ReplayCache replayCache = ReplayCacheFactory.newConcurrentInstance().newReplayCache("test", null);
+        assertTrue(replayCache instanceof ConcurrentReplayCache);
+
+        assertFalse(replayCache.contains("id1"));
+        replayCache.add("id1");
+        assertTrue(replayCache.contains("id1"));
+        assertFalse(replayCache.contains(""));
+        assertFalse(replayCache.contains(null));
+
+        ConcurrentReplayCache cache = (ConcurrentReplayCache)replayCache;
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        replayCache.close();
+        assertFalse(replayCache.contains("id1"));
+    }
+
+    @Test
+    public void testExpiry() throws Exception {
+        TestClock clock = new TestClock();
+        ConcurrentReplayCache cache = new ConcurrentReplayCache(100, clock);
+        cache.add("id1", 1L);
+        assertTrue(cache.contains("id1"));
+
+        clock.advance(3000L);
+        assertFalse(cache.contains("id1"));
+
+        cache.processTokenExpiry();
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.getExpirationCount());
+
+        cache.close();
+    }
+
+    @Test
+    public void testFullCacheFailsClosed() throws Exception {
+        TestClock clock = new TestClock();
+        ConcurrentReplayCache cache = new ConcurrentReplayCache(100, clock);
+        cache.add("shortLived", 10L);
+        for (int i = 0; i < 99; i++) {
+            cache.add("id" + i, 60L);
+        }
+        assertEquals(100, cache.size());
+
+        // No identifier that has not expired is evicted, and a new identifier is reported as a replay
+        cache.add("new", 60L);
+        assertEquals(100, cache.size());
+        assertTrue(cache.contains("shortLived"));
+        assertTrue(cache.contains("id0"));
+        assertTrue(cache.contains("new"));
+        assertEquals(2, cache.getRejectionCount());
+
+        // Once an identifier has expired there is room again
+        clock.advance(11000L);
+        assertFalse(cache.contains("new"));
+        cache.add("new", 60L);
+        assertTrue(cache.contains("new"));
+        assertEquals(1, cache.getExpirationCount());
+        assertEquals(100, cache.size());
+
+        cache.close();
+    }
+
+}
@@ -0,0 +1,118 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.cache;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Some tests for the EncryptedKeyCache.
+ */
+public class EncryptedKeyCacheTest extends Assert {
+
+    private static final String RSA_OAEP = "http://www.w3.org/2001/04/xmlenc#rsa-oaep-mgf1p";
+    private static final String SHA256 = "http://www.w3.org/2001/04/xmlenc#sha256";
+
+    @Test
+    public void testGetAndPut() throws Exception {
+        EncryptedKeyCache cache = new EncryptedKeyCache();
+        PublicKey publicKey = generatePublicKey();
+        String cacheKey = EncryptedKeyCache.getCacheKey(new byte[] {1, 2, 3}, RSA_OAEP, null, null, null, publicKey);
+
+        assertNull(cache.get(cacheKey));
+        byte[] key = new byte[] {4, 5, 6};
+        cache.put(cacheKey, key);
+        key[0] = 0;
+
+        byte[] cachedKey = cache.get(cacheKey);
+        assertArrayEquals(new byte[] {4, 5, 6}, cachedKey);
+        cachedKey[0] = 0;
+        assertArrayEquals(new byte[] {4, 5, 6}, cache.get(cacheKey));
+
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(2.0 / 3.0, cache.getHitRate(), 0.001);
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertNull(cache.get(cacheKey));
+    }
+
+    @Test
+    public void testCacheKey() throws Exception {
+        PublicKey publicKey = generatePublicKey();
+        byte[] encryptedKey = new byte[] {1, 2, 3};
+        String cacheKey = EncryptedKeyCache.getCacheKey(encryptedKey, RSA_OAEP, null, null, null, publicKey);
+        assertEquals(cacheKey, EncryptedKeyCache.getCacheKey(encryptedKey, RSA_OAEP, null, null, null, publicKey));
+
+        assertNotEquals(cacheKey,
+            EncryptedKeyCache.getCacheKey(new byte[] {1, 2, 4}, RSA_OAEP, null, null, null, publicKey));
+        assertNotEquals(cacheKey,
+            EncryptedKeyCache.getCacheKey(encryptedKey, RSA_OAEP, SHA256, null, null, publicKey));
+        assertNotEquals(cacheKey,
+            EncryptedKeyCache.getCacheKey(encryptedKey, RSA_OAEP, null, null, new byte[0], publicKey));
+        assertNotEquals(cacheKey,
+            EncryptedKeyCache.getCacheKey(encryptedKey, RSA_OAEP, null, null, null, generatePublicKey()));
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        EncryptedKeyCache cache = new EncryptedKeyCache(2, EncryptedKeyCache.DEFAULT_TTL);
+        cache.put("id1", new byte[] {1});
+        cache.put("id2", new byte[] {2});
+        assertNotNull(cache.get("id1"));
+
+        // The least recently used key is evicted
+        cache.put("id3", new byte[] {3});
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertNull(cache.get("id2"));
+        assertNotNull(cache.get("id1"));
+        assertNotNull(cache.get("id3"));
+    }
+
+    @Test
+    public void testExpiry() throws Exception {
+        TestClock clock = new TestClock();
+        EncryptedKeyCache cache = new EncryptedKeyCache(EncryptedKeyCache.DEFAULT_MAX_ENTRIES, 1L, clock);
+        cache.put("id1", new byte[] {1});
+        assertNotNull(cache.get("id1"));
+
+        clock.advance(1500L);
+        assertNull(cache.get("id1"));
+        assertEquals(0, cache.size());
+
+        cache.put("id2", new byte[] {2});
+        clock.advance(1500L);
+        cache.removeExpired();
+        assertEquals(0, cache.size());
+    }
+
+    private static PublicKey generatePublicKey() throws Exception {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(1024);
+        KeyPair keyPair = keyPairGenerator.generateKeyPair();
+        return keyPair.getPublic();
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.cache;
+
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.util.Arrays;
+
+import org.apache.wss4j.common.util.KeyUtils;
+import org.apache.xml.security.utils.XMLUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Some tests for the EncryptedKeySessionCache.
+ */
+public class EncryptedKeySessionCacheTest extends Assert {
+
+    private static final String AES_128 = "http://www.w3.org/2001/04/xmlenc#aes128-cbc";
+    private static final String AES_256 = "http://www.w3.org/2001/04/xmlenc#aes256-cbc";
+    private static final String RSA_OAEP = "http://www.w3.org/2001/04/xmlenc#rsa-oaep-mgf1p";
+
+    @Test
+    public void testSession() throws Exception {
+        EncryptedKeySessionCache cache = new EncryptedKeySessionCache(EncryptedKeySessionCache.DEFAULT_LIFETIME, 3);
+        PublicKey publicKey = generatePublicKey();
+        String sessionId = EncryptedKeySessionCache.getSessionId(publicKey, AES_128, RSA_OAEP, null, null);
+        assertEquals(sessionId, EncryptedKeySessionCache.getSessionId(publicKey, AES_128, RSA_OAEP, null, null));
+        assertNotEquals(sessionId, EncryptedKeySessionCache.getSessionId(publicKey, AES_256, RSA_OAEP, null, null));
+        assertNotEquals(sessionId,
+            EncryptedKeySessionCache.getSessionId(generatePublicKey(), AES_128, RSA_OAEP, null, null));
+
+        assertNull(cache.getSessionKey(sessionId));
+        byte[] key = new byte[] {1, 2, 3};
+        byte[] encryptedKey = new byte[] {4, 5, 6};
+        cache.putSessionKey(sessionId, key, encryptedKey);
+        key[0] = 0;
+
+        // The first message carried the EncryptedKey, so two more messages can reuse the key
+        String sha1 = XMLUtils.encodeToString(KeyUtils.generateDigest(encryptedKey));
+        for (int i = 0; i < 2; i++) {
+            EncryptedKeySessionCache.SessionKey sessionKey = cache.getSessionKey(sessionId);
+            assertNotNull(sessionKey);
+            assertArrayEquals(new byte[] {1, 2, 3}, sessionKey.getKey());
+            assertEquals(sha1, sessionKey.getSha1Identifier());
+        }
+        assertNull(cache.getSessionKey(sessionId));
+        assertEquals(0, cache.size());
+        assertEquals(2, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+
+        // Rotate the key
+        cache.putSessionKey(sessionId, new byte[] {7, 8, 9}, new byte[] {10});
+        assertArrayEquals(new byte[] {7, 8, 9}, cache.getSessionKey(sessionId).getKey());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertNull(cache.getSessionKey(sessionId));
+    }
+
+    @Test
+    public void testExpiry() throws Exception {
+        TestClock clock = new TestClock();
+        EncryptedKeySessionCache cache =
+            new EncryptedKeySessionCache(1L, EncryptedKeySessionCache.DEFAULT_MAX_MESSAGES, clock);
+        cache.putSessionKey("id1", new byte[] {1}, new byte[] {2});
+        assertNotNull(cache.getSessionKey("id1"));
+
+        clock.advance(1500L);
+        assertNull(cache.getSessionKey("id1"));
+        assertEquals(0, cache.size());
+
+        // Expired sessions are removed when a new session is started
+        cache.putSessionKey("id2", new byte[] {1}, new byte[] {2});
+        clock.advance(1500L);
+        cache.putSessionKey("id3", new byte[] {1}, new byte[] {2});
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testConcurrentSenders() throws Exception {
+        final EncryptedKeySessionCache cache =
+            new EncryptedKeySessionCache(EncryptedKeySessionCache.DEFAULT_LIFETIME, 100);
+        cache.putSessionKey("id1", new byte[] {1, 2, 3}, new byte[] {4});
+
+        final int[] keys = new int[8];
+        Thread[] threads = new Thread[keys.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 50; j++) {
+                        EncryptedKeySessionCache.SessionKey sessionKey = cache.getSessionKey("id1");
+                        if (sessionKey != null && Arrays.equals(new byte[] {1, 2, 3}, sessionKey.getKey())) {
+                            keys[index]++;
+                        }
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        int total = 0;
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].join();
+            total += keys[i];
+        }
+
+        // The session key is never handed out for more than the maximum number of messages
+        assertEquals(99, total);
+        assertEquals(99, cache.getHitCount());
+    }
+
+    private static PublicKey generatePublicKey() throws Exception {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(1024);
+        return keyPairGenerator.generateKeyPair().getPublic();
+    }
+}
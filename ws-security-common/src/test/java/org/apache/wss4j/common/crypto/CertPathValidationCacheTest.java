@@ -0,0 +1,184 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.crypto;
+
+import java.math.BigInteger;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.cert.PKIXParameters;
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.Test;
+
+/**
+ * Test the caching of successful certificate path validations in Merlin.
+ */
+public class CertPathValidationCacheTest extends org.junit.Assert {
+
+    @Test
+    public void testCachedValidation() throws Exception {
+        KeyPair caKeyPair = generateKeyPair();
+        X509Certificate caCert =
+            createCertificate("CN=CA", caKeyPair.getPublic(), "CN=CA", caKeyPair.getPrivate(), true);
+        X509Certificate cert =
+            createCertificate("CN=Client", generateKeyPair().getPublic(), "CN=CA", caKeyPair.getPrivate(), false);
+
+        Merlin crypto = new Merlin();
+        crypto.setTrustStore(createTrustStore(caCert));
+        CertPathValidationCache cache = new CertPathValidationCache();
+        crypto.setCertPathValidationCache(cache);
+
+        X509Certificate[] certs = new X509Certificate[] {cert};
+        crypto.verifyTrust(certs, false, null, null);
+        assertEquals(1, cache.size());
+        assertEquals(0, cache.getHitCount());
+
+        crypto.verifyTrust(certs, false, null, null);
+        assertEquals(1, cache.getHitCount());
+
+        // The revocation flag is part of the key
+        assertFalse(cache.isValidated(certs, true));
+
+        // Replacing the truststore invalidates the cache
+        crypto.setTrustStore(createTrustStore(
+            createCertificate("CN=CA", generateKeyPair().getPublic(), "CN=CA", caKeyPair.getPrivate(), true)));
+        assertEquals(0, cache.size());
+        try {
+            crypto.verifyTrust(certs, false, null, null);
+            fail("Failure expected on an untrusted certificate");
+        } catch (WSSecurityException ex) {
+            assertEquals(WSSecurityException.ErrorCode.FAILURE, ex.getErrorCode());
+        }
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testStoreSwappedDuringValidation() throws Exception {
+        KeyPair caKeyPair = generateKeyPair();
+        X509Certificate caCert =
+            createCertificate("CN=CA", caKeyPair.getPublic(), "CN=CA", caKeyPair.getPrivate(), true);
+        X509Certificate cert =
+            createCertificate("CN=Client", generateKeyPair().getPublic(), "CN=CA", caKeyPair.getPrivate(), false);
+        final KeyStore untrustedStore = createTrustStore(
+            createCertificate("CN=CA", generateKeyPair().getPublic(), "CN=CA", caKeyPair.getPrivate(), true));
+
+        // Replace the truststore once the trust anchors of the validation have been collected
+        Merlin crypto = new Merlin() {
+            private boolean swapped;
+
+            @Override
+            protected PKIXParameters createPKIXParameters(
+                Set<TrustAnchor> trustAnchors, boolean enableRevocation
+            ) throws InvalidAlgorithmParameterException {
+                if (!swapped) {
+                    swapped = true;
+                    setTrustStore(untrustedStore);
+                }
+                return super.createPKIXParameters(trustAnchors, enableRevocation);
+            }
+        };
+        crypto.setTrustStore(createTrustStore(caCert));
+        CertPathValidationCache cache = new CertPathValidationCache();
+        crypto.setCertPathValidationCache(cache);
+
+        // The validation succeeds with the previous truststore, but its result must not be cached
+        X509Certificate[] certs = new X509Certificate[] {cert};
+        crypto.verifyTrust(certs, false, null, null);
+        assertEquals(0, cache.size());
+        try {
+            crypto.verifyTrust(certs, false, null, null);
+            fail("Failure expected on an untrusted certificate");
+        } catch (WSSecurityException ex) {
+            assertEquals(WSSecurityException.ErrorCode.FAILURE, ex.getErrorCode());
+        }
+        assertEquals(0, cache.getHitCount());
+    }
+
+    @Test
+    public void testAddValidatedAfterClear() throws Exception {
+        KeyPair caKeyPair = generateKeyPair();
+        X509Certificate caCert =
+            createCertificate("CN=CA", caKeyPair.getPublic(), "CN=CA", caKeyPair.getPrivate(), true);
+        X509Certificate[] certs = new X509Certificate[] {caCert};
+
+        CertPathValidationCache cache = new CertPathValidationCache();
+        long generation = cache.getGeneration();
+        cache.clear();
+        cache.addValidated(certs, false, null, generation);
+        assertFalse(cache.isValidated(certs, false));
+
+        cache.addValidated(certs, false, null, cache.getGeneration());
+        assertTrue(cache.isValidated(certs, false));
+    }
+
+    @Test
+    public void testConfiguration() throws Exception {
+        Properties properties = new Properties();
+        properties.put(Merlin.PREFIX + Merlin.CERT_PATH_CACHE_SIZE, "10");
+        properties.put(Merlin.PREFIX + Merlin.CERT_PATH_CACHE_TTL, "60");
+        Merlin crypto = new Merlin(properties, this.getClass().getClassLoader(), null);
+        assertNotNull(crypto.getCertPathValidationCache());
+
+        crypto = new Merlin(new Properties(), this.getClass().getClassLoader(), null);
+        assertNull(crypto.getCertPathValidationCache());
+    }
+
+    private static KeyPair generateKeyPair() throws Exception {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(2048);
+        return keyPairGenerator.generateKeyPair();
+    }
+
+    private static X509Certificate createCertificate(
+        String subject, PublicKey publicKey, String issuer, PrivateKey issuerKey, boolean ca
+    ) throws Exception {
+        long now = System.currentTimeMillis();
+        X509v3CertificateBuilder builder =
+            new JcaX509v3CertificateBuilder(new X500Name(issuer), BigInteger.valueOf(now),
+                                            new Date(now - 60000L), new Date(now + 3600000L),
+                                            new X500Name(subject), publicKey);
+        builder.addExtension(Extension.basicConstraints, true, new BasicConstraints(ca));
+        return new JcaX509CertificateConverter().getCertificate(
+            builder.build(new JcaContentSignerBuilder("SHA256withRSA").build(issuerKey)));
+    }
+
+    private static KeyStore createTrustStore(X509Certificate caCert) throws Exception {
+        KeyStore trustStore = KeyStore.getInstance("JKS");
+        trustStore.load(null, null);
+        trustStore.setCertificateEntry("ca", caCert);
+        return trustStore;
+    }
+}
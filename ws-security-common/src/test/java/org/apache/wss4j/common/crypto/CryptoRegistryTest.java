@@ -0,0 +1,163 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.crypto;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.KeyStore;
+import java.util.Properties;
+
+import javax.security.auth.callback.Callback;
+import javax.security.auth.callback.CallbackHandler;
+import javax.security.auth.callback.UnsupportedCallbackException;
+
+import org.apache.wss4j.common.ext.WSPasswordCallback;
+import org.apache.wss4j.common.util.Loader;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Test the sharing and the reloading of Crypto instances via the CryptoRegistry.
+ */
+public class CryptoRegistryTest extends org.junit.Assert {
+
+    @After
+    public void clearRegistry() {
+        CryptoRegistry.clear();
+    }
+
+    @Test
+    public void testSharedInstances() throws Exception {
+        Properties properties = CryptoFactory.getProperties("wss40.properties", this.getClass().getClassLoader());
+
+        // Without the "shared" property, every call loads a new instance
+        assertNotSame(CryptoFactory.getInstance(properties), CryptoFactory.getInstance(properties));
+
+        properties.put(CryptoRegistry.SHARED, "true");
+        Crypto crypto = CryptoFactory.getInstance(properties);
+        assertSame(crypto, CryptoFactory.getInstance(properties));
+
+        // The properties are normalized, so the old prefix and extra whitespace map to the same instance
+        Properties oldProperties = new Properties();
+        oldProperties.put("org.apache.ws.security.crypto.provider", "org.apache.wss4j.common.crypto.Merlin");
+        oldProperties.put("org.apache.ws.security.crypto.shared", "true");
+        oldProperties.put("org.apache.ws.security.crypto.merlin.keystore.type", "jks ");
+        oldProperties.put("org.apache.ws.security.crypto.merlin.keystore.password", "security");
+        oldProperties.put("org.apache.ws.security.crypto.merlin.keystore.alias", " wss40");
+        oldProperties.put("org.apache.ws.security.crypto.merlin.keystore.file", "keys/wss40.jks");
+        assertSame(crypto, CryptoFactory.getInstance(oldProperties));
+
+        // Different properties map to a different instance
+        properties.put(Merlin.PREFIX + Merlin.KEYSTORE_ALIAS, "wss40dsa");
+        assertNotSame(crypto, CryptoFactory.getInstance(properties));
+
+        CryptoRegistry.clear();
+        properties.put(Merlin.PREFIX + Merlin.KEYSTORE_ALIAS, "wss40");
+        assertNotSame(crypto, CryptoFactory.getInstance(properties));
+    }
+
+    @Test
+    public void testSharedWithPasswordEncryptor() throws Exception {
+        Properties properties = CryptoFactory.getProperties("wss40.properties", this.getClass().getClassLoader());
+        properties.put(CryptoRegistry.SHARED, "true");
+        ClassLoader classLoader = this.getClass().getClassLoader();
+
+        // The handlers create a new PasswordEncryptor per request, which must not defeat the sharing
+        Crypto crypto =
+            CryptoFactory.getInstance(properties, classLoader, new JasyptPasswordEncryptor("password"));
+        assertSame(crypto,
+                   CryptoFactory.getInstance(properties, classLoader, new JasyptPasswordEncryptor("password")));
+        assertNotSame(crypto, CryptoFactory.getInstance(properties, classLoader, null));
+
+        // A different master password must not share the Crypto instance (and the encryptor it holds)
+        Crypto otherCrypto =
+            CryptoFactory.getInstance(properties, classLoader, new JasyptPasswordEncryptor("otherPassword"));
+        assertNotSame(crypto, otherCrypto);
+        assertSame(otherCrypto,
+                   CryptoFactory.getInstance(properties, classLoader, new JasyptPasswordEncryptor("otherPassword")));
+        assertNotSame(crypto, CryptoFactory.getInstance(properties, classLoader,
+                                                        new JasyptPasswordEncryptor("password", "PBEWithMD5AndDES")));
+
+        // The master password of a CallbackHandler is compared, not the CallbackHandler instance
+        PasswordEncryptor passwordEncryptor = new JasyptPasswordEncryptor(newCallbackHandler("password"));
+        assertSame(crypto, CryptoFactory.getInstance(properties, classLoader, passwordEncryptor));
+        passwordEncryptor = new JasyptPasswordEncryptor(newCallbackHandler("otherPassword"));
+        assertSame(otherCrypto, CryptoFactory.getInstance(properties, classLoader, passwordEncryptor));
+    }
+
+    @Test
+    public void testReload() throws Exception {
+        Path directory = Files.createTempDirectory("wss4j-crypto");
+        Path keystoreFile = directory.resolve("keystore.jks");
+        try {
+            copy("keys/wss40CA.jks", keystoreFile);
+
+            Properties properties = new Properties();
+            properties.put(CryptoRegistry.RELOAD, "true");
+            properties.put(Merlin.PREFIX + Merlin.KEYSTORE_TYPE, "jks");
+            properties.put(Merlin.PREFIX + Merlin.KEYSTORE_PASSWORD, "security");
+            properties.put(Merlin.PREFIX + Merlin.KEYSTORE_FILE, keystoreFile.toString());
+
+            Merlin crypto = (Merlin)CryptoFactory.getInstance(properties);
+            KeyStore keystore = crypto.getKeyStore();
+            assertTrue(keystore.containsAlias("wss40ca"));
+            assertFalse(keystore.containsAlias("wss40"));
+
+            copy("keys/wss40.jks", keystoreFile);
+            long timeout = System.currentTimeMillis() + 30000L;
+            while (crypto.getKeyStore() == keystore && System.currentTimeMillis() < timeout) {
+                Thread.sleep(100L);
+            }
+            assertNotSame(keystore, crypto.getKeyStore());
+            assertTrue(crypto.getKeyStore().containsAlias("wss40"));
+            assertNotNull(crypto.getPrivateKey("wss40", "security"));
+
+            // A store that cannot be loaded does not replace the current store
+            keystore = crypto.getKeyStore();
+            Files.write(keystoreFile, new byte[] {1, 2, 3});
+            Thread.sleep(2000L);
+            assertSame(keystore, crypto.getKeyStore());
+            assertSame(crypto, CryptoFactory.getInstance(properties));
+        } finally {
+            Files.deleteIfExists(keystoreFile);
+            Files.delete(directory);
+        }
+    }
+
+    private static CallbackHandler newCallbackHandler(final String masterPassword) {
+        return new CallbackHandler() {
+            @Override
+            public void handle(Callback[] callbacks) throws IOException, UnsupportedCallbackException {
+                for (Callback callback : callbacks) {
+                    ((WSPasswordCallback)callback).setPassword(masterPassword);
+                }
+            }
+        };
+    }
+
+    private void copy(String resource, Path target) throws Exception {
+        try (InputStream is = Loader.loadInputStream(this.getClass().getClassLoader(), resource)) {
+            Files.copy(is, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
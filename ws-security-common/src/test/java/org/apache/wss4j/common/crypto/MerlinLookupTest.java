@@ -0,0 +1,127 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.crypto;
+
+import java.io.InputStream;
+import java.security.KeyFactory;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.PublicKey;
+import java.security.cert.X509Certificate;
+import java.security.spec.X509EncodedKeySpec;
+
+import org.apache.wss4j.common.util.Loader;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.Test;
+
+/**
+ * Test the indexed certificate lookups of Merlin.
+ */
+public class MerlinLookupTest extends org.junit.Assert {
+
+    @Test
+    public void testLookups() throws Exception {
+        Merlin crypto = new Merlin();
+        crypto.setKeyStore(loadKeyStore("keys/wss40_server.jks"));
+
+        CryptoType cryptoType = new CryptoType(CryptoType.TYPE.ALIAS);
+        cryptoType.setAlias("wss40_server");
+        X509Certificate cert = crypto.getX509Certificates(cryptoType)[0];
+
+        // Issuer Serial
+        cryptoType = new CryptoType(CryptoType.TYPE.ISSUER_SERIAL);
+        cryptoType.setIssuerSerial(cert.getIssuerX500Principal().getName(), cert.getSerialNumber());
+        assertEquals(cert, crypto.getX509Certificates(cryptoType)[0]);
+
+        // Thumbprint
+        cryptoType = new CryptoType(CryptoType.TYPE.THUMBPRINT_SHA1);
+        cryptoType.setBytes(MessageDigest.getInstance("SHA-1").digest(cert.getEncoded()));
+        assertEquals(cert, crypto.getX509Certificates(cryptoType)[0]);
+
+        // SKI
+        cryptoType = new CryptoType(CryptoType.TYPE.SKI_BYTES);
+        cryptoType.setBytes(crypto.getSKIBytesFromCert(cert));
+        assertEquals(cert, crypto.getX509Certificates(cryptoType)[0]);
+
+        // Subject DN
+        cryptoType = new CryptoType(CryptoType.TYPE.SUBJECT_DN);
+        cryptoType.setSubjectDN(cert.getSubjectX500Principal().getName());
+        assertEquals(cert, crypto.getX509Certificates(cryptoType)[0]);
+
+        assertEquals("wss40_server", crypto.getX509Identifier(cert));
+        crypto.verifyTrust(cert.getPublicKey());
+    }
+
+    @Test
+    public void testReplacedKeyStore() throws Exception {
+        Merlin crypto = new Merlin();
+        crypto.setKeyStore(loadKeyStore("keys/wss40_server.jks"));
+
+        CryptoType cryptoType = new CryptoType(CryptoType.TYPE.ALIAS);
+        cryptoType.setAlias("wss40_server");
+        X509Certificate cert = crypto.getX509Certificates(cryptoType)[0];
+        assertEquals("wss40_server", crypto.getX509Identifier(cert));
+
+        // The index must be rebuilt when the KeyStore is replaced
+        crypto.setKeyStore(loadKeyStore("keys/rsa2048.jks", "password"));
+        assertNull(crypto.getX509Identifier(cert));
+
+        // ... or when an entry is added to the KeyStore
+        crypto.getKeyStore().setCertificateEntry("server", cert);
+        assertEquals("server", crypto.getX509Identifier(cert));
+
+        // An entry that is replaced in place requires an explicit reload of the index
+        cryptoType.setAlias("wss40");
+        X509Certificate otherCert = CryptoFactory.getInstance("wss40.properties").getX509Certificates(cryptoType)[0];
+        crypto.getKeyStore().setCertificateEntry("server", otherCert);
+        crypto.reloadStoreIndexes();
+        assertNull(crypto.getX509Identifier(cert));
+        assertEquals("server", crypto.getX509Identifier(otherCert));
+    }
+
+    @Test
+    public void testPublicKeyOfOtherProvider() throws Exception {
+        Merlin crypto = new Merlin();
+        crypto.setKeyStore(loadKeyStore("keys/wss40_server.jks"));
+
+        CryptoType cryptoType = new CryptoType(CryptoType.TYPE.ALIAS);
+        cryptoType.setAlias("wss40_server");
+        PublicKey publicKey = crypto.getX509Certificates(cryptoType)[0].getPublicKey();
+
+        // An equal key of another provider is found by its encoding
+        KeyFactory keyFactory = KeyFactory.getInstance(publicKey.getAlgorithm(), new BouncyCastleProvider());
+        PublicKey otherPublicKey = keyFactory.generatePublic(new X509EncodedKeySpec(publicKey.getEncoded()));
+        assertNotEquals(publicKey.getClass(), otherPublicKey.getClass());
+        crypto.verifyTrust(otherPublicKey);
+    }
+
+    private static KeyStore loadKeyStore(String location) throws Exception {
+        return loadKeyStore(location, "security");
+    }
+
+    private static KeyStore loadKeyStore(String location, String password) throws Exception {
+        KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+        ClassLoader loader = Loader.getClassLoader(MerlinLookupTest.class);
+        try (InputStream input = Merlin.loadInputStream(loader, location)) {
+            keyStore.load(input, password.toCharArray());
+        }
+        return keyStore;
+    }
+}
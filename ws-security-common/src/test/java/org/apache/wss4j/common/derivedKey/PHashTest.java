@@ -0,0 +1,174 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.derivedKey;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.xml.security.utils.XMLUtils;
+import org.junit.Test;
+
+/**
+ * Test the P_SHA1 and P_SHA256 derivation algorithms, and the DerivedKeyCache.
+ */
+public class PHashTest extends org.junit.Assert {
+
+    private static final byte[] SECRET = hex("9bbe436ba940f017b17652849a71db35");
+    private static final byte[] SEED = concat(
+        "test label".getBytes(StandardCharsets.UTF_8), hex("a0ba9f936cda311827a6f796ffd5198c")
+    );
+
+    @Test
+    public void testPSHA256() throws Exception {
+        // The TLS 1.2 PRF (SHA-256) test vector
+        byte[] expected = hex(
+            "e3f229ba727be17b8d122620557cd453c2aab21d07c3d495329b52d4e61edb5a6b301791e90d35c9c9a46b4e14ba"
+            + "f9af0fa022f7077def17abfd3797c0564bab4fbc91666e9def9b97fce34f796789baa48082d122ee42c5a72e5a51"
+            + "10fff70187347b66"
+        );
+        DerivationAlgorithm algorithm =
+            AlgoFactory.getInstance(ConversationConstants.DerivationAlgorithm.P_SHA_256);
+        assertArrayEquals(expected, algorithm.createKey(SECRET, SEED, 0, expected.length));
+    }
+
+    @Test
+    public void testOffsets() throws Exception {
+        DerivationAlgorithm algorithm =
+            AlgoFactory.getInstance(ConversationConstants.DerivationAlgorithm.P_SHA_1);
+        byte[] expected = pHash("HmacSHA1", SECRET, SEED, 200);
+        assertArrayEquals(expected, algorithm.createKey(SECRET, SEED, 0, expected.length));
+
+        // Offsets and lengths within, at and across the 20 byte block boundaries
+        int[] offsets = {0, 1, 19, 20, 21, 39, 40, 100, 159};
+        int[] lengths = {0, 1, 16, 20, 24, 32, 41};
+        for (int offset : offsets) {
+            for (int length : lengths) {
+                assertArrayEquals(
+                    Arrays.copyOfRange(expected, offset, offset + length),
+                    algorithm.createKey(SECRET, SEED, offset, length)
+                );
+            }
+        }
+
+        algorithm = AlgoFactory.getInstance(ConversationConstants.DerivationAlgorithm.P_SHA_256);
+        expected = pHash("HmacSHA256", SECRET, SEED, 200);
+        for (int offset : offsets) {
+            assertArrayEquals(
+                Arrays.copyOfRange(expected, offset, offset + 32),
+                algorithm.createKey(SECRET, SEED, offset, 32)
+            );
+        }
+    }
+
+    @Test
+    public void testDerivedKeyUtils() throws Exception {
+        byte[] nonce = XMLUtils.decode("Kq/1ptgjZpX2g1q6MiJcSfTX");
+        byte[] labelAndNonce = concat(
+            (ConversationConstants.DEFAULT_LABEL + ConversationConstants.DEFAULT_LABEL)
+                .getBytes(StandardCharsets.UTF_8), nonce
+        );
+        byte[] expected = Arrays.copyOfRange(pHash("HmacSHA1", SECRET, labelAndNonce, 48), 16, 48);
+
+        byte[] key = DerivedKeyUtils.deriveKey(
+            ConversationConstants.DerivationAlgorithm.P_SHA_1_2005_12, null, 32, SECRET, nonce, 16
+        );
+        assertArrayEquals(expected, key);
+
+        try {
+            AlgoFactory.getInstance("http://www.example.com/p_md5");
+            fail("Failure expected on an unknown algorithm");
+        } catch (WSSecurityException ex) {
+            assertEquals(WSSecurityException.ErrorCode.FAILURE, ex.getErrorCode());
+        }
+    }
+
+    @Test
+    public void testDerivedKeyCache() throws Exception {
+        DerivedKeyCache cache = new DerivedKeyCache(2);
+        String algorithm = ConversationConstants.DerivationAlgorithm.P_SHA_1;
+        byte[] nonce1 = {1, 2, 3, 4};
+        byte[] nonce2 = {5, 6, 7, 8};
+        byte[] nonce3 = {9, 10, 11, 12};
+
+        byte[] key = DerivedKeyUtils.deriveKey(algorithm, null, 32, SECRET, nonce1, 0, cache, "sct-1");
+        assertEquals(1, cache.size());
+        assertArrayEquals(DerivedKeyUtils.deriveKey(algorithm, null, 32, SECRET, nonce1, 0), key);
+
+        // A cache hit returns an independent copy of the key
+        Arrays.fill(key, (byte)0);
+        byte[] cachedKey = DerivedKeyUtils.deriveKey(algorithm, null, 32, SECRET, nonce1, 0, cache, "sct-1");
+        assertEquals(1, cache.size());
+        assertArrayEquals(DerivedKeyUtils.deriveKey(algorithm, null, 32, SECRET, nonce1, 0), cachedKey);
+
+        // A different secret, offset or length is a different key
+        byte[] otherSecret = SECRET.clone();
+        otherSecret[0]++;
+        DerivedKeyUtils.deriveKey(algorithm, null, 32, otherSecret, nonce1, 0, cache, "sct-1");
+        assertEquals(2, cache.size());
+        DerivedKeyUtils.deriveKey(algorithm, null, 16, SECRET, nonce1, 0, cache, "sct-1");
+        assertEquals(2, cache.size());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+
+        // The least recently used key is evicted
+        DerivedKeyUtils.deriveKey(algorithm, null, 32, SECRET, nonce1, 0, cache, "sct-1");
+        DerivedKeyUtils.deriveKey(algorithm, null, 32, SECRET, nonce2, 0, cache, "sct-2");
+        DerivedKeyUtils.deriveKey(algorithm, null, 32, SECRET, nonce1, 0, cache, "sct-1");
+        DerivedKeyUtils.deriveKey(algorithm, null, 32, SECRET, nonce3, 0, cache, "sct-1");
+        assertEquals(2, cache.size());
+
+        cache.remove("sct-2");
+        assertEquals(2, cache.size());
+        cache.remove("sct-1");
+        assertEquals(0, cache.size());
+    }
+
+    private static byte[] pHash(String macAlgorithm, byte[] secret, byte[] seed, int length) throws Exception {
+        Mac mac = Mac.getInstance(macAlgorithm);
+        mac.init(new SecretKeySpec(secret, macAlgorithm));
+        byte[] out = new byte[0];
+        byte[] a = seed;
+        while (out.length < length) {
+            a = mac.doFinal(a);
+            mac.update(a);
+            out = concat(out, mac.doFinal(seed));
+        }
+        return Arrays.copyOf(out, length);
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+
+    private static byte[] hex(String value) {
+        byte[] result = new byte[value.length() / 2];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (byte) Integer.parseInt(value.substring(2 * i, 2 * i + 2), 16);
+        }
+        return result;
+    }
+}
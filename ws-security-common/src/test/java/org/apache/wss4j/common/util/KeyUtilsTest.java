@@ -0,0 +1,51 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Some tests for the digest methods of KeyUtils.
+ */
+public class KeyUtilsTest extends Assert {
+
+    @Test
+    public void testMessageDigestIsNotShared() throws Exception {
+        byte[] input = "input".getBytes(StandardCharsets.UTF_8);
+        byte[] expected = MessageDigest.getInstance("SHA-256").digest(input);
+
+        MessageDigest digest = KeyUtils.getMessageDigest("SHA-256");
+        digest.update(input, 0, 2);
+
+        // Computing other digests in between must not disturb the digest held by the caller
+        MessageDigest otherDigest = KeyUtils.getMessageDigest("SHA-256");
+        assertNotSame(digest, otherDigest);
+        otherDigest.update(new byte[] {1, 2, 3});
+        assertArrayEquals(expected, KeyUtils.generateDigest(input, "SHA-256"));
+
+        digest.update(input, 2, input.length - 2);
+        assertArrayEquals(expected, digest.digest());
+    }
+
+}
@@ -43,9 +43,11 @@ import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.util.XMLUtils;
 import org.apache.wss4j.dom.callback.CallbackLookup;
+import org.apache.wss4j.dom.callback.ElementIdIndex;
 import org.apache.wss4j.dom.engine.WSSecurityEngineResult;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.w3c.dom.Node;
 
 public class WSDocInfo {
     private Document doc;
@@ -60,6 +62,7 @@ public class WSDocInfo {
     private final List<WSSecurityEngineResult> results = new LinkedList<>();
     private final Map<Integer, List<WSSecurityEngineResult>> actionResults = new HashMap<>();
     private CallbackLookup callbackLookup;
+    private ElementIdIndex elementIdIndex;
     private Element securityHeader;
 
     public WSDocInfo(Document doc) {
@@ -82,6 +85,7 @@ public class WSDocInfo {
         crypto = null;
         doc = null;
         callbackLookup = null;
+        elementIdIndex = null;
         securityHeader = null;
         tokens.clear();
         results.clear();
@@ -336,6 +340,28 @@ public class WSDocInfo {
         return callbackLookup;
     }
 
+    /**
+     * @return the index of the Elements of the document by Id, which is created on the first call
+     */
+    public ElementIdIndex getElementIdIndex() {
+        if (elementIdIndex == null) {
+            elementIdIndex = new ElementIdIndex(doc);
+        }
+        return elementIdIndex;
+    }
+
+    /**
+     * Add the given Node and its descendants to the index of the Elements by Id (if it was
+     * already created). This must be called for all Nodes that are inserted into the document
+     * while the security header is processed, e.g. for decrypted Nodes.
+     * @param node the Node that was inserted into the document
+     */
+    public void addElementsToIndex(Node node) {
+        if (elementIdIndex != null && node != null) {
+            elementIdIndex.addElements(node);
+        }
+    }
+
     /**
      * @return the wsse header being processed
      */
@@ -121,6 +121,7 @@ public class EncryptionAction implements Action {
 
         wsEncrypt.setAttachmentCallbackHandler(reqData.getAttachmentCallbackHandler());
         wsEncrypt.setStoreBytesInAttachment(reqData.isStoreBytesInAttachment());
+        wsEncrypt.setEncryptedKeySessionCache(reqData.getEncryptedKeySessionCache());
 
         try {
             wsEncrypt.build(encryptionToken.getCrypto());
@@ -32,6 +32,7 @@ import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.handler.RequestData;
 import org.apache.wss4j.dom.handler.WSHandler;
+import org.apache.wss4j.dom.message.SignatureProfile;
 import org.apache.wss4j.dom.message.WSSecSignature;
 import org.apache.wss4j.dom.util.WSSecurityUtil;
 import org.w3c.dom.Document;
@@ -57,7 +58,16 @@ public class SignatureAction implements Action {
 
         WSPasswordCallback passwordCallback =
             handler.getPasswordCB(signatureToken.getUser(), WSConstants.SIGN, callbackHandler, reqData);
-        WSSecSignature wsSign = new WSSecSignature(reqData.getSecHeader());
+        WSSecSignature wsSign;
+        SignatureProfile signatureProfile = reqData.getSignatureProfile();
+        if (signatureProfile != null && passwordCallback.getKey() == null && signatureToken.getKey() == null
+            && signatureProfile.matches(signatureToken.getCrypto(), signatureToken.getUser(),
+                                        signatureToken.getSignatureAlgorithm(),
+                                        signatureToken.getDigestAlgorithm())) {
+            wsSign = new WSSecSignature(reqData.getSecHeader(), signatureProfile);
+        } else {
+            wsSign = new WSSecSignature(reqData.getSecHeader());
+        }
         wsSign.setIdAllocator(reqData.getWssConfig().getIdAllocator());
         wsSign.setAddInclusivePrefixes(reqData.isAddInclusivePrefixes());
         wsSign.setWsDocInfo(reqData.getWsDocInfo());
@@ -104,6 +114,8 @@ public class SignatureAction implements Action {
 
         wsSign.setAttachmentCallbackHandler(reqData.getAttachmentCallbackHandler());
         wsSign.setStoreBytesInAttachment(reqData.isStoreBytesInAttachment());
+        wsSign.setAttachmentMemoryThreshold(reqData.getAttachmentMemoryThreshold());
+        wsSign.setAttachmentTempDirectory(reqData.getAttachmentTempDirectory());
 
         try {
             wsSign.prepare(signatureToken.getCrypto());
@@ -90,6 +90,8 @@ public class SignatureDerivedAction extends AbstractDerivedAction implements Act
             setupTokenReference(reqData, signatureToken, wsSign, passwordCallback, doc);
         wsSign.setAttachmentCallbackHandler(reqData.getAttachmentCallbackHandler());
         wsSign.setStoreBytesInAttachment(reqData.isStoreBytesInAttachment());
+        wsSign.setAttachmentMemoryThreshold(reqData.getAttachmentMemoryThreshold());
+        wsSign.setAttachmentTempDirectory(reqData.getAttachmentTempDirectory());
 
         try {
             List<WSEncryptionPart> parts = signatureToken.getParts();
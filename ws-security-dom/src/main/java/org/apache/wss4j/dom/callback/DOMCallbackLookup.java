@@ -25,6 +25,7 @@ import java.util.List;
 import javax.xml.crypto.dom.DOMCryptoContext;
 
 import org.apache.wss4j.dom.WSConstants;
+import org.apache.wss4j.dom.WSDocInfo;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.util.XMLUtils;
 import org.apache.wss4j.dom.util.WSSecurityUtil;
@@ -37,11 +38,23 @@ import org.w3c.dom.Element;
 public class DOMCallbackLookup implements CallbackLookup {
 
     private Document doc;
+    private WSDocInfo wsDocInfo;
 
     public DOMCallbackLookup(Document doc) {
         this.doc = doc;
     }
 
+    /**
+     * Create a DOMCallbackLookup that looks up Elements by Id via the ElementIdIndex of the given
+     * WSDocInfo, instead of searching the whole document for every lookup.
+     * @param doc The document to search
+     * @param wsDocInfo The WSDocInfo that keeps the ElementIdIndex of the document
+     */
+    public DOMCallbackLookup(Document doc, WSDocInfo wsDocInfo) {
+        this.doc = doc;
+        this.wsDocInfo = wsDocInfo;
+    }
+
     /**
      * Get the DOM element that corresponds to the given id and ValueType reference. The Id can
      * be a wsu:Id or else an Id attribute, or a SAML Id when the ValueType refers to a SAML
@@ -92,20 +105,39 @@ public class DOMCallbackLookup implements CallbackLookup {
                 return bodyElement;
             }
         }
+        boolean samlValueType = WSConstants.WSS_SAML_KI_VALUE_TYPE.equals(valueType)
+            || WSConstants.WSS_SAML2_KI_VALUE_TYPE.equals(valueType)
+            || "".equals(valueType)
+            || valueType == null;
+
+        ElementIdIndex idIndex = wsDocInfo != null ? wsDocInfo.getElementIdIndex() : null;
+        if (idIndex != null) {
+            Element foundElement = idIndex.getElementById(idToMatch, checkMultipleElements);
+            if (foundElement != null) {
+                registerElement(foundElement, idToMatch, context);
+                return foundElement;
+            }
+            if (samlValueType) {
+                foundElement = idIndex.getSAMLAssertionElementById(idToMatch);
+                if (foundElement != null) {
+                    registerSAMLElement(foundElement, idToMatch, context);
+                    return foundElement;
+                }
+            }
+            if (idIndex.containsId(idToMatch)) {
+                // The Id is not unique
+                return null;
+            }
+        }
+
         // Otherwise do a general search
         Element foundElement =
             XMLUtils.findElementById(doc.getDocumentElement(), idToMatch, checkMultipleElements);
         if (foundElement != null) {
-            if (context != null) {
-                if (foundElement.hasAttributeNS(WSConstants.WSU_NS, "Id")
-                    && idToMatch.equals(foundElement.getAttributeNS(WSConstants.WSU_NS, "Id"))) {
-                    context.setIdAttributeNS(foundElement, WSConstants.WSU_NS, "Id");
-                }
-                if (foundElement.hasAttributeNS(null, "Id")
-                    && idToMatch.equals(foundElement.getAttributeNS(null, "Id"))) {
-                    context.setIdAttributeNS(foundElement, null, "Id");
-                }
+            if (idIndex != null) {
+                idIndex.addElements(foundElement);
             }
+            registerElement(foundElement, idToMatch, context);
             return foundElement;
         }
 
@@ -113,25 +145,16 @@ public class DOMCallbackLookup implements CallbackLookup {
         // Try to find a SAML Assertion Element if the ValueType corresponds to a SAML Assertion
         // (or is empty)
         //
-        if (WSConstants.WSS_SAML_KI_VALUE_TYPE.equals(valueType)
-            || WSConstants.WSS_SAML2_KI_VALUE_TYPE.equals(valueType)
-            || "".equals(valueType)
-            || valueType == null) {
+        if (samlValueType) {
             foundElement =
                 XMLUtils.findSAMLAssertionElementById(
                     doc.getDocumentElement(), idToMatch
                 );
             if (foundElement != null) {
-                if (context != null) {
-                    if (foundElement.hasAttributeNS(null, "ID")
-                        && idToMatch.equals(foundElement.getAttributeNS(null, "ID"))) {
-                        context.setIdAttributeNS(foundElement, null, "ID");
-                    }
-                    if (foundElement.hasAttributeNS(null, "AssertionID")
-                        && idToMatch.equals(foundElement.getAttributeNS(null, "AssertionID"))) {
-                        context.setIdAttributeNS(foundElement, null, "AssertionID");
-                    }
+                if (idIndex != null) {
+                    idIndex.addElements(foundElement);
                 }
+                registerSAMLElement(foundElement, idToMatch, context);
                 return foundElement;
             }
         }
@@ -139,6 +162,32 @@ public class DOMCallbackLookup implements CallbackLookup {
         return null;
     }
 
+    private static void registerElement(Element foundElement, String idToMatch, DOMCryptoContext context) {
+        if (context != null) {
+            if (foundElement.hasAttributeNS(WSConstants.WSU_NS, "Id")
+                && idToMatch.equals(foundElement.getAttributeNS(WSConstants.WSU_NS, "Id"))) {
+                context.setIdAttributeNS(foundElement, WSConstants.WSU_NS, "Id");
+            }
+            if (foundElement.hasAttributeNS(null, "Id")
+                && idToMatch.equals(foundElement.getAttributeNS(null, "Id"))) {
+                context.setIdAttributeNS(foundElement, null, "Id");
+            }
+        }
+    }
+
+    private static void registerSAMLElement(Element foundElement, String idToMatch, DOMCryptoContext context) {
+        if (context != null) {
+            if (foundElement.hasAttributeNS(null, "ID")
+                && idToMatch.equals(foundElement.getAttributeNS(null, "ID"))) {
+                context.setIdAttributeNS(foundElement, null, "ID");
+            }
+            if (foundElement.hasAttributeNS(null, "AssertionID")
+                && idToMatch.equals(foundElement.getAttributeNS(null, "AssertionID"))) {
+                context.setIdAttributeNS(foundElement, null, "AssertionID");
+            }
+        }
+    }
+
     /**
      * Get the DOM element(s) that correspond to the given localname/namespace.
      * @param localname The localname of the Element(s)
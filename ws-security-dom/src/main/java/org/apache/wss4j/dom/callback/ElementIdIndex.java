@@ -0,0 +1,226 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.dom.callback;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.wss4j.common.util.XMLUtils;
+import org.apache.wss4j.dom.WSConstants;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * An index of the Elements of a Document by their Id. The index is built lazily with a single pass
+ * over the Document on the first lookup, and replaces the depth-first search of the whole Document that
+ * XMLUtils.findElementById and XMLUtils.findSAMLAssertionElementById do for every lookup.
+ *
+ * Two kinds of Ids are indexed separately: the wsu:Id and (unqualified) Id attributes, as searched by
+ * XMLUtils.findElementById, and the SAML ID and AssertionID attributes, as searched by
+ * XMLUtils.findSAMLAssertionElementById. Ids that occur on more than one Element are recorded, so that
+ * a lookup that checks for multiple Elements with the same Id fails as before.
+ *
+ * Elements that are inserted into the Document after the index was built (e.g. decrypted Elements)
+ * must be added with {@link #addElements(Node)}. An indexed Element that was removed from the Document,
+ * or whose Id changed, causes the index to be rebuilt on the next lookup of that Id.
+ */
+public class ElementIdIndex {
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(ElementIdIndex.class);
+
+    private final Document doc;
+    private final Map<String, Element> ids = new HashMap<>();
+    private final Set<String> duplicateIds = new HashSet<>();
+    private final Map<String, Element> samlIds = new HashMap<>();
+    private final Set<String> duplicateSamlIds = new HashSet<>();
+    private boolean built;
+
+    public ElementIdIndex(Document doc) {
+        this.doc = doc;
+    }
+
+    /**
+     * Get the Element with the given wsu:Id or Id attribute value.
+     *
+     * @param id The id of the element to locate
+     * @param checkMultipleElements If true then return null if there are multiple elements with the same Id
+     * @return the located element, or null if no element or (if checkMultipleElements is true) more than
+     *         one element has the given Id
+     */
+    public Element getElementById(String id, boolean checkMultipleElements) {
+        ensureBuilt();
+        Element element = ids.get(id);
+        if (element != null && !isIndexed(element, id, false)) {
+            rebuild();
+            element = ids.get(id);
+        }
+        if (element != null && duplicateIds.contains(id)) {
+            if (checkMultipleElements) {
+                LOG.warn("Multiple elements with the same 'Id' attribute value!");
+                return null;
+            }
+            // Return the first element in document order, as XMLUtils.findElementById does
+            return XMLUtils.findElementById(doc.getDocumentElement(), id, false);
+        }
+        return element;
+    }
+
+    /**
+     * Get the Element with the given SAML ID or AssertionID attribute value.
+     *
+     * @param id The id of the element to locate
+     * @return the located element, or null if no element or more than one element has the given Id
+     */
+    public Element getSAMLAssertionElementById(String id) {
+        ensureBuilt();
+        Element element = samlIds.get(id);
+        if (element != null && !isIndexed(element, id, true)) {
+            rebuild();
+            element = samlIds.get(id);
+        }
+        if (element != null && duplicateSamlIds.contains(id)) {
+            LOG.warn("Multiple elements with the same 'ID' attribute value!");
+            return null;
+        }
+        return element;
+    }
+
+    /**
+     * @return true if at least one indexed element has the given Id (of either kind)
+     */
+    public boolean containsId(String id) {
+        ensureBuilt();
+        return ids.containsKey(id) || samlIds.containsKey(id);
+    }
+
+    /**
+     * Add the given node and its descendants to the index, e.g. after they were inserted into the
+     * Document by a decryption. This is a no-op if the index has not been built yet.
+     *
+     * @param startNode The root of the subtree to add
+     */
+    public void addElements(Node startNode) {
+        if (built && startNode != null) {
+            index(startNode);
+        }
+    }
+
+    /**
+     * Discard the index, it is rebuilt on the next lookup.
+     */
+    public void clear() {
+        ids.clear();
+        duplicateIds.clear();
+        samlIds.clear();
+        duplicateSamlIds.clear();
+        built = false;
+    }
+
+    private void ensureBuilt() {
+        if (!built) {
+            rebuild();
+        }
+    }
+
+    private void rebuild() {
+        clear();
+        built = true;
+        if (doc != null) {
+            index(doc.getDocumentElement());
+        }
+    }
+
+    private void index(Node startNode) {
+        Node startParent = startNode.getParentNode();
+        Node node = startNode;
+        while (node != null) {
+            if (node.getNodeType() == Node.ELEMENT_NODE) {
+                Element element = (Element) node;
+                String wsuId = element.getAttributeNS(WSConstants.WSU_NS, "Id");
+                add(ids, duplicateIds, wsuId, element);
+                String id = element.getAttributeNS(null, "Id");
+                if (!id.equals(wsuId)) {
+                    add(ids, duplicateIds, id, element);
+                }
+                String samlId = element.getAttributeNS(null, "ID");
+                add(samlIds, duplicateSamlIds, samlId, element);
+                String assertionId = element.getAttributeNS(null, "AssertionID");
+                if (!assertionId.equals(samlId)) {
+                    add(samlIds, duplicateSamlIds, assertionId, element);
+                }
+            }
+
+            Node processedNode = node;
+            node = node.getFirstChild();
+            // no child, this node is done
+            if (node == null && processedNode != startNode) {
+                node = processedNode.getNextSibling();
+            }
+            // no more siblings, get parent, all children of parent are processed
+            while (node == null) {
+                processedNode = processedNode.getParentNode();
+                if (processedNode == startParent || processedNode == startNode || processedNode == null) {
+                    return;
+                }
+                node = processedNode.getNextSibling();
+            }
+        }
+    }
+
+    private void add(Map<String, Element> index, Set<String> duplicates, String id, Element element) {
+        if ("".equals(id)) {
+            return;
+        }
+        Element existing = index.get(id);
+        if (existing == null || !isAttached(existing)) {
+            index.put(id, element);
+        } else if (existing != element) {
+            duplicates.add(id);
+        }
+    }
+
+    /**
+     * Check that an indexed element is still part of the document, and still has the given Id
+     */
+    private static boolean isIndexed(Element element, String id, boolean saml) {
+        if (saml) {
+            if (!id.equals(element.getAttributeNS(null, "ID"))
+                && !id.equals(element.getAttributeNS(null, "AssertionID"))) {
+                return false;
+            }
+        } else if (!id.equals(element.getAttributeNS(WSConstants.WSU_NS, "Id"))
+            && !id.equals(element.getAttributeNS(null, "Id"))) {
+            return false;
+        }
+        return isAttached(element);
+    }
+
+    private static boolean isAttached(Node node) {
+        Node parent = node.getParentNode();
+        while (parent != null && parent.getNodeType() != Node.DOCUMENT_NODE) {
+            parent = parent.getParentNode();
+        }
+        return parent != null;
+    }
+}
@@ -22,8 +22,12 @@ package org.apache.wss4j.dom.engine;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.security.Security;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
 
 import javax.xml.datatype.DatatypeConfigurationException;
 import javax.xml.datatype.DatatypeFactory;
@@ -33,6 +37,7 @@ import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.WsuIdAllocator;
 import org.apache.wss4j.dom.action.Action;
 import org.apache.wss4j.common.crypto.WSProviderConfig;
+import org.apache.wss4j.common.derivedKey.DerivedKeyCache;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.util.WSCurrentTimeSource;
 import org.apache.wss4j.common.util.WSTimeSource;
@@ -128,7 +133,7 @@ public final class WSSConfig {
         } catch (final Exception ex) {
             LOG.debug(ex.getMessage(), ex);
         }
-        DEFAULT_ACTIONS = java.util.Collections.unmodifiableMap(tmp);
+        DEFAULT_ACTIONS = Collections.unmodifiableMap(tmp);
     }
 
     /**
@@ -201,7 +206,7 @@ public final class WSSConfig {
         } catch (final Exception ex) {
             LOG.debug(ex.getMessage(), ex);
         }
-        DEFAULT_PROCESSORS = java.util.Collections.unmodifiableMap(tmp);
+        DEFAULT_PROCESSORS = Collections.unmodifiableMap(tmp);
     }
 
     /**
@@ -234,7 +239,7 @@ public final class WSSConfig {
         } catch (final Exception ex) {
             LOG.debug(ex.getMessage(), ex);
         }
-        DEFAULT_VALIDATORS = java.util.Collections.unmodifiableMap(tmp);
+        DEFAULT_VALIDATORS = Collections.unmodifiableMap(tmp);
     }
 
     /**
@@ -258,6 +263,18 @@ public final class WSSConfig {
      */
     private WSTimeSource currentTime;
 
+    /**
+     * The Executor on which the references of a received Signature are canonicalized and digested in
+     * parallel. If it is null (the default), the references are verified one after another.
+     */
+    private Executor referenceVerificationExecutor;
+
+    /**
+     * The cache of the keys that are derived from the secrets of received DerivedKeyTokens. It is null
+     * (no caching) by default.
+     */
+    private DerivedKeyCache derivedKeyCache;
+
     public static final WsuIdAllocator DEFAULT_ID_ALLOCATOR = new WsuIdAllocator() {
 
         public String createId(String prefix, Object o) {
@@ -298,6 +315,23 @@ public final class WSSConfig {
      */
     private final Map<QName, Object> validatorMap = new HashMap<>(DEFAULT_VALIDATORS);
 
+    /**
+     * The single instances of the Processor and Validator classes that are annotated with
+     * {@link Stateless}, shared by all WSSConfig instances.
+     */
+    private static final ConcurrentMap<Class<?>, Object> STATELESS_INSTANCES = new ConcurrentHashMap<>();
+
+    /**
+     * The immutable dispatch tables of the Processor and Validator instances that can be
+     * shared, built from the processorMap and validatorMap on the first lookup. They are
+     * rebuilt after the setProcessor or setValidator operations. As long as these operations
+     * are not used, the tables of the default processors and validators are shared.
+     */
+    private volatile Map<QName, Processor> processorTable;
+    private volatile Map<QName, Validator> validatorTable;
+    private boolean processorsModified;
+    private boolean validatorsModified;
+
     static {
         try {
             Transform.register(WSConstants.SWA_ATTACHMENT_CIPHERTEXT_TRANS,
@@ -446,6 +480,8 @@ public final class WSSConfig {
      */
     public Class<?> setProcessor(QName el, Processor processor) {
         Object result = processorMap.put(el, processor);
+        processorsModified = true;
+        processorTable = null;
         if (result instanceof Class<?>) {
             return (Class<?>)result;
         } else if (result instanceof Processor) {
@@ -458,9 +494,15 @@ public final class WSSConfig {
      * Associate a SOAP processor name with a specified SOAP Security header
      * element QName.  Processors registered under this QName will be
      * called when processing header elements with the specified type.
+     *
+     * If the class is annotated with {@link Stateless}, a single instance of it is shared
+     * by all messages (and all WSSConfig instances), otherwise it gets instantiated for
+     * every Security header element it processes.
      */
     public Class<?> setProcessor(QName el, Class<?> clazz) {
         Object result = processorMap.put(el, clazz);
+        processorsModified = true;
+        processorTable = null;
         if (result instanceof Class<?>) {
             return (Class<?>)result;
         } else if (result instanceof Processor) {
@@ -479,6 +521,8 @@ public final class WSSConfig {
      */
     public Class<?> setValidator(QName el, Validator validator) {
         Object result = validatorMap.put(el, validator);
+        validatorsModified = true;
+        validatorTable = null;
         if (result instanceof Class<?>) {
             return (Class<?>)result;
         } else if (result instanceof Validator) {
@@ -491,9 +535,15 @@ public final class WSSConfig {
      * Associate a SOAP validator name with a specified SOAP Security header
      * element QName.  validator registered under this QName will be
      * called when processing header elements with the specified type.
+     *
+     * If the class is annotated with {@link Stateless}, a single instance of it is shared
+     * by all messages (and all WSSConfig instances), otherwise it gets instantiated for
+     * every token it validates.
      */
     public Class<?> setValidator(QName el, Class<?> clazz) {
         Object result = validatorMap.put(el, clazz);
+        validatorsModified = true;
+        validatorTable = null;
         if (result instanceof Class<?>) {
             return (Class<?>)result;
         } else if (result instanceof Validator) {
@@ -510,6 +560,20 @@ public final class WSSConfig {
      *              specified QName.
      */
     public Validator getValidator(QName el) throws WSSecurityException {
+        Map<QName, Validator> table = validatorTable;
+        if (table == null) {
+            if (validatorsModified) {
+                table = createDispatchTable(validatorMap, Validator.class);
+            } else {
+                table = DefaultDispatchTables.VALIDATORS;
+            }
+            validatorTable = table;
+        }
+        Validator shared = table.get(el);
+        if (shared != null) {
+            return shared;
+        }
+
         final Object validatorObject = validatorMap.get(el);
 
         if (validatorObject instanceof Class<?>) {
@@ -534,6 +598,20 @@ public final class WSSConfig {
      *              specified QName.
      */
     public Processor getProcessor(QName el) throws WSSecurityException {
+        Map<QName, Processor> table = processorTable;
+        if (table == null) {
+            if (processorsModified) {
+                table = createDispatchTable(processorMap, Processor.class);
+            } else {
+                table = DefaultDispatchTables.PROCESSORS;
+            }
+            processorTable = table;
+        }
+        Processor shared = table.get(el);
+        if (shared != null) {
+            return shared;
+        }
+
         final Object processorObject = processorMap.get(el);
 
         if (processorObject instanceof Class<?>) {
@@ -550,6 +628,60 @@ public final class WSSConfig {
         return null;
     }
 
+    /**
+     * Create an immutable dispatch table of the entries of the given map that can be shared,
+     * i.e. of the instances and of the classes that are annotated with {@link Stateless}.
+     * A class that cannot be instantiated is left out, so that getProcessor and getValidator
+     * report the error when it gets looked up.
+     */
+    private static <T> Map<QName, T> createDispatchTable(Map<QName, ?> map, Class<T> type) {
+        Map<QName, T> table = new HashMap<>();
+        for (Map.Entry<QName, ?> entry : map.entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof Class<?>) {
+                value = getStatelessInstance((Class<?>)value);
+            }
+            if (type.isInstance(value)) {
+                table.put(entry.getKey(), type.cast(value));
+            }
+        }
+        return Collections.unmodifiableMap(table);
+    }
+
+    private static Object getStatelessInstance(Class<?> clazz) {
+        if (!clazz.isAnnotationPresent(Stateless.class)) {
+            return null;
+        }
+        Object instance = STATELESS_INSTANCES.get(clazz);
+        if (instance == null) {
+            try {
+                instance = clazz.newInstance();
+            } catch (Exception ex) {
+                LOG.debug(ex.getMessage(), ex);
+                return null;
+            }
+            Object existing = STATELESS_INSTANCES.putIfAbsent(clazz, instance);
+            if (existing != null) {
+                instance = existing;
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * The dispatch tables of the default processors and validators, created on first use.
+     */
+    private static final class DefaultDispatchTables {
+        static final Map<QName, Processor> PROCESSORS =
+            createDispatchTable(DEFAULT_PROCESSORS, Processor.class);
+        static final Map<QName, Validator> VALIDATORS =
+            createDispatchTable(DEFAULT_VALIDATORS, Validator.class);
+
+        private DefaultDispatchTables() {
+            // complete
+        }
+    }
+
     public WSTimeSource getCurrentTime() {
         if (currentTime != null) {
             return currentTime;
@@ -561,6 +693,36 @@ public final class WSSConfig {
         this.currentTime = currentTime;
     }
 
+    public Executor getReferenceVerificationExecutor() {
+        return referenceVerificationExecutor;
+    }
+
+    /**
+     * Set the Executor on which the attachment references of a received Signature are verified in
+     * parallel. The attachments are then digested concurrently, and the Signature fails as soon as
+     * the first reference does not match its digest. References to the document are always verified
+     * on the calling thread. Note that the attachment CallbackHandler must be thread-safe in this mode.
+     * @param referenceVerificationExecutor the Executor to use, or null to verify the references
+     * one after another
+     */
+    public void setReferenceVerificationExecutor(Executor referenceVerificationExecutor) {
+        this.referenceVerificationExecutor = referenceVerificationExecutor;
+    }
+
+    public DerivedKeyCache getDerivedKeyCache() {
+        return derivedKeyCache;
+    }
+
+    /**
+     * Set the cache of derived keys. A received DerivedKeyToken that derives the same key from the
+     * same secret (e.g. of a SecurityContextToken) as a previous one does not run the derivation
+     * algorithm again. The cached keys are erased when they are evicted.
+     * @param derivedKeyCache the cache of derived keys, or null to always derive the keys
+     */
+    public void setDerivedKeyCache(DerivedKeyCache derivedKeyCache) {
+        this.derivedKeyCache = derivedKeyCache;
+    }
+
 
     public static boolean isAddJceProviders() {
         return addJceProviders;
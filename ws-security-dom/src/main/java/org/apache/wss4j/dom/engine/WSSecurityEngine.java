@@ -23,6 +23,11 @@ import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
 
 import javax.security.auth.callback.CallbackHandler;
 import javax.xml.namespace.QName;
@@ -39,6 +44,7 @@ import org.apache.wss4j.dom.handler.WSHandlerResult;
 import org.apache.wss4j.dom.processor.Processor;
 import org.apache.wss4j.dom.saml.DOMSAMLUtil;
 import org.apache.wss4j.dom.util.WSSecurityUtil;
+import org.apache.wss4j.dom.validate.Validator;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
@@ -290,65 +296,227 @@ public class WSSecurityEngine {
         RequestData requestData
     ) throws WSSecurityException {
         if (securityHeader == null) {
-            List<WSSecurityEngineResult> results = Collections.emptyList();
-            Map<Integer, List<WSSecurityEngineResult>> actionResults = Collections.emptyMap();
-            return new WSHandlerResult(null, results, actionResults);
+            return emptyResult();
         }
 
-        if (requestData.getWssConfig() == null) {
-            requestData.setWssConfig(getWssConfig());
+        HeaderProcessing processing = new HeaderProcessing(securityHeader, requestData);
+        while (processing.node != null) {
+            Node nextSibling = processing.node.getNextSibling();
+            Processor p = processing.getProcessor();
+            if (p != null) {
+                processing.handleToken(p);
+            }
+            processing.next(nextSibling);
         }
+        return processing.finish();
+    }
 
-        //
-        // Gather some info about the document to process and store
-        // it for retrieval. Store the implementation of signature crypto
-        // (no need for encryption --- yet)
-        //
-        WSDocInfo wsDocInfo = new WSDocInfo(securityHeader.getOwnerDocument());
-        CallbackLookup callbackLookupToUse = callbackLookup;
-        if (callbackLookupToUse == null) {
-            callbackLookupToUse = new DOMCallbackLookup(securityHeader.getOwnerDocument());
+    /**
+     * Process the security header given the soap envelope as W3C document, without blocking the calling
+     * thread on I/O. See #processSecurityHeaderAsync(Element, RequestData, Executor).
+     *
+     * @param doc the SOAP envelope as {@link Document}
+     * @param requestData the RequestData associated with the request
+     * @param executor the Executor to run the blocking steps on
+     * @return a CompletionStage of the WSHandlerResult, which is completed with null if there is no
+     *         security header for the actor
+     */
+    public CompletionStage<WSHandlerResult> processSecurityHeaderAsync(
+        Document doc, RequestData requestData, Executor executor
+    ) {
+        if (requestData.getActor() == null) {
+            requestData.setActor("");
+        }
+        Element elem;
+        try {
+            elem = WSSecurityUtil.getSecurityHeader(doc, requestData.getActor());
+        } catch (WSSecurityException | RuntimeException ex) {
+            return failedFuture(ex);
+        }
+        if (elem == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return processSecurityHeaderAsync(elem, requestData, executor);
+    }
+
+    /**
+     * Process the security header given the <code>wsse:Security</code> DOM Element, without blocking the
+     * calling thread on I/O. The child elements are processed in the same order as by
+     * #processSecurityHeader(Element, RequestData). An element is processed on the given Executor if its
+     * Processor, the Validator that is registered for it, or the CallbackHandler of the RequestData is
+     * annotated as {@link Blocking}, or if it is a Signature and revocation checking (which may fetch
+     * CRLs) is enabled. All other elements are processed inline, on the thread that completed the
+     * previous step. The Executor may e.g. create a virtual thread per task.
+     *
+     * The RequestData and the document must not be accessed until the returned CompletionStage is
+     * completed.
+     *
+     * @param securityHeader the <code>wsse:Security</code> header element
+     * @param requestData the RequestData associated with the request
+     * @param executor the Executor to run the blocking steps on
+     * @return a CompletionStage of the WSHandlerResult, which is completed exceptionally with a
+     *         WSSecurityException (possibly wrapped in a CompletionException) on a processing failure
+     */
+    public CompletionStage<WSHandlerResult> processSecurityHeaderAsync(
+        Element securityHeader, RequestData requestData, Executor executor
+    ) {
+        if (securityHeader == null) {
+            return CompletableFuture.completedFuture(emptyResult());
         }
-        wsDocInfo.setCallbackLookup(callbackLookupToUse);
-        wsDocInfo.setCrypto(requestData.getSigVerCrypto());
-        wsDocInfo.setSecurityHeader(securityHeader);
-        requestData.setWsDocInfo(wsDocInfo);
-
-        final WSSConfig cfg = getWssConfig();
-        Node node = securityHeader.getFirstChild();
-
-        List<WSSecurityEngineResult> returnResults = new LinkedList<>();
-        boolean foundTimestamp = false;
-        while (node != null) {
-            Node nextSibling = node.getNextSibling();
-            if (Node.ELEMENT_NODE == node.getNodeType()) {
-                QName el = new QName(node.getNamespaceURI(), node.getLocalName());
-
-                // Check for multiple timestamps
-                if (foundTimestamp && el.equals(WSConstants.TIMESTAMP)) {
-                    requestData.getBSPEnforcer().handleBSPRule(BSPRule.R3227);
-                } else if (el.equals(WSConstants.TIMESTAMP)) {
-                    foundTimestamp = true;
+        try {
+            return processAsync(new HeaderProcessing(securityHeader, requestData), executor);
+        } catch (WSSecurityException | RuntimeException ex) {
+            return failedFuture(ex);
+        }
+    }
+
+    /**
+     * Processes the child elements of the security header inline, up to the first element that has to be
+     * processed on the Executor. The remaining elements are processed once that step is complete.
+     */
+    private CompletableFuture<WSHandlerResult> processAsync(
+        final HeaderProcessing processing, final Executor executor
+    ) {
+        try {
+            while (processing.node != null) {
+                final Node nextSibling = processing.node.getNextSibling();
+                final Processor p = processing.getProcessor();
+                if (p != null && processing.isBlocking(p)) {
+                    return CompletableFuture.runAsync(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                processing.handleToken(p);
+                            } catch (WSSecurityException ex) {
+                                throw new CompletionException(ex);
+                            }
+                            processing.next(nextSibling);
+                        }
+                    }, executor).thenCompose(new Function<Void, CompletableFuture<WSHandlerResult>>() {
+                        @Override
+                        public CompletableFuture<WSHandlerResult> apply(Void v) {
+                            return processAsync(processing, executor);
+                        }
+                    });
                 }
-                //
-                // Call the processor for this token. After the processor returns,
-                // store it for later retrieval. The token processor may store some
-                // information about the processed token
-                //
-                Processor p = cfg.getProcessor(el);
                 if (p != null) {
-                    List<WSSecurityEngineResult> results = p.handleToken((Element) node, requestData);
-                    if (!results.isEmpty()) {
-                        returnResults.addAll(0, results);
-                    }
-                } else {
-                    if (doDebug) {
-                        LOG.debug(
-                            "Unknown Element: " + node.getLocalName() + " " + node.getNamespaceURI()
-                        );
-                    }
+                    processing.handleToken(p);
                 }
+                processing.next(nextSibling);
             }
+            return CompletableFuture.completedFuture(processing.finish());
+        } catch (WSSecurityException | RuntimeException ex) {
+            // Fail the stage as the Executor steps do, instead of throwing to the caller
+            return failedFuture(ex);
+        }
+    }
+
+    private static WSHandlerResult emptyResult() {
+        List<WSSecurityEngineResult> results = Collections.emptyList();
+        Map<Integer, List<WSSecurityEngineResult>> actionResults = Collections.emptyMap();
+        return new WSHandlerResult(null, results, actionResults);
+    }
+
+    private static <T> CompletableFuture<T> failedFuture(Throwable ex) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(ex);
+        return future;
+    }
+
+    /**
+     * The state of the processing of one security header: the current child element of the header and
+     * the results so far.
+     */
+    private final class HeaderProcessing {
+        private final RequestData requestData;
+        private final WSSConfig cfg;
+        private final WSDocInfo wsDocInfo;
+        private final CallbackLookup callbackLookupToUse;
+        private final List<WSSecurityEngineResult> returnResults = new LinkedList<>();
+        private boolean foundTimestamp;
+        private QName el;
+        private Node node;
+
+        HeaderProcessing(Element securityHeader, RequestData requestData) throws WSSecurityException {
+            this.requestData = requestData;
+            if (requestData.getWssConfig() == null) {
+                requestData.setWssConfig(getWssConfig());
+            }
+
+            //
+            // Gather some info about the document to process and store
+            // it for retrieval. Store the implementation of signature crypto
+            // (no need for encryption --- yet)
+            //
+            wsDocInfo = new WSDocInfo(securityHeader.getOwnerDocument());
+            CallbackLookup lookup = callbackLookup;
+            if (lookup == null) {
+                lookup = new DOMCallbackLookup(securityHeader.getOwnerDocument(), wsDocInfo);
+            }
+            callbackLookupToUse = lookup;
+            wsDocInfo.setCallbackLookup(callbackLookupToUse);
+            wsDocInfo.setCrypto(requestData.getSigVerCrypto());
+            wsDocInfo.setSecurityHeader(securityHeader);
+            requestData.setWsDocInfo(wsDocInfo);
+
+            cfg = getWssConfig();
+            node = securityHeader.getFirstChild();
+        }
+
+        /**
+         * Returns the Processor for the current node, or null if it is not an element or if there is no
+         * Processor for the element
+         */
+        Processor getProcessor() throws WSSecurityException {
+            if (Node.ELEMENT_NODE != node.getNodeType()) {
+                return null;
+            }
+            el = new QName(node.getNamespaceURI(), node.getLocalName());
+
+            // Check for multiple timestamps
+            if (foundTimestamp && el.equals(WSConstants.TIMESTAMP)) {
+                requestData.getBSPEnforcer().handleBSPRule(BSPRule.R3227);
+            } else if (el.equals(WSConstants.TIMESTAMP)) {
+                foundTimestamp = true;
+            }
+
+            Processor p = cfg.getProcessor(el);
+            if (p == null && doDebug) {
+                LOG.debug(
+                    "Unknown Element: " + node.getLocalName() + " " + node.getNamespaceURI()
+                );
+            }
+            return p;
+        }
+
+        boolean isBlocking(Processor p) throws WSSecurityException {
+            if (p.getClass().isAnnotationPresent(Blocking.class)) {
+                return true;
+            }
+            Validator validator = requestData.getValidator(el);
+            if (validator != null && validator.getClass().isAnnotationPresent(Blocking.class)) {
+                return true;
+            }
+            CallbackHandler callbackHandler = requestData.getCallbackHandler();
+            if (callbackHandler != null && callbackHandler.getClass().isAnnotationPresent(Blocking.class)) {
+                return true;
+            }
+            return requestData.isRevocationEnabled() && WSConstants.SIGNATURE.equals(el);
+        }
+
+        //
+        // Call the processor for this token. After the processor returns,
+        // store it for later retrieval. The token processor may store some
+        // information about the processed token
+        //
+        void handleToken(Processor p) throws WSSecurityException {
+            List<WSSecurityEngineResult> results = p.handleToken((Element) node, requestData);
+            if (!results.isEmpty()) {
+                returnResults.addAll(0, results);
+            }
+        }
+
+        void next(Node nextSibling) {
             //
             // If the next sibling is null and the stored next sibling is not null, then we have
             // encountered an EncryptedData element which was decrypted, and so the next sibling
@@ -363,17 +531,19 @@ public class WSSecurityEngine {
             }
         }
 
-        WSHandlerResult handlerResult =
-            new WSHandlerResult(requestData.getActor(), returnResults, wsDocInfo.getActionResults());
+        WSHandlerResult finish() throws WSSecurityException {
+            WSHandlerResult handlerResult =
+                new WSHandlerResult(requestData.getActor(), returnResults, wsDocInfo.getActionResults());
 
-        // Validate SAML Subject Confirmation requirements
-        if (requestData.isValidateSamlSubjectConfirmation()) {
-            Element bodyElement = callbackLookupToUse.getSOAPBody();
-            DOMSAMLUtil.validateSAMLResults(handlerResult, requestData.getTlsCerts(), bodyElement);
-        }
+            // Validate SAML Subject Confirmation requirements
+            if (requestData.isValidateSamlSubjectConfirmation()) {
+                Element bodyElement = callbackLookupToUse.getSOAPBody();
+                DOMSAMLUtil.validateSAMLResults(handlerResult, requestData.getTlsCerts(), bodyElement);
+            }
 
-        wsDocInfo.clear();
+            wsDocInfo.clear();
 
-        return handlerResult;
+            return handlerResult;
+        }
     }
 }
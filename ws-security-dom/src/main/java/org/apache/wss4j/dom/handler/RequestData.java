@@ -19,6 +19,7 @@
 
 package org.apache.wss4j.dom.handler;
 
+import java.io.File;
 import java.security.cert.Certificate;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -26,6 +27,7 @@ import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.regex.Pattern;
 
 import javax.security.auth.callback.CallbackHandler;
@@ -36,16 +38,22 @@ import org.apache.wss4j.common.EncryptionActionToken;
 import org.apache.wss4j.common.SignatureActionToken;
 import org.apache.wss4j.common.bsp.BSPEnforcer;
 import org.apache.wss4j.common.bsp.BSPRule;
+import org.apache.wss4j.common.cache.EncryptedKeyCache;
+import org.apache.wss4j.common.cache.EncryptedKeySessionCache;
 import org.apache.wss4j.common.cache.ReplayCache;
 import org.apache.wss4j.common.crypto.AlgorithmSuite;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.PasswordEncryptor;
+import org.apache.wss4j.common.derivedKey.DerivedKeyCache;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.CachedOutputStream;
 import org.apache.wss4j.dom.SOAPConstants;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.WSDocInfo;
 import org.apache.wss4j.dom.engine.WSSConfig;
+import org.apache.wss4j.dom.message.SignatureProfile;
 import org.apache.wss4j.dom.message.WSSecHeader;
+import org.apache.wss4j.dom.saml.SamlAssertionCache;
 import org.apache.wss4j.dom.validate.Validator;
 import org.apache.xml.security.encryption.Serializer;
 
@@ -70,11 +78,17 @@ public class RequestData {
     private boolean useDerivedKeyForMAC = true;
     private CallbackHandler callback;
     private CallbackHandler attachmentCallbackHandler;
+    private int attachmentMemoryThreshold = CachedOutputStream.DEFAULT_MEMORY_THRESHOLD;
+    private File attachmentTempDirectory;
     private boolean enableRevocation;
     private boolean requireSignedEncryptedDataElements;
     private ReplayCache timestampReplayCache;
     private ReplayCache nonceReplayCache;
     private ReplayCache samlOneTimeUseReplayCache;
+    private SamlAssertionCache samlAssertionCache;
+    private EncryptedKeyCache encryptedKeyCache;
+    private EncryptedKeySessionCache encryptedKeySessionCache;
+    private SignatureProfile signatureProfile;
     private Collection<Pattern> subjectDNPatterns = new ArrayList<>();
     private Collection<Pattern> issuerDNPatterns = new ArrayList<>();
     private final List<BSPRule> ignoredBSPRules = new LinkedList<>();
@@ -84,6 +98,7 @@ public class RequestData {
     private AlgorithmSuite samlAlgorithmSuite;
     private boolean disableBSPEnforcement;
     private boolean allowRSA15KeyTransportAlgorithm;
+    private boolean allowPSha256DerivedKeyAlgorithm;
     private boolean addUsernameTokenNonce;
     private boolean addUsernameTokenCreated;
     private Certificate[] tlsCerts;
@@ -196,6 +211,19 @@ public class RequestData {
 
     private boolean expandXopInclude;
 
+    /**
+     * The Executor on which the attachment references of a received Signature are verified in parallel
+     * (see WSSConfig#setReferenceVerificationExecutor). If it is null, the Executor of the WSSConfig
+     * is used.
+     */
+    private Executor referenceVerificationExecutor;
+
+    /**
+     * The cache of derived keys (see WSSConfig#setDerivedKeyCache). If it is null, the cache of the
+     * WSSConfig is used.
+     */
+    private DerivedKeyCache derivedKeyCache;
+
     public Object getMsgContext() {
         return msgContext;
     }
@@ -378,6 +406,31 @@ public class RequestData {
         this.attachmentCallbackHandler = attachmentCallbackHandler;
     }
 
+    public int getAttachmentMemoryThreshold() {
+        return attachmentMemoryThreshold;
+    }
+
+    /**
+     * Set the number of bytes of an attachment that are buffered in memory at most, when the
+     * attachment is signed or its signature is verified. Larger attachments are buffered in a
+     * temporary file. The default is 1 MB.
+     */
+    public void setAttachmentMemoryThreshold(int attachmentMemoryThreshold) {
+        this.attachmentMemoryThreshold = attachmentMemoryThreshold;
+    }
+
+    public File getAttachmentTempDirectory() {
+        return attachmentTempDirectory;
+    }
+
+    /**
+     * Set the directory of the temporary files of buffered attachments. The default is the
+     * default temporary-file directory of the JVM.
+     */
+    public void setAttachmentTempDirectory(File attachmentTempDirectory) {
+        this.attachmentTempDirectory = attachmentTempDirectory;
+    }
+
     /**
      * Get the Validator instance corresponding to the QName
      * @param qName the QName with which to find a Validator instance
@@ -445,6 +498,70 @@ public class RequestData {
         return samlOneTimeUseReplayCache;
     }
 
+    /**
+     * Set the cache of verified signed SAML Assertions. If this is set, the signature of a
+     * SAML Assertion that was already verified and validated is not verified again. The cache
+     * is not set by default.
+     */
+    public void setSamlAssertionCache(SamlAssertionCache samlAssertionCache) {
+        this.samlAssertionCache = samlAssertionCache;
+    }
+
+    /**
+     * Get the cache of verified signed SAML Assertions
+     */
+    public SamlAssertionCache getSamlAssertionCache() {
+        return samlAssertionCache;
+    }
+
+    /**
+     * Set the cache of the symmetric keys of received EncryptedKeys. If this is set, an
+     * EncryptedKey that was already decrypted with the same private key is not decrypted
+     * again. The cache is not set by default.
+     */
+    public void setEncryptedKeyCache(EncryptedKeyCache encryptedKeyCache) {
+        this.encryptedKeyCache = encryptedKeyCache;
+    }
+
+    /**
+     * Get the cache of the symmetric keys of received EncryptedKeys
+     */
+    public EncryptedKeyCache getEncryptedKeyCache() {
+        return encryptedKeyCache;
+    }
+
+    /**
+     * Set the cache of the outbound key sessions. If this is set, the key of an EncryptedKey that
+     * was sent to the same recipient before is reused, and referred to via an EncryptedKeySHA1
+     * KeyIdentifier. The cache is not set by default.
+     */
+    public void setEncryptedKeySessionCache(EncryptedKeySessionCache encryptedKeySessionCache) {
+        this.encryptedKeySessionCache = encryptedKeySessionCache;
+    }
+
+    /**
+     * Get the cache of the outbound key sessions
+     */
+    public EncryptedKeySessionCache getEncryptedKeySessionCache() {
+        return encryptedKeySessionCache;
+    }
+
+    /**
+     * Set the SignatureProfile to sign with. The SignatureAction uses it for a signature with the
+     * Crypto, user and algorithms that the profile was created for, instead of loading the private
+     * key and the certificates of the user for every message. It is not set by default.
+     */
+    public void setSignatureProfile(SignatureProfile signatureProfile) {
+        this.signatureProfile = signatureProfile;
+    }
+
+    /**
+     * Get the SignatureProfile to sign with
+     */
+    public SignatureProfile getSignatureProfile() {
+        return signatureProfile;
+    }
+
     /**
      * Set the Signature Subject Cert Constraints
      */
@@ -556,6 +673,18 @@ public class RequestData {
         this.allowRSA15KeyTransportAlgorithm = allowRSA15KeyTransportAlgorithm;
     }
 
+    public boolean isAllowPSha256DerivedKeyAlgorithm() {
+        return allowPSha256DerivedKeyAlgorithm;
+    }
+
+    /**
+     * Whether to accept received DerivedKeyTokens that use the WSS4J specific P_SHA256 algorithm
+     * (ConversationConstants.DerivationAlgorithm.P_SHA_256). The default is false.
+     */
+    public void setAllowPSha256DerivedKeyAlgorithm(boolean allowPSha256DerivedKeyAlgorithm) {
+        this.allowPSha256DerivedKeyAlgorithm = allowPSha256DerivedKeyAlgorithm;
+    }
+
     public Certificate[] getTlsCerts() {
         return tlsCerts;
     }
@@ -740,6 +869,28 @@ public class RequestData {
         this.expandXopInclude = expandXopInclude;
     }
 
+    public Executor getReferenceVerificationExecutor() {
+        if (referenceVerificationExecutor == null && wssConfig != null) {
+            return wssConfig.getReferenceVerificationExecutor();
+        }
+        return referenceVerificationExecutor;
+    }
+
+    public void setReferenceVerificationExecutor(Executor referenceVerificationExecutor) {
+        this.referenceVerificationExecutor = referenceVerificationExecutor;
+    }
+
+    public DerivedKeyCache getDerivedKeyCache() {
+        if (derivedKeyCache == null && wssConfig != null) {
+            return wssConfig.getDerivedKeyCache();
+        }
+        return derivedKeyCache;
+    }
+
+    public void setDerivedKeyCache(DerivedKeyCache derivedKeyCache) {
+        this.derivedKeyCache = derivedKeyCache;
+    }
+
     public Serializer getEncryptionSerializer() {
         return encryptionSerializer;
     }
@@ -0,0 +1,199 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.dom.message;
+
+import java.security.NoSuchProviderException;
+import java.security.PrivateKey;
+import java.security.Provider;
+import java.security.cert.X509Certificate;
+
+import javax.xml.crypto.dsig.DigestMethod;
+import javax.xml.crypto.dsig.XMLSignatureFactory;
+import javax.xml.crypto.dsig.keyinfo.KeyInfoFactory;
+
+import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.crypto.CryptoType;
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.dom.WSConstants;
+
+/**
+ * The parts of an (asymmetric) outbound Signature that are the same for every message signed with a given
+ * configuration: the JSR-105 XMLSignatureFactory and KeyInfoFactory, the DigestMethod, the signature
+ * algorithm, and the private key and certificate chain of the signing user. A SignatureProfile is immutable
+ * and may be shared between threads. It is created once and passed to
+ * #WSSecSignature(WSSecHeader, SignatureProfile), or to the SignatureAction via
+ * RequestData#setSignatureProfile, so that the provider lookups and the decryption of the private key
+ * are not repeated for every message.
+ *
+ * The SignatureMethod, CanonicalizationMethod and Transforms are still created per message, as the
+ * JSR-105 implementations keep per-use state (the Signature engine, the canonicalizer, the owner document)
+ * in them.
+ *
+ * A SignatureProfile holds the private key in memory. It must be recreated when the key in the keystore
+ * changes.
+ */
+public class SignatureProfile {
+
+    private final Crypto crypto;
+    private final String user;
+    private final String configuredSignatureAlgorithm;
+    private final String configuredDigestAlgorithm;
+    private final XMLSignatureFactory signatureFactory;
+    private final KeyInfoFactory keyInfoFactory;
+    private final String signatureAlgorithm;
+    private final String digestAlgorithm;
+    private final DigestMethod digestMethod;
+    private final PrivateKey privateKey;
+    private final X509Certificate[] certificates;
+
+    public SignatureProfile(
+        Crypto crypto, String user, String password, String signatureAlgorithm, String digestAlgorithm
+    ) throws WSSecurityException {
+        this(crypto, user, password, signatureAlgorithm, digestAlgorithm, null);
+    }
+
+    /**
+     * @param crypto the Crypto to load the private key and the certificate chain of the user from
+     * @param user the keystore alias of the signing user
+     * @param password the password of the private key
+     * @param signatureAlgorithm the signature algorithm, or null to derive it from the certificate
+     * @param digestAlgorithm the digest algorithm, or null for SHA-1
+     * @param provider the XMLDSig Provider, or null to use the Santuario provider if it is available
+     * @throws WSSecurityException if the key or the certificates can not be loaded
+     */
+    public SignatureProfile(
+        Crypto crypto, String user, String password, String signatureAlgorithm, String digestAlgorithm,
+        Provider provider
+    ) throws WSSecurityException {
+        if (crypto == null) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "noSigCryptoFile");
+        }
+        if (user == null) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "noSignatureUser");
+        }
+        this.crypto = crypto;
+        this.user = user;
+        this.configuredSignatureAlgorithm = signatureAlgorithm;
+        this.configuredDigestAlgorithm = digestAlgorithm;
+
+        if (provider == null) {
+            XMLSignatureFactory factory;
+            try {
+                factory = XMLSignatureFactory.getInstance("DOM", "ApacheXMLDSig");
+            } catch (NoSuchProviderException ex) {
+                factory = XMLSignatureFactory.getInstance("DOM");
+            }
+            signatureFactory = factory;
+        } else {
+            signatureFactory = XMLSignatureFactory.getInstance("DOM", provider);
+        }
+        keyInfoFactory = signatureFactory.getKeyInfoFactory();
+
+        CryptoType cryptoType = new CryptoType(CryptoType.TYPE.ALIAS);
+        cryptoType.setAlias(user);
+        certificates = crypto.getX509Certificates(cryptoType);
+        if (certificates == null || certificates.length <= 0) {
+            throw new WSSecurityException(
+                WSSecurityException.ErrorCode.FAILURE,
+                "noUserCertsFound",
+                new Object[] {user, "signature"});
+        }
+        privateKey = crypto.getPrivateKey(user, password);
+
+        if (signatureAlgorithm == null) {
+            String pubKeyAlgo = certificates[0].getPublicKey().getAlgorithm();
+            if (pubKeyAlgo.equalsIgnoreCase("DSA")) {
+                this.signatureAlgorithm = WSConstants.DSA;
+            } else if (pubKeyAlgo.equalsIgnoreCase("RSA")) {
+                this.signatureAlgorithm = WSConstants.RSA;
+            } else {
+                throw new WSSecurityException(
+                    WSSecurityException.ErrorCode.FAILURE,
+                    "unknownSignatureAlgorithm",
+                    new Object[] {pubKeyAlgo});
+            }
+        } else {
+            this.signatureAlgorithm = signatureAlgorithm;
+        }
+
+        this.digestAlgorithm = digestAlgorithm == null ? WSConstants.SHA1 : digestAlgorithm;
+        try {
+            digestMethod = signatureFactory.newDigestMethod(this.digestAlgorithm, null);
+        } catch (Exception ex) {
+            throw new WSSecurityException(
+                WSSecurityException.ErrorCode.FAILED_SIGNATURE, ex, "noXMLSig"
+            );
+        }
+    }
+
+    /**
+     * @return whether this SignatureProfile was created for the given configuration
+     */
+    public boolean matches(Crypto crypto, String user, String signatureAlgorithm, String digestAlgorithm) {
+        return this.crypto == crypto
+            && this.user.equals(user)
+            && matches(signatureAlgorithm, configuredSignatureAlgorithm, this.signatureAlgorithm)
+            && matches(digestAlgorithm, configuredDigestAlgorithm, this.digestAlgorithm);
+    }
+
+    private static boolean matches(String algorithm, String configuredAlgorithm, String effectiveAlgorithm) {
+        if (algorithm == null) {
+            return configuredAlgorithm == null;
+        }
+        return algorithm.equals(effectiveAlgorithm);
+    }
+
+    public Crypto getCrypto() {
+        return crypto;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    public XMLSignatureFactory getSignatureFactory() {
+        return signatureFactory;
+    }
+
+    public KeyInfoFactory getKeyInfoFactory() {
+        return keyInfoFactory;
+    }
+
+    public String getSignatureAlgorithm() {
+        return signatureAlgorithm;
+    }
+
+    public String getDigestAlgorithm() {
+        return digestAlgorithm;
+    }
+
+    public DigestMethod getDigestMethod() {
+        return digestMethod;
+    }
+
+    public PrivateKey getPrivateKey() {
+        return privateKey;
+    }
+
+    public X509Certificate[] getCertificates() {
+        return certificates.clone();
+    }
+
+}
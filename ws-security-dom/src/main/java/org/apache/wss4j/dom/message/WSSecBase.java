@@ -20,6 +20,7 @@
 package org.apache.wss4j.dom.message;
 
 import org.apache.wss4j.common.WSEncryptionPart;
+import org.apache.wss4j.common.util.CachedOutputStream;
 import org.apache.wss4j.common.util.XMLUtils;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.WSDocInfo;
@@ -32,6 +33,7 @@ import org.w3c.dom.Element;
 
 import javax.security.auth.callback.CallbackHandler;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -48,6 +50,8 @@ public class WSSecBase {
     protected CallbackHandler attachmentCallbackHandler;
     protected boolean storeBytesInAttachment;
     protected boolean expandXopInclude;
+    protected int attachmentMemoryThreshold = CachedOutputStream.DEFAULT_MEMORY_THRESHOLD;
+    protected File attachmentTempDirectory;
 
     private WsuIdAllocator idAllocator;
     private final List<WSEncryptionPart> parts = new ArrayList<>();
@@ -134,6 +138,22 @@ public class WSSecBase {
         this.storeBytesInAttachment = storeBytesInAttachment;
     }
 
+    /**
+     * Set the number of bytes of an attachment that are buffered in memory at most, when the
+     * attachment is signed. Larger attachments are buffered in a temporary file.
+     */
+    public void setAttachmentMemoryThreshold(int attachmentMemoryThreshold) {
+        this.attachmentMemoryThreshold = attachmentMemoryThreshold;
+    }
+
+    /**
+     * Set the directory of the temporary files of buffered attachments (null for the default
+     * temporary-file directory).
+     */
+    public void setAttachmentTempDirectory(File attachmentTempDirectory) {
+        this.attachmentTempDirectory = attachmentTempDirectory;
+    }
+
     /**
      * Looks up or adds a body id. <p/> First try to locate the
      * <code>wsu:Id</code> in the SOAP body element. If one is found, the
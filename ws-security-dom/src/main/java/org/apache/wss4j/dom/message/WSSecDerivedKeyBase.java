@@ -98,6 +98,8 @@ public abstract class WSSecDerivedKeyBase extends WSSecSignatureBase {
 
     private int wscVersion = ConversationConstants.DEFAULT_VERSION;
 
+    private String derivationAlgorithm = ConversationConstants.DerivationAlgorithm.P_SHA_1;
+
     private String customValueType;
     private X509Certificate useThisCert;
     private Crypto crypto;
@@ -207,8 +209,7 @@ public abstract class WSSecDerivedKeyBase extends WSSecSignatureBase {
         System.arraycopy(label, 0, seed, 0, label.length);
         System.arraycopy(nonce, 0, seed, label.length, nonce.length);
 
-        DerivationAlgorithm algo =
-            AlgoFactory.getInstance(ConversationConstants.DerivationAlgorithm.P_SHA_1);
+        DerivationAlgorithm algo = AlgoFactory.getInstance(derivationAlgorithm);
 
         if (ephemeralKey == null || ephemeralKey.length == 0) {
             LOG.debug("No ephemeral key is supplied for id: " + tokenIdentifier);
@@ -224,6 +225,9 @@ public abstract class WSSecDerivedKeyBase extends WSSecSignatureBase {
         dkt.setOffset(offset);
         dkt.setLength(length);
         dkt.setNonce(XMLUtils.encodeToString(nonce));
+        if (!ConversationConstants.DerivationAlgorithm.P_SHA_1.equals(derivationAlgorithm)) {
+            dkt.setAlgorithm(derivationAlgorithm);
+        }
         dkt.setID(dktId);
 
         if (strElem == null) {
@@ -321,6 +325,20 @@ public abstract class WSSecDerivedKeyBase extends WSSecSignatureBase {
         this.wscVersion = wscVersion;
     }
 
+    /**
+     * Set the algorithm to derive the key with. The default is P_SHA1, which is also assumed if the
+     * DerivedKeyToken has no Algorithm attribute.
+     * @param derivationAlgorithm the URI of the derivation algorithm, see
+     * ConversationConstants.DerivationAlgorithm
+     */
+    public void setDerivationAlgorithm(String derivationAlgorithm) {
+        this.derivationAlgorithm = derivationAlgorithm;
+    }
+
+    public String getDerivationAlgorithm() {
+        return derivationAlgorithm;
+    }
+
     public int getWscVersion() {
         return wscVersion;
     }
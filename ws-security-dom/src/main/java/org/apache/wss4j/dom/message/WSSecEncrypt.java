@@ -19,14 +19,17 @@
 
 package org.apache.wss4j.dom.message;
 
+import java.security.PublicKey;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import javax.crypto.KeyGenerator;
 import javax.crypto.spec.SecretKeySpec;
 
 import org.apache.wss4j.common.WSEncryptionPart;
+import org.apache.wss4j.common.cache.EncryptedKeySessionCache;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.CryptoType;
 import org.apache.wss4j.common.ext.WSSecurityException;
@@ -78,6 +81,13 @@ public class WSSecEncrypt extends WSSecEncryptedKey {
 
     private Serializer encryptionSerializer;
 
+    private EncryptedKeySessionCache encryptedKeySessionCache;
+
+    /**
+     * The EncryptedKeySHA1 identifier of a reused session key
+     */
+    private String encryptedKeySHA1;
+
     public WSSecEncrypt(WSSecHeader securityHeader) {
         super(securityHeader);
     }
@@ -101,6 +111,31 @@ public class WSSecEncrypt extends WSSecEncryptedKey {
      */
     public void prepare(Crypto crypto) throws WSSecurityException {
         attachmentEncryptedDataElements = new ArrayList<>();
+        encryptedKeySHA1 = null;
+
+        //
+        // Reuse the key of an EncryptedKey that was sent to the same recipient before
+        //
+        String sessionId = null;
+        if (encryptedKeySessionCache != null && symmetricKey == null && getEphemeralKey() == null
+            && encryptedEphemeralKey == null && encryptSymmKey && !embedEncryptedKey) {
+            PublicKey publicKey = getUseThisPublicKey();
+            if (publicKey == null) {
+                publicKey = getRemoteCertificate(crypto).getPublicKey();
+            }
+            sessionId =
+                EncryptedKeySessionCache.getSessionId(publicKey, getSymmetricEncAlgorithm(), getKeyEncAlgo(),
+                                                      getDigestAlgorithm(), getMGFAlgorithm());
+            EncryptedKeySessionCache.SessionKey sessionKey =
+                encryptedKeySessionCache.getSessionKey(sessionId);
+            if (sessionKey != null) {
+                byte[] key = sessionKey.getKey();
+                symmetricKey = KeyUtils.prepareSecretKey(getSymmetricEncAlgorithm(), key);
+                Arrays.fill(key, (byte) 0);
+                encryptedKeySHA1 = sessionKey.getSha1Identifier();
+                return;
+            }
+        }
 
         //
         // Set up the symmetric key
@@ -123,29 +158,10 @@ public class WSSecEncrypt extends WSSecEncryptedKey {
             if (getUseThisPublicKey() != null) {
                 prepareInternal(symmetricKey, getUseThisPublicKey(), crypto);
             } else {
-                X509Certificate remoteCert = getUseThisCert();
-                if (remoteCert == null) {
-                    if (crypto == null) {
-                        throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "encryptionCryptoFailure");
-                    }
-                    CryptoType cryptoType = null;
-                    if (keyIdentifierType == WSConstants.ENDPOINT_KEY_IDENTIFIER) {
-                        cryptoType = new CryptoType(CryptoType.TYPE.ENDPOINT);
-                        cryptoType.setEndpoint(user);
-                    } else {
-                        cryptoType = new CryptoType(CryptoType.TYPE.ALIAS);
-                        cryptoType.setAlias(user);
-                    }
-                    X509Certificate[] certs = crypto.getX509Certificates(cryptoType);
-                    if (certs == null || certs.length <= 0) {
-                        throw new WSSecurityException(
-                            WSSecurityException.ErrorCode.FAILURE,
-                            "noUserCertsFound",
-                            new Object[] {user, "encryption"});
-                    }
-                    remoteCert = certs[0];
-                }
-                prepareInternal(symmetricKey, remoteCert, crypto);
+                prepareInternal(symmetricKey, getRemoteCertificate(crypto), crypto);
+            }
+            if (sessionId != null) {
+                encryptedKeySessionCache.putSessionKey(sessionId, symmetricKey.getEncoded(), encryptedEphemeralKey);
             }
         } else if (encryptedEphemeralKey != null) {
             prepareInternal(symmetricKey);
@@ -154,6 +170,32 @@ public class WSSecEncrypt extends WSSecEncryptedKey {
         }
     }
 
+    private X509Certificate getRemoteCertificate(Crypto crypto) throws WSSecurityException {
+        X509Certificate remoteCert = getUseThisCert();
+        if (remoteCert == null) {
+            if (crypto == null) {
+                throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "encryptionCryptoFailure");
+            }
+            CryptoType cryptoType = null;
+            if (keyIdentifierType == WSConstants.ENDPOINT_KEY_IDENTIFIER) {
+                cryptoType = new CryptoType(CryptoType.TYPE.ENDPOINT);
+                cryptoType.setEndpoint(user);
+            } else {
+                cryptoType = new CryptoType(CryptoType.TYPE.ALIAS);
+                cryptoType.setAlias(user);
+            }
+            X509Certificate[] certs = crypto.getX509Certificates(cryptoType);
+            if (certs == null || certs.length <= 0) {
+                throw new WSSecurityException(
+                    WSSecurityException.ErrorCode.FAILURE,
+                    "noUserCertsFound",
+                    new Object[] {user, "encryption"});
+            }
+            remoteCert = certs[0];
+        }
+        return remoteCert;
+    }
+
 
     /**
      * Builds the SOAP envelope with encrypted Body and adds encrypted key.
@@ -256,7 +298,7 @@ public class WSSecEncrypt extends WSSecEncryptedKey {
             // If we're not placing the ReferenceList in an EncryptedKey structure,
             // then add the ENC namespace
             //
-            if (!encryptSymmKey) {
+            if (!encryptSymmKey || encryptedKeySHA1 != null) {
                 XMLUtils.setNamespace(
                     dataRef, WSConstants.ENC_NS, WSConstants.ENC_PREFIX
                 );
@@ -314,6 +356,12 @@ public class WSSecEncrypt extends WSSecEncryptedKey {
         KeyInfo keyInfo = new KeyInfo(getDocument());
         if (embedEncryptedKey) {
             keyInfo.addUnknownElement(getEncryptedKeyElement());
+        } else if (encryptedKeySHA1 != null) {
+            SecurityTokenReference secToken = new SecurityTokenReference(getDocument());
+            secToken.addWSSENamespace();
+            secToken.setKeyIdentifierEncKeySHA1(encryptedKeySHA1);
+            secToken.addTokenType(WSConstants.WSS_ENC_KEY_VALUE_TYPE);
+            keyInfo.addUnknownElement(secToken.getElement());
         } else if (keyIdentifierType == WSConstants.ENCRYPTED_KEY_SHA1_IDENTIFIER) {
             SecurityTokenReference secToken = new SecurityTokenReference(getDocument());
             secToken.addWSSENamespace();
@@ -463,4 +511,27 @@ public class WSSecEncrypt extends WSSecEncryptedKey {
         this.encryptionSerializer = encryptionSerializer;
     }
 
+    public EncryptedKeySessionCache getEncryptedKeySessionCache() {
+        return encryptedKeySessionCache;
+    }
+
+    /**
+     * Set the EncryptedKeySessionCache to reuse the key of an EncryptedKey that was sent to the same
+     * recipient before. The EncryptedData then refer to that key via an EncryptedKeySHA1 KeyIdentifier,
+     * and no EncryptedKey is added to the message. The cache is only used if the symmetric key is
+     * generated and encrypted for the recipient, and the EncryptedKey is not embedded. It is not set
+     * by default.
+     */
+    public void setEncryptedKeySessionCache(EncryptedKeySessionCache encryptedKeySessionCache) {
+        this.encryptedKeySessionCache = encryptedKeySessionCache;
+    }
+
+    /**
+     * @return the EncryptedKeySHA1 identifier of the reused session key, or null if a new
+     *         EncryptedKey was created by <code>prepare()</code>
+     */
+    public String getEncryptedKeySHA1() {
+        return encryptedKeySHA1;
+    }
+
 }
@@ -19,6 +19,7 @@
 
 package org.apache.wss4j.dom.message;
 
+import java.security.GeneralSecurityException;
 import java.security.NoSuchProviderException;
 import java.security.Provider;
 import java.security.cert.CertificateEncodingException;
@@ -32,6 +33,7 @@ import javax.xml.crypto.XMLStructure;
 import javax.xml.crypto.dom.DOMCryptoContext;
 import javax.xml.crypto.dom.DOMStructure;
 import javax.xml.crypto.dsig.CanonicalizationMethod;
+import javax.xml.crypto.dsig.DigestMethod;
 import javax.xml.crypto.dsig.SignatureMethod;
 import javax.xml.crypto.dsig.SignedInfo;
 import javax.xml.crypto.dsig.XMLSignContext;
@@ -109,12 +111,29 @@ public class WSSecSignature extends WSSecSignatureBase {
     private boolean includeSignatureToken;
     private boolean addInclusivePrefixes = true;
     private Element customKeyInfoElement;
+    private SignatureProfile signatureProfile;
 
     public WSSecSignature(WSSecHeader securityHeader) {
         super(securityHeader);
         init(null);
     }
 
+    /**
+     * Create a WSSecSignature that signs with the private key and the certificates of the given
+     * SignatureProfile, and reuses its XMLSignatureFactory, KeyInfoFactory and DigestMethod.
+     * The signature and digest algorithms of the profile are used unless they are changed via
+     * the setters. A secret key that is set via #setSecretKey takes precedence over the private
+     * key of the profile.
+     */
+    public WSSecSignature(WSSecHeader securityHeader, SignatureProfile signatureProfile) {
+        super(securityHeader);
+        this.signatureProfile = signatureProfile;
+        signatureFactory = signatureProfile.getSignatureFactory();
+        sigAlgo = signatureProfile.getSignatureAlgorithm();
+        digestAlgo = signatureProfile.getDigestAlgorithm();
+        user = signatureProfile.getUser();
+    }
+
     public WSSecSignature(Document doc) {
         this(doc, null);
     }
@@ -323,7 +342,7 @@ public class WSSecSignature extends WSSecSignatureBase {
                 java.security.PublicKey publicKey = certs[0].getPublicKey();
 
                 try {
-                    KeyInfoFactory keyInfoFactory = signatureFactory.getKeyInfoFactory();
+                    KeyInfoFactory keyInfoFactory = getKeyInfoFactory();
                     KeyValue keyValue = keyInfoFactory.newKeyValue(publicKey);
                     keyInfo =
                         keyInfoFactory.newKeyInfo(Collections.singletonList(keyValue), keyInfoUri);
@@ -359,10 +378,28 @@ public class WSSecSignature extends WSSecSignatureBase {
             }
         }
 
-        KeyInfoFactory keyInfoFactory = signatureFactory.getKeyInfoFactory();
+        KeyInfoFactory keyInfoFactory = getKeyInfoFactory();
         keyInfo = keyInfoFactory.newKeyInfo(kiChildren, keyInfoUri);
     }
 
+    private KeyInfoFactory getKeyInfoFactory() {
+        if (signatureProfile != null) {
+            return signatureProfile.getKeyInfoFactory();
+        }
+        return signatureFactory.getKeyInfoFactory();
+    }
+
+    @Override
+    protected DigestMethod createDigestMethod(
+        XMLSignatureFactory signatureFactory, String digestAlgo
+    ) throws GeneralSecurityException {
+        if (signatureProfile != null && signatureProfile.getSignatureFactory() == signatureFactory
+            && signatureProfile.getDigestAlgorithm().equals(digestAlgo)) {
+            return signatureProfile.getDigestMethod();
+        }
+        return super.createDigestMethod(signatureFactory, digestAlgo);
+    }
+
     /**
      * Builds a signed soap envelope.
      *
@@ -554,7 +591,9 @@ public class WSSecSignature extends WSSecSignatureBase {
     ) throws WSSecurityException {
         try {
             java.security.Key key;
-            if (secretKey == null) {
+            if (secretKey == null && signatureProfile != null) {
+                key = signatureProfile.getPrivateKey();
+            } else if (secretKey == null) {
                 key = crypto.getPrivateKey(user, password);
             } else {
                 key = KeyUtils.prepareSecretKey(sigAlgo, secretKey);
@@ -857,7 +896,9 @@ public class WSSecSignature extends WSSecSignatureBase {
             || keyIdentifierType == WSConstants.CUSTOM_SYMM_SIGNING_DIRECT
             || keyIdentifierType == WSConstants.ENCRYPTED_KEY_SHA1_IDENTIFIER
             || keyIdentifierType == WSConstants.CUSTOM_KEY_IDENTIFIER)) {
-            if (useThisCert == null) {
+            if (useThisCert == null && signatureProfile != null) {
+                certs = signatureProfile.getCertificates();
+            } else if (useThisCert == null) {
                 CryptoType cryptoType = new CryptoType(CryptoType.TYPE.ALIAS);
                 cryptoType.setAlias(user);
                 if (crypto == null) {
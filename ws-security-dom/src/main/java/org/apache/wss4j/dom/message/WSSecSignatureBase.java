@@ -19,6 +19,7 @@
 
 package org.apache.wss4j.dom.message;
 
+import java.security.GeneralSecurityException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
@@ -90,7 +91,7 @@ public class WSSecSignatureBase extends WSSecBase {
     ) throws WSSecurityException {
         DigestMethod digestMethod;
         try {
-            digestMethod = signatureFactory.newDigestMethod(digestAlgo, null);
+            digestMethod = createDigestMethod(signatureFactory, digestAlgo);
         } catch (Exception ex) {
             LOG.error("", ex);
             throw new WSSecurityException(
@@ -230,6 +231,15 @@ public class WSSecSignatureBase extends WSSecBase {
         return referenceList;
     }
 
+    /**
+     * Create the DigestMethod of the References for the given digest algorithm
+     */
+    protected DigestMethod createDigestMethod(
+        XMLSignatureFactory signatureFactory, String digestAlgo
+    ) throws GeneralSecurityException {
+        return signatureFactory.newDigestMethod(digestAlgo, null);
+    }
+
     private void cloneElement(Element element) throws WSSecurityException {
         if (expandXopInclude) {
             // Look for xop:Include Nodes
@@ -280,7 +290,8 @@ public class WSSecSignatureBase extends WSSecBase {
 
                     AttachmentTransformParameterSpec attachmentTransformParameterSpec =
                         new AttachmentTransformParameterSpec(
-                            attachmentCallbackHandler, attachment
+                            attachmentCallbackHandler, attachment,
+                            attachmentMemoryThreshold, attachmentTempDirectory
                         );
 
                     String attachmentSignatureTransform = WSConstants.SWA_ATTACHMENT_CONTENT_SIG_TRANS;
@@ -30,6 +30,7 @@ import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.bsp.BSPEnforcer;
 import org.apache.wss4j.common.derivedKey.ConversationConstants;
+import org.apache.wss4j.common.derivedKey.DerivedKeyCache;
 import org.apache.wss4j.common.derivedKey.DerivedKeyUtils;
 import org.apache.wss4j.common.principal.WSDerivedKeyTokenPrincipal;
 import org.apache.wss4j.common.token.SecurityTokenReference;
@@ -506,6 +507,12 @@ public class DerivedKeyToken {
         principal.setOffset(getOffset());
         principal.setAlgorithm(getAlgorithm());
 
+        principal.setBasetokenId(getBaseTokenId());
+
+        return principal;
+    }
+
+    private String getBaseTokenId() throws WSSecurityException {
         String basetokenId = null;
         SecurityTokenReference securityTokenReference = getSecurityTokenReference();
         if (securityTokenReference != null && securityTokenReference.getReference() != null) {
@@ -515,9 +522,7 @@ public class DerivedKeyToken {
             // KeyIdentifier
             basetokenId = securityTokenReference.getKeyIdentifierValue();
         }
-        principal.setBasetokenId(basetokenId);
-
-        return principal;
+        return basetokenId;
     }
 
     /**
@@ -539,9 +544,24 @@ public class DerivedKeyToken {
      * @throws WSSecurityException
      */
     public byte[] deriveKey(int length, byte[] secret) throws WSSecurityException {
+        return deriveKey(length, secret, null);
+    }
+
+    /**
+     * Derive a key from this DerivedKeyToken instance, via the given cache of derived keys. The keys
+     * are cached per base token, i.e. per token that is referenced by the SecurityTokenReference of
+     * this DerivedKeyToken.
+     * @param length
+     * @param secret
+     * @param derivedKeyCache the cache of derived keys (can be null)
+     * @throws WSSecurityException
+     */
+    public byte[] deriveKey(int length, byte[] secret, DerivedKeyCache derivedKeyCache) throws WSSecurityException {
         try {
             byte[] nonce = org.apache.xml.security.utils.XMLUtils.decode(getNonce());
-            return DerivedKeyUtils.deriveKey(getAlgorithm(), getLabel(), length, secret, nonce, getOffset());
+            String baseTokenId = derivedKeyCache != null ? getBaseTokenId() : null;
+            return DerivedKeyUtils.deriveKey(getAlgorithm(), getLabel(), length, secret, nonce, getOffset(),
+                                             derivedKeyCache, baseTokenId);
         } catch (Exception e) {
             throw new WSSecurityException(
                 WSSecurityException.ErrorCode.FAILURE, e
@@ -32,6 +32,7 @@ import org.apache.wss4j.common.token.PKIPathSecurity;
 import org.apache.wss4j.common.token.X509Security;
 import org.apache.wss4j.common.util.XMLUtils;
 import org.apache.wss4j.dom.WSConstants;
+import org.apache.wss4j.dom.engine.Stateless;
 import org.apache.wss4j.dom.engine.WSSecurityEngineResult;
 import org.apache.wss4j.dom.handler.RequestData;
 import org.apache.wss4j.dom.message.token.KerberosSecurity;
@@ -43,6 +44,7 @@ import org.w3c.dom.Element;
 /**
  * Processor implementation to handle wsse:BinarySecurityToken elements
  */
+@Stateless
 public class BinarySecurityTokenProcessor implements Processor {
 
     /**
@@ -24,9 +24,11 @@ import java.util.List;
 
 import org.w3c.dom.Element;
 import org.apache.wss4j.dom.WSConstants;
+import org.apache.wss4j.dom.engine.Stateless;
 import org.apache.wss4j.dom.engine.WSSecurityEngineResult;
 import org.apache.wss4j.common.crypto.AlgorithmSuite;
 import org.apache.wss4j.common.crypto.AlgorithmSuiteValidator;
+import org.apache.wss4j.common.derivedKey.ConversationConstants;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.dom.handler.RequestData;
 import org.apache.wss4j.dom.message.token.DerivedKeyToken;
@@ -38,6 +40,7 @@ import org.apache.wss4j.dom.str.STRParserResult;
 /**
  * The processor to process <code>wsc:DerivedKeyToken</code>.
  */
+@Stateless
 public class DerivedKeyTokenProcessor implements Processor {
 
     public List<WSSecurityEngineResult> handleToken(
@@ -56,6 +59,11 @@ public class DerivedKeyTokenProcessor implements Processor {
                 dkt.getAlgorithm()
             );
         }
+        if (ConversationConstants.DerivationAlgorithm.P_SHA_256.equals(dkt.getAlgorithm())
+            && !data.isAllowPSha256DerivedKeyAlgorithm()) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.UNSUPPORTED_ALGORITHM,
+                                          "unknownAlgorithm", new Object[] {dkt.getAlgorithm()});
+        }
 
         byte[] secret = null;
         Element secRefElement = dkt.getSecurityTokenReferenceElement();
@@ -77,7 +85,7 @@ public class DerivedKeyTokenProcessor implements Processor {
                                           new Object[] {"Missing wsc:Nonce value"});
         }
         int length = dkt.getLength();
-        byte[] keyBytes = dkt.deriveKey(length, secret);
+        byte[] keyBytes = dkt.deriveKey(length, secret, data.getDerivedKeyCache());
         WSSecurityEngineResult result =
             new WSSecurityEngineResult(WSConstants.DKT, null, keyBytes, null);
         data.getWsDocInfo().addTokenElement(elem);
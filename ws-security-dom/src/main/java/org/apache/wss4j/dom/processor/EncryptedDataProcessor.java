@@ -38,6 +38,7 @@ import org.apache.wss4j.common.util.KeyUtils;
 import org.apache.wss4j.common.util.XMLUtils;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.WSDataRef;
+import org.apache.wss4j.dom.engine.Stateless;
 import org.apache.wss4j.dom.engine.WSSConfig;
 import org.apache.wss4j.dom.engine.WSSecurityEngineResult;
 import org.apache.wss4j.dom.handler.RequestData;
@@ -55,6 +56,7 @@ import org.w3c.dom.Element;
  * This processor will not be invoked for encrypted content referenced by a
  * <code>xenc:ReferenceList</code>.
  */
+@Stateless
 public class EncryptedDataProcessor implements Processor {
 
     private static final org.slf4j.Logger LOG =
@@ -160,7 +162,7 @@ public class EncryptedDataProcessor implements Processor {
 
         WSDataRef dataRef = EncryptionUtils.decryptEncryptedData(
                 elem.getOwnerDocument(), encryptedDataId, elem, key, symEncAlgo,
-                data.getAttachmentCallbackHandler(), data.getEncryptionSerializer());
+                data.getAttachmentCallbackHandler(), data.getEncryptionSerializer(), data.getWsDocInfo());
 
         WSSecurityEngineResult result =
                 new WSSecurityEngineResult(WSConstants.ENCR, Collections.singletonList(dataRef));
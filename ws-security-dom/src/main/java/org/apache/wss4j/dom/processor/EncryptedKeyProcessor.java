@@ -45,6 +45,7 @@ import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.apache.wss4j.common.bsp.BSPEnforcer;
 import org.apache.wss4j.common.bsp.BSPRule;
+import org.apache.wss4j.common.cache.EncryptedKeyCache;
 import org.apache.wss4j.common.crypto.AlgorithmSuite;
 import org.apache.wss4j.common.crypto.AlgorithmSuiteValidator;
 import org.apache.wss4j.common.crypto.CryptoType;
@@ -56,6 +57,7 @@ import org.apache.wss4j.common.util.XMLUtils;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.WSDataRef;
 import org.apache.wss4j.dom.WSDocInfo;
+import org.apache.wss4j.dom.engine.Stateless;
 import org.apache.wss4j.dom.engine.WSSecurityEngineResult;
 import org.apache.wss4j.dom.handler.RequestData;
 import org.apache.wss4j.dom.str.EncryptedKeySTRParser;
@@ -69,14 +71,15 @@ import org.apache.wss4j.dom.util.X509Util;
 import org.apache.xml.security.algorithms.JCEMapper;
 import org.apache.xml.security.encryption.XMLCipher;
 
+@Stateless
 public class EncryptedKeyProcessor implements Processor {
     private static final org.slf4j.Logger LOG =
         org.slf4j.LoggerFactory.getLogger(EncryptedKeyProcessor.class);
 
-    private Provider provider;
+    private final Provider provider;
 
     public EncryptedKeyProcessor() {
-        // complete
+        this(null);
     }
 
     public EncryptedKeyProcessor(Provider provider) {
@@ -224,9 +227,20 @@ public class EncryptedKeyProcessor implements Processor {
                                                         refList, encryptedEphemeralKey);
         } else {
             PrivateKey privateKey = getPrivateKey(data, certs, publicKey);
-            decryptedBytes = getAsymmetricDecryptedBytes(data, data.getWsDocInfo(), encryptedKeyTransportMethod,
-                                                         encryptedEphemeralKey, refList,
-                                                         elem, privateKey);
+            EncryptedKeyCache encryptedKeyCache = data.getEncryptedKeyCache();
+            String cacheKey = null;
+            if (encryptedKeyCache != null) {
+                cacheKey = EncryptedKeyCache.getCacheKey(encryptedEphemeralKey, encryptedKeyTransportMethod,
+                                                         EncryptionUtils.getDigestAlgorithm(elem),
+                                                         EncryptionUtils.getMGFAlgorithm(elem),
+                                                         EncryptionUtils.getPSource(elem), publicKey);
+                decryptedBytes = encryptedKeyCache.get(cacheKey);
+            }
+            if (decryptedBytes == null) {
+                decryptedBytes = getAsymmetricDecryptedBytes(data, data.getWsDocInfo(), encryptedKeyTransportMethod,
+                                                             encryptedEphemeralKey, refList,
+                                                             elem, privateKey, encryptedKeyCache, cacheKey);
+            }
         }
 
         List<WSDataRef> dataRefs = decryptDataRefs(refList, data.getWsDocInfo(), decryptedBytes, data);
@@ -298,7 +312,9 @@ public class EncryptedKeyProcessor implements Processor {
         byte[] encryptedEphemeralKey,
         Element refList,
         Element encryptedKeyElement,
-        PrivateKey privateKey
+        PrivateKey privateKey,
+        EncryptedKeyCache encryptedKeyCache,
+        String cacheKey
     ) throws WSSecurityException {
         if (data.getDecCrypto() == null) {
             throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "noDecCryptoFile");
@@ -353,7 +369,13 @@ public class EncryptedKeyProcessor implements Processor {
 
         try {
             String keyAlgorithm = JCEMapper.translateURItoJCEID(encryptedKeyTransportMethod);
-            return cipher.unwrap(encryptedEphemeralKey, keyAlgorithm, Cipher.SECRET_KEY).getEncoded();
+            byte[] decryptedBytes =
+                cipher.unwrap(encryptedEphemeralKey, keyAlgorithm, Cipher.SECRET_KEY).getEncoded();
+            // Only a key that was unwrapped successfully is cached, never the random key below
+            if (encryptedKeyCache != null) {
+                encryptedKeyCache.put(cacheKey, decryptedBytes);
+            }
+            return decryptedBytes;
         } catch (IllegalStateException ex) {
             throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_CHECK, ex);
         } catch (Exception ex) {
@@ -601,7 +623,7 @@ public class EncryptedKeyProcessor implements Processor {
 
         return EncryptionUtils.decryptEncryptedData(
             doc, dataRefURI, encryptedDataElement, symmetricKey, symEncAlgo, data.getAttachmentCallbackHandler(),
-            data.getEncryptionSerializer()
+            data.getEncryptionSerializer(), docInfo
         );
     }
 
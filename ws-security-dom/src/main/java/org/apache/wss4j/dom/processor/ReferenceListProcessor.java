@@ -41,6 +41,7 @@ import org.apache.wss4j.common.util.KeyUtils;
 import org.apache.wss4j.common.util.XMLUtils;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.WSDataRef;
+import org.apache.wss4j.dom.engine.Stateless;
 import org.apache.wss4j.dom.engine.WSSecurityEngineResult;
 import org.apache.wss4j.dom.handler.RequestData;
 import org.apache.wss4j.dom.str.STRParser;
@@ -51,6 +52,7 @@ import org.apache.wss4j.dom.util.EncryptionUtils;
 import org.apache.wss4j.dom.util.SignatureUtils;
 import org.apache.wss4j.dom.util.X509Util;
 
+@Stateless
 public class ReferenceListProcessor implements Processor {
     private static final org.slf4j.Logger LOG =
         org.slf4j.LoggerFactory.getLogger(ReferenceListProcessor.class);
@@ -192,7 +194,7 @@ public class ReferenceListProcessor implements Processor {
         return
             EncryptionUtils.decryptEncryptedData(
                 doc, dataRefURI, encryptedDataElement, symmetricKey, symEncAlgo, data.getAttachmentCallbackHandler(),
-                data.getEncryptionSerializer()
+                data.getEncryptionSerializer(), data.getWsDocInfo()
             );
     }
 
@@ -44,8 +44,10 @@ import org.apache.wss4j.common.saml.SamlAssertionWrapper;
 import org.apache.wss4j.common.util.DOM2Writer;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.WSDataRef;
+import org.apache.wss4j.dom.engine.Stateless;
 import org.apache.wss4j.dom.engine.WSSecurityEngineResult;
 import org.apache.wss4j.dom.handler.RequestData;
+import org.apache.wss4j.dom.saml.SamlAssertionCache;
 import org.apache.wss4j.dom.saml.WSSSAMLKeyInfoProcessor;
 import org.apache.wss4j.dom.util.EncryptionUtils;
 import org.apache.wss4j.dom.validate.Credential;
@@ -54,6 +56,7 @@ import org.opensaml.xmlsec.signature.KeyInfo;
 import org.opensaml.xmlsec.signature.Signature;
 import org.w3c.dom.Element;
 
+@Stateless
 public class SAMLTokenProcessor implements Processor {
     private static final org.slf4j.Logger LOG =
         org.slf4j.LoggerFactory.getLogger(SAMLTokenProcessor.class);
@@ -91,10 +94,31 @@ public class SAMLTokenProcessor implements Processor {
             data.getValidator(new QName(elem.getNamespaceURI(), elem.getLocalName()));
 
         SamlAssertionWrapper samlAssertion = new SamlAssertionWrapper(elem);
-        XMLSignature xmlSignature = verifySignatureKeysAndAlgorithms(samlAssertion, data);
-        List<WSDataRef> dataRefs = createDataRefs(elem, samlAssertion, xmlSignature);
 
-        Credential credential = handleSAMLToken(samlAssertion, data, validator);
+        // See if the signature of the Assertion was already verified and validated
+        SamlAssertionCache assertionCache = data.getSamlAssertionCache();
+        String cacheKey = null;
+        SamlAssertionCache.VerifiedAssertion verifiedAssertion = null;
+        if (assertionCache != null && validator != null && samlAssertion.isSigned()) {
+            cacheKey = SamlAssertionCache.getCacheKey(samlAssertion);
+            verifiedAssertion = assertionCache.get(cacheKey);
+        }
+
+        List<WSDataRef> dataRefs = null;
+        if (verifiedAssertion != null) {
+            LOG.debug("The signature of the SAML Assertion was already verified");
+            samlAssertion.setSignatureKeyInfo(verifiedAssertion.getSignatureKeyInfo());
+            dataRefs = verifiedAssertion.getDataRefs(elem, EncryptionUtils.getXPath(elem));
+        } else {
+            XMLSignature xmlSignature = verifySignatureKeysAndAlgorithms(samlAssertion, data);
+            dataRefs = createDataRefs(elem, samlAssertion, xmlSignature);
+        }
+
+        Credential credential =
+            handleSAMLToken(samlAssertion, data, validator, verifiedAssertion != null);
+        if (cacheKey != null && verifiedAssertion == null) {
+            assertionCache.put(cacheKey, samlAssertion, dataRefs);
+        }
         samlAssertion = credential.getSamlAssertion();
         if (LOG.isDebugEnabled()) {
             LOG.debug("SAML Assertion issuer " + samlAssertion.getIssuerString());
@@ -154,6 +178,15 @@ public class SAMLTokenProcessor implements Processor {
         SamlAssertionWrapper samlAssertion,
         RequestData data,
         Validator validator
+    ) throws WSSecurityException {
+        return handleSAMLToken(samlAssertion, data, validator, false);
+    }
+
+    private Credential handleSAMLToken(
+        SamlAssertionWrapper samlAssertion,
+        RequestData data,
+        Validator validator,
+        boolean signatureTrusted
     ) throws WSSecurityException {
         // Parse the subject if it exists
         samlAssertion.parseSubject(
@@ -164,6 +197,7 @@ public class SAMLTokenProcessor implements Processor {
         // Now delegate the rest of the verification to the Validator
         Credential credential = new Credential();
         credential.setSamlAssertion(samlAssertion);
+        credential.setSignatureTrusted(signatureTrusted);
         if (validator != null) {
             return validator.validate(credential, data);
         }
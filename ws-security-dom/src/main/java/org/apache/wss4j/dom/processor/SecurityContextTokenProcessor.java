@@ -20,6 +20,7 @@
 package org.apache.wss4j.dom.processor;
 
 import org.apache.wss4j.dom.WSConstants;
+import org.apache.wss4j.dom.engine.Stateless;
 import org.apache.wss4j.dom.engine.WSSecurityEngineResult;
 import org.apache.wss4j.common.ext.WSPasswordCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
@@ -41,6 +42,7 @@ import java.io.IOException;
 /**
  * The processor to process <code>wsc:SecurityContextToken</code>.
  */
+@Stateless
 public class SecurityContextTokenProcessor implements Processor {
 
     public List<WSSecurityEngineResult> handleToken(
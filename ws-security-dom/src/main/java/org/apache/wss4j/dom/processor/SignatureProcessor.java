@@ -32,6 +32,13 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import javax.xml.crypto.Data;
 import javax.xml.crypto.NodeSetData;
@@ -67,6 +74,7 @@ import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.WSDataRef;
 import org.apache.wss4j.dom.WSDocInfo;
 import org.apache.wss4j.dom.callback.CallbackLookup;
+import org.apache.wss4j.dom.engine.Stateless;
 import org.apache.wss4j.dom.engine.WSSecurityEngineResult;
 import org.apache.wss4j.dom.handler.RequestData;
 import org.apache.wss4j.dom.message.token.Timestamp;
@@ -87,6 +95,7 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
+@Stateless
 public class SignatureProcessor implements Processor {
     private static final org.slf4j.Logger LOG =
         org.slf4j.LoggerFactory.getLogger(SignatureProcessor.class);
@@ -352,6 +361,10 @@ public class SignatureProcessor implements Processor {
 
         context.setProperty(AttachmentContentSignatureTransform.ATTACHMENT_CALLBACKHANDLER,
                             data.getAttachmentCallbackHandler());
+        context.setProperty(AttachmentContentSignatureTransform.ATTACHMENT_MEMORY_THRESHOLD,
+                            data.getAttachmentMemoryThreshold());
+        context.setProperty(AttachmentContentSignatureTransform.ATTACHMENT_TEMP_DIRECTORY,
+                            data.getAttachmentTempDirectory());
 
         try {
             XMLSignature xmlSignature = signatureFactory.unmarshalXMLSignature(context);
@@ -369,6 +382,10 @@ public class SignatureProcessor implements Processor {
             testMessageReplay(elem, xmlSignature.getSignatureValue().getValue(), key, data, wsDocInfo);
 
             setElementsOnContext(xmlSignature, (DOMValidateContext)context, data, wsDocInfo);
+            Executor referenceVerificationExecutor = data.getReferenceVerificationExecutor();
+            if (referenceVerificationExecutor != null) {
+                verifyReferences(xmlSignature, context, referenceVerificationExecutor);
+            }
             boolean signatureOk = xmlSignature.validate(context);
             if (signatureOk) {
                 return xmlSignature;
@@ -403,6 +420,81 @@ public class SignatureProcessor implements Processor {
         throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_CHECK);
     }
 
+    /**
+     * Digest the attachment references of the Signature in parallel on the given Executor. The
+     * references cache their validation result, so XMLSignature#validate does not verify them again.
+     * The references to the document share the DOM and the ValidateContext, which are not
+     * thread-safe, so they are left to XMLSignature#validate on the calling thread.
+     * @param xmlSignature the XMLSignature object to get the references from
+     * @param context the ValidateContext
+     * @param executor the Executor on which the references are verified
+     * @throws WSSecurityException as soon as the first reference does not match its digest
+     */
+    private void verifyReferences(
+        XMLSignature xmlSignature,
+        final XMLValidateContext context,
+        Executor executor
+    ) throws WSSecurityException {
+        List<Reference> references = new ArrayList<>(xmlSignature.getSignedInfo().getReferences().size());
+        for (Object refObject : xmlSignature.getSignedInfo().getReferences()) {
+            Reference reference = (Reference)refObject;
+            if (reference.getURI() != null && reference.getURI().startsWith("cid:")) {
+                references.add(reference);
+            }
+        }
+        if (references.size() < 2) {
+            return;
+        }
+
+        CompletionService<Reference> completionService = new ExecutorCompletionService<>(executor);
+        List<Future<Reference>> futures = new ArrayList<>(references.size());
+        for (final Reference reference : references) {
+            futures.add(completionService.submit(new Callable<Reference>() {
+                @Override
+                public Reference call() throws Exception {
+                    long start = System.nanoTime();
+                    boolean referenceOk = reference.validate(context);
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("Reference " + getReferenceId(reference) + " check: " + referenceOk
+                            + " (" + TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start) + " us)");
+                    }
+                    return referenceOk ? null : reference;
+                }
+            }));
+        }
+
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                Reference failedReference = completionService.take().get();
+                if (failedReference != null) {
+                    LOG.debug("Reference {} does not match its digest", getReferenceId(failedReference));
+                    throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_CHECK);
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_CHECK, ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            throw new WSSecurityException(
+                WSSecurityException.ErrorCode.FAILED_CHECK, cause instanceof Exception ? (Exception)cause : ex
+            );
+        } finally {
+            // Fail fast: stop verifying the remaining references once the result is known
+            for (Future<Reference> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private static String getReferenceId(Reference reference) {
+        String id = reference.getId();
+        if (id == null) {
+            id = reference.getURI();
+        }
+        return id;
+    }
+
     /**
      * Retrieve the Reference elements and set them on the ValidateContext
      * @param xmlSignature the XMLSignature object to get the references from
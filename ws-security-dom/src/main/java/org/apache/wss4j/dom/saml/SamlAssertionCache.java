@@ -0,0 +1,231 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.dom.saml;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.saml.SAMLKeyInfo;
+import org.apache.wss4j.common.saml.SamlAssertionWrapper;
+import org.apache.wss4j.dom.WSDataRef;
+import org.apache.xml.security.c14n.Canonicalizer;
+import org.apache.xml.security.exceptions.XMLSecurityException;
+import org.w3c.dom.Element;
+
+/**
+ * An in-memory cache of signed SAML Assertions that were successfully verified and validated.
+ * When a cached Assertion is received again, the SAMLTokenProcessor skips the verification of
+ * the signature and the SamlAssertionValidator skips the profile and trust checks of the
+ * signature. The per-request checks (Subject Confirmation, Conditions, AudienceRestrictions,
+ * OneTimeUse etc.) are still performed.
+ *
+ * An Assertion is cached until its NotOnOrAfter time (Assertions without a NotOnOrAfter time
+ * are not cached). The cache key consists of the ID and the Issuer of the Assertion, and a
+ * digest of the SignatureValue and of the (exclusive canonical form of the) Assertion, so that
+ * an Assertion that was modified in any way is not found in the cache.
+ *
+ * The cache is not enabled by default - see RequestData#setSamlAssertionCache. As the signature
+ * trust is only verified once, a cache must only be shared by endpoints that use the same
+ * signature verification Crypto, certificate constraints and SAML AlgorithmSuite.
+ */
+public class SamlAssertionCache {
+
+    /**
+     * The default maximum number of cached Assertions
+     */
+    public static final int DEFAULT_MAX_SIZE = 1000;
+
+    private final ConcurrentMap<String, VerifiedAssertion> cache = new ConcurrentHashMap<>();
+    private final int maxSize;
+
+    public SamlAssertionCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param maxSize the maximum number of cached Assertions
+     */
+    public SamlAssertionCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Get the cache key of the given signed Assertion.
+     * @return the cache key, or null if the Assertion is not signed
+     * @throws WSSecurityException
+     */
+    public static String getCacheKey(SamlAssertionWrapper samlAssertion) throws WSSecurityException {
+        byte[] signatureValue = samlAssertion.getSignatureValue();
+        Element assertionElement = samlAssertion.getElement();
+        if (signatureValue == null || assertionElement == null) {
+            return null;
+        }
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(signatureValue);
+            Canonicalizer canonicalizer =
+                Canonicalizer.getInstance(Canonicalizer.ALGO_ID_C14N_EXCL_WITH_COMMENTS);
+            digest.update(canonicalizer.canonicalizeSubtree(assertionElement));
+
+            String issuer = samlAssertion.getIssuerString();
+            return samlAssertion.getId() + "|" + (issuer == null ? "" : issuer) + "|"
+                + Base64.getEncoder().encodeToString(digest.digest());
+        } catch (NoSuchAlgorithmException | XMLSecurityException ex) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, ex);
+        }
+    }
+
+    /**
+     * Get the cached Assertion for the given cache key.
+     * @return the cached Assertion, or null if the Assertion is not cached or has expired
+     */
+    public VerifiedAssertion get(String cacheKey) {
+        if (cacheKey == null) {
+            return null;
+        }
+        VerifiedAssertion verifiedAssertion = cache.get(cacheKey);
+        if (verifiedAssertion != null && !verifiedAssertion.getExpires().isAfter(Instant.now())) {
+            cache.remove(cacheKey, verifiedAssertion);
+            return null;
+        }
+        return verifiedAssertion;
+    }
+
+    /**
+     * Cache a verified and validated Assertion until its NotOnOrAfter time.
+     * @param cacheKey the cache key of the Assertion (see #getCacheKey)
+     * @param samlAssertion the verified and validated Assertion
+     * @param dataRefs the WSDataRefs of the signature of the Assertion
+     */
+    public void put(String cacheKey, SamlAssertionWrapper samlAssertion, List<WSDataRef> dataRefs) {
+        Instant expires = samlAssertion.getNotOnOrAfter();
+        if (cacheKey == null || expires == null || !expires.isAfter(Instant.now())
+            || samlAssertion.getSignatureKeyInfo() == null) {
+            return;
+        }
+
+        if (cache.size() >= maxSize) {
+            removeExpired();
+            if (cache.size() >= maxSize) {
+                return;
+            }
+        }
+        cache.put(cacheKey,
+                  new VerifiedAssertion(samlAssertion.getSignatureKeyInfo(), dataRefs, expires));
+    }
+
+    /**
+     * @return the number of cached Assertions
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    /**
+     * Remove all cached Assertions.
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    private void removeExpired() {
+        Instant now = Instant.now();
+        for (Map.Entry<String, VerifiedAssertion> entry : cache.entrySet()) {
+            if (!entry.getValue().getExpires().isAfter(now)) {
+                cache.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * A cached Assertion. It stores the key information of the verified signature and the
+     * WSDataRefs of the signature (without the protected element of the original request).
+     */
+    public static final class VerifiedAssertion {
+
+        private final SAMLKeyInfo signatureKeyInfo;
+        private final List<WSDataRef> dataRefs;
+        private final Instant expires;
+
+        private VerifiedAssertion(SAMLKeyInfo signatureKeyInfo, List<WSDataRef> dataRefs, Instant expires) {
+            this.signatureKeyInfo = signatureKeyInfo;
+            this.expires = expires;
+            if (dataRefs == null) {
+                this.dataRefs = null;
+            } else {
+                List<WSDataRef> copies = new ArrayList<>(dataRefs.size());
+                for (WSDataRef dataRef : dataRefs) {
+                    copies.add(copyDataRef(dataRef, null));
+                }
+                this.dataRefs = Collections.unmodifiableList(copies);
+            }
+        }
+
+        public SAMLKeyInfo getSignatureKeyInfo() {
+            return signatureKeyInfo;
+        }
+
+        public Instant getExpires() {
+            return expires;
+        }
+
+        /**
+         * Get the WSDataRefs of the signature for the given (received) Assertion element
+         * @param token the received Assertion element
+         * @param xpath the XPath of the received Assertion element
+         * @return the WSDataRefs of the signature
+         */
+        public List<WSDataRef> getDataRefs(Element token, String xpath) {
+            if (dataRefs == null) {
+                return null;
+            }
+            List<WSDataRef> protectedRefs = new ArrayList<>(dataRefs.size());
+            for (WSDataRef dataRef : dataRefs) {
+                WSDataRef protectedRef = copyDataRef(dataRef, token);
+                protectedRef.setXpath(xpath);
+                protectedRefs.add(protectedRef);
+            }
+            return protectedRefs;
+        }
+
+        private static WSDataRef copyDataRef(WSDataRef dataRef, Element token) {
+            WSDataRef copy = new WSDataRef();
+            copy.setWsuId(dataRef.getWsuId());
+            copy.setAlgorithm(dataRef.getAlgorithm());
+            copy.setDigestAlgorithm(dataRef.getDigestAlgorithm());
+            copy.setDigestValue(dataRef.getDigestValue());
+            copy.setTransformAlgorithms(dataRef.getTransformAlgorithms());
+            if (token != null) {
+                copy.setProtectedElement(token);
+            }
+            return copy;
+        }
+    }
+}
@@ -22,7 +22,10 @@ import org.apache.jcp.xml.dsig.internal.dom.ApacheOctetStreamData;
 import org.apache.wss4j.common.ext.Attachment;
 import org.apache.wss4j.common.ext.AttachmentRequestCallback;
 import org.apache.wss4j.common.ext.AttachmentResultCallback;
+import org.apache.wss4j.common.util.AttachmentUtils;
 import org.apache.wss4j.common.util.CRLFOutputStream;
+import org.apache.wss4j.common.util.CachedInputStream;
+import org.apache.wss4j.common.util.CachedOutputStream;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.xml.security.c14n.CanonicalizationException;
 import org.apache.xml.security.c14n.Canonicalizer;
@@ -42,9 +45,7 @@ import javax.xml.crypto.dsig.TransformService;
 import javax.xml.crypto.dsig.spec.TransformParameterSpec;
 import javax.xml.parsers.ParserConfigurationException;
 
-import java.io.BufferedInputStream;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -57,6 +58,8 @@ public class AttachmentContentSignatureTransform extends TransformService {
 
     public static final String TRANSFORM_URI = WSConstants.SWA_ATTACHMENT_CONTENT_SIG_TRANS;
     public static final String ATTACHMENT_CALLBACKHANDLER = "AttachmentContentTransform.attachmentCallbackHandler";
+    public static final String ATTACHMENT_MEMORY_THRESHOLD = "AttachmentContentTransform.attachmentMemoryThreshold";
+    public static final String ATTACHMENT_TEMP_DIRECTORY = "AttachmentContentTransform.attachmentTempDirectory";
 
     private AttachmentTransformParameterSpec attachmentTransformParameterSpec;
 
@@ -157,13 +160,14 @@ public class AttachmentContentSignatureTransform extends TransformService {
     protected Data processAttachment(XMLCryptoContext context, OutputStream os, String attachmentUri,
                                      Attachment attachment) throws TransformException {
         try {
-            //try to reuse the inputStream in the hope that the provided inputStream is backed by a disk storage
-            InputStream inputStream = attachment.getSourceStream();
-            if (!inputStream.markSupported()) {
-                inputStream = new BufferedInputStream(inputStream);
-            }
-            inputStream.mark(Integer.MAX_VALUE); //we can process at maximum 2G with the standard jdk streams
-            inputStream = new FilterInputStream(inputStream) {
+            //try to reuse the inputStream in the hope that the provided inputStream is backed by a disk storage,
+            //otherwise it gets cached in memory up to the threshold and in a temporary file beyond it
+            int memoryThreshold = getAttachmentMemoryThreshold(context);
+            File tempDirectory = getAttachmentTempDirectory(context);
+            final InputStream resettableStream =
+                AttachmentUtils.setupResettableAttachmentStream(
+                    attachment.getSourceStream(), memoryThreshold, tempDirectory);
+            InputStream inputStream = new FilterInputStream(resettableStream) {
                 @Override
                 public void close() throws IOException {
                     //I hate stuff which are closing _my_ streams!
@@ -172,7 +176,7 @@ public class AttachmentContentSignatureTransform extends TransformService {
 
             OutputStream outputStream = os;
             if (outputStream == null) {
-                outputStream = new ByteArrayOutputStream();
+                outputStream = new CachedOutputStream(memoryThreshold, tempDirectory);
             }
 
             String mimeType = attachment.getMimeType();
@@ -214,22 +218,24 @@ public class AttachmentContentSignatureTransform extends TransformService {
             }
 
             //reset the inputStream to be able to reuse it
-            inputStream.reset();
+            resettableStream.reset();
 
             //create a new attachment and do the result callback
             final Attachment resultAttachment = new Attachment();
             resultAttachment.setId(attachment.getId());
             resultAttachment.setMimeType(mimeType);
             resultAttachment.addHeaders(attachment.getHeaders());
-            resultAttachment.setSourceStream(inputStream);
+            if (resettableStream instanceof CachedInputStream) {
+                //closing the cached stream deletes its temporary file
+                resultAttachment.setSourceStream(resettableStream);
+            } else {
+                resultAttachment.setSourceStream(inputStream);
+            }
             attachmentResultCallback(context, resultAttachment);
 
             if (os == null) {
                 return new OctetStreamData(
-                        new ByteArrayInputStream(
-                                ((ByteArrayOutputStream)outputStream).toByteArray()
-                        ),
-                        attachmentUri, mimeType);
+                        ((CachedOutputStream)outputStream).getInputStream(), attachmentUri, mimeType);
             }
             return null;
         } catch (IOException | InvalidCanonicalizerException | CanonicalizationException
@@ -238,6 +244,32 @@ public class AttachmentContentSignatureTransform extends TransformService {
         }
     }
 
+    /**
+     * @return the number of bytes of an attachment that are cached in memory at most, before
+     *         the attachment is spilled to a temporary file
+     */
+    protected int getAttachmentMemoryThreshold(XMLCryptoContext context) {
+        if (attachmentTransformParameterSpec != null) {
+            return attachmentTransformParameterSpec.getAttachmentMemoryThreshold();
+        }
+        Object memoryThreshold = context.getProperty(ATTACHMENT_MEMORY_THRESHOLD);
+        if (memoryThreshold instanceof Integer) {
+            return (Integer)memoryThreshold;
+        }
+        return CachedOutputStream.DEFAULT_MEMORY_THRESHOLD;
+    }
+
+    /**
+     * @return the directory of the temporary files of spilled attachments, or null for the
+     *         default temporary-file directory
+     */
+    protected File getAttachmentTempDirectory(XMLCryptoContext context) {
+        if (attachmentTransformParameterSpec != null) {
+            return attachmentTransformParameterSpec.getAttachmentTempDirectory();
+        }
+        return (File)context.getProperty(ATTACHMENT_TEMP_DIRECTORY);
+    }
+
     @Override
     public boolean isFeatureSupported(String feature) {
         if (feature == null) {
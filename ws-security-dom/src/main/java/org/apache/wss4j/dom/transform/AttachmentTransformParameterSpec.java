@@ -19,20 +19,41 @@
 package org.apache.wss4j.dom.transform;
 
 import org.apache.wss4j.common.ext.Attachment;
+import org.apache.wss4j.common.util.CachedOutputStream;
 
 import javax.security.auth.callback.CallbackHandler;
 import javax.xml.crypto.dsig.spec.TransformParameterSpec;
 
+import java.io.File;
+
 public class AttachmentTransformParameterSpec implements TransformParameterSpec {
 
     private CallbackHandler attachmentCallbackHandler;
     private Attachment attachment;
+    private int attachmentMemoryThreshold;
+    private File attachmentTempDirectory;
 
     public AttachmentTransformParameterSpec(
             CallbackHandler attachmentCallbackHandler,
             Attachment attachment) {
+        this(attachmentCallbackHandler, attachment, CachedOutputStream.DEFAULT_MEMORY_THRESHOLD, null);
+    }
+
+    /**
+     * @param attachmentMemoryThreshold the number of bytes of the attachment that are cached in
+     *                                  memory at most, before it is spilled to a temporary file
+     * @param attachmentTempDirectory the directory of the temporary file, or null for the default
+     *                                temporary-file directory
+     */
+    public AttachmentTransformParameterSpec(
+            CallbackHandler attachmentCallbackHandler,
+            Attachment attachment,
+            int attachmentMemoryThreshold,
+            File attachmentTempDirectory) {
         this.attachmentCallbackHandler = attachmentCallbackHandler;
         this.attachment = attachment;
+        this.attachmentMemoryThreshold = attachmentMemoryThreshold;
+        this.attachmentTempDirectory = attachmentTempDirectory;
     }
 
     public CallbackHandler getAttachmentCallbackHandler() {
@@ -42,4 +63,12 @@ public class AttachmentTransformParameterSpec implements TransformParameterSpec
     public Attachment getAttachment() {
         return attachment;
     }
+
+    public int getAttachmentMemoryThreshold() {
+        return attachmentMemoryThreshold;
+    }
+
+    public File getAttachmentTempDirectory() {
+        return attachmentTempDirectory;
+    }
 }
@@ -33,8 +33,8 @@ import org.apache.xml.security.algorithms.JCEMapper;
 import org.apache.xml.security.encryption.Serializer;
 import org.apache.xml.security.encryption.XMLCipher;
 import org.apache.xml.security.encryption.XMLEncryptionException;
-import org.apache.xml.security.utils.JavaUtils;
 import org.w3c.dom.Attr;
+import org.w3c.dom.DOMException;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NamedNodeMap;
@@ -47,17 +47,59 @@ import javax.crypto.SecretKey;
 import javax.security.auth.callback.Callback;
 import javax.security.auth.callback.CallbackHandler;
 import javax.security.auth.callback.UnsupportedCallbackException;
+import javax.xml.XMLConstants;
 import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public final class EncryptionUtils {
 
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(EncryptionUtils.class);
+
+    private static final int XML_DECLARATION_MAX_LENGTH = 128;
+
+    /**
+     * Parses the decrypted xop:Include attachments. The node expansion is not deferred, as the
+     * parsed Elements get adopted by the message Document, which a deferred DOM does not support.
+     */
+    private static final DocumentBuilderFactory XOP_DOCUMENT_BUILDER_FACTORY;
+
+    static {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        try {
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+        } catch (ParserConfigurationException ex) {
+            throw new IllegalStateException(ex);
+        }
+        try {
+            factory.setFeature("http://apache.org/xml/features/dom/defer-node-expansion", false);
+        } catch (ParserConfigurationException ex) {
+            LOG.debug(ex.getMessage(), ex);
+        }
+        XOP_DOCUMENT_BUILDER_FACTORY = factory;
+    }
+    private static final Pattern ENCODING_PATTERN =
+        Pattern.compile("encoding\\s*=\\s*[\"']([A-Za-z0-9._\\-]+)[\"']");
+
     private EncryptionUtils() {
         // complete
     }
@@ -141,6 +183,34 @@ public final class EncryptionUtils {
         CallbackHandler attachmentCallbackHandler,
         Serializer encryptionSerializer
     ) throws WSSecurityException {
+        return decryptEncryptedData(doc, dataRefURI, encData, symmetricKey, symEncAlgo,
+                                    attachmentCallbackHandler, encryptionSerializer, null);
+    }
+
+    /**
+     * Decrypt the EncryptedData argument using a SecretKey, and add the decrypted nodes to the
+     * index of the Elements by Id of the given WSDocInfo.
+     * @param doc The (document) owner of EncryptedData
+     * @param dataRefURI The URI of EncryptedData
+     * @param encData The EncryptedData element
+     * @param symmetricKey The SecretKey with which to decrypt EncryptedData
+     * @param symEncAlgo The symmetric encryption algorithm to use
+     * @param attachmentCallbackHandler The CallbackHandler from which to get attachments
+     * @param encryptionSerializer The Serializer to use to deserialize the decrypted content
+     * @param wsDocInfo The WSDocInfo of the document, or null
+     * @throws WSSecurityException
+     */
+    public static WSDataRef
+    decryptEncryptedData(
+        Document doc,
+        String dataRefURI,
+        Element encData,
+        SecretKey symmetricKey,
+        String symEncAlgo,
+        CallbackHandler attachmentCallbackHandler,
+        Serializer encryptionSerializer,
+        WSDocInfo wsDocInfo
+    ) throws WSSecurityException {
 
         // See if it is an attachment, and handle that differently
         String typeStr = encData.getAttributeNS(null, "Type");
@@ -173,6 +243,7 @@ public final class EncryptionUtils {
         Element encDataOrig = encData;
         Node parent = encData.getParentNode();
         Node previousSibling = encData.getPreviousSibling();
+        Node nextSibling = encData.getNextSibling();
         if (content) {
             encData = (Element) encData.getParentNode();
             parent = encData.getParentNode();
@@ -226,9 +297,15 @@ public final class EncryptionUtils {
 
             dataRef.setProtectedElement((Element)decryptedHeader);
             dataRef.setXpath(getXPath(decryptedHeader));
+            if (wsDocInfo != null) {
+                wsDocInfo.addElementsToIndex(decryptedHeader);
+            }
         } else if (content) {
             dataRef.setProtectedElement(encData);
             dataRef.setXpath(getXPath(encData));
+            if (wsDocInfo != null) {
+                wsDocInfo.addElementsToIndex(encData);
+            }
         } else {
             if (decryptedNode == null) {
                 if (previousSibling == null) {
@@ -241,6 +318,14 @@ public final class EncryptionUtils {
                 dataRef.setProtectedElement((Element)decryptedNode);
             }
             dataRef.setXpath(getXPath(decryptedNode));
+            if (wsDocInfo != null) {
+                // The decryption may have inserted more than one node in place of the EncryptedData
+                Node node = previousSibling == null ? parent.getFirstChild() : previousSibling.getNextSibling();
+                while (node != null && node != nextSibling) {
+                    wsDocInfo.addElementsToIndex(node);
+                    node = node.getNextSibling();
+                }
+            }
         }
 
         return dataRef;
@@ -389,66 +474,114 @@ public final class EncryptionUtils {
                         symEncAlgo, cipher, symmetricKey, attachment.getSourceStream());
 
         // For the xop:Include case, we need to replace the xop:Include Element with the
-        // decrypted Element
-        DocumentBuilder db =
-                org.apache.xml.security.utils.XMLUtils.createDocumentBuilder(false);
-        byte[] bytes = JavaUtils.getBytesFromStream(attachmentInputStream);
+        // decrypted nodes. They are parsed straight from the decryption stream, and the
+        // parsed nodes are adopted by the target Document instead of being copied, so that the
+        // decrypted bytes are never held in memory as a whole.
+        DocumentBuilder db = XOP_DOCUMENT_BUILDER_FACTORY.newDocumentBuilder();
+        Document document = db.parse(wrapDecryptedElement(encData, attachmentInputStream));
 
-        Document document = null;
-        try {
-            document = db.parse(new ByteArrayInputStream(bytes));
-        } catch (SAXException ex) {
-            // See if a prefix was not bound. Try to fix the DOM Element in this case.
-            if (ex.getMessage() != null && ex.getMessage().startsWith("The prefix")
-                && ex.getMessage().endsWith("is not bound.")) {
-                String fixedElementStr = setParentPrefixes(encData, new String(bytes));
-                document = db.parse(new ByteArrayInputStream(fixedElementStr.getBytes()));
-            } else {
-                throw ex;
+        Node parent = encData.getParentNode();
+        Node decryptedNode = null;
+        Node child = document.getDocumentElement().getFirstChild();
+        if (child == null) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_CHECK);
+        }
+        while (child != null) {
+            Node nextChild = child.getNextSibling();
+            Node adoptedNode = adoptNode(encData.getOwnerDocument(), child);
+            parent.insertBefore(adoptedNode, encData);
+            if (decryptedNode == null || Node.ELEMENT_NODE != decryptedNode.getNodeType()
+                && Node.ELEMENT_NODE == adoptedNode.getNodeType()) {
+                decryptedNode = adoptedNode;
             }
+            child = nextChild;
         }
-
-        Node decryptedNode =
-            encData.getOwnerDocument().importNode(document.getDocumentElement(), true);
-        encData.getParentNode().appendChild(decryptedNode);
-        org.apache.xml.security.utils.XMLUtils.repoolDocumentBuilder(db);
-        encData.getParentNode().removeChild(encData);
+        parent.removeChild(encData);
         return decryptedNode;
     }
 
     /**
-     * Set the parent prefix definitions on the "String" (representation of the Element to be parsed)
+     * Wrap the decrypted (serialized) content in a dummy Element that declares the namespace
+     * prefixes that are in scope at the target Element, as the serialized Element might use a
+     * prefix that was declared on one of its ancestors. An XML declaration at the start of the
+     * decrypted Element is dropped, its encoding is used for the whole stream.
      */
-    private static String setParentPrefixes(Element target, String str) {
-        Node parent = target;
-
-        // Get the point at where to insert new prefix definitions
-        int insertionIndex = str.indexOf('>');
-        StringBuilder prefix = new StringBuilder(str.substring(0, insertionIndex));
-        StringBuilder suffix = new StringBuilder(str.substring(insertionIndex, str.length()));
-
-        // Don't add more than 20 prefixes
-        int prefixAddedCount = 0;
-        while (parent.getParentNode() != null && prefixAddedCount < 20
-            && !(Node.DOCUMENT_NODE == parent.getParentNode().getNodeType())) {
-            parent = parent.getParentNode();
+    private static InputStream wrapDecryptedElement(Element target, InputStream decryptedStream)
+        throws IOException {
+        PushbackInputStream inputStream =
+            new PushbackInputStream(decryptedStream, XML_DECLARATION_MAX_LENGTH);
+        byte[] start = new byte[XML_DECLARATION_MAX_LENGTH];
+        int length = 0;
+        int read = 0;
+        while (length < start.length && (read = inputStream.read(start, length, start.length - length)) != -1) {
+            length += read;
+        }
+
+        String encoding = StandardCharsets.UTF_8.name();
+        int offset = 0;
+        String declaration = new String(start, 0, length, StandardCharsets.ISO_8859_1);
+        if (declaration.startsWith("<?xml")) {
+            int declarationEnd = declaration.indexOf("?>");
+            if (declarationEnd > 0) {
+                Matcher matcher = ENCODING_PATTERN.matcher(declaration.substring(0, declarationEnd));
+                if (matcher.find()) {
+                    encoding = matcher.group(1);
+                }
+                offset = declarationEnd + 2;
+            }
+        }
+        inputStream.unread(start, offset, length - offset);
+
+        StringBuilder prefix = new StringBuilder();
+        prefix.append("<?xml version=\"1.0\" encoding=\"").append(encoding).append("\"?><wrapper");
+        Set<String> declaredPrefixes = new HashSet<>();
+        Node parent = target.getParentNode();
+        while (parent != null && Node.ELEMENT_NODE == parent.getNodeType()) {
             NamedNodeMap attributes = parent.getAttributes();
-            int length = attributes.getLength();
-            for (int i = 0; i < length; i++) {
+            for (int i = 0; i < attributes.getLength(); i++) {
                 Node attribute = attributes.item(i);
-                String attrDef = "xmlns:" + attribute.getLocalName();
-                if (WSConstants.XMLNS_NS.equals(attribute.getNamespaceURI()) && !prefix.toString().contains(attrDef)) {
-                    attrDef += "=\"" + attribute.getNodeValue() + "\"";
-                    prefix.append(" " + attrDef);
-                    prefixAddedCount++;
-                }
-                if (prefixAddedCount >= 20) {
-                    break;
+                if (WSConstants.XMLNS_NS.equals(attribute.getNamespaceURI())
+                    && "xmlns".equals(attribute.getPrefix())
+                    && declaredPrefixes.add(attribute.getLocalName())) {
+                    prefix.append(" xmlns:").append(attribute.getLocalName()).append("=\"")
+                        .append(escapeAttributeValue(attribute.getNodeValue())).append('"');
                 }
             }
+            parent = parent.getParentNode();
         }
+        prefix.append('>');
+
+        Charset charset;
+        try {
+            charset = Charset.forName(encoding);
+        } catch (IllegalArgumentException ex) {
+            throw new IOException(ex);
+        }
+        List<InputStream> inputStreams = new ArrayList<>(3);
+        inputStreams.add(new ByteArrayInputStream(prefix.toString().getBytes(charset)));
+        inputStreams.add(inputStream);
+        inputStreams.add(new ByteArrayInputStream("</wrapper>".getBytes(charset)));
+        return new SequenceInputStream(Collections.enumeration(inputStreams));
+    }
 
-        return prefix.toString() + suffix.toString();
+    private static String escapeAttributeValue(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace("\"", "&quot;");
+    }
+
+    /**
+     * Move the given Node into the given Document. Fall back to a copy of the Node if the
+     * DOM implementation of the Document does not support adopting it (from the parser).
+     */
+    private static Node adoptNode(Document doc, Node node) {
+        try {
+            Node adoptedNode = doc.adoptNode(node);
+            if (adoptedNode != null) {
+                return adoptedNode;
+            }
+        } catch (DOMException ex) {
+            LOG.debug(ex.getMessage(), ex);
+        }
+        return doc.importNode(node, true);
     }
 
     /**
@@ -50,6 +50,7 @@ public class Credential {
     private byte[] secretKey;
     private Subject subject;
     private Object delegationCredential;
+    private boolean signatureTrusted;
 
     /**
      * Set a SecurityContextToken to be validated
@@ -236,4 +237,22 @@ public class Credential {
         this.delegationCredential = delegationCredential;
     }
 
+    /**
+     * Set whether the signature of the token to be validated has already been verified and
+     * trusted, e.g. for a SAML Assertion that was found in the SamlAssertionCache
+     * @param signatureTrusted whether the signature has already been verified and trusted
+     */
+    public void setSignatureTrusted(boolean signatureTrusted) {
+        this.signatureTrusted = signatureTrusted;
+    }
+
+    /**
+     * Get whether the signature of the token to be validated has already been verified and
+     * trusted, e.g. for a SAML Assertion that was found in the SamlAssertionCache
+     * @return whether the signature has already been verified and trusted
+     */
+    public boolean isSignatureTrusted() {
+        return signatureTrusted;
+    }
+
 }
@@ -27,6 +27,7 @@ import javax.security.auth.login.LoginException;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.common.NamePasswordCallbackHandler;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.dom.engine.Blocking;
 import org.apache.wss4j.dom.handler.RequestData;
 import org.apache.wss4j.dom.message.token.UsernameToken;
 
@@ -36,6 +37,7 @@ import org.apache.wss4j.dom.message.token.UsernameToken;
  * the validate method.
  * Username/password validation is delegated to JAAS LoginContext.
  */
+@Blocking
 public class JAASUsernameTokenValidator implements Validator {
 
     private static final org.slf4j.Logger LOG =
@@ -36,11 +36,13 @@ import org.apache.wss4j.common.kerberos.KerberosServiceExceptionAction;
 import org.apache.wss4j.common.kerberos.KerberosTokenDecoder;
 import org.apache.wss4j.common.kerberos.KerberosTokenDecoderException;
 import org.apache.wss4j.common.token.BinarySecurity;
+import org.apache.wss4j.dom.engine.Blocking;
 import org.apache.wss4j.dom.handler.RequestData;
 import org.apache.wss4j.dom.message.token.KerberosSecurity;
 
 /**
  */
+@Blocking
 public class KerberosTokenValidator implements Validator {
 
     private static final org.slf4j.Logger LOG =
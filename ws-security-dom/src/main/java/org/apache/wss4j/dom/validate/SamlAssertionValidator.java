@@ -115,12 +115,15 @@ public class SamlAssertionValidator extends SignatureTrustValidator {
         // Check OneTimeUse Condition
         checkOneTimeUse(samlAssertion, data);
 
-        // Validate the assertion against schemas/profiles
-        validateAssertion(samlAssertion);
-
-        // Verify trust on the signature
-        if (samlAssertion.isSigned()) {
-            verifySignedAssertion(samlAssertion, data);
+        // The profile and the trust of a cached signature were already verified
+        if (!credential.isSignatureTrusted()) {
+            // Validate the assertion against schemas/profiles
+            validateAssertion(samlAssertion);
+
+            // Verify trust on the signature
+            if (samlAssertion.isSigned()) {
+                verifySignedAssertion(samlAssertion, data);
+            }
         }
         return credential;
     }
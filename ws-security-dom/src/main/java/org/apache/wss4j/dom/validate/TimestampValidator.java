@@ -21,6 +21,7 @@ package org.apache.wss4j.dom.validate;
 
 
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.dom.engine.Stateless;
 import org.apache.wss4j.dom.handler.RequestData;
 import org.apache.wss4j.dom.message.token.Timestamp;
 
@@ -28,6 +29,7 @@ import org.apache.wss4j.dom.message.token.Timestamp;
  * This class validates a processed Timestamp, extracted from the Credential passed to
  * the validate method.
  */
+@Stateless
 public class TimestampValidator implements Validator {
 
     /**
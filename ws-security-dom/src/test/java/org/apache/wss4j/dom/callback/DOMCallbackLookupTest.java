@@ -0,0 +1,159 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.dom.callback;
+
+import javax.crypto.SecretKey;
+
+import org.apache.wss4j.common.util.KeyUtils;
+import org.apache.wss4j.common.util.XMLUtils;
+import org.apache.wss4j.dom.WSConstants;
+import org.apache.wss4j.dom.WSDocInfo;
+import org.apache.wss4j.dom.common.SOAPUtil;
+import org.apache.wss4j.dom.engine.WSSConfig;
+import org.apache.wss4j.dom.util.EncryptionUtils;
+import org.apache.wss4j.dom.util.WSSecurityUtil;
+import org.apache.xml.security.encryption.XMLCipher;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Test the lookup of Elements by Id via the ElementIdIndex of a WSDocInfo, compared with the lookup that
+ * searches the whole document.
+ */
+public class DOMCallbackLookupTest extends org.junit.Assert {
+
+    private static final String SOAP_MSG =
+        "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+        + "<SOAP-ENV:Envelope "
+        +   "xmlns:SOAP-ENV=\"http://schemas.xmlsoap.org/soap/envelope/\" "
+        +   "xmlns:wsu=\"" + WSConstants.WSU_NS + "\">"
+        +   "<SOAP-ENV:Header>"
+        +       "<foo wsu:Id=\"foo\" xmlns=\"urn:test\"/>"
+        +       "<bar Id=\"bar\" xmlns=\"urn:test\"><baz wsu:Id=\"baz\"/></bar>"
+        +       "<dup wsu:Id=\"dup\" xmlns=\"urn:test\">1</dup>"
+        +       "<saml:Assertion ID=\"_assertion\" xmlns:saml=\"urn:oasis:names:tc:SAML:2.0:assertion\"/>"
+        +   "</SOAP-ENV:Header>"
+        +   "<SOAP-ENV:Body wsu:Id=\"body\">"
+        +       "<add xmlns=\"http://ws.apache.org/counter/counter_port_type\">"
+        +           "<value xmlns=\"\" Id=\"value\">15</value>"
+        +           "<dup wsu:Id=\"dup\" xmlns=\"urn:test\">2</dup>"
+        +       "</add>"
+        +   "</SOAP-ENV:Body>"
+        + "</SOAP-ENV:Envelope>";
+
+    public DOMCallbackLookupTest() {
+        WSSConfig.init();
+    }
+
+    @Test
+    public void testLookup() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAP_MSG);
+        DOMCallbackLookup lookup = new DOMCallbackLookup(doc);
+        DOMCallbackLookup indexedLookup = new DOMCallbackLookup(doc, new WSDocInfo(doc));
+
+        for (String id : new String[] {"foo", "#bar", "baz", "body", "value", "_assertion", "missing"}) {
+            assertSame(lookup.getElement(id, null, true), indexedLookup.getElement(id, null, true));
+            assertSame(lookup.getElement(id, null, false), indexedLookup.getElement(id, null, false));
+        }
+        assertEquals("baz", indexedLookup.getElement("baz", null, true).getLocalName());
+        assertEquals("Assertion", indexedLookup.getElement("_assertion", null, true).getLocalName());
+        assertNull(indexedLookup.getElement("_assertion", WSConstants.WSS_ENC_KEY_VALUE_TYPE, true));
+
+        // Duplicate Ids
+        assertNull(indexedLookup.getElement("dup", null, true));
+        Element dup = indexedLookup.getElement("dup", null, false);
+        assertEquals("1", dup.getTextContent());
+        assertSame(lookup.getElement("dup", null, false), dup);
+    }
+
+    @Test
+    public void testModifiedDocument() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAP_MSG);
+        WSDocInfo wsDocInfo = new WSDocInfo(doc);
+        DOMCallbackLookup lookup = new DOMCallbackLookup(doc, wsDocInfo);
+
+        // Removing one of the duplicate elements makes the remaining one unique
+        Element dup = lookup.getElement("dup", null, false);
+        dup.getParentNode().removeChild(dup);
+        Element foo = lookup.getElement("foo", null, true);
+        foo.getParentNode().removeChild(foo);
+        assertNull(lookup.getElement("foo", null, true));
+        assertEquals("2", lookup.getElement("dup", null, true).getTextContent());
+
+        // Inserted elements are found, whether they were added to the index or not
+        Element header = (Element)doc.getDocumentElement().getFirstChild();
+        Element inserted = doc.createElementNS("urn:test", "inserted");
+        inserted.setAttributeNS(WSConstants.WSU_NS, "wsu:Id", "inserted");
+        Element child = doc.createElementNS("urn:test", "child");
+        child.setAttributeNS(null, "Id", "child");
+        inserted.appendChild(child);
+        header.appendChild(inserted);
+        wsDocInfo.addElementsToIndex(inserted);
+        assertSame(inserted, lookup.getElement("inserted", null, true));
+        assertSame(child, lookup.getElement("child", null, true));
+
+        Element notIndexed = doc.createElementNS("urn:test", "notIndexed");
+        notIndexed.setAttributeNS(WSConstants.WSU_NS, "wsu:Id", "notIndexed");
+        header.appendChild(notIndexed);
+        assertSame(notIndexed, lookup.getElement("notIndexed", null, true));
+
+        // An inserted element with an existing Id is detected as a duplicate
+        Element duplicate = doc.createElementNS("urn:test", "duplicate");
+        duplicate.setAttributeNS(WSConstants.WSU_NS, "wsu:Id", "baz");
+        header.appendChild(duplicate);
+        wsDocInfo.addElementsToIndex(duplicate);
+        assertNull(lookup.getElement("baz", null, true));
+    }
+
+    @Test
+    public void testDecryptedNodes() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAP_MSG);
+        WSDocInfo wsDocInfo = new WSDocInfo(doc);
+        DOMCallbackLookup lookup = new DOMCallbackLookup(doc, wsDocInfo);
+
+        // Encrypt a text node followed by an element with an existing Id
+        Element body = WSSecurityUtil.findBodyElement(doc);
+        Element wrapper = doc.createElementNS("urn:test", "wrapper");
+        wrapper.appendChild(doc.createTextNode("text"));
+        Element duplicate = doc.createElementNS("urn:test", "duplicate");
+        duplicate.setAttributeNS(WSConstants.WSU_NS, "wsu:Id", "baz");
+        wrapper.appendChild(duplicate);
+        body.appendChild(wrapper);
+
+        SecretKey key = KeyUtils.getKeyGenerator(WSConstants.AES_128).generateKey();
+        XMLCipher xmlCipher = XMLCipher.getInstance(WSConstants.AES_128);
+        xmlCipher.init(XMLCipher.ENCRYPT_MODE, key);
+        xmlCipher.doFinal(doc, wrapper, true);
+        Element encData = XMLUtils.getDirectChildElement(wrapper, "EncryptedData", WSConstants.ENC_NS);
+        encData.removeAttributeNS(null, "Type");
+        body.replaceChild(encData, wrapper);
+
+        Element baz = lookup.getElement("baz", null, true);
+        assertEquals("baz", baz.getLocalName());
+
+        // All of the decrypted nodes are added to the index, not only the first one
+        EncryptionUtils.decryptEncryptedData(
+            doc, "", encData, key, WSConstants.AES_128, null, null, wsDocInfo);
+        assertEquals("text", body.getLastChild().getPreviousSibling().getNodeValue());
+        assertNull(lookup.getElement("baz", null, true));
+        assertSame(baz, lookup.getElement("baz", null, false));
+    }
+}
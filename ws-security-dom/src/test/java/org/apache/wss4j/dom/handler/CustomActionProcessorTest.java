@@ -34,6 +34,10 @@ import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.util.XMLUtils;
 import org.apache.wss4j.dom.message.WSSecSignature;
 import org.apache.wss4j.dom.message.WSSecHeader;
+import org.apache.wss4j.dom.processor.Processor;
+import org.apache.wss4j.dom.processor.SignatureProcessor;
+import org.apache.wss4j.dom.validate.SamlAssertionValidator;
+import org.apache.wss4j.dom.validate.Validator;
 import org.apache.wss4j.dom.util.WSSecurityUtil;
 import org.junit.Test;
 import org.w3c.dom.Document;
@@ -268,4 +272,40 @@ public class CustomActionProcessorTest extends org.junit.Assert {
         }
     }
 
+
+    /**
+     * Test that the processors and validators that are annotated as stateless are shared
+     * between WSSConfig instances, and that the other ones are instantiated per lookup
+     */
+    @Test
+    public void
+    testStatelessProcessors() throws Exception {
+        WSSConfig cfg = WSSConfig.getNewInstance();
+        WSSConfig otherCfg = WSSConfig.getNewInstance();
+
+        Processor processor = cfg.getProcessor(WSConstants.SIGNATURE);
+        assertTrue(processor instanceof SignatureProcessor);
+        assertSame(processor, cfg.getProcessor(WSConstants.SIGNATURE));
+        assertSame(processor, otherCfg.getProcessor(WSConstants.SIGNATURE));
+        assertSame(cfg.getValidator(WSConstants.SIGNATURE), otherCfg.getValidator(WSConstants.SIGNATURE));
+
+        // The SamlAssertionValidator is configurable, and so it is not shared
+        Validator samlValidator = cfg.getValidator(WSConstants.SAML_TOKEN);
+        assertTrue(samlValidator instanceof SamlAssertionValidator);
+        assertNotSame(samlValidator, cfg.getValidator(WSConstants.SAML_TOKEN));
+
+        cfg.setProcessor(WSConstants.SIGNATURE, CustomProcessor.class);
+        Processor customProcessor = cfg.getProcessor(WSConstants.SIGNATURE);
+        assertTrue(customProcessor instanceof CustomProcessor);
+        assertNotSame(customProcessor, cfg.getProcessor(WSConstants.SIGNATURE));
+        assertSame(processor, otherCfg.getProcessor(WSConstants.SIGNATURE));
+
+        cfg.setProcessor(WSConstants.SIGNATURE, SignatureProcessor.class);
+        assertSame(processor, cfg.getProcessor(WSConstants.SIGNATURE));
+
+        Processor processorObject = new SignatureProcessor();
+        cfg.setProcessor(WSConstants.SIGNATURE, processorObject);
+        assertSame(processorObject, cfg.getProcessor(WSConstants.SIGNATURE));
+    }
+
 }
@@ -31,6 +31,9 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.security.auth.callback.Callback;
 import javax.security.auth.callback.CallbackHandler;
@@ -242,6 +245,55 @@ public class AttachmentTest extends Assert {
         Assert.assertEquals("text/xml", responseAttachment.getMimeType());
     }
 
+    @Test
+    public void testXMLAttachmentSignatureBufferedInTempFile() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecSignature builder = new WSSecSignature(secHeader);
+        builder.setUserInfo("16c73ab6-b892-458f-abf5-2f875f74882e", "security");
+        // buffer the attachment in a temporary file after the first 16 bytes
+        builder.setAttachmentMemoryThreshold(16);
+
+        builder.getParts().add(new WSEncryptionPart("Body", "http://schemas.xmlsoap.org/soap/envelope/", "Content"));
+        builder.getParts().add(new WSEncryptionPart("cid:Attachments", "Element"));
+
+        final String attachmentId = UUID.randomUUID().toString();
+        final Attachment attachment = new Attachment();
+        attachment.setMimeType("text/xml");
+        attachment.addHeaders(getHeaders(attachmentId));
+        attachment.setId(attachmentId);
+        // a PushbackInputStream does not support mark/reset
+        attachment.setSourceStream(
+            new PushbackInputStream(new ByteArrayInputStream(SOAPUtil.SAMPLE_SOAP_MSG.getBytes(StandardCharsets.UTF_8))));
+
+        AttachmentCallbackHandler attachmentCallbackHandler =
+            new AttachmentCallbackHandler(Collections.singletonList(attachment));
+        builder.setAttachmentCallbackHandler(attachmentCallbackHandler);
+
+        Document signedDoc = builder.build(crypto);
+
+        NodeList sigReferences = signedDoc.getElementsByTagNameNS(WSConstants.SIG_NS, "Reference");
+        Assert.assertEquals(2, sigReferences.getLength());
+
+        Attachment signedAttachment = attachmentCallbackHandler.getResponseAttachments().get(0);
+        signedAttachment.setSourceStream(new PushbackInputStream(signedAttachment.getSourceStream()));
+        attachmentCallbackHandler =
+            new AttachmentCallbackHandler(Collections.singletonList(signedAttachment));
+
+        RequestData requestData = new RequestData();
+        requestData.setAttachmentCallbackHandler(attachmentCallbackHandler);
+        requestData.setAttachmentMemoryThreshold(16);
+        requestData.setSigVerCrypto(crypto);
+        secEngine.processSecurityHeader(signedDoc, requestData);
+
+        Assert.assertFalse(attachmentCallbackHandler.getResponseAttachments().isEmpty());
+        Attachment responseAttachment = attachmentCallbackHandler.getResponseAttachments().get(0);
+        byte[] attachmentBytes = readInputStream(responseAttachment.getSourceStream());
+        Assert.assertTrue(Arrays.equals(attachmentBytes, SOAPUtil.SAMPLE_SOAP_MSG.getBytes(StandardCharsets.UTF_8)));
+    }
+
     @Test
     public void testInvalidXMLAttachmentCompleteSignature() throws Exception {
         Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
@@ -356,6 +408,95 @@ public class AttachmentTest extends Assert {
         Assert.assertEquals("text/plain", responseAttachment.getMimeType());
     }
 
+    @Test
+    public void testMultipleAttachmentSignatureParallelVerification() throws Exception {
+        Attachment[] attachment = createAttachments(3);
+        Document signedDoc = signAttachments(attachment);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final AttachmentCallbackHandler attachmentCallbackHandler =
+                new AttachmentCallbackHandler(Arrays.asList(attachment));
+            WSHandlerResult results = verify(signedDoc, synchronizedCallbackHandler(attachmentCallbackHandler), executor);
+            assertNotNull(results.getActionResults().get(WSConstants.SIGN));
+
+            // The attachments are verified concurrently, so the results can arrive in any order
+            List<String> responseIds = new ArrayList<>();
+            for (Attachment responseAttachment : attachmentCallbackHandler.getResponseAttachments()) {
+                responseIds.add(responseAttachment.getId());
+                byte[] attachmentBytes = readInputStream(responseAttachment.getSourceStream());
+                assertTrue(Arrays.equals(attachmentBytes, SOAPUtil.SAMPLE_SOAP_MSG.getBytes(StandardCharsets.UTF_8)));
+            }
+            assertEquals(3, responseIds.size());
+            for (Attachment requestAttachment : attachment) {
+                assertTrue(responseIds.contains(requestAttachment.getId()));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testInvalidMultipleAttachmentSignatureParallelVerification() throws Exception {
+        Attachment[] attachment = createAttachments(3);
+        Document signedDoc = signAttachments(attachment);
+
+        attachment[1].setSourceStream(new ByteArrayInputStream(
+            SOAPUtil.SAMPLE_SOAP_MSG.replace("15", "16").getBytes(StandardCharsets.UTF_8)));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            verify(signedDoc, synchronizedCallbackHandler(new AttachmentCallbackHandler(Arrays.asList(attachment))),
+                   executor);
+            fail("Failure expected on a modified attachment");
+        } catch (WSSecurityException e) {
+            assertEquals(WSSecurityException.ErrorCode.FAILED_CHECK, e.getErrorCode());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Attachment[] createAttachments(int count) {
+        Attachment[] attachment = new Attachment[count];
+        for (int i = 0; i < count; i++) {
+            String attachmentId = UUID.randomUUID().toString();
+            attachment[i] = new Attachment();
+            attachment[i].setMimeType("text/xml");
+            attachment[i].addHeaders(getHeaders(attachmentId));
+            attachment[i].setId(attachmentId);
+            attachment[i].setSourceStream(
+                new ByteArrayInputStream(SOAPUtil.SAMPLE_SOAP_MSG.getBytes(StandardCharsets.UTF_8)));
+        }
+        return attachment;
+    }
+
+    private Document signAttachments(Attachment[] attachment) throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecSignature builder = new WSSecSignature(secHeader);
+        builder.setUserInfo("16c73ab6-b892-458f-abf5-2f875f74882e", "security");
+        builder.getParts().add(new WSEncryptionPart("Body", "http://schemas.xmlsoap.org/soap/envelope/", "Content"));
+        builder.getParts().add(new WSEncryptionPart("cid:Attachments", "Element"));
+        builder.setAttachmentCallbackHandler(new AttachmentCallbackHandler(Arrays.asList(attachment)));
+        Document signedDoc = builder.build(crypto);
+
+        for (Attachment signedAttachment : attachment) {
+            signedAttachment.setSourceStream(
+                new ByteArrayInputStream(SOAPUtil.SAMPLE_SOAP_MSG.getBytes(StandardCharsets.UTF_8)));
+        }
+        return signedDoc;
+    }
+
+    private static CallbackHandler synchronizedCallbackHandler(final CallbackHandler callbackHandler) {
+        return new CallbackHandler() {
+            @Override
+            public synchronized void handle(Callback[] callbacks) throws IOException, UnsupportedCallbackException {
+                callbackHandler.handle(callbacks);
+            }
+        };
+    }
+
     @Test
     public void testXMLAttachmentContentEncryption() throws Exception {
         Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
@@ -1153,7 +1294,14 @@ public class AttachmentTest extends Assert {
      * @throws java.lang.Exception Thrown when there is a problem in verification
      */
     private WSHandlerResult verify(Document doc, CallbackHandler attachmentCallbackHandler) throws Exception {
+        return verify(doc, attachmentCallbackHandler, null);
+    }
+
+    private WSHandlerResult verify(
+        Document doc, CallbackHandler attachmentCallbackHandler, Executor referenceVerificationExecutor
+    ) throws Exception {
         RequestData requestData = new RequestData();
+        requestData.setReferenceVerificationExecutor(referenceVerificationExecutor);
         requestData.setAttachmentCallbackHandler(attachmentCallbackHandler);
         requestData.setSigVerCrypto(crypto);
         requestData.setDecCrypto(crypto);
@@ -26,11 +26,15 @@ import org.apache.wss4j.dom.common.SecurityTestUtil;
 import org.apache.wss4j.dom.engine.WSSConfig;
 import org.apache.wss4j.dom.engine.WSSecurityEngine;
 import org.apache.wss4j.dom.engine.WSSecurityEngineResult;
+import org.apache.wss4j.dom.handler.RequestData;
 import org.apache.wss4j.dom.handler.WSHandlerResult;
 import org.junit.Test;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.CryptoFactory;
 import org.apache.wss4j.common.crypto.CryptoType;
+import org.apache.wss4j.common.derivedKey.ConversationConstants;
+import org.apache.wss4j.common.derivedKey.DerivedKeyCache;
+import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.token.SecurityTokenReference;
 import org.apache.wss4j.common.util.XMLUtils;
 import org.w3c.dom.Document;
@@ -177,6 +181,64 @@ public class DerivedKeyTest extends org.junit.Assert {
     }
 
 
+    /**
+     * Sign using a key that is derived with P_SHA256, and verify the signature with a cache of
+     * derived keys. P_SHA256 is rejected on the receiving side unless it is explicitly allowed.
+     */
+    @Test
+    public void testSignaturePSHA256() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        //EncryptedKey
+        WSSecEncryptedKey encrKeyBuilder = new WSSecEncryptedKey(secHeader);
+        encrKeyBuilder.setUserInfo("wss40");
+        encrKeyBuilder.setKeyIdentifierType(WSConstants.THUMBPRINT_IDENTIFIER);
+        encrKeyBuilder.prepare(crypto);
+
+        //Key information from the EncryptedKey
+        byte[] ek = encrKeyBuilder.getEphemeralKey();
+        String tokenIdentifier = encrKeyBuilder.getId();
+
+        //Derived key signature
+        WSSecDKSign sigBuilder = new WSSecDKSign(secHeader);
+        sigBuilder.setExternalKey(ek, tokenIdentifier);
+        sigBuilder.setDerivationAlgorithm(ConversationConstants.DerivationAlgorithm.P_SHA_256);
+        sigBuilder.setSignatureAlgorithm(WSConstants.HMAC_SHA256);
+        sigBuilder.build();
+
+        encrKeyBuilder.prependToHeader();
+        encrKeyBuilder.prependBSTElementToHeader();
+
+        String outputString = XMLUtils.prettyDocumentToString(doc);
+        assertTrue(outputString.contains(ConversationConstants.DerivationAlgorithm.P_SHA_256));
+
+        try {
+            secEngine.processSecurityHeader(doc, null, callbackHandler, crypto);
+            fail("Expected failure as P_SHA256 is not allowed");
+        } catch (WSSecurityException ex) {
+            assertEquals(WSSecurityException.ErrorCode.UNSUPPORTED_ALGORITHM, ex.getErrorCode());
+        }
+
+        DerivedKeyCache derivedKeyCache = new DerivedKeyCache();
+        WSSConfig config = WSSConfig.getNewInstance();
+        config.setDerivedKeyCache(derivedKeyCache);
+        RequestData data = new RequestData();
+        data.setWssConfig(config);
+        data.setSigVerCrypto(crypto);
+        data.setDecCrypto(crypto);
+        data.setCallbackHandler(callbackHandler);
+        data.setAllowPSha256DerivedKeyAlgorithm(true);
+
+        WSHandlerResult results = new WSSecurityEngine().processSecurityHeader(doc, data);
+        WSSecurityEngineResult actionResult =
+            results.getActionResults().get(WSConstants.SIGN).get(0);
+        assertNotNull(actionResult);
+        assertEquals(1, derivedKeyCache.size());
+    }
+
+
     /**
      * A test for WSS-211 - "WSS4J does not support ThumbprintSHA1 in DerivedKeyTokens".
      * Here we're signing the SOAP body, where the signature refers to a DerivedKeyToken
@@ -29,6 +29,8 @@ import javax.security.auth.callback.CallbackHandler;
 
 import org.apache.wss4j.common.WSEncryptionPart;
 import org.apache.wss4j.common.bsp.BSPRule;
+import org.apache.wss4j.common.cache.EncryptedKeyCache;
+import org.apache.wss4j.common.cache.EncryptedKeySessionCache;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.CryptoFactory;
 import org.apache.wss4j.common.crypto.CryptoType;
@@ -713,6 +715,102 @@ public class EncryptionTest extends org.junit.Assert {
         assertNotNull(actionResult);
     }
 
+    /**
+     * Test that the symmetric key of an EncryptedKey that is received again is taken from the
+     * EncryptedKeyCache, instead of being decrypted with the private key again.
+     */
+    @Test
+    public void testEncryptedKeyCache() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecEncrypt builder = new WSSecEncrypt(secHeader);
+        builder.setUserInfo("wss40");
+        builder.setKeyEncAlgo(WSConstants.KEYTRANSPORT_RSAOAEP);
+        builder.setSymmetricEncAlgorithm(WSConstants.AES_128);
+        String encryptedMessage = XMLUtils.prettyDocumentToString(builder.build(crypto));
+
+        EncryptedKeyCache encryptedKeyCache = new EncryptedKeyCache();
+        RequestData data = new RequestData();
+        data.setCallbackHandler(keystoreCallbackHandler);
+        data.setDecCrypto(crypto);
+        data.setEncryptedKeyCache(encryptedKeyCache);
+
+        WSSecurityEngine newEngine = new WSSecurityEngine();
+        for (int i = 0; i < 2; i++) {
+            Document encryptedDoc = SOAPUtil.toSOAPPart(encryptedMessage);
+            newEngine.processSecurityHeader(encryptedDoc, data);
+            assertTrue(XMLUtils.prettyDocumentToString(encryptedDoc).contains("counter_port_type"));
+        }
+        assertEquals(1, encryptedKeyCache.getMissCount());
+        assertEquals(1, encryptedKeyCache.getHitCount());
+        assertEquals(1, encryptedKeyCache.size());
+
+        // Another EncryptedKey is not found in the cache
+        doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+        builder = new WSSecEncrypt(secHeader);
+        builder.setUserInfo("wss40");
+        builder.setKeyEncAlgo(WSConstants.KEYTRANSPORT_RSAOAEP);
+        builder.setSymmetricEncAlgorithm(WSConstants.AES_128);
+        newEngine.processSecurityHeader(builder.build(crypto), data);
+        assertEquals(2, encryptedKeyCache.getMissCount());
+        assertEquals(2, encryptedKeyCache.size());
+    }
+
+    /**
+     * Test that the key of an EncryptedKey is reused for the following messages to the same
+     * recipient, and referred to via an EncryptedKeySHA1 KeyIdentifier.
+     */
+    @Test
+    public void testEncryptedKeySession() throws Exception {
+        EncryptedKeySessionCache sessionCache =
+            new EncryptedKeySessionCache(EncryptedKeySessionCache.DEFAULT_LIFETIME, 2);
+
+        // The first message carries the EncryptedKey
+        Document encryptedDoc = encryptForSession(sessionCache, null);
+        String outputString = XMLUtils.prettyDocumentToString(encryptedDoc);
+        assertTrue(outputString.contains("EncryptedKey"));
+        WSHandlerResult results = verify(encryptedDoc, crypto, keystoreCallbackHandler);
+        WSSecurityEngineResult actionResult = results.getActionResults().get(WSConstants.ENCR).get(0);
+        byte[] encryptedKey = (byte[])actionResult.get(WSSecurityEngineResult.TAG_ENCRYPTED_EPHEMERAL_KEY);
+        String identifier = org.apache.xml.security.utils.XMLUtils.encodeToString(KeyUtils.generateDigest(encryptedKey));
+        secretKeyCallbackHandler.addSecretKey(identifier, (byte[])actionResult.get(WSSecurityEngineResult.TAG_SECRET));
+
+        // The second message refers to it via the EncryptedKeySHA1
+        encryptedDoc = encryptForSession(sessionCache, identifier);
+        outputString = XMLUtils.prettyDocumentToString(encryptedDoc);
+        assertFalse(outputString.contains("EncryptedKey>"));
+        assertTrue(outputString.contains("#EncryptedKeySHA1"));
+        verify(encryptedDoc, null, secretKeyCallbackHandler);
+        assertTrue(XMLUtils.prettyDocumentToString(encryptedDoc).contains("counter_port_type"));
+
+        // The session is exhausted, so the third message carries a new EncryptedKey
+        encryptedDoc = encryptForSession(sessionCache, null);
+        verify(encryptedDoc, crypto, keystoreCallbackHandler);
+        assertEquals(1, sessionCache.getHitCount());
+        assertEquals(2, sessionCache.getMissCount());
+    }
+
+    private Document encryptForSession(
+        EncryptedKeySessionCache sessionCache, String expectedIdentifier
+    ) throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecEncrypt builder = new WSSecEncrypt(secHeader);
+        builder.setUserInfo("wss40");
+        builder.setKeyEncAlgo(WSConstants.KEYTRANSPORT_RSAOAEP);
+        builder.setSymmetricEncAlgorithm(WSConstants.AES_128);
+        builder.setEncryptedKeySessionCache(sessionCache);
+        Document encryptedDoc = builder.build(crypto);
+        assertEquals(expectedIdentifier, builder.getEncryptedKeySHA1());
+        return encryptedDoc;
+    }
+
     // CN has a "*" in it
     @Test
     public void testEncryptionWithRegexpCert() throws Exception {
@@ -989,6 +989,79 @@ public class SignatureTest extends org.junit.Assert {
         verify(signedDoc);
     }
 
+    @Test
+    public void testSignatureProfile() throws Exception {
+        SignatureProfile profile =
+            new SignatureProfile(crypto, "16c73ab6-b892-458f-abf5-2f875f74882e", "security", null, null);
+        assertEquals(WSConstants.RSA, profile.getSignatureAlgorithm());
+        assertEquals(WSConstants.SHA1, profile.getDigestAlgorithm());
+
+        // The profile can be reused for several messages
+        for (int i = 0; i < 2; i++) {
+            Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+            WSSecHeader secHeader = new WSSecHeader(doc);
+            secHeader.insertSecurityHeader();
+
+            WSSecSignature builder = new WSSecSignature(secHeader, profile);
+            builder.setKeyIdentifierType(WSConstants.BST_DIRECT_REFERENCE);
+            builder.setSignatureAlgorithm("http://www.w3.org/2001/04/xmldsig-more#rsa-sha256");
+            builder.setDigestAlgo(WSConstants.SHA256);
+            Document signedDoc = builder.build(crypto);
+
+            if (LOG.isDebugEnabled()) {
+                String outputString =
+                    XMLUtils.prettyDocumentToString(signedDoc);
+                LOG.debug(outputString);
+            }
+
+            WSHandlerResult results = verify(signedDoc);
+            WSSecurityEngineResult actionResult =
+                results.getActionResults().get(WSConstants.SIGN).get(0);
+            assertEquals("http://www.w3.org/2001/04/xmldsig-more#rsa-sha256",
+                         actionResult.get(WSSecurityEngineResult.TAG_SIGNATURE_METHOD));
+            assertEquals(profile.getCertificates()[0],
+                         actionResult.get(WSSecurityEngineResult.TAG_X509_CERTIFICATE));
+        }
+    }
+
+    /**
+     * The SignatureAction signs with the SignatureProfile of the RequestData, so the (wrong) password
+     * is not used to load the private key
+     */
+    @Test
+    public void testWSHandlerSignatureProfile() throws Exception {
+        final WSSConfig cfg = WSSConfig.getNewInstance();
+        final RequestData reqData = new RequestData();
+        reqData.setWssConfig(cfg);
+        reqData.setUsername("16c73ab6-b892-458f-abf5-2f875f74882e");
+        reqData.setSignatureProfile(
+            new SignatureProfile(crypto, "16c73ab6-b892-458f-abf5-2f875f74882e", "security", null, null)
+        );
+
+        java.util.Map<String, Object> config = new java.util.TreeMap<String, Object>();
+        config.put(WSHandlerConstants.SIG_PROP_REF_ID, "signatureCrypto");
+        config.put("signatureCrypto", crypto);
+        config.put("password", "wrongPassword");
+        reqData.setMsgContext(config);
+
+        final Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        CustomHandler handler = new CustomHandler();
+        List<HandlerAction> actions = new ArrayList<>();
+        actions.add(new HandlerAction(WSConstants.SIGN));
+        handler.send(
+            doc,
+            reqData,
+            actions,
+            true
+        );
+
+        WSHandlerResult results = verify(doc);
+
+        List<Integer> receivedActions = new ArrayList<>();
+        receivedActions.add(WSConstants.SIGN);
+        assertTrue(handler.checkResults(results.getResults(), receivedActions));
+    }
+
 
     /**
      * Verifies the soap envelope.
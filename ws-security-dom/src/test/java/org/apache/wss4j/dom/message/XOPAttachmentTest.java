@@ -74,6 +74,19 @@ public class XOPAttachmentTest extends org.junit.Assert {
         "   </soapenv:Body>" +
         "</soapenv:Envelope>";
 
+    private static final String PARENT_PREFIX_MSG = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+        "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\" xmlns:ns1=\"urn:counter\">" +
+        "   <soapenv:Header></soapenv:Header>" +
+        "   <soapenv:Body><ns1:add><ns1:value>15</ns1:value></ns1:add></soapenv:Body>" +
+        "</soapenv:Envelope>";
+
+    private static final String MULTIPLE_CHILDREN_MSG = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+        "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\" xmlns:ns1=\"urn:counter\">" +
+        "   <soapenv:Header></soapenv:Header>" +
+        "   <soapenv:Body><ns1:add><ns1:value>15</ns1:value></ns1:add>text<ns1:subtract>" +
+        "<ns1:value>16</ns1:value></ns1:subtract></soapenv:Body>" +
+        "</soapenv:Envelope>";
+
     private static final org.slf4j.Logger LOG =
             org.slf4j.LoggerFactory.getLogger(XOPAttachmentTest.class);
 
@@ -608,6 +621,80 @@ public class XOPAttachmentTest extends org.junit.Assert {
         assertTrue(processedDoc.contains(SOAP_BODY));
     }
 
+    // The content of the SOAP Body uses a prefix that is only declared on the SOAP Envelope
+    @Test
+    public void testEncryptedSOAPBodyParentPrefix() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(PARENT_PREFIX_MSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecEncrypt encrypt = new WSSecEncrypt(secHeader);
+        encrypt.setUserInfo("16c73ab6-b892-458f-abf5-2f875f74882e", "security");
+        encrypt.setKeyIdentifierType(WSConstants.ISSUER_SERIAL);
+
+        AttachmentCallbackHandler outboundAttachmentCallback = new AttachmentCallbackHandler();
+        encrypt.setAttachmentCallbackHandler(outboundAttachmentCallback);
+        encrypt.setStoreBytesInAttachment(true);
+
+        encrypt.getParts().add(new WSEncryptionPart("Body", "http://schemas.xmlsoap.org/soap/envelope/", "Content"));
+
+        Document encryptedDoc = encrypt.build(crypto);
+
+        List<Attachment> encryptedAttachments = outboundAttachmentCallback.getResponseAttachments();
+        assertNotNull(encryptedAttachments);
+        assertTrue(encryptedAttachments.size() == 2);
+
+        AttachmentCallbackHandler inboundAttachmentCallback =
+            new AttachmentCallbackHandler(encryptedAttachments);
+        verify(encryptedDoc, inboundAttachmentCallback);
+
+        Element soapBody = WSSecurityUtil.findBodyElement(encryptedDoc);
+        Element add = XMLUtils.getDirectChildElement(soapBody, "add", "urn:counter");
+        assertNotNull(add);
+        assertSame(encryptedDoc, add.getOwnerDocument());
+        Element value = XMLUtils.getDirectChildElement(add, "value", "urn:counter");
+        assertNotNull(value);
+        assertEquals("15", value.getTextContent());
+    }
+
+    // The SOAP Body has more than one child, which all must be restored
+    @Test
+    public void testEncryptedSOAPBodyMultipleChildren() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(MULTIPLE_CHILDREN_MSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecEncrypt encrypt = new WSSecEncrypt(secHeader);
+        encrypt.setUserInfo("16c73ab6-b892-458f-abf5-2f875f74882e", "security");
+        encrypt.setKeyIdentifierType(WSConstants.ISSUER_SERIAL);
+
+        AttachmentCallbackHandler outboundAttachmentCallback = new AttachmentCallbackHandler();
+        encrypt.setAttachmentCallbackHandler(outboundAttachmentCallback);
+        encrypt.setStoreBytesInAttachment(true);
+
+        encrypt.getParts().add(new WSEncryptionPart("Body", "http://schemas.xmlsoap.org/soap/envelope/", "Content"));
+
+        Document encryptedDoc = encrypt.build(crypto);
+
+        List<Attachment> encryptedAttachments = outboundAttachmentCallback.getResponseAttachments();
+        assertNotNull(encryptedAttachments);
+        assertTrue(encryptedAttachments.size() == 2);
+
+        AttachmentCallbackHandler inboundAttachmentCallback =
+            new AttachmentCallbackHandler(encryptedAttachments);
+        verify(encryptedDoc, inboundAttachmentCallback);
+
+        Element soapBody = WSSecurityUtil.findBodyElement(encryptedDoc);
+        Element add = XMLUtils.getDirectChildElement(soapBody, "add", "urn:counter");
+        assertNotNull(add);
+        assertEquals("text", add.getNextSibling().getNodeValue());
+        Element subtract = XMLUtils.getDirectChildElement(soapBody, "subtract", "urn:counter");
+        assertNotNull(subtract);
+        assertSame(subtract, add.getNextSibling().getNextSibling());
+        assertNull(subtract.getNextSibling());
+        assertEquals("16", subtract.getTextContent());
+    }
+
     /**
      * Verifies the soap envelope.
      * This method verifies all the signature generated.
@@ -0,0 +1,192 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.dom.misc;
+
+import java.security.Principal;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.dom.WSConstants;
+import org.apache.wss4j.dom.common.SOAPUtil;
+import org.apache.wss4j.dom.common.UsernamePasswordCallbackHandler;
+import org.apache.wss4j.dom.engine.Blocking;
+import org.apache.wss4j.dom.engine.WSSConfig;
+import org.apache.wss4j.dom.engine.WSSecurityEngine;
+import org.apache.wss4j.dom.engine.WSSecurityEngineResult;
+import org.apache.wss4j.dom.handler.RequestData;
+import org.apache.wss4j.dom.handler.WSHandlerResult;
+import org.apache.wss4j.dom.message.WSSecHeader;
+import org.apache.wss4j.dom.message.WSSecTimestamp;
+import org.apache.wss4j.dom.message.WSSecUsernameToken;
+import org.apache.wss4j.dom.validate.Credential;
+import org.apache.wss4j.dom.validate.UsernameTokenValidator;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+/**
+ * Test the asynchronous processing of the security header.
+ */
+public class AsyncSecurityHeaderTest extends org.junit.Assert {
+
+    private WSSecurityEngine secEngine = new WSSecurityEngine();
+
+    /**
+     * The UsernameToken is validated by a Blocking Validator, so it is processed on the Executor, while
+     * the Timestamp is processed inline
+     */
+    @Test
+    public void testBlockingValidator() throws Exception {
+        Document doc = createUsernameTokenDocument("verySecret");
+        Document syncDoc = createUsernameTokenDocument("verySecret");
+
+        WSSConfig wssConfig = WSSConfig.getNewInstance();
+        wssConfig.setValidator(WSConstants.USERNAME_TOKEN, BlockingUsernameTokenValidator.class);
+        RecordingExecutor executor = new RecordingExecutor();
+        RequestData data = new RequestData();
+        data.setWssConfig(wssConfig);
+        data.setCallbackHandler(new UsernamePasswordCallbackHandler());
+        WSHandlerResult results =
+            secEngine.processSecurityHeaderAsync(doc, data, executor).toCompletableFuture().get();
+        assertEquals(1, executor.tasks);
+        assertEquals(2, results.getResults().size());
+
+        RequestData syncData = new RequestData();
+        syncData.setCallbackHandler(new UsernamePasswordCallbackHandler());
+        WSHandlerResult syncResults = secEngine.processSecurityHeader(syncDoc, syncData);
+        assertEquals(syncResults.getActionResults().keySet(), results.getActionResults().keySet());
+        Principal principal = (Principal)results.getActionResults().get(WSConstants.UT).get(0)
+            .get(WSSecurityEngineResult.TAG_PRINCIPAL);
+        Principal syncPrincipal = (Principal)syncResults.getActionResults().get(WSConstants.UT).get(0)
+            .get(WSSecurityEngineResult.TAG_PRINCIPAL);
+        assertEquals(syncPrincipal.getName(), principal.getName());
+    }
+
+    /**
+     * Every element is processed on the Executor with a Blocking CallbackHandler. A failure completes the
+     * result exceptionally, and the remaining elements are not processed.
+     */
+    @Test
+    public void testBlockingCallbackHandlerFailure() throws Exception {
+        Document doc = createUsernameTokenDocument("verySecre");
+
+        RecordingExecutor executor = new RecordingExecutor();
+        RequestData data = new RequestData();
+        data.setCallbackHandler(new BlockingCallbackHandler());
+        CompletionStage<WSHandlerResult> result = secEngine.processSecurityHeaderAsync(doc, data, executor);
+        try {
+            result.toCompletableFuture().get();
+            fail("Failure expected on a bad password text");
+        } catch (ExecutionException ex) {
+            assertEquals(1, executor.tasks);
+            assertTrue(ex.getCause() instanceof WSSecurityException);
+            assertEquals(WSSecurityException.ErrorCode.FAILED_AUTHENTICATION,
+                         ((WSSecurityException)ex.getCause()).getErrorCode());
+        }
+    }
+
+    /**
+     * Nothing in the security header blocks, so it is processed inline
+     */
+    @Test
+    public void testInlineProcessing() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecTimestamp timestamp = new WSSecTimestamp(secHeader);
+        timestamp.build();
+
+        RecordingExecutor executor = new RecordingExecutor();
+        CompletionStage<WSHandlerResult> result =
+            secEngine.processSecurityHeaderAsync(doc, new RequestData(), executor);
+        assertTrue(result.toCompletableFuture().isDone());
+        assertEquals(0, executor.tasks);
+        assertNotNull(result.toCompletableFuture().get().getActionResults().get(WSConstants.TS));
+    }
+
+    /**
+     * A RuntimeException of an element that is processed inline completes the result exceptionally,
+     * instead of being thrown to the caller
+     */
+    @Test
+    public void testInlineRuntimeException() throws Exception {
+        Document doc = createUsernameTokenDocument("verySecret");
+
+        WSSConfig wssConfig = WSSConfig.getNewInstance();
+        wssConfig.setValidator(WSConstants.USERNAME_TOKEN, FailingUsernameTokenValidator.class);
+        RecordingExecutor executor = new RecordingExecutor();
+        RequestData data = new RequestData();
+        data.setWssConfig(wssConfig);
+        data.setCallbackHandler(new UsernamePasswordCallbackHandler());
+        CompletionStage<WSHandlerResult> result = secEngine.processSecurityHeaderAsync(doc, data, executor);
+        assertTrue(result.toCompletableFuture().isCompletedExceptionally());
+        assertEquals(0, executor.tasks);
+        try {
+            result.toCompletableFuture().get();
+            fail("Failure expected on a RuntimeException of the Validator");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    private Document createUsernameTokenDocument(String password) throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecTimestamp timestamp = new WSSecTimestamp(secHeader);
+        timestamp.build();
+
+        WSSecUsernameToken builder = new WSSecUsernameToken(secHeader);
+        builder.setPasswordType(WSConstants.PASSWORD_TEXT);
+        builder.setUserInfo("wernerd", password);
+        return builder.build();
+    }
+
+    @Blocking
+    public static class BlockingUsernameTokenValidator extends UsernameTokenValidator {
+    }
+
+    public static class FailingUsernameTokenValidator extends UsernameTokenValidator {
+        @Override
+        public Credential validate(Credential credential, RequestData data) throws WSSecurityException {
+            throw new IllegalStateException("validation failed");
+        }
+    }
+
+    @Blocking
+    private static class BlockingCallbackHandler extends UsernamePasswordCallbackHandler {
+    }
+
+    /**
+     * Runs the tasks on a new thread, and counts them
+     */
+    private static class RecordingExecutor implements Executor {
+        private int tasks;
+
+        @Override
+        public synchronized void execute(Runnable command) {
+            tasks++;
+            new Thread(command).start();
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.wss4j.dom.saml;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.wss4j.common.cache.MemoryReplayCache;
+import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.crypto.CryptoFactory;
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.saml.SAMLCallback;
+import org.apache.wss4j.common.saml.SAMLUtil;
+import org.apache.wss4j.common.saml.SamlAssertionWrapper;
+import org.apache.wss4j.common.saml.bean.AudienceRestrictionBean;
+import org.apache.wss4j.common.saml.bean.ConditionsBean;
+import org.apache.wss4j.common.saml.builder.SAML2Constants;
+import org.apache.wss4j.common.util.XMLUtils;
+import org.apache.wss4j.dom.WSConstants;
+import org.apache.wss4j.dom.WSDataRef;
+import org.apache.wss4j.dom.common.SAML2CallbackHandler;
+import org.apache.wss4j.dom.common.SOAPUtil;
+import org.apache.wss4j.dom.common.SecurityTestUtil;
+import org.apache.wss4j.dom.engine.WSSConfig;
+import org.apache.wss4j.dom.engine.WSSecurityEngine;
+import org.apache.wss4j.dom.engine.WSSecurityEngineResult;
+import org.apache.wss4j.dom.handler.RequestData;
+import org.apache.wss4j.dom.handler.WSHandlerResult;
+import org.apache.wss4j.dom.message.WSSecHeader;
+import org.apache.wss4j.dom.message.WSSecSAMLToken;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+/**
+ * Test-case for the cache of verified signed SAML Assertions.
+ */
+public class SamlAssertionCacheTest extends org.junit.Assert {
+    private WSSecurityEngine secEngine = new WSSecurityEngine();
+    private Crypto crypto;
+
+    @org.junit.AfterClass
+    public static void cleanup() throws Exception {
+        SecurityTestUtil.cleanup();
+    }
+
+    public SamlAssertionCacheTest() throws Exception {
+        WSSConfig.init();
+        crypto = CryptoFactory.getInstance("crypto.properties");
+    }
+
+    @Test
+    public void testCachedAssertion() throws Exception {
+        String message = createMessage(false);
+        SamlAssertionCache assertionCache = new SamlAssertionCache();
+
+        verify(SOAPUtil.toSOAPPart(message), assertionCache, crypto, null);
+        assertEquals(1, assertionCache.size());
+
+        // The signature of the cached Assertion is not verified again, so no Crypto is needed
+        Document doc = SOAPUtil.toSOAPPart(message);
+        WSHandlerResult results = verify(doc, assertionCache, null, null);
+        WSSecurityEngineResult actionResult =
+            results.getActionResults().get(WSConstants.ST_SIGNED).get(0);
+        SamlAssertionWrapper receivedAssertion =
+            (SamlAssertionWrapper) actionResult.get(WSSecurityEngineResult.TAG_SAML_ASSERTION);
+        assertNotNull(receivedAssertion.getSignatureKeyInfo());
+        assertNotNull(actionResult.get(WSSecurityEngineResult.TAG_PRINCIPAL));
+
+        @SuppressWarnings("unchecked")
+        final List<WSDataRef> refs =
+            (List<WSDataRef>) actionResult.get(WSSecurityEngineResult.TAG_DATA_REF_URIS);
+        assertEquals(1, refs.size());
+        assertSame(receivedAssertion.getElement(), refs.get(0).getProtectedElement());
+        assertSame(doc, refs.get(0).getProtectedElement().getOwnerDocument());
+
+        // Without the cache the signature is verified
+        try {
+            verify(SOAPUtil.toSOAPPart(message), null, null, null);
+            fail("Failure expected on no signature Crypto");
+        } catch (WSSecurityException ex) {
+            assertTrue(ex.getErrorCode() == WSSecurityException.ErrorCode.FAILURE);
+        }
+    }
+
+    @Test
+    public void testModifiedAssertion() throws Exception {
+        String message = createMessage(false);
+        SamlAssertionCache assertionCache = new SamlAssertionCache();
+        verify(SOAPUtil.toSOAPPart(message), assertionCache, crypto, null);
+
+        String modifiedMessage = message.replace("uid=joe", "uid=admin");
+        assertNotEquals(message, modifiedMessage);
+        try {
+            verify(SOAPUtil.toSOAPPart(modifiedMessage), assertionCache, crypto, null);
+            fail("Failure expected on a modified Assertion");
+        } catch (WSSecurityException ex) {
+            assertTrue(ex.getMessage().contains("SAML signature validation failed"));
+        }
+        assertEquals(1, assertionCache.size());
+    }
+
+    @Test
+    public void testAudienceRestrictionOfCachedAssertion() throws Exception {
+        String message = createMessage(false);
+        SamlAssertionCache assertionCache = new SamlAssertionCache();
+        verify(SOAPUtil.toSOAPPart(message), assertionCache, crypto, null);
+
+        RequestData data = createRequestData(assertionCache, crypto);
+        data.setAudienceRestrictions(Collections.singletonList("http://apache.org/one"));
+        try {
+            secEngine.processSecurityHeader(SOAPUtil.toSOAPPart(message), data);
+            fail("Failure expected on a bad audience restriction");
+        } catch (WSSecurityException ex) {
+            assertTrue(ex.getErrorCode() == WSSecurityException.ErrorCode.FAILURE);
+        }
+
+        data.setAudienceRestrictions(Collections.singletonList("http://apache.org/two"));
+        secEngine.processSecurityHeader(SOAPUtil.toSOAPPart(message), data);
+    }
+
+    @Test
+    public void testOneTimeUseOfCachedAssertion() throws Exception {
+        String message = createMessage(true);
+        SamlAssertionCache assertionCache = new SamlAssertionCache();
+        MemoryReplayCache replayCache = new MemoryReplayCache();
+
+        verify(SOAPUtil.toSOAPPart(message), assertionCache, crypto, replayCache);
+        assertEquals(1, assertionCache.size());
+        try {
+            verify(SOAPUtil.toSOAPPart(message), assertionCache, crypto, replayCache);
+            fail("Failure expected on a replay of a OneTimeUse Assertion");
+        } catch (WSSecurityException ex) {
+            assertTrue(ex.getErrorCode() == WSSecurityException.ErrorCode.INVALID_SECURITY);
+        }
+        replayCache.close();
+    }
+
+    private String createMessage(boolean oneTimeUse) throws Exception {
+        SAML2CallbackHandler callbackHandler = new SAML2CallbackHandler();
+        callbackHandler.setStatement(SAML2CallbackHandler.Statement.AUTHN);
+        callbackHandler.setConfirmationMethod(SAML2Constants.CONF_BEARER);
+        callbackHandler.setIssuer("www.example.com");
+
+        ConditionsBean conditions = new ConditionsBean();
+        conditions.setTokenPeriodMinutes(5);
+        conditions.setOneTimeUse(oneTimeUse);
+        AudienceRestrictionBean audienceRestrictionBean = new AudienceRestrictionBean();
+        audienceRestrictionBean.setAudienceURIs(Collections.singletonList("http://apache.org/two"));
+        conditions.setAudienceRestrictions(Collections.singletonList(audienceRestrictionBean));
+        callbackHandler.setConditions(conditions);
+
+        SAMLCallback samlCallback = new SAMLCallback();
+        SAMLUtil.doSAMLCallback(callbackHandler, samlCallback);
+        SamlAssertionWrapper samlAssertion = new SamlAssertionWrapper(samlCallback);
+        samlAssertion.signAssertion("16c73ab6-b892-458f-abf5-2f875f74882e", "security", crypto, false);
+
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecSAMLToken wsSign = new WSSecSAMLToken(secHeader);
+        return XMLUtils.prettyDocumentToString(wsSign.build(samlAssertion));
+    }
+
+    private RequestData createRequestData(SamlAssertionCache assertionCache, Crypto sigVerCrypto) {
+        RequestData data = new RequestData();
+        data.setSigVerCrypto(sigVerCrypto);
+        data.setSamlAssertionCache(assertionCache);
+        data.setValidateSamlSubjectConfirmation(false);
+        return data;
+    }
+
+    private WSHandlerResult verify(
+        Document doc, SamlAssertionCache assertionCache, Crypto sigVerCrypto,
+        MemoryReplayCache replayCache
+    ) throws Exception {
+        RequestData data = createRequestData(assertionCache, sigVerCrypto);
+        data.setSamlOneTimeUseReplayCache(replayCache);
+        return secEngine.processSecurityHeader(doc, data);
+    }
+
+}
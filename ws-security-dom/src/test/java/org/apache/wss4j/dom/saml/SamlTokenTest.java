@@ -84,6 +84,7 @@ import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
 import org.opensaml.core.xml.schema.XSAny;
 import org.opensaml.core.xml.schema.XSInteger;
 import org.opensaml.saml.common.SAMLObjectBuilder;
+import org.opensaml.saml.common.xml.SAMLConstants;
 import org.opensaml.saml.saml2.core.AttributeValue;
 import org.opensaml.saml.saml2.core.Conditions;
 import org.w3c.dom.Document;
@@ -1064,6 +1065,88 @@ public class SamlTokenTest extends org.junit.Assert {
         assertEquals(assertionString, secondAssertionString);
     }
 
+    @Test
+    public void testLazyAssertionWrapper() throws Exception {
+        SAML1CallbackHandler saml1CallbackHandler = new SAML1CallbackHandler();
+        saml1CallbackHandler.setStatement(SAML1CallbackHandler.Statement.ATTR);
+        saml1CallbackHandler.setConfirmationMethod(SAML1Constants.CONF_BEARER);
+        saml1CallbackHandler.setIssuer("www.example.com");
+        compareLazyAssertionWrapper(saml1CallbackHandler);
+
+        SAML2CallbackHandler saml2CallbackHandler = new SAML2CallbackHandler();
+        saml2CallbackHandler.setStatement(SAML2CallbackHandler.Statement.ATTR);
+        saml2CallbackHandler.setConfirmationMethod(SAML2Constants.CONF_BEARER);
+        saml2CallbackHandler.setIssuer("www.example.com");
+        compareLazyAssertionWrapper(saml2CallbackHandler);
+    }
+
+    private void compareLazyAssertionWrapper(CallbackHandler callbackHandler) throws Exception {
+        SAMLCallback samlCallback = new SAMLCallback();
+        SAMLUtil.doSAMLCallback(callbackHandler, samlCallback);
+        SamlAssertionWrapper samlAssertion = new SamlAssertionWrapper(samlCallback);
+        Crypto crypto = CryptoFactory.getInstance("wss40.properties");
+        samlAssertion.signAssertion("wss40", "security", crypto, false);
+
+        String assertionString = DOM2Writer.nodeToString(samlAssertion.toDOM(null));
+        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+        dbf.setNamespaceAware(true);
+        Element assertionElement =
+            dbf.newDocumentBuilder().parse(
+                new ByteArrayInputStream(assertionString.getBytes())).getDocumentElement();
+
+        SamlAssertionWrapper assertion = new SamlAssertionWrapper(assertionElement);
+        SamlAssertionWrapper lazyAssertion = new SamlAssertionWrapper(assertionElement, true);
+
+        assertTrue(lazyAssertion.isCreated());
+        assertEquals(assertion.getSamlVersion(), lazyAssertion.getSamlVersion());
+        assertEquals(assertion.getId(), lazyAssertion.getId());
+        assertEquals("www.example.com", lazyAssertion.getIssuerString());
+        assertEquals(assertion.getNotBefore(), lazyAssertion.getNotBefore());
+        assertEquals(assertion.getNotOnOrAfter(), lazyAssertion.getNotOnOrAfter());
+        assertNotNull(lazyAssertion.getNotOnOrAfter());
+        assertEquals(assertion.getSubjectName(), lazyAssertion.getSubjectName());
+        assertEquals(assertion.getConfirmationMethods(), lazyAssertion.getConfirmationMethods());
+        assertTrue(lazyAssertion.isSigned());
+        assertArrayEquals(assertion.getSignatureValue(), lazyAssertion.getSignatureValue());
+        lazyAssertion.checkConditions(60);
+
+        // The Opensaml objects are created on demand
+        if (lazyAssertion.getSaml2() != null) {
+            assertEquals(1, lazyAssertion.getSaml2().getAttributeStatements().size());
+        } else {
+            assertEquals(1, lazyAssertion.getSaml1().getAttributeStatements().size());
+        }
+        lazyAssertion.verifySignature(
+            new WSSSAMLKeyInfoProcessor(new RequestData()), crypto
+        );
+        assertNotNull(lazyAssertion.getSignatureKeyInfo());
+        assertEquals(assertionString, lazyAssertion.assertionToString());
+    }
+
+    @Test
+    public void testLazyAssertionWrapperMalformedDate() throws Exception {
+        SAML2CallbackHandler callbackHandler = new SAML2CallbackHandler();
+        callbackHandler.setStatement(SAML2CallbackHandler.Statement.ATTR);
+        callbackHandler.setIssuer("www.example.com");
+
+        SAMLCallback samlCallback = new SAMLCallback();
+        SAMLUtil.doSAMLCallback(callbackHandler, samlCallback);
+        SamlAssertionWrapper samlAssertion = new SamlAssertionWrapper(samlCallback);
+
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        Element assertionElement = samlAssertion.toDOM(doc);
+        Element conditions =
+            XMLUtils.getDirectChildElement(assertionElement, "Conditions", SAMLConstants.SAML20_NS);
+        conditions.setAttributeNS(null, "NotOnOrAfter", "tomorrow");
+
+        try {
+            new SamlAssertionWrapper(assertionElement, true);
+            fail("Failure expected on a malformed date");
+        } catch (WSSecurityException ex) {
+            assertEquals(WSSecurityException.ErrorCode.INVALID_SECURITY_TOKEN, ex.getErrorCode());
+        }
+    }
+
     @Test
     public void testRequiredSubjectConfirmationMethod() throws Exception {
         SAML2CallbackHandler callbackHandler = new SAML2CallbackHandler();
@@ -0,0 +1,210 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.wss4j.policy.stax.enforcer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.neethi.ExactlyOne;
+import org.apache.neethi.PolicyComponent;
+import org.apache.neethi.PolicyContainingAssertion;
+import org.apache.neethi.PolicyOperator;
+import org.apache.neethi.builders.PrimitiveAssertion;
+import org.apache.wss4j.common.WSSPolicyException;
+import org.apache.wss4j.policy.model.AbstractSecurityAssertion;
+import org.apache.wss4j.policy.stax.Assertable;
+import org.apache.wss4j.policy.stax.OperationPolicy;
+import org.apache.xml.security.stax.securityEvent.SecurityEventConstants;
+
+/**
+ * The compiled, immutable enforcement plan of the (normalized) policy of an operation. The policy tree is
+ * walked only once, and flattened into the list of security assertions of every policy alternative, so
+ * that a PolicyEnforcer only needs to instantiate the (stateful) Assertables of each message. The plan
+ * also caches the dispatch table from security event types to the Assertables of each alternative.
+ *
+ * A plan is compiled lazily on first use, so that an unsupported policy fails the messages of its own
+ * operation only. It is safe to share a plan between threads.
+ */
+final class PolicyEnforcementPlan {
+
+    private final OperationPolicy operationPolicy;
+    private volatile AbstractSecurityAssertion[][] alternatives;
+    private volatile EventLayout initiatorLayout;
+    private volatile EventLayout recipientLayout;
+
+    PolicyEnforcementPlan(OperationPolicy operationPolicy) {
+        this.operationPolicy = operationPolicy;
+    }
+
+    static PolicyEnforcementPlan[] newPlans(List<OperationPolicy> operationPolicies) {
+        PolicyEnforcementPlan[] plans = new PolicyEnforcementPlan[operationPolicies.size()];
+        for (int i = 0; i < plans.length; i++) {
+            plans[i] = new PolicyEnforcementPlan(operationPolicies.get(i));
+        }
+        return plans;
+    }
+
+    OperationPolicy getOperationPolicy() {
+        return operationPolicy;
+    }
+
+    /**
+     * Return the security assertions of each policy alternative, in policy order.
+     */
+    AbstractSecurityAssertion[][] getAlternatives() throws WSSPolicyException {
+        AbstractSecurityAssertion[][] compiled = alternatives;
+        if (compiled == null) {
+            compiled = compile(operationPolicy.getPolicy());
+            alternatives = compiled;
+        }
+        return compiled;
+    }
+
+    EventLayout getEventLayout(boolean initiator) {
+        return initiator ? initiatorLayout : recipientLayout;
+    }
+
+    void setEventLayout(boolean initiator, EventLayout eventLayout) {
+        if (initiator) {
+            initiatorLayout = eventLayout;
+        } else {
+            recipientLayout = eventLayout;
+        }
+    }
+
+    /**
+     * Precondition: Policy _must_ be normalized!
+     */
+    private static AbstractSecurityAssertion[][] compile(PolicyComponent policyComponent) throws WSSPolicyException {
+        List<List<AbstractSecurityAssertion>> alternativeList = new ArrayList<>();
+        compile(policyComponent, alternativeList);
+
+        AbstractSecurityAssertion[][] compiled = new AbstractSecurityAssertion[alternativeList.size()][];
+        for (int i = 0; i < compiled.length; i++) {
+            List<AbstractSecurityAssertion> assertions = alternativeList.get(i);
+            compiled[i] = assertions.toArray(new AbstractSecurityAssertion[assertions.size()]);
+        }
+        return compiled;
+    }
+
+    private static void compile(
+            PolicyComponent policyComponent, List<List<AbstractSecurityAssertion>> alternativeList
+    ) throws WSSPolicyException {
+        if (policyComponent instanceof PolicyOperator) {
+            PolicyOperator policyOperator = (PolicyOperator) policyComponent;
+            List<PolicyComponent> policyComponents = policyOperator.getPolicyComponents();
+            for (int i = 0; i < policyComponents.size(); i++) {
+                PolicyComponent curPolicyComponent = policyComponents.get(i);
+                if (policyOperator instanceof ExactlyOne) {
+                    List<AbstractSecurityAssertion> assertions = new ArrayList<>();
+                    alternativeList.add(assertions);
+                    compileAlternative(curPolicyComponent, assertions);
+                } else {
+                    compile(curPolicyComponent, alternativeList);
+                }
+            }
+        } else {
+            throw new WSSPolicyException("Invalid PolicyComponent: " + policyComponent
+                                         + " " + policyComponent.getType());
+        }
+    }
+
+    private static void compileAlternative(
+            PolicyComponent policyComponent, List<AbstractSecurityAssertion> assertions
+    ) throws WSSPolicyException {
+        if (policyComponent instanceof PolicyOperator) {
+            List<PolicyComponent> policyComponents = ((PolicyOperator) policyComponent).getPolicyComponents();
+            for (int i = 0; i < policyComponents.size(); i++) {
+                compileAlternative(policyComponents.get(i), assertions);
+            }
+        } else if (policyComponent instanceof AbstractSecurityAssertion) {
+            AbstractSecurityAssertion abstractSecurityAssertion = (AbstractSecurityAssertion) policyComponent;
+            assertions.add(abstractSecurityAssertion);
+            if (abstractSecurityAssertion instanceof PolicyContainingAssertion) {
+                compileAlternative(((PolicyContainingAssertion) abstractSecurityAssertion).getPolicy(), assertions);
+            }
+        } else if (!(policyComponent instanceof PrimitiveAssertion)) {
+            throw new WSSPolicyException("Unsupported PolicyComponent: " + policyComponent
+                                         + " type: " + policyComponent.getType());
+        }
+    }
+
+    /**
+     * The dispatch table from the security event types to the (indexes of the) Assertables of each
+     * alternative, that listen for the given event type.
+     */
+    static final class EventLayout {
+
+        private static final int[] NO_ASSERTABLES = new int[0];
+
+        private final Map<SecurityEventConstants.Event, Integer> eventIndexes = new HashMap<>();
+        private final int[][][] assertablesByEvent;
+
+        EventLayout(Assertable[][] assertables) {
+            List<List<List<Integer>>> byEvent = new ArrayList<>();
+            for (int alternative = 0; alternative < assertables.length; alternative++) {
+                for (int i = 0; i < assertables[alternative].length; i++) {
+                    SecurityEventConstants.Event[] events = assertables[alternative][i].getSecurityEventType();
+                    for (int j = 0; j < events.length; j++) {
+                        Integer eventIndex = eventIndexes.get(events[j]);
+                        if (eventIndex == null) {
+                            eventIndex = eventIndexes.size();
+                            eventIndexes.put(events[j], eventIndex);
+                            List<List<Integer>> alternatives = new ArrayList<>(assertables.length);
+                            for (int k = 0; k < assertables.length; k++) {
+                                alternatives.add(new ArrayList<Integer>());
+                            }
+                            byEvent.add(alternatives);
+                        }
+                        List<Integer> indexes = byEvent.get(eventIndex).get(alternative);
+                        if (!indexes.contains(i)) {
+                            indexes.add(i);
+                        }
+                    }
+                }
+            }
+
+            assertablesByEvent = new int[byEvent.size()][assertables.length][];
+            for (int event = 0; event < assertablesByEvent.length; event++) {
+                for (int alternative = 0; alternative < assertables.length; alternative++) {
+                    List<Integer> indexes = byEvent.get(event).get(alternative);
+                    int[] indexArray = indexes.isEmpty() ? NO_ASSERTABLES : new int[indexes.size()];
+                    for (int i = 0; i < indexArray.length; i++) {
+                        indexArray[i] = indexes.get(i);
+                    }
+                    assertablesByEvent[event][alternative] = indexArray;
+                }
+            }
+        }
+
+        /**
+         * Return the indexes of the Assertables of the given alternative that listen for the given event
+         * type, in policy order.
+         */
+        int[] getAssertables(SecurityEventConstants.Event event, int alternative) {
+            Integer eventIndex = eventIndexes.get(event);
+            if (eventIndex == null) {
+                return NO_ASSERTABLES;
+            }
+            return assertablesByEvent[eventIndex][alternative];
+        }
+    }
+}
@@ -18,23 +18,18 @@
  */
 package org.apache.wss4j.policy.stax.enforcer;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Deque;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
 
 import javax.xml.namespace.QName;
 
 import org.apache.neethi.Assertion;
-import org.apache.neethi.ExactlyOne;
 import org.apache.neethi.Policy;
-import org.apache.neethi.PolicyComponent;
-import org.apache.neethi.PolicyContainingAssertion;
-import org.apache.neethi.PolicyOperator;
-import org.apache.neethi.builders.PrimitiveAssertion;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.policy.SPConstants;
 import org.apache.wss4j.common.WSSPolicyException;
@@ -100,19 +95,18 @@ import org.apache.wss4j.policy.stax.assertionStates.TokenProtectionAssertionStat
 import org.apache.wss4j.policy.stax.assertionStates.UsernameTokenAssertionState;
 import org.apache.wss4j.policy.stax.assertionStates.X509TokenAssertionState;
 import org.apache.wss4j.stax.ext.WSSConstants;
+import org.apache.wss4j.stax.securityEvent.BatchSecurityEventListener;
 import org.apache.wss4j.stax.securityEvent.NoSecuritySecurityEvent;
 import org.apache.wss4j.stax.securityEvent.OperationSecurityEvent;
 import org.apache.wss4j.stax.securityEvent.WSSecurityEventConstants;
 import org.apache.xml.security.exceptions.XMLSecurityException;
 import org.apache.xml.security.stax.securityEvent.SecurityEvent;
-import org.apache.xml.security.stax.securityEvent.SecurityEventConstants;
-import org.apache.xml.security.stax.securityEvent.SecurityEventListener;
 
 /**
  * The PolicyEnforcer verifies the Policy assertions
  * The Assertion will be validated in realtime as far as possible
  */
-public class PolicyEnforcer implements SecurityEventListener {
+public class PolicyEnforcer implements BatchSecurityEventListener {
 
     //todo:
     // AlgorithmSuite SoapNorm
@@ -130,12 +124,13 @@ public class PolicyEnforcer implements SecurityEventListener {
     private static final QName SOAP11_FAULT = new QName(WSSConstants.NS_SOAP11, "Fault");
     private static final QName SOAP12_FAULT = new QName(WSSConstants.NS_SOAP12, "Fault");
 
-    private final List<OperationPolicy> operationPolicies;
-    private OperationPolicy effectivePolicy;
-    private final List<Map<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>>> assertionStateMap;
-    private final List<Map<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>>> failedAssertionStateMap;
+    private final PolicyEnforcementPlan[] plans;
+    private PolicyEnforcementPlan effectivePlan;
+    private PolicyEnforcementPlan.EventLayout eventLayout;
+    private final List<AlternativeState> assertionStates;
+    private final List<AlternativeState> failedAssertionStates;
 
-    private final Deque<SecurityEvent> securityEventQueue = new LinkedList<>();
+    private final Deque<SecurityEvent> securityEventQueue = new ArrayDeque<>();
     private boolean operationSecurityEventOccured = false;
     private boolean initiator;
     private String actorOrRole;
@@ -152,12 +147,19 @@ public class PolicyEnforcer implements SecurityEventListener {
     public PolicyEnforcer(List<OperationPolicy> operationPolicies, String soapAction, boolean initiator,
                           String actorOrRole, int attachmentCount, PolicyAsserter policyAsserter
     ) throws WSSPolicyException {
-        this.operationPolicies = operationPolicies;
+        this(PolicyEnforcementPlan.newPlans(operationPolicies), soapAction, initiator, actorOrRole,
+             attachmentCount, policyAsserter);
+    }
+
+    PolicyEnforcer(PolicyEnforcementPlan[] plans, String soapAction, boolean initiator,
+                   String actorOrRole, int attachmentCount, PolicyAsserter policyAsserter
+    ) throws WSSPolicyException {
+        this.plans = plans;
         this.initiator = initiator;
         this.actorOrRole = actorOrRole;
         this.attachmentCount = attachmentCount;
-        assertionStateMap = new LinkedList<>();
-        failedAssertionStateMap = new LinkedList<>();
+        assertionStates = new LinkedList<>();
+        failedAssertionStates = new LinkedList<>();
 
         if (policyAsserter == null) {
             this.policyAsserter = new DummyPolicyAsserter();
@@ -166,38 +168,35 @@ public class PolicyEnforcer implements SecurityEventListener {
         }
 
         if (soapAction != null && !soapAction.isEmpty()) {
-            effectivePolicy = findPolicyBySOAPAction(operationPolicies, soapAction);
-            if (effectivePolicy != null) {
-                buildAssertionStateMap(effectivePolicy.getPolicy(), assertionStateMap);
+            effectivePlan = findPlanBySOAPAction(plans, soapAction);
+            if (effectivePlan != null) {
+                buildAssertionStates(effectivePlan);
             }
         }
     }
 
-    private OperationPolicy findPolicyBySOAPAction(List<OperationPolicy> operationPolicies, String soapAction) {
-        Iterator<OperationPolicy> operationPolicyIterator = operationPolicies.iterator();
-        while (operationPolicyIterator.hasNext()) {
-            OperationPolicy operationPolicy = operationPolicyIterator.next();
-            if (soapAction.equals(operationPolicy.getOperationAction())) {
-                return operationPolicy;
+    private PolicyEnforcementPlan findPlanBySOAPAction(PolicyEnforcementPlan[] plans, String soapAction) {
+        for (int i = 0; i < plans.length; i++) {
+            if (soapAction.equals(plans[i].getOperationPolicy().getOperationAction())) {
+                return plans[i];
             }
         }
         return null;
     }
 
-    private OperationPolicy findPolicyBySOAPOperationName(List<OperationPolicy> operationPolicies,
-                                                          QName soapOperationName) {
-        Iterator<OperationPolicy> operationPolicyIterator = operationPolicies.iterator();
-        OperationPolicy noNamespaceOperation = null;
+    private PolicyEnforcementPlan findPlanBySOAPOperationName(PolicyEnforcementPlan[] plans,
+                                                              QName soapOperationName) {
+        PolicyEnforcementPlan noNamespaceOperation = null;
 
-        while (operationPolicyIterator.hasNext()) {
-            OperationPolicy operationPolicy = operationPolicyIterator.next();
+        for (int i = 0; i < plans.length; i++) {
+            OperationPolicy operationPolicy = plans[i].getOperationPolicy();
             if (operationPolicy.getOperationName() != null) {
                 if (soapOperationName.equals(operationPolicy.getOperationName())) {
-                    return operationPolicy;
+                    return plans[i];
                 } else if ("".equals(operationPolicy.getOperationName().getNamespaceURI())
                     && soapOperationName.getLocalPart().equals(
                         operationPolicy.getOperationName().getLocalPart())) {
-                    noNamespaceOperation = operationPolicy;
+                    noNamespaceOperation = plans[i];
                 }
             }
         }
@@ -206,86 +205,38 @@ public class PolicyEnforcer implements SecurityEventListener {
     }
 
     /**
-     * Precondition: Policy _must_ be normalized!
+     * Instantiates the Assertables of every alternative of the given (compiled) policy for this message
      */
-    private void buildAssertionStateMap(
-            PolicyComponent policyComponent,
-            List<Map<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>>> assertionStateMap
-    ) throws WSSPolicyException {
-        if (policyComponent instanceof PolicyOperator) {
-            PolicyOperator policyOperator = (PolicyOperator) policyComponent;
-            List<PolicyComponent> policyComponents = policyOperator.getPolicyComponents();
-            int alternative = 0;
-            Iterator<PolicyComponent> policyComponentIterator = policyComponents.iterator();
-            while (policyComponentIterator.hasNext()) {
-                PolicyComponent curPolicyComponent = policyComponentIterator.next();
-                if (policyOperator instanceof ExactlyOne) {
-                    assertionStateMap.add(new HashMap<SecurityEventConstants.Event,
-                                          Map<Assertion, List<Assertable>>>());
-                    buildAssertionStateMap(curPolicyComponent, assertionStateMap, alternative++);
-                } else {
-                    buildAssertionStateMap(curPolicyComponent, assertionStateMap);
+    private void buildAssertionStates(PolicyEnforcementPlan plan) throws WSSPolicyException {
+        AbstractSecurityAssertion[][] alternatives = plan.getAlternatives();
+        Assertable[][] assertables = new Assertable[alternatives.length][];
+        for (int alternative = 0; alternative < alternatives.length; alternative++) {
+            AbstractSecurityAssertion[] assertions = alternatives[alternative];
+            List<Assertion> keyAssertions = new ArrayList<>(assertions.length);
+            List<Assertable> assertableList = new ArrayList<>(assertions.length);
+            for (int i = 0; i < assertions.length; i++) {
+                List<Assertable> assertablesForAssertion = getAssertableForAssertion(assertions[i]);
+                for (int j = 0; j < assertablesForAssertion.size(); j++) {
+                    keyAssertions.add(assertions[i]);
+                    assertableList.add(assertablesForAssertion.get(j));
                 }
             }
-        } else {
-            throw new WSSPolicyException("Invalid PolicyComponent: " + policyComponent
-                                         + " " + policyComponent.getType());
+            assertables[alternative] = assertableList.toArray(new Assertable[assertableList.size()]);
+            assertionStates.add(new AlternativeState(
+                alternative, keyAssertions.toArray(new Assertion[keyAssertions.size()]), assertables[alternative]));
         }
-    }
 
-    private void buildAssertionStateMap(
-            PolicyComponent policyComponent,
-            List<Map<SecurityEventConstants.Event,
-            Map<Assertion, List<Assertable>>>> assertionStateMap,
-            int alternative
-    ) throws WSSPolicyException {
-        if (policyComponent instanceof PolicyOperator) {
-            PolicyOperator policyOperator = (PolicyOperator) policyComponent;
-            List<PolicyComponent> policyComponents = policyOperator.getPolicyComponents();
-            Iterator<PolicyComponent> policyComponentIterator = policyComponents.iterator();
-            while (policyComponentIterator.hasNext()) {
-                PolicyComponent curPolicyComponent = policyComponentIterator.next();
-                buildAssertionStateMap(curPolicyComponent, assertionStateMap, alternative);
-            }
-        } else if (policyComponent instanceof AbstractSecurityAssertion) {
-            AbstractSecurityAssertion abstractSecurityAssertion = (AbstractSecurityAssertion) policyComponent;
-
-            List<Assertable> assertablesList = getAssertableForAssertion(abstractSecurityAssertion);
-            Iterator<Assertable> assertableIterator = assertablesList.iterator();
-            while (assertableIterator.hasNext()) {
-                Assertable assertable = assertableIterator.next();
-                final Map<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>> map =
-                    assertionStateMap.get(alternative);
-                final SecurityEventConstants.Event[] securityEventType = assertable.getSecurityEventType();
-                for (int j = 0; j < securityEventType.length; j++) {
-                    SecurityEventConstants.Event event = securityEventType[j];
-                    Map<Assertion, List<Assertable>> assertables = map.get(event);
-                    if (assertables == null) {
-                        assertables = new HashMap<>();
-                        map.put(event, assertables);
-                    }
-                    addAssertionState(assertables, abstractSecurityAssertion, assertable);
-                }
-            }
-            if (abstractSecurityAssertion instanceof PolicyContainingAssertion) {
-                buildAssertionStateMap(((PolicyContainingAssertion) abstractSecurityAssertion).getPolicy(),
-                                       assertionStateMap, alternative);
+        // The Assertables (and so the event types they listen for) of an alternative depend only on the policy
+        // and on the initiator flag, unless getAssertableForAssertion is overridden
+        if (getClass() == PolicyEnforcer.class) {
+            eventLayout = plan.getEventLayout(initiator);
+            if (eventLayout == null) {
+                eventLayout = new PolicyEnforcementPlan.EventLayout(assertables);
+                plan.setEventLayout(initiator, eventLayout);
             }
-        } else if (!(policyComponent instanceof PrimitiveAssertion)) {
-            throw new WSSPolicyException("Unsupported PolicyComponent: " + policyComponent
-                                         + " type: " + policyComponent.getType());
-        }
-    }
-
-    private void addAssertionState(Map<Assertion, List<Assertable>> assertables,
-                                   Assertion keyAssertion,
-                                   Assertable assertable) {
-        List<Assertable> assertableList = assertables.get(keyAssertion);
-        if (assertableList == null) {
-            assertableList = new LinkedList<>();
-            assertables.put(keyAssertion, assertableList);
+        } else {
+            eventLayout = new PolicyEnforcementPlan.EventLayout(assertables);
         }
-        assertableList.add(assertable);
     }
 
     // Don't return a Token that is not required
@@ -505,32 +456,21 @@ public class PolicyEnforcer implements SecurityEventListener {
      */
     private void verifyPolicy(SecurityEvent securityEvent) throws WSSPolicyException, XMLSecurityException {
         // We have to check the failed assertions for logging purposes firstly...
-        if (!this.failedAssertionStateMap.isEmpty()) {
-            Iterator<Map<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>>> assertionStateMapIterator =
-                this.failedAssertionStateMap.iterator();
+        if (!this.failedAssertionStates.isEmpty()) {
+            Iterator<AlternativeState> alternativeStateIterator = this.failedAssertionStates.iterator();
             alternative:
-                while (assertionStateMapIterator.hasNext()) {
-                    Map<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>> map =
-                        assertionStateMapIterator.next();
+                while (alternativeStateIterator.hasNext()) {
+                    AlternativeState alternativeState = alternativeStateIterator.next();
                     // every list entry counts as an alternative...
-                    Map<Assertion, List<Assertable>> assertionListMap = map.get(securityEvent.getSecurityEventType());
-                    if (assertionListMap != null && !assertionListMap.isEmpty()) {
-                        Iterator<Map.Entry<Assertion, List<Assertable>>> assertionStateIterator =
-                            assertionListMap.entrySet().iterator();
-                        while (assertionStateIterator.hasNext()) {
-                            Map.Entry<Assertion, List<Assertable>> assertionStateEntry =
-                                assertionStateIterator.next();
-                            List<Assertable> assertionStates = assertionStateEntry.getValue();
-                            Iterator<Assertable> assertableIterator = assertionStates.iterator();
-                            while (assertableIterator.hasNext()) {
-                                Assertable assertable = assertableIterator.next();
-                                boolean asserted = assertable.assertEvent(securityEvent);
-                                // ...so if one fails, continue with the next map entry and
-                                // increment the notAssertedCount
-                                if (!asserted) {
-                                    continue alternative;
-                                }
-                            }
+                    int[] assertableIndexes =
+                        eventLayout.getAssertables(securityEvent.getSecurityEventType(), alternativeState.alternative);
+                    for (int i = 0; i < assertableIndexes.length; i++) {
+                        Assertable assertable = alternativeState.assertables[assertableIndexes[i]];
+                        boolean asserted = assertable.assertEvent(securityEvent);
+                        // ...so if one fails, continue with the next map entry and
+                        // increment the notAssertedCount
+                        if (!asserted) {
+                            continue alternative;
                         }
                     }
                 }
@@ -538,38 +478,28 @@ public class PolicyEnforcer implements SecurityEventListener {
 
         String assertionMessage = null;
         //...and then check the remaining alternatives
-        Iterator<Map<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>>> assertionStateMapIterator =
-            this.assertionStateMap.iterator();
-        //every map entry counts as an alternative...
+        Iterator<AlternativeState> alternativeStateIterator = this.assertionStates.iterator();
+        //every list entry counts as an alternative...
         alternative:
-            while (assertionStateMapIterator.hasNext()) {
-                Map<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>> map =
-                    assertionStateMapIterator.next();
-                Map<Assertion, List<Assertable>> assertionListMap = map.get(securityEvent.getSecurityEventType());
-                if (assertionListMap != null && !assertionListMap.isEmpty()) {
-                    Iterator<Map.Entry<Assertion, List<Assertable>>> assertionStateIterator =
-                        assertionListMap.entrySet().iterator();
-                    while (assertionStateIterator.hasNext()) {
-                        Map.Entry<Assertion, List<Assertable>> assertionStateEntry = assertionStateIterator.next();
-                        List<Assertable> assertionStates = assertionStateEntry.getValue();
-                        Iterator<Assertable> assertableIterator = assertionStates.iterator();
-                        while (assertableIterator.hasNext()) {
-                            Assertable assertable = assertableIterator.next();
-                            boolean asserted = assertable.assertEvent(securityEvent);
-                            //...so if one fails, continue with the next map entry and increment the notAssertedCount
-                            if (!asserted) {
-                                assertionMessage = assertable.getErrorMessage();
-                                failedAssertionStateMap.add(map);
-                                assertionStateMapIterator.remove();
-                                continue alternative;
-                            }
-                        }
+            while (alternativeStateIterator.hasNext()) {
+                AlternativeState alternativeState = alternativeStateIterator.next();
+                int[] assertableIndexes =
+                    eventLayout.getAssertables(securityEvent.getSecurityEventType(), alternativeState.alternative);
+                for (int i = 0; i < assertableIndexes.length; i++) {
+                    Assertable assertable = alternativeState.assertables[assertableIndexes[i]];
+                    boolean asserted = assertable.assertEvent(securityEvent);
+                    //...so if one fails, continue with the next list entry and increment the notAssertedCount
+                    if (!asserted) {
+                        assertionMessage = assertable.getErrorMessage();
+                        failedAssertionStates.add(alternativeState);
+                        alternativeStateIterator.remove();
+                        continue alternative;
                     }
                 }
             }
-        //if the assertionStateMap is empty (the size of the list is equal to the alternatives)
+        //if the assertionStates list is empty (the size of the list is equal to the alternatives)
         //then we could not satisfy any alternative
-        if (assertionStateMap.isEmpty() && !(faultOccurred && noSecurityHeader && initiator)) {
+        if (assertionStates.isEmpty() && !(faultOccurred && noSecurityHeader && initiator)) {
             logFailedAssertions();
             throw new PolicyViolationException(assertionMessage);
         }
@@ -583,36 +513,21 @@ public class PolicyEnforcer implements SecurityEventListener {
      */
     private void verifyPolicy() throws WSSPolicyException {
         String assertionMessage = null;
-        Iterator<Map<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>>> assertionStateMapIterator =
-            this.assertionStateMap.iterator();
+        Iterator<AlternativeState> alternativeStateIterator = this.assertionStates.iterator();
         alternative:
-        while (assertionStateMapIterator.hasNext()) {
-            Map<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>> map =
-                assertionStateMapIterator.next();
-            Iterator<Map.Entry<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>>> iterator =
-                map.entrySet().iterator();
-            while (iterator.hasNext()) {
-                Map.Entry<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>> mapEntry =
-                    iterator.next();
-                Iterator<Map.Entry<Assertion, List<Assertable>>> assertionStateIterator =
-                    mapEntry.getValue().entrySet().iterator();
-                while (assertionStateIterator.hasNext()) {
-                    Map.Entry<Assertion, List<Assertable>> assertionListEntry = assertionStateIterator.next();
-                    List<Assertable> assertableList = assertionListEntry.getValue();
-                    Iterator<Assertable> assertableIterator = assertableList.iterator();
-                    while (assertableIterator.hasNext()) {
-                        Assertable assertable = assertableIterator.next();
-                        if (!assertable.isAsserted()) {
-                            assertionMessage = assertable.getErrorMessage();
-                            failedAssertionStateMap.add(map);
-                            assertionStateMapIterator.remove();
-                            continue alternative;
-                        }
-                    }
+        while (alternativeStateIterator.hasNext()) {
+            AlternativeState alternativeState = alternativeStateIterator.next();
+            for (int i = 0; i < alternativeState.assertables.length; i++) {
+                Assertable assertable = alternativeState.assertables[i];
+                if (!assertable.isAsserted()) {
+                    assertionMessage = assertable.getErrorMessage();
+                    failedAssertionStates.add(alternativeState);
+                    alternativeStateIterator.remove();
+                    continue alternative;
                 }
             }
         }
-        if (assertionStateMap.isEmpty() && !(faultOccurred && noSecurityHeader && initiator)) {
+        if (assertionStates.isEmpty() && !(faultOccurred && noSecurityHeader && initiator)) {
             logFailedAssertions();
             throw new WSSPolicyException(assertionMessage);
         }
@@ -627,94 +542,63 @@ public class PolicyEnforcer implements SecurityEventListener {
      */
     private void verifyPolicyAfterOperationSecurityEvent() throws WSSPolicyException {
         String assertionMessage = null;
-        Iterator<Map<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>>> assertionStateMapIterator =
-            this.assertionStateMap.iterator();
+        Iterator<AlternativeState> alternativeStateIterator = this.assertionStates.iterator();
         alternative:
-        while (assertionStateMapIterator.hasNext()) {
-            Map<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>> map =
-                assertionStateMapIterator.next();
-            Iterator<Map.Entry<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>>> iterator =
-                map.entrySet().iterator();
-            while (iterator.hasNext()) {
-                Map.Entry<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>> mapEntry =
-                    iterator.next();
-                Iterator<Map.Entry<Assertion, List<Assertable>>> assertionStateIterator =
-                    mapEntry.getValue().entrySet().iterator();
-                while (assertionStateIterator.hasNext()) {
-                    Map.Entry<Assertion, List<Assertable>> assertionListEntry = assertionStateIterator.next();
-                    List<Assertable> assertableList = assertionListEntry.getValue();
-                    Iterator<Assertable> assertableIterator = assertableList.iterator();
-                    while (assertableIterator.hasNext()) {
-                        Assertable assertable = assertableIterator.next();
-
-                        boolean doAssert = false;
-                        if (assertable instanceof TokenAssertionState) {
-                            TokenAssertionState tokenAssertionState = (TokenAssertionState) assertable;
-                            AbstractToken abstractToken = (AbstractToken) tokenAssertionState.getAssertion();
-                            AbstractSecurityAssertion assertion = abstractToken.getParentAssertion();
-                            //Other tokens may not be resolved yet fully therefore we skip it here
-                            if (assertion instanceof SupportingTokens
-                                || assertable instanceof HttpsTokenAssertionState
-                                || assertable instanceof RelTokenAssertionState
-                                || assertable instanceof SecurityContextTokenAssertionState
-                                || assertable instanceof SpnegoContextTokenAssertionState
-                                || assertable instanceof UsernameTokenAssertionState) {
-                                doAssert = true;
-                            }
-                        } else if (assertable instanceof TokenProtectionAssertionState
-                            || assertable instanceof SignatureConfirmationAssertionState
-                            || assertable instanceof IncludeTimeStampAssertionState
-                            || assertable instanceof RequiredPartsAssertionState
-                            || assertable instanceof SignatureProtectionAssertionState) {
-                            doAssert = true;
-                        }
-
-                        if ((doAssert || assertable.isHardFailure()) && !assertable.isAsserted()) {
-                            assertionMessage = assertable.getErrorMessage();
-                            failedAssertionStateMap.add(map);
-                            assertionStateMapIterator.remove();
-                            continue alternative;
-                        }
+        while (alternativeStateIterator.hasNext()) {
+            AlternativeState alternativeState = alternativeStateIterator.next();
+            for (int i = 0; i < alternativeState.assertables.length; i++) {
+                Assertable assertable = alternativeState.assertables[i];
+
+                boolean doAssert = false;
+                if (assertable instanceof TokenAssertionState) {
+                    TokenAssertionState tokenAssertionState = (TokenAssertionState) assertable;
+                    AbstractToken abstractToken = (AbstractToken) tokenAssertionState.getAssertion();
+                    AbstractSecurityAssertion assertion = abstractToken.getParentAssertion();
+                    //Other tokens may not be resolved yet fully therefore we skip it here
+                    if (assertion instanceof SupportingTokens
+                        || assertable instanceof HttpsTokenAssertionState
+                        || assertable instanceof RelTokenAssertionState
+                        || assertable instanceof SecurityContextTokenAssertionState
+                        || assertable instanceof SpnegoContextTokenAssertionState
+                        || assertable instanceof UsernameTokenAssertionState) {
+                        doAssert = true;
                     }
+                } else if (assertable instanceof TokenProtectionAssertionState
+                    || assertable instanceof SignatureConfirmationAssertionState
+                    || assertable instanceof IncludeTimeStampAssertionState
+                    || assertable instanceof RequiredPartsAssertionState
+                    || assertable instanceof SignatureProtectionAssertionState) {
+                    doAssert = true;
+                }
+
+                if ((doAssert || assertable.isHardFailure()) && !assertable.isAsserted()) {
+                    assertionMessage = assertable.getErrorMessage();
+                    failedAssertionStates.add(alternativeState);
+                    alternativeStateIterator.remove();
+                    continue alternative;
                 }
             }
         }
-        if (assertionStateMap.isEmpty() && !(faultOccurred && noSecurityHeader && initiator)) {
+        if (assertionStates.isEmpty() && !(faultOccurred && noSecurityHeader && initiator)) {
             logFailedAssertions();
             throw new WSSPolicyException(assertionMessage);
         }
     }
 
     private void logFailedAssertions() {
-        if (this.failedAssertionStateMap.isEmpty()) {
+        if (this.failedAssertionStates.isEmpty()) {
             return;
         }
 
-        Iterator<Map<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>>> assertionStateMapIterator =
-            this.failedAssertionStateMap.iterator();
-        while (assertionStateMapIterator.hasNext()) {
-            Map<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>> map =
-                assertionStateMapIterator.next();
-            Set<Map.Entry<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>>> entrySet = map.entrySet();
-            Iterator<Map.Entry<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>>> entryIterator =
-                entrySet.iterator();
-            while (entryIterator.hasNext()) {
-                Map.Entry<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>> eventCollectionEntry =
-                    entryIterator.next();
-                Map<Assertion, List<Assertable>> assertionListMap = eventCollectionEntry.getValue();
-                Iterator<Map.Entry<Assertion, List<Assertable>>> assertionStateEntryIterator =
-                    assertionListMap.entrySet().iterator();
-                while (assertionStateEntryIterator.hasNext()) {
-                    Map.Entry<Assertion, List<Assertable>> entry = assertionStateEntryIterator.next();
-                    List<Assertable> assertionStates = entry.getValue();
-                    Iterator<Assertable> assertableIterator = assertionStates.iterator();
-                    while (assertableIterator.hasNext()) {
-                        Assertable assertable = assertableIterator.next();
-                        if (!assertable.isAsserted() && !assertable.isLogged()) {
-                            LOG.error(entry.getKey().getName() + " not satisfied: " + assertable.getErrorMessage());
-                            assertable.setLogged(true);
-                        }
-                    }
+        Iterator<AlternativeState> alternativeStateIterator = this.failedAssertionStates.iterator();
+        while (alternativeStateIterator.hasNext()) {
+            AlternativeState alternativeState = alternativeStateIterator.next();
+            for (int i = 0; i < alternativeState.assertables.length; i++) {
+                Assertable assertable = alternativeState.assertables[i];
+                if (!assertable.isAsserted() && !assertable.isLogged()) {
+                    LOG.error(alternativeState.assertions[i].getName() + " not satisfied: "
+                        + assertable.getErrorMessage());
+                    assertable.setLogged(true);
                 }
             }
         }
@@ -723,6 +607,41 @@ public class PolicyEnforcer implements SecurityEventListener {
     //multiple threads can call this method concurrently -> synchronize access
     @Override
     public synchronized void registerSecurityEvent(SecurityEvent securityEvent) throws WSSecurityException {
+        handleSecurityEvent(securityEvent);
+    }
+
+    /**
+     * Verifies the given SecurityEvents, e.g. the SecurityEvents of the security header along with the
+     * OperationSecurityEvent, or the SecurityEvents of a single element, with one lock acquisition.
+     */
+    @Override
+    public synchronized void registerSecurityEvents(List<SecurityEvent> securityEvents) throws WSSecurityException {
+        int operationIndex = -1;
+        if (!operationSecurityEventOccured) {
+            for (int i = 0; i < securityEvents.size(); i++) {
+                SecurityEvent securityEvent = securityEvents.get(i);
+                if (WSSecurityEventConstants.OPERATION.equals(securityEvent.getSecurityEventType())) {
+                    operationIndex = i;
+                    break;
+                } else if (securityEvent instanceof NoSecuritySecurityEvent) {
+                    noSecurityHeader = true;
+                }
+            }
+        }
+
+        int i = 0;
+        if (operationIndex >= 0) {
+            // the events before the OperationSecurityEvent are verified right away instead of being queued
+            handleOperationSecurityEvent(
+                (OperationSecurityEvent) securityEvents.get(operationIndex), securityEvents.subList(0, operationIndex));
+            i = operationIndex + 1;
+        }
+        for (; i < securityEvents.size(); i++) {
+            handleSecurityEvent(securityEvents.get(i));
+        }
+    }
+
+    private void handleSecurityEvent(SecurityEvent securityEvent) throws WSSecurityException {
 
         if (!noSecurityHeader && securityEvent instanceof NoSecuritySecurityEvent) {
             noSecurityHeader = true;
@@ -737,46 +656,56 @@ public class PolicyEnforcer implements SecurityEventListener {
         }
 
         if (WSSecurityEventConstants.OPERATION.equals(securityEvent.getSecurityEventType())) {
-            operationSecurityEventOccured = true;
-            final OperationSecurityEvent operationSecurityEvent = (OperationSecurityEvent) securityEvent;
-            if (!faultOccurred && (SOAP11_FAULT.equals(operationSecurityEvent.getOperation())
-                || SOAP12_FAULT.equals(operationSecurityEvent.getOperation()))) {
-                faultOccurred = true;
-            }
+            handleOperationSecurityEvent(
+                (OperationSecurityEvent) securityEvent, Collections.<SecurityEvent>emptyList());
+        } else {
+            securityEventQueue.push(securityEvent);
+        }
+    }
 
-            if (effectivePolicy == null) {
-                effectivePolicy = findPolicyBySOAPOperationName(operationPolicies,
-                                                                operationSecurityEvent.getOperation());
-                if (effectivePolicy == null) {
-                    //no policy to the operation given
-                    effectivePolicy = new OperationPolicy(new QName(null, "NoPolicyFoundForOperation"));
-                    effectivePolicy.setPolicy(new Policy());
-                }
-                try {
-                    buildAssertionStateMap(effectivePolicy.getPolicy(), assertionStateMap);
-                } catch (WSSPolicyException e) {
-                    throw new WSSecurityException(WSSecurityException.ErrorCode.INVALID_SECURITY, e);
-                }
+    /**
+     * Determines the policy of the operation and verifies the queued SecurityEvents, followed by the given
+     * pending SecurityEvents and the OperationSecurityEvent itself
+     */
+    private void handleOperationSecurityEvent(OperationSecurityEvent operationSecurityEvent,
+                                              List<SecurityEvent> pendingSecurityEvents) throws WSSecurityException {
+        operationSecurityEventOccured = true;
+        if (!faultOccurred && (SOAP11_FAULT.equals(operationSecurityEvent.getOperation())
+            || SOAP12_FAULT.equals(operationSecurityEvent.getOperation()))) {
+            faultOccurred = true;
+        }
+
+        if (effectivePlan == null) {
+            effectivePlan = findPlanBySOAPOperationName(plans, operationSecurityEvent.getOperation());
+            if (effectivePlan == null) {
+                //no policy to the operation given
+                OperationPolicy noPolicy = new OperationPolicy(new QName(null, "NoPolicyFoundForOperation"));
+                noPolicy.setPolicy(new Policy());
+                effectivePlan = new PolicyEnforcementPlan(noPolicy);
             }
             try {
-                Iterator<SecurityEvent> securityEventIterator = securityEventQueue.descendingIterator();
-                while (securityEventIterator.hasNext()) {
-                    SecurityEvent prevSecurityEvent = securityEventIterator.next();
-                    verifyPolicy(prevSecurityEvent);
-                }
-
-                verifyPolicy(securityEvent);
-
-                verifyPolicyAfterOperationSecurityEvent();
-            } catch (WSSPolicyException | XMLSecurityException e) {
+                buildAssertionStates(effectivePlan);
+            } catch (WSSPolicyException e) {
                 throw new WSSecurityException(WSSecurityException.ErrorCode.INVALID_SECURITY, e);
             }
-            securityEventQueue.clear();
+        }
+        try {
+            Iterator<SecurityEvent> securityEventIterator = securityEventQueue.descendingIterator();
+            while (securityEventIterator.hasNext()) {
+                SecurityEvent prevSecurityEvent = securityEventIterator.next();
+                verifyPolicy(prevSecurityEvent);
+            }
+            for (int i = 0; i < pendingSecurityEvents.size(); i++) {
+                verifyPolicy(pendingSecurityEvents.get(i));
+            }
 
-            return;
-        } else {
-            securityEventQueue.push(securityEvent);
+            verifyPolicy(operationSecurityEvent);
+
+            verifyPolicyAfterOperationSecurityEvent();
+        } catch (WSSPolicyException | XMLSecurityException e) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.INVALID_SECURITY, e);
         }
+        securityEventQueue.clear();
     }
 
     /**
@@ -787,4 +716,20 @@ public class PolicyEnforcer implements SecurityEventListener {
     public void doFinal() throws WSSPolicyException {
         verifyPolicy();
     }
+
+    /**
+     * The (mutable) state of one policy alternative for the current message: the Assertables of the
+     * alternative, along with the policy assertion each of them was created for.
+     */
+    private static final class AlternativeState {
+        private final int alternative;
+        private final Assertion[] assertions;
+        private final Assertable[] assertables;
+
+        AlternativeState(int alternative, Assertion[] assertions, Assertable[] assertables) {
+            this.alternative = alternative;
+            this.assertions = assertions;
+            this.assertables = assertables;
+        }
+    }
 }
@@ -94,7 +94,9 @@ import org.w3c.dom.NodeList;
 
 /**
  * PolicyEnforcerFactory builds a map of all the possible effective Policies
- * and caches them for reuse
+ * and caches them for reuse. The effective Policy of each operation is compiled
+ * (once) into an immutable PolicyEnforcementPlan, which is shared by all the
+ * PolicyEnforcer instances that are created by this factory.
  */
 public class PolicyEnforcerFactory {
 
@@ -105,6 +107,7 @@ public class PolicyEnforcerFactory {
 
     private Definition wsdlDefinition;
     private List<OperationPolicy> operationPolicies;
+    private PolicyEnforcementPlan[] plans;
     private final Map<Element, Policy> elementPolicyCache;
 
     protected PolicyEnforcerFactory(List<AssertionBuilder<Element>> customAssertionBuilders) {
@@ -193,6 +196,7 @@ public class PolicyEnforcerFactory {
             reader.setFeature("javax.wsdl.verbose", false);
             wsdlDefinition = reader.readWSDL(wsdlUrl.toString());
             operationPolicies = findPoliciesByOperation(wsdlDefinition);
+            plans = PolicyEnforcementPlan.newPlans(operationPolicies);
         } catch (WSDLException e) {
             throw new WSSPolicyException(e.getMessage(), e);
         }
@@ -206,6 +210,7 @@ public class PolicyEnforcerFactory {
             reader.setFeature("javax.wsdl.verbose", false);
             wsdlDefinition = reader.readWSDL(document.getDocumentURI(), document);
             operationPolicies = findPoliciesByOperation(wsdlDefinition);
+            plans = PolicyEnforcementPlan.newPlans(operationPolicies);
         } catch (WSDLException e) {
             throw new WSSPolicyException(e.getMessage(), e);
         }
@@ -436,6 +441,6 @@ public class PolicyEnforcerFactory {
      */
     public PolicyEnforcer newPolicyEnforcer(String soapAction, boolean initiator,
                                             String roleOrActor, int attachmentCount) throws WSSPolicyException {
-        return new PolicyEnforcer(this.operationPolicies, soapAction, initiator, roleOrActor, attachmentCount);
+        return new PolicyEnforcer(this.plans, soapAction, initiator, roleOrActor, attachmentCount, null);
     }
 }
@@ -34,6 +34,7 @@ import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
 import org.apache.xml.security.stax.ext.stax.XMLSecStartElement;
 import org.apache.xml.security.stax.securityEvent.ContentEncryptedElementSecurityEvent;
 import org.apache.xml.security.stax.securityEvent.EncryptedElementSecurityEvent;
+import org.apache.xml.security.stax.securityEvent.SecurityEvent;
 import org.apache.xml.security.stax.securityEvent.SignedElementSecurityEvent;
 
 import javax.xml.namespace.QName;
@@ -41,6 +42,7 @@ import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.events.Attribute;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -49,6 +51,8 @@ import java.util.List;
 public class PolicyInputProcessor extends AbstractInputProcessor {
 
     private final PolicyEnforcer policyEnforcer;
+    //the SecurityEvents of the current XMLSecEvent, which are handed to the PolicyEnforcer in one batch
+    private final List<SecurityEvent> securityEvents = new ArrayList<>(4);
     private boolean initDone = false;
     private boolean transportSecurityActive = false;
 
@@ -85,17 +89,18 @@ public class PolicyInputProcessor extends AbstractInputProcessor {
 
                 RequiredPartSecurityEvent requiredPartSecurityEvent = new RequiredPartSecurityEvent();
                 requiredPartSecurityEvent.setElementPath(elementPath);
-                policyEnforcer.registerSecurityEvent(requiredPartSecurityEvent);
+                securityEvents.add(requiredPartSecurityEvent);
                 RequiredElementSecurityEvent requiredElementSecurityEvent = new RequiredElementSecurityEvent();
                 requiredElementSecurityEvent.setElementPath(elementPath);
-                policyEnforcer.registerSecurityEvent(requiredElementSecurityEvent);
+                securityEvents.add(requiredElementSecurityEvent);
             } else if (documentLevel > 3) {
                 //test for required elements
                 RequiredElementSecurityEvent requiredElementSecurityEvent = new RequiredElementSecurityEvent();
                 requiredElementSecurityEvent.setElementPath(elementPath);
-                policyEnforcer.registerSecurityEvent(requiredElementSecurityEvent);
+                securityEvents.add(requiredElementSecurityEvent);
             }
         }
+        registerSecurityEvents();
         return xmlSecEvent;
     }
 
@@ -112,7 +117,7 @@ public class PolicyInputProcessor extends AbstractInputProcessor {
                 RequiredElementSecurityEvent requiredElementSecurityEvent = new RequiredElementSecurityEvent();
                 elementPath = xmlSecStartElement.getElementPath();
                 requiredElementSecurityEvent.setElementPath(elementPath);
-                policyEnforcer.registerSecurityEvent(requiredElementSecurityEvent);
+                securityEvents.add(requiredElementSecurityEvent);
             }
         }
 
@@ -140,6 +145,7 @@ public class PolicyInputProcessor extends AbstractInputProcessor {
                 }
             }
         }
+        registerSecurityEvents();
         return xmlSecEvent;
     }
 
@@ -154,21 +160,31 @@ public class PolicyInputProcessor extends AbstractInputProcessor {
         }
     }
 
+    private void registerSecurityEvents() throws WSSecurityException {
+        if (!securityEvents.isEmpty()) {
+            try {
+                policyEnforcer.registerSecurityEvents(securityEvents);
+            } finally {
+                securityEvents.clear();
+            }
+        }
+    }
+
     private void testSignaturePolicy(XMLSecEvent xmlSecEvent, List<QName> elementPath) throws WSSecurityException {
         if (xmlSecEvent.getEventType() == XMLStreamConstants.START_ELEMENT) {
             final int documentLevel = elementPath.size();
             if (documentLevel == 3 && WSSUtils.isInSOAPHeader(elementPath)) {
                 SignedPartSecurityEvent signedPartSecurityEvent = new SignedPartSecurityEvent(null, false, null);
                 signedPartSecurityEvent.setElementPath(elementPath);
-                policyEnforcer.registerSecurityEvent(signedPartSecurityEvent);
+                securityEvents.add(signedPartSecurityEvent);
             } else if (documentLevel == 2 && WSSUtils.isInSOAPBody(elementPath)) {
                 SignedPartSecurityEvent signedPartSecurityEvent = new SignedPartSecurityEvent(null, false, null);
                 signedPartSecurityEvent.setElementPath(elementPath);
-                policyEnforcer.registerSecurityEvent(signedPartSecurityEvent);
+                securityEvents.add(signedPartSecurityEvent);
             } else if (documentLevel > 3) {
                 SignedElementSecurityEvent signedElementSecurityEvent = new SignedElementSecurityEvent(null, false, null);
                 signedElementSecurityEvent.setElementPath(elementPath);
-                policyEnforcer.registerSecurityEvent(signedElementSecurityEvent);
+                securityEvents.add(signedElementSecurityEvent);
             }
         }
     }
@@ -183,7 +199,7 @@ public class PolicyInputProcessor extends AbstractInputProcessor {
                     EncryptedPartSecurityEvent encryptedPartSecurityEvent
                             = new EncryptedPartSecurityEvent(null, false, null);
                     encryptedPartSecurityEvent.setElementPath(elementPath);
-                    policyEnforcer.registerSecurityEvent(encryptedPartSecurityEvent);
+                    securityEvents.add(encryptedPartSecurityEvent);
                 } else if (documentLevel == 3 && WSSUtils.isInSOAPBody(elementPath)) {
                     //the body element has documentLevel 2 but we have to use 3 because
                     //the body element itself is never encrypted but child elements are. So we
@@ -192,20 +208,20 @@ public class PolicyInputProcessor extends AbstractInputProcessor {
                     EncryptedPartSecurityEvent encryptedPartSecurityEvent
                             = new EncryptedPartSecurityEvent(null, false, null);
                     encryptedPartSecurityEvent.setElementPath(elementPath);
-                    policyEnforcer.registerSecurityEvent(encryptedPartSecurityEvent);
+                    securityEvents.add(encryptedPartSecurityEvent);
                 } else if (documentLevel > 3) {
 
                     EncryptedElementSecurityEvent encryptedElementSecurityEvent
                             = new EncryptedElementSecurityEvent(null, false, null);
                     encryptedElementSecurityEvent.setCorrelationID(getId(xmlSecEvent));
                     encryptedElementSecurityEvent.setElementPath(elementPath);
-                    policyEnforcer.registerSecurityEvent(encryptedElementSecurityEvent);
+                    securityEvents.add(encryptedElementSecurityEvent);
 
                     //... or it could be a contentEncryption too...
                     ContentEncryptedElementSecurityEvent contentEncryptedElementSecurityEvent
                             = new ContentEncryptedElementSecurityEvent(null, false, null);
                     contentEncryptedElementSecurityEvent.setElementPath(xmlSecEvent.getParentXMLSecStartElement().getElementPath());
-                    policyEnforcer.registerSecurityEvent(contentEncryptedElementSecurityEvent);
+                    securityEvents.add(contentEncryptedElementSecurityEvent);
                 }
                 break;
             case XMLStreamConstants.CHARACTERS:
@@ -215,7 +231,7 @@ public class PolicyInputProcessor extends AbstractInputProcessor {
                 ContentEncryptedElementSecurityEvent contentEncryptedElementSecurityEvent
                         = new ContentEncryptedElementSecurityEvent(null, false, null);
                 contentEncryptedElementSecurityEvent.setElementPath(xmlSecEvent.getElementPath());
-                policyEnforcer.registerSecurityEvent(contentEncryptedElementSecurityEvent);
+                securityEvents.add(contentEncryptedElementSecurityEvent);
                 break;
         }
     }
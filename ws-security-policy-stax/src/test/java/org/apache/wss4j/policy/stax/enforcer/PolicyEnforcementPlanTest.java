@@ -0,0 +1,338 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.wss4j.policy.stax.enforcer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.namespace.QName;
+
+import org.apache.neethi.All;
+import org.apache.neethi.ExactlyOne;
+import org.apache.neethi.Policy;
+import org.apache.wss4j.common.WSSPolicyException;
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.policy.SPConstants;
+import org.apache.wss4j.policy.model.AbstractSecurityAssertion;
+import org.apache.wss4j.policy.model.EncryptedParts;
+import org.apache.wss4j.policy.model.Header;
+import org.apache.wss4j.policy.model.SignedParts;
+import org.apache.wss4j.policy.stax.Assertable;
+import org.apache.wss4j.policy.stax.OperationPolicy;
+import org.apache.wss4j.policy.stax.PolicyViolationException;
+import org.apache.wss4j.stax.ext.WSSConstants;
+import org.apache.wss4j.stax.securityEvent.EncryptedPartSecurityEvent;
+import org.apache.wss4j.stax.securityEvent.OperationSecurityEvent;
+import org.apache.wss4j.stax.securityEvent.SignedPartSecurityEvent;
+import org.apache.wss4j.stax.securityEvent.TimestampSecurityEvent;
+import org.apache.wss4j.stax.securityEvent.WSSecurityEventConstants;
+import org.apache.xml.security.stax.ext.XMLSecurityConstants;
+import org.apache.xml.security.stax.securityEvent.SecurityEvent;
+import org.apache.xml.security.stax.securityEvent.SecurityEventConstants;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the compiled PolicyEnforcementPlan, and for the way the PolicyEnforcer dispatches the
+ * security events to the Assertables of each alternative.
+ */
+public class PolicyEnforcementPlanTest {
+
+    private static final QName OPERATION = new QName("definitions");
+
+    @Test
+    public void testEventLayout() throws Exception {
+        StubAssertable first = new StubAssertable("first", true,
+            WSSecurityEventConstants.TIMESTAMP, WSSecurityEventConstants.OPERATION);
+        StubAssertable second = new StubAssertable("second", true, WSSecurityEventConstants.TIMESTAMP);
+        StubAssertable third = new StubAssertable("third", true,
+            WSSecurityEventConstants.OPERATION, WSSecurityEventConstants.OPERATION);
+        StubAssertable fourth = new StubAssertable("fourth", true, WSSecurityEventConstants.TIMESTAMP);
+
+        PolicyEnforcementPlan.EventLayout eventLayout = new PolicyEnforcementPlan.EventLayout(
+            new Assertable[][] {{first, second, third}, {fourth}});
+
+        // the indexes are returned in policy order, and an event type listed twice doesn't duplicate an Assertable
+        Assert.assertArrayEquals(new int[] {0, 1}, eventLayout.getAssertables(WSSecurityEventConstants.TIMESTAMP, 0));
+        Assert.assertArrayEquals(new int[] {0, 2}, eventLayout.getAssertables(WSSecurityEventConstants.OPERATION, 0));
+        Assert.assertArrayEquals(new int[] {0}, eventLayout.getAssertables(WSSecurityEventConstants.TIMESTAMP, 1));
+        Assert.assertArrayEquals(new int[0], eventLayout.getAssertables(WSSecurityEventConstants.OPERATION, 1));
+        Assert.assertArrayEquals(new int[0], eventLayout.getAssertables(WSSecurityEventConstants.SIGNED_PART, 0));
+        Assert.assertArrayEquals(new int[0], eventLayout.getAssertables(WSSecurityEventConstants.SIGNED_PART, 1));
+    }
+
+    @Test
+    public void testAlternativeFailsAnotherSucceeds() throws Exception {
+        PolicyEnforcementPlan[] plans = newPlans(
+            newPolicy(new SignedParts(SPConstants.SPVersion.SP12, true, null, new ArrayList<Header>(), false)),
+            newPolicy(new EncryptedParts(SPConstants.SPVersion.SP12, true, null, new ArrayList<Header>())));
+
+        // the first message compiles the event layout of the plan, the second one reuses it
+        for (int i = 0; i < 2; i++) {
+            PolicyEnforcer policyEnforcer = new PolicyEnforcer(plans, "", false, null, 0, null);
+            policyEnforcer.registerSecurityEvent(newSignedPartSecurityEvent(false));
+            policyEnforcer.registerSecurityEvent(newOperationSecurityEvent());
+            policyEnforcer.registerSecurityEvent(newEncryptedPartSecurityEvent(true));
+            policyEnforcer.doFinal();
+        }
+        Assert.assertNotNull(plans[0].getEventLayout(false));
+
+        PolicyEnforcer policyEnforcer = new PolicyEnforcer(plans, "", false, null, 0, null);
+        policyEnforcer.registerSecurityEvent(newOperationSecurityEvent());
+        policyEnforcer.registerSecurityEvent(newSignedPartSecurityEvent(false));
+        try {
+            policyEnforcer.registerSecurityEvent(newEncryptedPartSecurityEvent(false));
+            Assert.fail("Exception expected");
+        } catch (WSSecurityException e) {
+            Assert.assertTrue(e.getCause() instanceof PolicyViolationException);
+            Assert.assertEquals("SOAP-Body must be encrypted", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void testAssertableWithSeveralEventTypes() throws Exception {
+        SignedParts signedParts =
+            new SignedParts(SPConstants.SPVersion.SP12, true, null, new ArrayList<Header>(), false);
+        StubAssertable stubAssertable = new StubAssertable("stub", true,
+            WSSecurityEventConstants.TIMESTAMP, WSSecurityEventConstants.OPERATION);
+        Map<AbstractSecurityAssertion, Assertable> assertables = new IdentityHashMap<>();
+        assertables.put(signedParts, stubAssertable);
+
+        PolicyEnforcer policyEnforcer = new StubPolicyEnforcer(newPlans(newPolicy(signedParts)), assertables);
+        TimestampSecurityEvent timestampSecurityEvent = new TimestampSecurityEvent();
+        policyEnforcer.registerSecurityEvent(timestampSecurityEvent);
+        OperationSecurityEvent operationSecurityEvent = newOperationSecurityEvent();
+        policyEnforcer.registerSecurityEvent(operationSecurityEvent);
+        policyEnforcer.registerSecurityEvent(newSignedPartSecurityEvent(false));
+        policyEnforcer.doFinal();
+
+        Assert.assertEquals(2, stubAssertable.securityEvents.size());
+        Assert.assertSame(timestampSecurityEvent, stubAssertable.securityEvents.get(0));
+        Assert.assertSame(operationSecurityEvent, stubAssertable.securityEvents.get(1));
+    }
+
+    @Test
+    public void testSubclassDoesNotUseCachedEventLayout() throws Exception {
+        SignedParts signedParts =
+            new SignedParts(SPConstants.SPVersion.SP12, true, null, new ArrayList<Header>(), false);
+        PolicyEnforcementPlan[] plans = newPlans(newPolicy(signedParts));
+
+        PolicyEnforcer policyEnforcer = new PolicyEnforcer(plans, "", false, null, 0, null);
+        policyEnforcer.registerSecurityEvent(newOperationSecurityEvent());
+        policyEnforcer.doFinal();
+        PolicyEnforcementPlan.EventLayout cachedEventLayout = plans[0].getEventLayout(false);
+        Assert.assertNotNull(cachedEventLayout);
+
+        // the overridden getAssertableForAssertion() listens for another event type than the SignedPartsAssertionState
+        StubAssertable stubAssertable = new StubAssertable("stub", false, WSSecurityEventConstants.TIMESTAMP);
+        Map<AbstractSecurityAssertion, Assertable> assertables = new IdentityHashMap<>();
+        assertables.put(signedParts, stubAssertable);
+
+        policyEnforcer = new StubPolicyEnforcer(plans, assertables);
+        policyEnforcer.registerSecurityEvent(newOperationSecurityEvent());
+        try {
+            policyEnforcer.registerSecurityEvent(new TimestampSecurityEvent());
+            Assert.fail("Exception expected");
+        } catch (WSSecurityException e) {
+            Assert.assertTrue(e.getCause() instanceof PolicyViolationException);
+            Assert.assertEquals("stub", e.getCause().getMessage());
+        }
+        Assert.assertEquals(1, stubAssertable.securityEvents.size());
+        Assert.assertSame(cachedEventLayout, plans[0].getEventLayout(false));
+    }
+
+    @Test
+    public void testFailureMessageOfFirstAssertableInPolicyOrder() throws Exception {
+        SignedParts signedParts =
+            new SignedParts(SPConstants.SPVersion.SP12, true, null, new ArrayList<Header>(), false);
+        EncryptedParts encryptedParts =
+            new EncryptedParts(SPConstants.SPVersion.SP12, true, null, new ArrayList<Header>());
+
+        Assert.assertEquals("signed", verifyFailingAssertables(signedParts, encryptedParts));
+        Assert.assertEquals("encrypted", verifyFailingAssertables(encryptedParts, signedParts));
+    }
+
+    /**
+     * Both assertions fail on the same event, so only the first one in policy order may be evaluated
+     */
+    private static String verifyFailingAssertables(
+        AbstractSecurityAssertion firstAssertion, AbstractSecurityAssertion secondAssertion
+    ) throws Exception {
+        Map<AbstractSecurityAssertion, Assertable> assertables = new IdentityHashMap<>();
+        StubAssertable first = new StubAssertable(
+            firstAssertion instanceof SignedParts ? "signed" : "encrypted", false, WSSecurityEventConstants.TIMESTAMP);
+        StubAssertable second = new StubAssertable(
+            secondAssertion instanceof SignedParts ? "signed" : "encrypted", false, WSSecurityEventConstants.TIMESTAMP);
+        assertables.put(firstAssertion, first);
+        assertables.put(secondAssertion, second);
+
+        PolicyEnforcer policyEnforcer =
+            new StubPolicyEnforcer(newPlans(newPolicy(firstAssertion, secondAssertion)), assertables);
+        policyEnforcer.registerSecurityEvent(newOperationSecurityEvent());
+        try {
+            policyEnforcer.registerSecurityEvent(new TimestampSecurityEvent());
+            Assert.fail("Exception expected");
+        } catch (WSSecurityException e) {
+            Assert.assertTrue(e.getCause() instanceof PolicyViolationException);
+            Assert.assertEquals(1, first.securityEvents.size());
+            Assert.assertTrue(second.securityEvents.isEmpty());
+            return e.getCause().getMessage();
+        }
+        return null;
+    }
+
+    /**
+     * Every given alternative consists of the given assertions
+     */
+    private static Policy newPolicy(AbstractSecurityAssertion... assertions) {
+        Policy policy = new Policy();
+        ExactlyOne exactlyOne = new ExactlyOne();
+        All all = new All();
+        for (int i = 0; i < assertions.length; i++) {
+            all.addPolicyComponent(assertions[i]);
+        }
+        exactlyOne.addPolicyComponent(all);
+        policy.addPolicyComponent(exactlyOne);
+        return policy;
+    }
+
+    /**
+     * Merges the alternatives of the given policies into one policy
+     */
+    private static PolicyEnforcementPlan[] newPlans(Policy... policies) {
+        Policy policy = new Policy();
+        ExactlyOne exactlyOne = new ExactlyOne();
+        for (int i = 0; i < policies.length; i++) {
+            ExactlyOne alternatives = (ExactlyOne) policies[i].getFirstPolicyComponent();
+            exactlyOne.addPolicyComponents(alternatives.getPolicyComponents());
+        }
+        policy.addPolicyComponent(exactlyOne);
+
+        OperationPolicy operationPolicy = new OperationPolicy(OPERATION);
+        operationPolicy.setPolicy(policy);
+        return PolicyEnforcementPlan.newPlans(Collections.singletonList(operationPolicy));
+    }
+
+    private static OperationSecurityEvent newOperationSecurityEvent() {
+        OperationSecurityEvent operationSecurityEvent = new OperationSecurityEvent();
+        operationSecurityEvent.setOperation(OPERATION);
+        return operationSecurityEvent;
+    }
+
+    private static SignedPartSecurityEvent newSignedPartSecurityEvent(boolean signed) {
+        List<XMLSecurityConstants.ContentType> protectionOrder = new LinkedList<>();
+        protectionOrder.add(XMLSecurityConstants.ContentType.SIGNATURE);
+        SignedPartSecurityEvent signedPartSecurityEvent = new SignedPartSecurityEvent(null, signed, protectionOrder);
+        signedPartSecurityEvent.setElementPath(WSSConstants.SOAP_11_BODY_PATH);
+        return signedPartSecurityEvent;
+    }
+
+    private static EncryptedPartSecurityEvent newEncryptedPartSecurityEvent(boolean encrypted) {
+        List<XMLSecurityConstants.ContentType> protectionOrder = new LinkedList<>();
+        protectionOrder.add(XMLSecurityConstants.ContentType.ENCRYPTION);
+        EncryptedPartSecurityEvent encryptedPartSecurityEvent =
+            new EncryptedPartSecurityEvent(null, encrypted, protectionOrder);
+        encryptedPartSecurityEvent.setElementPath(WSSConstants.SOAP_11_BODY_PATH);
+        return encryptedPartSecurityEvent;
+    }
+
+    /**
+     * A PolicyEnforcer which replaces the Assertables of the given assertions
+     */
+    private static class StubPolicyEnforcer extends PolicyEnforcer {
+
+        private final Map<AbstractSecurityAssertion, Assertable> assertables;
+
+        StubPolicyEnforcer(PolicyEnforcementPlan[] plans, Map<AbstractSecurityAssertion, Assertable> assertables)
+            throws WSSPolicyException {
+            super(plans, "", false, null, 0, null);
+            this.assertables = assertables;
+        }
+
+        @Override
+        protected List<Assertable> getAssertableForAssertion(AbstractSecurityAssertion abstractSecurityAssertion)
+            throws WSSPolicyException {
+            Assertable assertable = assertables.get(abstractSecurityAssertion);
+            if (assertable == null) {
+                return super.getAssertableForAssertion(abstractSecurityAssertion);
+            }
+            return Collections.singletonList(assertable);
+        }
+    }
+
+    /**
+     * An Assertable which records the events it is asked for, and which fails with its name as message
+     */
+    private static class StubAssertable implements Assertable {
+
+        private final String name;
+        private final boolean assertEvents;
+        private final SecurityEventConstants.Event[] securityEventTypes;
+        private final List<SecurityEvent> securityEvents = new ArrayList<>();
+        private boolean asserted = true;
+        private boolean logged;
+
+        StubAssertable(String name, boolean assertEvents, SecurityEventConstants.Event... securityEventTypes) {
+            this.name = name;
+            this.assertEvents = assertEvents;
+            this.securityEventTypes = securityEventTypes;
+        }
+
+        @Override
+        public SecurityEventConstants.Event[] getSecurityEventType() {
+            return securityEventTypes;
+        }
+
+        @Override
+        public boolean assertEvent(SecurityEvent securityEvent) {
+            securityEvents.add(securityEvent);
+            asserted = assertEvents;
+            return assertEvents;
+        }
+
+        @Override
+        public boolean isHardFailure() {
+            return false;
+        }
+
+        @Override
+        public boolean isAsserted() {
+            return asserted;
+        }
+
+        @Override
+        public String getErrorMessage() {
+            return name;
+        }
+
+        @Override
+        public boolean isLogged() {
+            return logged;
+        }
+
+        @Override
+        public void setLogged(boolean logged) {
+            this.logged = logged;
+        }
+    }
+}
@@ -201,6 +201,7 @@ public class WSSConstants extends XMLSecurityConstants {
 
     public static final String P_SHA_1 = "http://schemas.xmlsoap.org/ws/2005/02/sc/dk/p_sha1";
     public static final String P_SHA_1_2005_12 = "http://docs.oasis-open.org/ws-sx/ws-secureconversation/200512/dk/p_sha1";
+    public static final String P_SHA_256 = "http://ws.apache.org/wss4j/dk/p_sha256";
     public static final String WS_SEC_CONV_DEFAULT_LABEL = "WS-SecureConversation";
 
     public static final String NS_WSS_ENC_KEY_VALUE_TYPE = NS11_SOAPMESSAGE_SECURITY + "#EncryptedKey";
@@ -214,6 +215,12 @@ public class WSSConstants extends XMLSecurityConstants {
 
     public static final String PROP_ENCRYPTED_DATA_REFS = "PROP_ENCRYPTED_DATA_REFS";
 
+    public static final String PROP_ENCRYPTED_KEYS = "PROP_ENCRYPTED_KEYS";
+
+    public static final String PROP_ENCRYPTED_KEY_SESSION_ID = "PROP_ENCRYPTED_KEY_SESSION_ID";
+
+    public static final String PROP_REUSE_ENCRYPTED_KEY = "PROP_REUSE_ENCRYPTED_KEY";
+
     public static final Action TIMESTAMP = new Action(ConfigurationConstants.TIMESTAMP);
     public static final Action USERNAMETOKEN = new Action(ConfigurationConstants.USERNAME_TOKEN);
     public static final Action USERNAMETOKEN_SIGNED = new Action(ConfigurationConstants.USERNAME_TOKEN_SIGNATURE);
@@ -25,6 +25,7 @@ import java.util.Properties;
 
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.CryptoFactory;
+import org.apache.wss4j.common.crypto.CryptoRegistry;
 import org.apache.wss4j.common.crypto.Merlin;
 import org.apache.wss4j.common.crypto.PasswordEncryptor;
 import org.apache.wss4j.common.util.Loader;
@@ -53,7 +54,18 @@ class WSSCrypto {
         }
 
         Merlin crypto = null;
-        if (cryptoProperties != null) {
+        if (cryptoProperties != null && CryptoRegistry.isShared(cryptoProperties)) {
+            // Share the Crypto instance (and its loaded stores) with all the other handlers that use the
+            // same crypto properties
+            try {
+                crypto = (Merlin)CryptoRegistry.getInstance(cryptoClass, cryptoProperties,
+                                                            Loader.getClassLoader(CryptoFactory.class),
+                                                            passwordEncryptor);
+                keyStore = crypto.getKeyStore();
+            } catch (Exception e) {
+                throw new WSSConfigurationException(WSSConfigurationException.ErrorCode.FAILURE, e, "signatureCryptoFailure");
+            }
+        } else if (cryptoProperties != null) {
             try {
                 Constructor<?> ctor =
                     cryptoClass.getConstructor(Properties.class, ClassLoader.class, PasswordEncryptor.class);
@@ -18,6 +18,7 @@
  */
 package org.apache.wss4j.stax.ext;
 
+import java.io.File;
 import java.net.URL;
 import java.security.KeyStore;
 import java.security.cert.CertStore;
@@ -32,17 +33,22 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Executor;
 import java.util.regex.Pattern;
 
 import javax.security.auth.callback.CallbackHandler;
 import javax.xml.namespace.QName;
 
 import org.apache.wss4j.common.bsp.BSPRule;
+import org.apache.wss4j.common.cache.EncryptedKeyCache;
+import org.apache.wss4j.common.cache.EncryptedKeySessionCache;
 import org.apache.wss4j.common.cache.ReplayCache;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.Merlin;
 import org.apache.wss4j.common.crypto.PasswordEncryptor;
+import org.apache.wss4j.common.derivedKey.DerivedKeyCache;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.CachedOutputStream;
 import org.apache.wss4j.stax.securityToken.WSSecurityTokenConstants;
 import org.apache.wss4j.stax.validate.Validator;
 import org.apache.xml.security.stax.ext.XMLSecurityProperties;
@@ -108,11 +114,19 @@ public class WSSSecurityProperties extends XMLSecurityProperties {
     private ReplayCache timestampReplayCache;
     private ReplayCache nonceReplayCache;
     private ReplayCache samlOneTimeUseReplayCache;
+    private EncryptedKeyCache encryptedKeyCache;
+    private EncryptedKeySessionCache encryptedKeySessionCache;
     private boolean validateSamlSubjectConfirmation = true;
     private Collection<Pattern> subjectDNPatterns = new ArrayList<>();
     private Collection<Pattern> issuerDNPatterns = new ArrayList<>();
     private List<String> audienceRestrictions = new ArrayList<>();
     private boolean requireTimestampExpires;
+    private boolean inlineDecryption;
+    private Executor referenceVerificationExecutor;
+    private DerivedKeyCache derivedKeyCache;
+    private boolean allowPSha256DerivedKeyAlgorithm;
+    private int attachmentMemoryThreshold = CachedOutputStream.DEFAULT_MEMORY_THRESHOLD;
+    private File attachmentTempDirectory;
 
     private CallbackHandler attachmentCallbackHandler;
     private Object msgContext;
@@ -162,6 +176,8 @@ public class WSSSecurityProperties extends XMLSecurityProperties {
         this.timestampReplayCache = wssSecurityProperties.timestampReplayCache;
         this.nonceReplayCache = wssSecurityProperties.nonceReplayCache;
         this.samlOneTimeUseReplayCache = wssSecurityProperties.samlOneTimeUseReplayCache;
+        this.encryptedKeyCache = wssSecurityProperties.encryptedKeyCache;
+        this.encryptedKeySessionCache = wssSecurityProperties.encryptedKeySessionCache;
         this.allowRSA15KeyTransportAlgorithm = wssSecurityProperties.allowRSA15KeyTransportAlgorithm;
         this.derivedKeyIterations = wssSecurityProperties.derivedKeyIterations;
         this.useDerivedKeyForMAC = wssSecurityProperties.useDerivedKeyForMAC;
@@ -175,6 +191,12 @@ public class WSSSecurityProperties extends XMLSecurityProperties {
         this.msgContext = wssSecurityProperties.msgContext;
         this.audienceRestrictions = wssSecurityProperties.audienceRestrictions;
         this.requireTimestampExpires = wssSecurityProperties.requireTimestampExpires;
+        this.inlineDecryption = wssSecurityProperties.inlineDecryption;
+        this.referenceVerificationExecutor = wssSecurityProperties.referenceVerificationExecutor;
+        this.derivedKeyCache = wssSecurityProperties.derivedKeyCache;
+        this.allowPSha256DerivedKeyAlgorithm = wssSecurityProperties.allowPSha256DerivedKeyAlgorithm;
+        this.attachmentMemoryThreshold = wssSecurityProperties.attachmentMemoryThreshold;
+        this.attachmentTempDirectory = wssSecurityProperties.attachmentTempDirectory;
     }
 
     /**
@@ -760,6 +782,38 @@ public class WSSSecurityProperties extends XMLSecurityProperties {
         return samlOneTimeUseReplayCache;
     }
 
+    /**
+     * Set the cache of the symmetric keys of received EncryptedKeys. If this is set, an
+     * EncryptedKey that was already decrypted with the same private key is not decrypted
+     * again. The cache is not set by default.
+     */
+    public void setEncryptedKeyCache(EncryptedKeyCache encryptedKeyCache) {
+        this.encryptedKeyCache = encryptedKeyCache;
+    }
+
+    /**
+     * Get the cache of the symmetric keys of received EncryptedKeys
+     */
+    public EncryptedKeyCache getEncryptedKeyCache() {
+        return encryptedKeyCache;
+    }
+
+    /**
+     * Set the cache of the outbound key sessions. If this is set, the key of an EncryptedKey that
+     * was sent to the same recipient before is reused, and referred to via an EncryptedKeySHA1
+     * KeyIdentifier. The cache is not set by default.
+     */
+    public void setEncryptedKeySessionCache(EncryptedKeySessionCache encryptedKeySessionCache) {
+        this.encryptedKeySessionCache = encryptedKeySessionCache;
+    }
+
+    /**
+     * Get the cache of the outbound key sessions
+     */
+    public EncryptedKeySessionCache getEncryptedKeySessionCache() {
+        return encryptedKeySessionCache;
+    }
+
     public boolean isDisableBSPEnforcement() {
         return disableBSPEnforcement;
     }
@@ -949,4 +1003,95 @@ public class WSSSecurityProperties extends XMLSecurityProperties {
     public void setRequireTimestampExpires(boolean requireTimestampExpires) {
         this.requireTimestampExpires = requireTimestampExpires;
     }
+
+    public boolean isInlineDecryption() {
+        return inlineDecryption;
+    }
+
+    /**
+     * Whether the content of an EncryptedData element is decrypted inline, on the thread that reads the
+     * message, instead of in a separate decryption thread that writes the decrypted bytes to a pipe. The
+     * inline mode decrypts the cipher value on demand while the decrypted XML is parsed. The default is
+     * false (a decryption thread per EncryptedData element).
+     *
+     * @param inlineDecryption whether to decrypt inline, without a decryption thread
+     */
+    public void setInlineDecryption(boolean inlineDecryption) {
+        this.inlineDecryption = inlineDecryption;
+    }
+
+    public Executor getReferenceVerificationExecutor() {
+        return referenceVerificationExecutor;
+    }
+
+    /**
+     * Set the Executor on which the signed attachments of a received Signature are digested in parallel.
+     * The references to elements of the message are verified while the message is streamed, but the
+     * attachment references are only verified at the end of the message, one after another if no
+     * Executor is set (the default). With an Executor, the attachments are digested concurrently, and
+     * the Signature fails as soon as the first attachment does not match its digest.
+     *
+     * @param referenceVerificationExecutor the Executor to use, or null to digest the attachments one
+     * after another
+     */
+    public void setReferenceVerificationExecutor(Executor referenceVerificationExecutor) {
+        this.referenceVerificationExecutor = referenceVerificationExecutor;
+    }
+
+    public DerivedKeyCache getDerivedKeyCache() {
+        return derivedKeyCache;
+    }
+
+    /**
+     * Set the cache of the keys that are derived from the secrets of received DerivedKeyTokens. A
+     * DerivedKeyToken that derives the same key from the same secret (e.g. of a SecurityContextToken)
+     * as a previous one does not run the derivation algorithm again. The cached keys are erased when
+     * they are evicted. The default is null, i.e. the keys are always derived.
+     *
+     * @param derivedKeyCache the cache of derived keys, or null to always derive the keys
+     */
+    public void setDerivedKeyCache(DerivedKeyCache derivedKeyCache) {
+        this.derivedKeyCache = derivedKeyCache;
+    }
+
+    public boolean isAllowPSha256DerivedKeyAlgorithm() {
+        return allowPSha256DerivedKeyAlgorithm;
+    }
+
+    /**
+     * Whether to accept received DerivedKeyTokens that use the WSS4J specific P_SHA256 algorithm
+     * (WSSConstants.P_SHA_256). The default is false.
+     */
+    public void setAllowPSha256DerivedKeyAlgorithm(boolean allowPSha256DerivedKeyAlgorithm) {
+        this.allowPSha256DerivedKeyAlgorithm = allowPSha256DerivedKeyAlgorithm;
+    }
+
+    public int getAttachmentMemoryThreshold() {
+        return attachmentMemoryThreshold;
+    }
+
+    /**
+     * Set the number of bytes of an attachment that are buffered in memory at most, when the attachment
+     * is signed or its signature is verified. Larger attachments are buffered in a temporary file. The
+     * default is 1 MB.
+     *
+     * @param attachmentMemoryThreshold the number of bytes of an attachment that are buffered in memory
+     */
+    public void setAttachmentMemoryThreshold(int attachmentMemoryThreshold) {
+        this.attachmentMemoryThreshold = attachmentMemoryThreshold;
+    }
+
+    public File getAttachmentTempDirectory() {
+        return attachmentTempDirectory;
+    }
+
+    /**
+     * Set the directory of the temporary files of buffered attachments. The default is null, i.e. the
+     * default temporary-file directory of the JVM.
+     *
+     * @param attachmentTempDirectory the directory of the temporary files of buffered attachments
+     */
+    public void setAttachmentTempDirectory(File attachmentTempDirectory) {
+        this.attachmentTempDirectory = attachmentTempDirectory;
+    }
 }
@@ -31,6 +31,7 @@ import org.apache.wss4j.common.bsp.BSPRule;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.stax.ext.WSInboundSecurityContext;
 import org.apache.wss4j.stax.ext.WSSConstants;
+import org.apache.wss4j.stax.securityEvent.BatchSecurityEventListener;
 import org.apache.wss4j.stax.securityEvent.HttpsTokenSecurityEvent;
 import org.apache.wss4j.stax.securityEvent.WSSecurityEventConstants;
 import org.apache.wss4j.stax.securityToken.WSSecurityTokenConstants;
@@ -42,6 +43,7 @@ import org.apache.xml.security.stax.securityEvent.ContentEncryptedElementSecurit
 import org.apache.xml.security.stax.securityEvent.EncryptedElementSecurityEvent;
 import org.apache.xml.security.stax.securityEvent.SecurityEvent;
 import org.apache.xml.security.stax.securityEvent.SecurityEventConstants;
+import org.apache.xml.security.stax.securityEvent.SecurityEventListener;
 import org.apache.xml.security.stax.securityEvent.SignedElementSecurityEvent;
 import org.apache.xml.security.stax.securityEvent.TokenSecurityEvent;
 import org.apache.xml.security.stax.securityToken.InboundSecurityToken;
@@ -56,7 +58,15 @@ public class InboundWSSecurityContextImpl extends InboundSecurityContextImpl imp
     private static final org.slf4j.Logger LOG =
             org.slf4j.LoggerFactory.getLogger(InboundWSSecurityContextImpl.class);
 
+    private static final List<QName> SIGNATURE_ELEMENT_PATH = securityHeaderChildPath(WSSConstants.TAG_dsig_Signature);
+    private static final List<QName> SIGNATURE_CONFIRMATION_ELEMENT_PATH =
+        securityHeaderChildPath(WSSConstants.TAG_WSSE11_SIG_CONF);
+    private static final List<QName> TIMESTAMP_ELEMENT_PATH = securityHeaderChildPath(WSSConstants.TAG_WSU_TIMESTAMP);
+    private static final List<QName> USERNAME_TOKEN_ELEMENT_PATH =
+        securityHeaderChildPath(WSSConstants.TAG_WSSE_USERNAME_TOKEN);
+
     private final Deque<SecurityEvent> securityEventQueue = new ArrayDeque<SecurityEvent>();
+    private final List<SecurityEventListener> securityEventListeners = new ArrayList<>(2);
     private boolean operationSecurityEventOccured = false;
     private boolean messageEncryptionTokenOccured = false;
     private boolean allowRSA15KeyTransportAlgorithm = false;
@@ -64,6 +74,20 @@ public class InboundWSSecurityContextImpl extends InboundSecurityContextImpl imp
 
     private List<BSPRule> ignoredBSPRules = Collections.emptyList();
 
+    /**
+     * Adds a SecurityEventListener. A BatchSecurityEventListener gets the SecurityEvents of the security
+     * header as a single batch, once the OperationSecurityEvent occurs. The listeners are called in the
+     * order they were added, so every SecurityEvent reaches them in that order: a listener that was added
+     * before a BatchSecurityEventListener gets all the events of the batch before the batch listener does,
+     * and a listener that was added after it gets them afterwards.
+     */
+    @Override
+    public void addSecurityEventListener(SecurityEventListener securityEventListener) {
+        if (securityEventListener != null) {
+            securityEventListeners.add(securityEventListener);
+        }
+    }
+
     @Override
     public synchronized void registerSecurityEvent(SecurityEvent securityEvent) throws XMLSecurityException {
 
@@ -101,13 +125,14 @@ public class InboundWSSecurityContextImpl extends InboundSecurityContextImpl imp
 
             identifySecurityTokenDependenciesAndUsage(securityEventQueue);
 
+            //forward the queued security events in the order they occurred, followed by the operation security event
+            List<SecurityEvent> securityEvents = new ArrayList<>(securityEventQueue.size() + 1);
             Iterator<SecurityEvent> securityEventIterator = securityEventQueue.descendingIterator();
             while (securityEventIterator.hasNext()) {
-                SecurityEvent prevSecurityEvent = securityEventIterator.next();
-                forwardSecurityEvent(prevSecurityEvent);
+                securityEvents.add(securityEventIterator.next());
             }
-            //forward operation security event
-            forwardSecurityEvent(securityEvent);
+            securityEvents.add(securityEvent);
+            forwardSecurityEvents(securityEvents);
 
             securityEventQueue.clear();
             return;
@@ -118,6 +143,46 @@ public class InboundWSSecurityContextImpl extends InboundSecurityContextImpl imp
 
     @Override
     protected void forwardSecurityEvent(SecurityEvent securityEvent) throws XMLSecurityException {
+        checkSecurityEvent(securityEvent);
+
+        try {
+            for (int i = 0; i < securityEventListeners.size(); i++) {
+                securityEventListeners.get(i).registerSecurityEvent(securityEvent);
+            }
+        } catch (WSSecurityException e) {
+            throw e;
+        } catch (XMLSecurityException e) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_CHECK, e);
+        }
+    }
+
+    private void forwardSecurityEvents(List<SecurityEvent> securityEvents) throws XMLSecurityException {
+        for (int i = 0; i < securityEvents.size(); i++) {
+            checkSecurityEvent(securityEvents.get(i));
+        }
+
+        try {
+            for (int i = 0; i < securityEventListeners.size(); i++) {
+                SecurityEventListener securityEventListener = securityEventListeners.get(i);
+                if (securityEventListener instanceof BatchSecurityEventListener) {
+                    ((BatchSecurityEventListener) securityEventListener).registerSecurityEvents(securityEvents);
+                } else {
+                    for (int j = 0; j < securityEvents.size(); j++) {
+                        securityEventListener.registerSecurityEvent(securityEvents.get(j));
+                    }
+                }
+            }
+        } catch (WSSecurityException e) {
+            throw e;
+        } catch (XMLSecurityException e) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_CHECK, e);
+        }
+    }
+
+    /**
+     * Checks the given SecurityEvent before it is forwarded to any SecurityEventListener
+     */
+    private void checkSecurityEvent(SecurityEvent securityEvent) throws XMLSecurityException {
 
         if (!allowRSA15KeyTransportAlgorithm && SecurityEventConstants.AlgorithmSuite.equals(securityEvent.getSecurityEventType())) {
             AlgorithmSuiteSecurityEvent algorithmSuiteSecurityEvent = (AlgorithmSuiteSecurityEvent)securityEvent;
@@ -130,6 +195,7 @@ public class InboundWSSecurityContextImpl extends InboundSecurityContextImpl imp
         }
 
         try {
+            //the listeners are held by this class, so this only performs the checks of the super class
             super.forwardSecurityEvent(securityEvent);
         } catch (WSSecurityException e) {
             throw e;
@@ -262,29 +328,18 @@ public class InboundWSSecurityContextImpl extends InboundSecurityContextImpl imp
             List<InboundSecurityToken> signingSecurityTokens =
                 isSignedToken(tokenSecurityEvent, securityEventDeque, httpsTokenSecurityEvent);
 
-            List<QName> signatureElementPath = new ArrayList<>(4);
-            signatureElementPath.addAll(WSSConstants.WSSE_SECURITY_HEADER_PATH);
-            signatureElementPath.add(WSSConstants.TAG_dsig_Signature);
-            boolean signsSignature = signsElement(tokenSecurityEvent, signatureElementPath, securityEventDeque);
-            boolean encryptsSignature = encryptsElement(tokenSecurityEvent, signatureElementPath, securityEventDeque);
+            boolean signsSignature = signsElement(tokenSecurityEvent, SIGNATURE_ELEMENT_PATH, securityEventDeque);
+            boolean encryptsSignature = encryptsElement(tokenSecurityEvent, SIGNATURE_ELEMENT_PATH, securityEventDeque);
 
-            List<QName> signatureConfirmationElementPath = new ArrayList<>(4);
-            signatureConfirmationElementPath.addAll(WSSConstants.WSSE_SECURITY_HEADER_PATH);
-            signatureConfirmationElementPath.add(WSSConstants.TAG_WSSE11_SIG_CONF);
             boolean signsSignatureConfirmation =
-                signsElement(tokenSecurityEvent, signatureConfirmationElementPath, securityEventDeque);
+                signsElement(tokenSecurityEvent, SIGNATURE_CONFIRMATION_ELEMENT_PATH, securityEventDeque);
             boolean encryptsSignatureConfirmation =
-                encryptsElement(tokenSecurityEvent, signatureConfirmationElementPath, securityEventDeque);
+                encryptsElement(tokenSecurityEvent, SIGNATURE_CONFIRMATION_ELEMENT_PATH, securityEventDeque);
 
-            List<QName> timestampElementPath = new ArrayList<>(4);
-            timestampElementPath.addAll(WSSConstants.WSSE_SECURITY_HEADER_PATH);
-            timestampElementPath.add(WSSConstants.TAG_WSU_TIMESTAMP);
-            boolean signsTimestamp = signsElement(tokenSecurityEvent, timestampElementPath, securityEventDeque);
+            boolean signsTimestamp = signsElement(tokenSecurityEvent, TIMESTAMP_ELEMENT_PATH, securityEventDeque);
 
-            List<QName> usernameTokenElementPath = new ArrayList<>(4);
-            usernameTokenElementPath.addAll(WSSConstants.WSSE_SECURITY_HEADER_PATH);
-            usernameTokenElementPath.add(WSSConstants.TAG_WSSE_USERNAME_TOKEN);
-            boolean encryptsUsernameToken = encryptsElement(tokenSecurityEvent, usernameTokenElementPath, securityEventDeque);
+            boolean encryptsUsernameToken =
+                encryptsElement(tokenSecurityEvent, USERNAME_TOKEN_ELEMENT_PATH, securityEventDeque);
 
             boolean transportSecurityActive = Boolean.TRUE.equals(get(WSSConstants.TRANSPORT_SECURITY_ACTIVE));
 
@@ -490,11 +545,10 @@ public class InboundWSSecurityContextImpl extends InboundSecurityContextImpl imp
     private List<InboundSecurityToken> isSignedToken(TokenSecurityEvent<? extends SecurityToken> tokenSecurityEvent,
                                               Deque<SecurityEvent> securityEventDeque,
                                               HttpsTokenSecurityEvent httpsTokenSecurityEvent) throws XMLSecurityException {
-        List<InboundSecurityToken> securityTokenList = new ArrayList<>();
         if (httpsTokenSecurityEvent != null) {
-            securityTokenList.add(httpsTokenSecurityEvent.getSecurityToken());
-            return securityTokenList;
+            return Collections.<InboundSecurityToken>singletonList(httpsTokenSecurityEvent.getSecurityToken());
         }
+        List<InboundSecurityToken> securityTokenList = Collections.emptyList();
         for (Iterator<SecurityEvent> iterator = securityEventDeque.iterator(); iterator.hasNext();) {
             SecurityEvent securityEvent = iterator.next();
             if (WSSecurityEventConstants.SignedElement.equals(securityEvent.getSecurityEventType())) {
@@ -505,6 +559,9 @@ public class InboundWSSecurityContextImpl extends InboundSecurityContextImpl imp
                         && signedElementSecurityEvent.getXmlSecEvent()
                             == ((InboundSecurityToken)tokenSecurityEvent.getSecurityToken()).getXMLSecEvent()
                         && !securityTokenList.contains((InboundSecurityToken)signedElementSecurityEvent.getSecurityToken())) {
+                    if (securityTokenList.isEmpty()) {
+                        securityTokenList = new ArrayList<>(1);
+                    }
                     securityTokenList.add((InboundSecurityToken)signedElementSecurityEvent.getSecurityToken());
                 }
             }
@@ -516,11 +573,10 @@ public class InboundWSSecurityContextImpl extends InboundSecurityContextImpl imp
                                                  Deque<SecurityEvent> securityEventDeque,
                                                  HttpsTokenSecurityEvent httpsTokenSecurityEvent) throws XMLSecurityException {
 
-        List<InboundSecurityToken> securityTokenList = new ArrayList<>();
         if (httpsTokenSecurityEvent != null) {
-            securityTokenList.add(httpsTokenSecurityEvent.getSecurityToken());
-            return securityTokenList;
+            return Collections.<InboundSecurityToken>singletonList(httpsTokenSecurityEvent.getSecurityToken());
         }
+        List<InboundSecurityToken> securityTokenList = Collections.emptyList();
         for (Iterator<SecurityEvent> iterator = securityEventDeque.iterator(); iterator.hasNext();) {
             SecurityEvent securityEvent = iterator.next();
             if (WSSecurityEventConstants.EncryptedElement.equals(securityEvent.getSecurityEventType())) {
@@ -531,6 +587,9 @@ public class InboundWSSecurityContextImpl extends InboundSecurityContextImpl imp
                         && encryptedElementSecurityEvent.getXmlSecEvent()
                             == ((InboundSecurityToken)tokenSecurityEvent.getSecurityToken()).getXMLSecEvent()
                         && !securityTokenList.contains((InboundSecurityToken)encryptedElementSecurityEvent.getSecurityToken())) {
+                    if (securityTokenList.isEmpty()) {
+                        securityTokenList = new ArrayList<>(1);
+                    }
                     securityTokenList.add((InboundSecurityToken)encryptedElementSecurityEvent.getSecurityToken());
                 }
             }
@@ -635,6 +694,13 @@ public class InboundWSSecurityContextImpl extends InboundSecurityContextImpl imp
         this.allowRSA15KeyTransportAlgorithm = allowRSA15KeyTransportAlgorithm;
     }
 
+    private static List<QName> securityHeaderChildPath(QName elementName) {
+        List<QName> elementPath = new ArrayList<>(WSSConstants.WSSE_SECURITY_HEADER_PATH.size() + 1);
+        elementPath.addAll(WSSConstants.WSSE_SECURITY_HEADER_PATH);
+        elementPath.add(elementName);
+        return Collections.unmodifiableList(elementPath);
+    }
+
     private static class MessageTokens {
         List<TokenSecurityEvent<? extends InboundSecurityToken>> messageSignatureTokens = Collections.emptyList();
         List<TokenSecurityEvent<? extends InboundSecurityToken>> messageEncryptionTokens = Collections.emptyList();
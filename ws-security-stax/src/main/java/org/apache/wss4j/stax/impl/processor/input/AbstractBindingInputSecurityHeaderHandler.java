@@ -0,0 +1,45 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.stax.impl.processor.input;
+
+import java.util.Deque;
+
+import org.apache.xml.security.exceptions.XMLSecurityException;
+import org.apache.xml.security.stax.ext.AbstractInputSecurityHeaderHandler;
+import org.apache.xml.security.stax.ext.XMLSecurityProperties;
+import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
+
+/**
+ * Base class of the security header handlers whose elements are bound by the SecurityHeaderBinder. An element that
+ * the binder does not accept is unmarshalled by JAXB, as before.
+ */
+abstract class AbstractBindingInputSecurityHeaderHandler extends AbstractInputSecurityHeaderHandler {
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected <T> T parseStructure(Deque<XMLSecEvent> eventDeque, int index, XMLSecurityProperties securityProperties)
+            throws XMLSecurityException {
+        Object structure = SecurityHeaderBinder.bind(getResponsibleXMLSecEvents(eventDeque, index));
+        if (structure != null) {
+            return (T) structure;
+        }
+        return super.parseStructure(eventDeque, index, securityProperties);
+    }
+}
@@ -0,0 +1,609 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.wss4j.stax.impl.processor.input;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.wss4j.common.WSS4JConstants;
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.xml.security.binding.xmldsig.KeyInfoType;
+import org.apache.xml.security.binding.xmlenc.EncryptedDataType;
+import org.apache.xml.security.binding.xmlenc.EncryptedKeyType;
+import org.apache.xml.security.binding.xmlenc.ReferenceList;
+import org.apache.xml.security.binding.xmlenc.ReferenceType;
+import org.apache.xml.security.encryption.XMLCipherUtil;
+import org.apache.xml.security.exceptions.XMLSecurityException;
+import org.apache.xml.security.stax.config.JCEAlgorithmMapper;
+import org.apache.xml.security.stax.ext.InputProcessorChain;
+import org.apache.xml.security.stax.ext.SecurePart;
+import org.apache.xml.security.stax.ext.XMLSecurityConstants;
+import org.apache.xml.security.stax.ext.XMLSecurityProperties;
+import org.apache.xml.security.stax.ext.XMLSecurityUtils;
+import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
+import org.apache.xml.security.stax.ext.stax.XMLSecEventFactory;
+import org.apache.xml.security.stax.ext.stax.XMLSecNamespace;
+import org.apache.xml.security.stax.ext.stax.XMLSecStartElement;
+import org.apache.xml.security.stax.impl.XMLSecurityEventReader;
+import org.apache.xml.security.stax.impl.processor.input.AbstractDecryptInputProcessor;
+import org.apache.xml.security.stax.impl.processor.input.XMLEncryptedKeyInputHandler;
+import org.apache.xml.security.stax.impl.util.IDGenerator;
+import org.apache.xml.security.stax.impl.util.MultiInputStream;
+import org.apache.xml.security.stax.securityToken.InboundSecurityToken;
+import org.apache.xml.security.stax.securityToken.SecurityTokenConstants;
+import org.apache.xml.security.stax.securityToken.SecurityTokenFactory;
+import org.apache.xml.security.stax.securityToken.SecurityTokenProvider;
+import org.apache.xml.security.utils.UnsyncByteArrayInputStream;
+import org.apache.xml.security.utils.UnsyncByteArrayOutputStream;
+import org.apache.xml.security.utils.XMLUtils;
+
+/**
+ * Adds an inline, single-threaded decryption mode to the AbstractDecryptInputProcessor. The EncryptedData
+ * handling of AbstractDecryptInputProcessor#processEvent is private, so it is mirrored here. The only
+ * difference is that the cipher value is decrypted by an InlineDecryptionInputStream on the calling thread,
+ * instead of by a decryption thread that writes to a pipe. The WS-Security specific handling is left to the
+ * hooks of the base class and to handleInlineXOPInclude, so that this class can be compared with
+ * AbstractDecryptInputProcessor, and dropped once that offers a hook for the decryption stream.
+ */
+public abstract class AbstractInlineDecryptInputProcessor extends AbstractDecryptInputProcessor {
+
+    private static final QName TAG_XOP_INCLUDE = new QName(WSS4JConstants.XOP_NS, "Include");
+
+    private final KeyInfoType keyInfoType;
+    private final ArrayDeque<XMLSecEvent> tmpXmlEventList = new ArrayDeque<>();
+    private final boolean inlineDecryption;
+
+    // The name of the wrapper element around the decrypted content for the inline decryption. The
+    // AbstractDecryptedEventReaderInputProcessor only compares the namespace and the local name of it.
+    private final QName wrapperElementName = new QName("http://dummy", "dummy", IDGenerator.generateID(null));
+
+    protected AbstractInlineDecryptInputProcessor(KeyInfoType keyInfoType, ReferenceList referenceList,
+                                                  XMLSecurityProperties securityProperties,
+                                                  boolean inlineDecryption) throws XMLSecurityException {
+        super(keyInfoType, referenceList, securityProperties);
+        this.keyInfoType = keyInfoType;
+        this.inlineDecryption = inlineDecryption;
+    }
+
+    /**
+     * Returns a stream of the decrypted content of an attachment that an xop:Include in the CipherValue
+     * references, for the inline decryption.
+     */
+    protected abstract InputStream handleInlineXOPInclude(XMLSecStartElement xopInclude, String algorithmURI,
+                                                          Cipher cipher, Key decryptionKey) throws XMLSecurityException;
+
+    @Override
+    public XMLSecEvent processNextHeaderEvent(InputProcessorChain inputProcessorChain)
+            throws XMLStreamException, XMLSecurityException {
+        if (inlineDecryption) {
+            return processEventInline(inputProcessorChain, true);
+        }
+        return super.processNextHeaderEvent(inputProcessorChain);
+    }
+
+    @Override
+    public XMLSecEvent processNextEvent(InputProcessorChain inputProcessorChain)
+            throws XMLStreamException, XMLSecurityException {
+        if (inlineDecryption) {
+            return processEventInline(inputProcessorChain, false);
+        }
+        return super.processNextEvent(inputProcessorChain);
+    }
+
+    /**
+     * The counterpart of AbstractDecryptInputProcessor#processEvent for the inline decryption: the
+     * EncryptedData structure is processed in the same way, but the cipher value is decrypted by an
+     * InlineDecryptionInputStream on the calling thread, while the decrypted content is parsed.
+     */
+    private XMLSecEvent processEventInline(InputProcessorChain inputProcessorChain, boolean isSecurityHeaderEvent)
+            throws XMLStreamException, XMLSecurityException {
+
+        if (!tmpXmlEventList.isEmpty()) {
+            return tmpXmlEventList.pollLast();
+        }
+
+        XMLSecEvent xmlSecEvent = isSecurityHeaderEvent
+                ? inputProcessorChain.processHeaderEvent()
+                : inputProcessorChain.processEvent();
+        if (xmlSecEvent.getEventType() != XMLStreamConstants.START_ELEMENT) {
+            return xmlSecEvent;
+        }
+
+        boolean encryptedHeader = false;
+        XMLSecStartElement xmlSecStartElement = xmlSecEvent.asStartElement();
+
+        //buffer the events until the EncryptedData Element appears and discard it if we found the reference inside it
+        //otherwise replay it
+        if (XMLSecurityConstants.TAG_wsse11_EncryptedHeader.equals(xmlSecStartElement.getName())) {
+            xmlSecEvent = readAndBufferEncryptedHeader(inputProcessorChain, isSecurityHeaderEvent, xmlSecEvent);
+            xmlSecStartElement = xmlSecEvent.asStartElement();
+            encryptedHeader = true;
+        }
+
+        if (!XMLSecurityConstants.TAG_xenc_EncryptedData.equals(xmlSecStartElement.getName())) {
+            return xmlSecEvent;
+        }
+
+        ReferenceType referenceType = null;
+        if (getReferences() != null) {
+            referenceType = matchesReferenceId(xmlSecStartElement);
+            if (referenceType == null) {
+                //if the events were not for us (no matching reference-id the we have to replay the EncryptedHeader elements)
+                if (!tmpXmlEventList.isEmpty()) {
+                    return tmpXmlEventList.pollLast();
+                }
+                return xmlSecEvent;
+            }
+            //duplicate id's are forbidden
+            if (getProcessedReferences().contains(referenceType)) {
+                throw new XMLSecurityException("signature.Verification.MultipleIDs");
+            }
+            getProcessedReferences().add(referenceType);
+        }
+        tmpXmlEventList.clear();
+
+        //the following logic reads the encryptedData structure and doesn't pass them further
+        //through the chain
+        InputProcessorChain subInputProcessorChain = inputProcessorChain.createSubChain(this);
+
+        EncryptedDataType encryptedDataType =
+                parseEncryptedDataStructure(isSecurityHeaderEvent, xmlSecEvent, subInputProcessorChain);
+        if (encryptedDataType.getId() == null) {
+            encryptedDataType.setId(IDGenerator.generateID(null));
+        }
+
+        InboundSecurityToken inboundSecurityToken =
+                getSecurityToken(inputProcessorChain, xmlSecStartElement, encryptedDataType);
+        handleSecurityToken(inboundSecurityToken, inputProcessorChain.getSecurityContext(), encryptedDataType);
+
+        final String algorithmURI = encryptedDataType.getEncryptionMethod().getAlgorithm();
+        final int ivLength = JCEAlgorithmMapper.getIVLengthFromURI(algorithmURI) / 8;
+        Cipher symCipher = getCipher(algorithmURI);
+
+        if (encryptedDataType.getCipherData().getCipherReference() != null) {
+            handleCipherReference(inputProcessorChain, encryptedDataType, symCipher, inboundSecurityToken);
+            subInputProcessorChain.reset();
+            return isSecurityHeaderEvent
+                    ? subInputProcessorChain.processHeaderEvent()
+                    : subInputProcessorChain.processEvent();
+        }
+
+        XMLSecStartElement parentXMLSecStartElement = xmlSecStartElement.getParentXMLSecStartElement();
+        if (encryptedHeader) {
+            parentXMLSecStartElement = parentXMLSecStartElement.getParentXMLSecStartElement();
+        }
+        AbstractDecryptedEventReaderInputProcessor decryptedEventReaderInputProcessor =
+                newDecryptedEventReaderInputProcessor(encryptedHeader, parentXMLSecStartElement, encryptedDataType,
+                        inboundSecurityToken, inputProcessorChain.getSecurityContext());
+
+        //add the new created EventReader processor to the chain.
+        inputProcessorChain.addProcessor(decryptedEventReaderInputProcessor);
+
+        inputProcessorChain.getDocumentContext().setIsInEncryptedContent(
+                inputProcessorChain.getProcessors().indexOf(decryptedEventReaderInputProcessor),
+                decryptedEventReaderInputProcessor);
+
+        //fire here only ContentEncryptedElementEvents
+        //the other ones will be fired later, because we don't know the encrypted element name yet
+        //important: this must occur after setIsInEncryptedContent!
+        if (SecurePart.Modifier.Content.getModifier().equals(encryptedDataType.getType())) {
+            handleEncryptedContent(inputProcessorChain, xmlSecStartElement.getParentXMLSecStartElement(),
+                    inboundSecurityToken, encryptedDataType);
+        }
+
+        subInputProcessorChain.reset();
+        XMLSecEvent firstEvent = isSecurityHeaderEvent
+                ? subInputProcessorChain.processHeaderEvent()
+                : subInputProcessorChain.processEvent();
+
+        Key decryptionKey =
+            inboundSecurityToken.getSecretKey(algorithmURI, XMLSecurityConstants.Enc, encryptedDataType.getId());
+        decryptionKey = XMLSecurityUtils.prepareSecretKey(algorithmURI, decryptionKey.getEncoded());
+
+        InputStream decryptInputStream;
+        if (firstEvent.getEventType() == XMLStreamConstants.START_ELEMENT
+            && TAG_XOP_INCLUDE.equals(firstEvent.asStartElement().getName())) {
+            //the cipher value is stored in an (MTOM-) attachment. The remaining events up to
+            //the end of the EncryptedData element are skipped by the decrypted event reader
+            decryptInputStream =
+                handleInlineXOPInclude(firstEvent.asStartElement(), algorithmURI, symCipher, decryptionKey);
+        } else {
+            decryptInputStream =
+                new InlineDecryptionInputStream(subInputProcessorChain, isSecurityHeaderEvent, firstEvent,
+                                                symCipher, decryptionKey, ivLength);
+        }
+        decryptInputStream = applyTransforms(referenceType, decryptInputStream);
+
+        //spec says (4.2): "The cleartext octet sequence obtained in step 3 is
+        //interpreted as UTF-8 encoded character data."
+        XMLInputFactory xmlInputFactory =
+            inputProcessorChain.getSecurityContext().get(XMLSecurityConstants.XMLINPUTFACTORY);
+        XMLStreamReader xmlStreamReader = xmlInputFactory.createXMLStreamReader(
+            new MultiInputStream(writeWrapperStartElement(xmlSecStartElement), decryptInputStream, writeWrapperEndElement()),
+            StandardCharsets.UTF_8.name());
+
+        //forward to wrapper element
+        forwardToWrapperElement(xmlStreamReader);
+
+        decryptedEventReaderInputProcessor.setXmlStreamReader(xmlStreamReader);
+
+        if (isSecurityHeaderEvent) {
+            return decryptedEventReaderInputProcessor.processNextHeaderEvent(inputProcessorChain);
+        }
+        return decryptedEventReaderInputProcessor.processNextEvent(inputProcessorChain);
+    }
+
+    private XMLSecEvent readAndBufferEncryptedHeader(InputProcessorChain inputProcessorChain, boolean isSecurityHeaderEvent,
+                                                     XMLSecEvent xmlSecEvent) throws XMLStreamException, XMLSecurityException {
+
+        InputProcessorChain subInputProcessorChain = inputProcessorChain.createSubChain(this);
+        do {
+            tmpXmlEventList.push(xmlSecEvent);
+
+            subInputProcessorChain.reset();
+            if (isSecurityHeaderEvent) {
+                xmlSecEvent = subInputProcessorChain.processHeaderEvent();
+            } else {
+                xmlSecEvent = subInputProcessorChain.processEvent();
+            }
+        }
+        while (!(xmlSecEvent.getEventType() == XMLStreamConstants.START_ELEMENT
+                && xmlSecEvent.asStartElement().getName().equals(XMLSecurityConstants.TAG_xenc_EncryptedData)));
+
+        tmpXmlEventList.push(xmlSecEvent);
+        return xmlSecEvent;
+    }
+
+    private EncryptedDataType parseEncryptedDataStructure(boolean isSecurityHeaderEvent, XMLSecEvent xmlSecEvent,
+                                                          InputProcessorChain subInputProcessorChain)
+            throws XMLStreamException, XMLSecurityException {
+
+        Deque<XMLSecEvent> xmlSecEvents = new ArrayDeque<>();
+        xmlSecEvents.push(xmlSecEvent);
+        XMLSecEvent encryptedDataXMLSecEvent;
+        int count = 0;
+        int keyInfoCount = 0;
+        do {
+            subInputProcessorChain.reset();
+            if (isSecurityHeaderEvent) {
+                encryptedDataXMLSecEvent = subInputProcessorChain.processHeaderEvent();
+            } else {
+                encryptedDataXMLSecEvent = subInputProcessorChain.processEvent();
+            }
+
+            xmlSecEvents.push(encryptedDataXMLSecEvent);
+            if (++count >= maximumAllowedEncryptedDataEvents) {
+                throw new XMLSecurityException("stax.xmlStructureSizeExceeded",
+                                               new Object[] {maximumAllowedEncryptedDataEvents});
+            }
+
+            //the keyInfoCount is necessary to prevent early while-loop abort when the KeyInfo also contains a CipherValue.
+            if (encryptedDataXMLSecEvent.getEventType() == XMLStreamConstants.START_ELEMENT
+                && encryptedDataXMLSecEvent.asStartElement().getName().equals(XMLSecurityConstants.TAG_dsig_KeyInfo)) {
+                keyInfoCount++;
+            } else if (encryptedDataXMLSecEvent.getEventType() == XMLStreamConstants.END_ELEMENT
+                && encryptedDataXMLSecEvent.asEndElement().getName().equals(XMLSecurityConstants.TAG_dsig_KeyInfo)) {
+                keyInfoCount--;
+            }
+        }
+        while (!((encryptedDataXMLSecEvent.getEventType() == XMLStreamConstants.START_ELEMENT
+                && encryptedDataXMLSecEvent.asStartElement().getName().equals(XMLSecurityConstants.TAG_xenc_CipherValue)
+                || encryptedDataXMLSecEvent.getEventType() == XMLStreamConstants.END_ELEMENT
+                && encryptedDataXMLSecEvent.asEndElement().getName().equals(XMLSecurityConstants.TAG_xenc_EncryptedData))
+                && keyInfoCount == 0));
+
+        xmlSecEvents.push(XMLSecEventFactory.createXmlSecEndElement(XMLSecurityConstants.TAG_xenc_CipherValue));
+        xmlSecEvents.push(XMLSecEventFactory.createXmlSecEndElement(XMLSecurityConstants.TAG_xenc_CipherData));
+        xmlSecEvents.push(XMLSecEventFactory.createXmlSecEndElement(XMLSecurityConstants.TAG_xenc_EncryptedData));
+
+        try {
+            Unmarshaller unmarshaller =
+                XMLSecurityConstants.getJaxbUnmarshaller(getSecurityProperties().isDisableSchemaValidation());
+            @SuppressWarnings("unchecked")
+            JAXBElement<EncryptedDataType> encryptedDataTypeJAXBElement =
+                (JAXBElement<EncryptedDataType>) unmarshaller.unmarshal(new XMLSecurityEventReader(xmlSecEvents, 0));
+            return encryptedDataTypeJAXBElement.getValue();
+        } catch (JAXBException e) {
+            throw new XMLSecurityException(e);
+        }
+    }
+
+    private InboundSecurityToken getSecurityToken(InputProcessorChain inputProcessorChain,
+                                                  XMLSecStartElement xmlSecStartElement,
+                                                  EncryptedDataType encryptedDataType) throws XMLSecurityException {
+        KeyInfoType keyInfoType;
+        if (this.keyInfoType != null) {
+            keyInfoType = this.keyInfoType;
+        } else {
+            keyInfoType = encryptedDataType.getKeyInfo();
+        }
+
+        //retrieve the securityToken which must be used for decryption
+        if (keyInfoType != null) {
+            final EncryptedKeyType encryptedKeyType =
+                XMLSecurityUtils.getQNameType(keyInfoType.getContent(), XMLSecurityConstants.TAG_xenc_EncryptedKey);
+            if (encryptedKeyType != null) {
+                XMLEncryptedKeyInputHandler handler = new XMLEncryptedKeyInputHandler();
+                handler.handle(inputProcessorChain, encryptedKeyType, xmlSecStartElement, getSecurityProperties());
+
+                SecurityTokenProvider<? extends InboundSecurityToken> securityTokenProvider =
+                    inputProcessorChain.getSecurityContext().getSecurityTokenProvider(encryptedKeyType.getId());
+                return securityTokenProvider.getSecurityToken();
+            }
+        }
+        return SecurityTokenFactory.getInstance().getSecurityToken(
+            keyInfoType, SecurityTokenConstants.KeyUsage_Decryption,
+            getSecurityProperties(), inputProcessorChain.getSecurityContext());
+    }
+
+    private Cipher getCipher(String algorithmURI) throws XMLSecurityException {
+        String jceName = JCEAlgorithmMapper.translateURItoJCEID(algorithmURI);
+        String jceProvider = JCEAlgorithmMapper.getJCEProviderFromURI(algorithmURI);
+        if (jceName == null) {
+            throw new XMLSecurityException("algorithms.NoSuchMap", new Object[] {algorithmURI});
+        }
+        try {
+            if (jceProvider != null) {
+                return Cipher.getInstance(jceName, jceProvider);
+            }
+            return Cipher.getInstance(jceName);
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException | NoSuchProviderException e) {
+            throw new XMLSecurityException(e);
+        }
+    }
+
+    private InputStream writeWrapperStartElement(XMLSecStartElement xmlSecStartElement) {
+        //temporary writer to write the dummy wrapper element with all namespaces in the current scope
+        //spec says (4.2): "The cleartext octet sequence obtained in step 3 is interpreted as UTF-8 encoded character data."
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append('<')
+            .append(wrapperElementName.getPrefix())
+            .append(':')
+            .append(wrapperElementName.getLocalPart())
+            .append(" xmlns:")
+            .append(wrapperElementName.getPrefix())
+            .append("=\"")
+            .append(wrapperElementName.getNamespaceURI())
+            .append('"');
+
+        //apply all namespaces from current scope to get a valid documentfragment:
+        List<XMLSecNamespace> comparableNamespacesToApply = new ArrayList<>();
+        List<XMLSecNamespace> comparableNamespaceList = new ArrayList<>();
+        xmlSecStartElement.getNamespacesFromCurrentScope(comparableNamespaceList);
+        //reverse iteration -> Namespaces may be declared multiple times but the lowest one is the winner
+        for (int i = comparableNamespaceList.size() - 1; i >= 0; i--) {
+            XMLSecNamespace comparableNamespace = comparableNamespaceList.get(i);
+            if (!comparableNamespacesToApply.contains(comparableNamespace)) {
+                comparableNamespacesToApply.add(comparableNamespace);
+                String prefix = comparableNamespace.getPrefix();
+                String uri = comparableNamespace.getNamespaceURI();
+                if (prefix == null || prefix.isEmpty()) {
+                    stringBuilder.append(" xmlns=\"").append(uri).append('"');
+                } else {
+                    stringBuilder.append(" xmlns:").append(prefix).append("=\"").append(uri).append('"');
+                }
+            }
+        }
+        stringBuilder.append('>');
+        return new UnsyncByteArrayInputStream(stringBuilder.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private InputStream writeWrapperEndElement() {
+        String endElement = "</" + wrapperElementName.getPrefix() + ':' + wrapperElementName.getLocalPart() + '>';
+        return new UnsyncByteArrayInputStream(endElement.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void forwardToWrapperElement(XMLStreamReader xmlStreamReader) throws XMLStreamException {
+        do {
+            if (xmlStreamReader.getEventType() == XMLStreamConstants.START_ELEMENT
+                && xmlStreamReader.getName().equals(wrapperElementName)) {
+                xmlStreamReader.next();
+                break;
+            }
+            xmlStreamReader.next();
+        } while (xmlStreamReader.hasNext());
+    }
+
+    /**
+     * Decrypts the base64 encoded cipher value of an EncryptedData element on demand: the character events
+     * of the CipherValue element are pulled from the input processor chain as soon as more decrypted bytes
+     * are needed. With GCM the decrypted bytes are only released once the authentication tag was verified.
+     */
+    private static final class InlineDecryptionInputStream extends InputStream {
+
+        private final InputProcessorChain inputProcessorChain;
+        private final boolean isSecurityHeaderEvent;
+        private final Cipher cipher;
+        private final Key secretKey;
+        private final boolean gcm;
+        private final byte[] iv;
+        private int ivPosition;
+        private XMLSecEvent nextEvent;
+
+        // base64 characters of the last event, which didn't make up a complete quantum of four characters
+        private final byte[] base64Remainder = new byte[3];
+        private int base64RemainderLength;
+
+        private UnsyncByteArrayOutputStream gcmBuffer;
+        private byte[] decrypted = new byte[0];
+        private int position;
+        private boolean finished;
+
+        private InlineDecryptionInputStream(InputProcessorChain inputProcessorChain, boolean isSecurityHeaderEvent,
+                                            XMLSecEvent firstEvent, Cipher cipher, Key secretKey, int ivLength) {
+            this.inputProcessorChain = inputProcessorChain;
+            this.isSecurityHeaderEvent = isSecurityHeaderEvent;
+            this.nextEvent = firstEvent;
+            this.cipher = cipher;
+            this.secretKey = secretKey;
+            this.gcm = cipher.getAlgorithm().toUpperCase().contains("GCM");
+            this.iv = new byte[ivLength];
+            if (gcm) {
+                gcmBuffer = new UnsyncByteArrayOutputStream();
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+            return decrypted[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int count = Math.min(len, decrypted.length - position);
+            System.arraycopy(decrypted, position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return decrypted.length - position;
+        }
+
+        private boolean fill() throws IOException {
+            while (position == decrypted.length) {
+                if (finished) {
+                    return false;
+                }
+                decryptNextEvent();
+            }
+            return true;
+        }
+
+        private void decryptNextEvent() throws IOException {
+            XMLSecEvent xmlSecEvent = nextEvent;
+            nextEvent = null;
+            try {
+                if (xmlSecEvent == null) {
+                    inputProcessorChain.reset();
+                    if (isSecurityHeaderEvent) {
+                        xmlSecEvent = inputProcessorChain.processHeaderEvent();
+                    } else {
+                        xmlSecEvent = inputProcessorChain.processEvent();
+                    }
+                }
+
+                switch (xmlSecEvent.getEventType()) {
+                    case XMLStreamConstants.END_ELEMENT:
+                        finish();
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                        decrypt(xmlSecEvent.asCharacters().getText());
+                        break;
+                    default:
+                        throw new XMLSecurityException("stax.unexpectedXMLEvent",
+                                new Object[] {XMLSecurityUtils.getXMLEventAsString(xmlSecEvent)});
+                }
+            } catch (XMLStreamException | XMLSecurityException | GeneralSecurityException e) {
+                throw new IOException(e);
+            }
+        }
+
+        private void decrypt(char[] text) throws GeneralSecurityException {
+            // strip the whitespace and decode complete quanta of four base64 characters only
+            byte[] base64 = new byte[base64RemainderLength + text.length];
+            System.arraycopy(base64Remainder, 0, base64, 0, base64RemainderLength);
+            int length = base64RemainderLength;
+            for (char c : text) {
+                if (!Character.isWhitespace(c)) {
+                    base64[length++] = (byte) c;
+                }
+            }
+            base64RemainderLength = length % 4;
+            length -= base64RemainderLength;
+            System.arraycopy(base64, length, base64Remainder, 0, base64RemainderLength);
+            if (length > 0) {
+                update(XMLUtils.decode(base64.length == length ? base64 : Arrays.copyOf(base64, length)));
+            }
+        }
+
+        private void update(byte[] bytes) throws GeneralSecurityException {
+            int offset = 0;
+            if (ivPosition < iv.length) {
+                offset = Math.min(iv.length - ivPosition, bytes.length);
+                System.arraycopy(bytes, 0, iv, ivPosition, offset);
+                ivPosition += offset;
+                if (ivPosition < iv.length) {
+                    return;
+                }
+                AlgorithmParameterSpec paramSpec = XMLCipherUtil.constructBlockCipherParameters(gcm, iv, getClass());
+                cipher.init(Cipher.DECRYPT_MODE, secretKey, paramSpec);
+            }
+            if (offset < bytes.length) {
+                output(cipher.update(bytes, offset, bytes.length - offset));
+            }
+        }
+
+        private void finish() throws XMLSecurityException, GeneralSecurityException {
+            if (base64RemainderLength > 0 || ivPosition < iv.length) {
+                throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_CHECK);
+            }
+            output(cipher.doFinal());
+            if (gcm) {
+                decrypted = gcmBuffer.toByteArray();
+                position = 0;
+            }
+            finished = true;
+        }
+
+        private void output(byte[] bytes) {
+            if (bytes == null || bytes.length == 0) {
+                return;
+            }
+            if (gcm) {
+                gcmBuffer.write(bytes, 0, bytes.length);
+            } else {
+                decrypted = bytes;
+                position = 0;
+            }
+        }
+    }
+}
@@ -38,7 +38,6 @@ import org.apache.wss4j.stax.validate.BinarySecurityTokenValidator;
 import org.apache.wss4j.stax.validate.BinarySecurityTokenValidatorImpl;
 import org.apache.wss4j.stax.validate.TokenContext;
 import org.apache.xml.security.exceptions.XMLSecurityException;
-import org.apache.xml.security.stax.ext.AbstractInputSecurityHeaderHandler;
 import org.apache.xml.security.stax.ext.InputProcessorChain;
 import org.apache.xml.security.stax.ext.XMLSecurityProperties;
 import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
@@ -51,7 +50,7 @@ import org.apache.xml.security.stax.securityToken.SecurityTokenProvider;
 /**
  * Processor for the BinarySecurityToken XML Structure
  */
-public class BinarySecurityTokenInputHandler extends AbstractInputSecurityHeaderHandler {
+public class BinarySecurityTokenInputHandler extends AbstractBindingInputSecurityHeaderHandler {
 
     @Override
     public void handle(final InputProcessorChain inputProcessorChain, final XMLSecurityProperties securityProperties,
@@ -34,6 +34,7 @@ import javax.security.auth.callback.CallbackHandler;
 import javax.xml.bind.JAXBElement;
 import javax.xml.namespace.QName;
 import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
 
 import org.apache.wss4j.binding.wss10.SecurityTokenReferenceType;
 import org.apache.wss4j.common.bsp.BSPRule;
@@ -66,7 +67,6 @@ import org.apache.xml.security.stax.ext.XMLSecurityConstants;
 import org.apache.xml.security.stax.ext.XMLSecurityProperties;
 import org.apache.xml.security.stax.ext.XMLSecurityUtils;
 import org.apache.xml.security.stax.ext.stax.XMLSecStartElement;
-import org.apache.xml.security.stax.impl.processor.input.AbstractDecryptInputProcessor;
 import org.apache.xml.security.stax.impl.util.LimitingInputStream;
 import org.apache.xml.security.stax.securityEvent.ContentEncryptedElementSecurityEvent;
 import org.apache.xml.security.stax.securityEvent.EncryptedElementSecurityEvent;
@@ -77,7 +77,7 @@ import org.apache.xml.security.stax.securityToken.SecurityToken;
 /**
  * Processor for decryption of EncryptedData XML structures
  */
-public class DecryptInputProcessor extends AbstractDecryptInputProcessor {
+public class DecryptInputProcessor extends AbstractInlineDecryptInputProcessor {
 
     private static final transient org.slf4j.Logger LOG =
         org.slf4j.LoggerFactory.getLogger(DecryptInputProcessor.class);
@@ -91,7 +91,7 @@ public class DecryptInputProcessor extends AbstractDecryptInputProcessor {
                                  WSSSecurityProperties securityProperties, WSInboundSecurityContext securityContext)
             throws XMLSecurityException {
 
-        super(keyInfoType, referenceList, securityProperties);
+        super(keyInfoType, referenceList, securityProperties, securityProperties.isInlineDecryption());
         checkBSPCompliance(keyInfoType, referenceList, securityContext, BSPRule.R3006);
     }
 
@@ -240,6 +240,12 @@ public class DecryptInputProcessor extends AbstractDecryptInputProcessor {
         TokenSecurityEvent<? extends SecurityToken> tokenSecurityEvent =
             WSSUtils.createTokenSecurityEvent(inboundSecurityToken, encryptedDataType.getId());
         inboundSecurityContext.registerSecurityEvent(tokenSecurityEvent);
+
+        if (encryptedDataType.getEncryptionMethod() != null) {
+            WSSEncryptedKeyInputHandler.setCachedSecretKey(
+                inboundSecurityToken, encryptedDataType.getEncryptionMethod().getAlgorithm(),
+                encryptedDataType.getId(), (WSSSecurityProperties) getSecurityProperties(), inboundSecurityContext);
+        }
     }
 
     @Override
@@ -278,31 +284,7 @@ public class DecryptInputProcessor extends AbstractDecryptInputProcessor {
             final String uri = encryptedDataType.getCipherData().getCipherReference().getURI();
             final String attachmentId = uri.substring(4);
 
-            CallbackHandler attachmentCallbackHandler =
-                ((WSSSecurityProperties) getSecurityProperties()).getAttachmentCallbackHandler();
-            if (attachmentCallbackHandler == null) {
-                throw new WSSecurityException(
-                    WSSecurityException.ErrorCode.INVALID_SECURITY,
-                    "empty", new Object[] {"no attachment callbackhandler supplied"}
-                );
-            }
-
-            AttachmentRequestCallback attachmentRequestCallback = new AttachmentRequestCallback();
-            attachmentRequestCallback.setAttachmentId(attachmentId);
-            try {
-                attachmentCallbackHandler.handle(new Callback[]{attachmentRequestCallback});
-            } catch (Exception e) {
-                throw new WSSecurityException(WSSecurityException.ErrorCode.INVALID_SECURITY, e);
-            }
-            List<Attachment> attachments = attachmentRequestCallback.getAttachments();
-            if (attachments == null || attachments.isEmpty() || !attachmentId.equals(attachments.get(0).getId())) {
-                throw new WSSecurityException(
-                    WSSecurityException.ErrorCode.INVALID_SECURITY,
-                    "empty", new Object[] {"Attachment not found"}
-                );
-            }
-
-            final Attachment attachment = attachments.get(0);
+            final Attachment attachment = getAttachment(attachmentId);
 
             final String encAlgo = encryptedDataType.getEncryptionMethod().getAlgorithm();
             final Key symmetricKey =
@@ -326,6 +308,8 @@ public class DecryptInputProcessor extends AbstractDecryptInputProcessor {
                 }
             }
 
+            CallbackHandler attachmentCallbackHandler =
+                ((WSSSecurityProperties) getSecurityProperties()).getAttachmentCallbackHandler();
             AttachmentResultCallback attachmentResultCallback = new AttachmentResultCallback();
             attachmentResultCallback.setAttachment(resultAttachment);
             attachmentResultCallback.setAttachmentId(resultAttachment.getId());
@@ -345,6 +329,48 @@ public class DecryptInputProcessor extends AbstractDecryptInputProcessor {
         }
     }
 
+    @Override
+    protected InputStream handleInlineXOPInclude(XMLSecStartElement xopInclude, String algorithmURI,
+                                                 Cipher cipher, Key decryptionKey) throws XMLSecurityException {
+        Attribute href = xopInclude.getAttributeByName(new QName("href"));
+        if (href == null || !href.getValue().startsWith("cid:")) {
+            throw new WSSecurityException(
+                WSSecurityException.ErrorCode.INVALID_SECURITY,
+                "empty", new Object[] {"xop:Include does not reference an attachment"}
+            );
+        }
+        Attachment attachment = getAttachment(href.getValue().substring(4));
+        return AttachmentUtils.setupAttachmentDecryptionStream(
+            algorithmURI, cipher, decryptionKey, attachment.getSourceStream());
+    }
+
+    private Attachment getAttachment(String attachmentId) throws XMLSecurityException {
+        CallbackHandler attachmentCallbackHandler =
+            ((WSSSecurityProperties) getSecurityProperties()).getAttachmentCallbackHandler();
+        if (attachmentCallbackHandler == null) {
+            throw new WSSecurityException(
+                WSSecurityException.ErrorCode.INVALID_SECURITY,
+                "empty", new Object[] {"no attachment callbackhandler supplied"}
+            );
+        }
+
+        AttachmentRequestCallback attachmentRequestCallback = new AttachmentRequestCallback();
+        attachmentRequestCallback.setAttachmentId(attachmentId);
+        try {
+            attachmentCallbackHandler.handle(new Callback[]{attachmentRequestCallback});
+        } catch (Exception e) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.INVALID_SECURITY, e);
+        }
+        List<Attachment> attachments = attachmentRequestCallback.getAttachments();
+        if (attachments == null || attachments.isEmpty() || !attachmentId.equals(attachments.get(0).getId())) {
+            throw new WSSecurityException(
+                WSSecurityException.ErrorCode.INVALID_SECURITY,
+                "empty", new Object[] {"Attachment not found"}
+            );
+        }
+        return attachments.get(0);
+    }
+
     private static final class DeferredAttachment {
 
         private EncryptedDataType encryptedDataType;
@@ -373,6 +399,7 @@ public class DecryptInputProcessor extends AbstractDecryptInputProcessor {
         }
     }
 
+
     /**
      * The DecryptedEventReaderInputProcessor reads the decrypted stream with a StAX reader and
      * forwards the generated XMLEvents
@@ -38,7 +38,6 @@ import org.apache.wss4j.stax.securityToken.UsernameSecurityToken;
 import org.apache.wss4j.stax.securityToken.WSSecurityTokenConstants;
 import org.apache.xml.security.exceptions.XMLSecurityException;
 import org.apache.xml.security.stax.config.JCEAlgorithmMapper;
-import org.apache.xml.security.stax.ext.AbstractInputSecurityHeaderHandler;
 import org.apache.xml.security.stax.ext.InputProcessorChain;
 import org.apache.xml.security.stax.ext.XMLSecurityConstants;
 import org.apache.xml.security.stax.ext.XMLSecurityProperties;
@@ -52,7 +51,7 @@ import org.apache.xml.security.stax.securityToken.SecurityTokenProvider;
 /**
  * Processor for the SecurityContextToken XML Structure
  */
-public class DerivedKeyTokenInputHandler extends AbstractInputSecurityHeaderHandler {
+public class DerivedKeyTokenInputHandler extends AbstractBindingInputSecurityHeaderHandler {
 
     @Override
     public void handle(final InputProcessorChain inputProcessorChain, final XMLSecurityProperties securityProperties,
@@ -67,6 +66,11 @@ public class DerivedKeyTokenInputHandler extends AbstractInputSecurityHeaderHand
         if (derivedKeyTokenType.getSecurityTokenReference() == null) {
             throw new WSSecurityException(WSSecurityException.ErrorCode.SECURITY_TOKEN_UNAVAILABLE, "noReference");
         }
+        if (WSSConstants.P_SHA_256.equals(derivedKeyTokenType.getAlgorithm())
+            && !((WSSSecurityProperties) securityProperties).isAllowPSha256DerivedKeyAlgorithm()) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.UNSUPPORTED_ALGORITHM, "unknownAlgorithm",
+                                          new Object[] {derivedKeyTokenType.getAlgorithm()});
+        }
 
         final List<QName> elementPath = getElementPath(eventQueue);
         final XMLSecEvent responsibleXMLSecStartXMLEvent = getResponsibleStartXMLEvent(eventQueue, index);
@@ -136,7 +140,9 @@ public class DerivedKeyTokenInputHandler extends AbstractInputSecurityHeaderHand
                                 derivedKeyTokenType.getLength().intValue(),
                                 secret,
                                 nonce,
-                                derivedKeyTokenType.getOffset().intValue()
+                                derivedKeyTokenType.getOffset().intValue(),
+                                ((WSSSecurityProperties)securityProperties).getDerivedKeyCache(),
+                                referencedSecurityToken.getId()
                         );
                         XMLSecurityConstants.AlgorithmUsage derivedKeyAlgorithmUsage;
                         if (WSSConstants.Enc.equals(algorithmUsage)) {
@@ -0,0 +1,656 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.stax.impl.processor.input;
+
+import java.math.BigInteger;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.bind.JAXBElement;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamConstants;
+
+import org.apache.wss4j.binding.wss10.AttributedString;
+import org.apache.wss4j.binding.wss10.BinarySecurityTokenType;
+import org.apache.wss4j.binding.wss10.EncodedString;
+import org.apache.wss4j.binding.wss10.KeyIdentifierType;
+import org.apache.wss4j.binding.wss10.PasswordString;
+import org.apache.wss4j.binding.wss10.ReferenceType;
+import org.apache.wss4j.binding.wss10.SecurityTokenReferenceType;
+import org.apache.wss4j.binding.wss10.UsernameTokenType;
+import org.apache.wss4j.binding.wss11.SignatureConfirmationType;
+import org.apache.wss4j.binding.wsu10.AttributedDateTime;
+import org.apache.wss4j.binding.wsu10.TimestampType;
+import org.apache.wss4j.stax.ext.WSSConstants;
+import org.apache.xml.security.binding.xmlenc.ReferenceList;
+import org.apache.xml.security.stax.ext.stax.XMLSecAttribute;
+import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
+import org.apache.xml.security.stax.ext.stax.XMLSecStartElement;
+
+/**
+ * Binds the buffered XMLSecEvents of the common security header elements (Timestamp, UsernameToken,
+ * BinarySecurityToken, SecurityTokenReference, SignatureConfirmation, DerivedKeyToken and ReferenceList)
+ * directly to the types of the bindings module, without JAXB.
+ *
+ * Only elements that are valid according to the schemas are bound, and only the common children and attributes
+ * of them. Anything else, e.g. an extension element or attribute from a namespace that has a schema, mixed
+ * content or a value that the schema validation would normalize, makes #bind return null. The element is then
+ * unmarshalled (and validated) by JAXB, so that the result, or the error, is the same as before.
+ */
+final class SecurityHeaderBinder {
+
+    private static final org.apache.wss4j.binding.wss10.ObjectFactory WSSE_FACTORY =
+        new org.apache.wss4j.binding.wss10.ObjectFactory();
+    private static final org.apache.wss4j.binding.wss11.ObjectFactory WSSE11_FACTORY =
+        new org.apache.wss4j.binding.wss11.ObjectFactory();
+    private static final org.apache.wss4j.binding.wsu10.ObjectFactory WSU_FACTORY =
+        new org.apache.wss4j.binding.wsu10.ObjectFactory();
+    private static final org.apache.wss4j.binding.wssc13.ObjectFactory WSC13_FACTORY =
+        new org.apache.wss4j.binding.wssc13.ObjectFactory();
+    private static final org.apache.wss4j.binding.wssc200502.ObjectFactory WSC200502_FACTORY =
+        new org.apache.wss4j.binding.wssc200502.ObjectFactory();
+    private static final org.apache.xml.security.binding.xmlenc.ObjectFactory XENC_FACTORY =
+        new org.apache.xml.security.binding.xmlenc.ObjectFactory();
+
+    private static final QName TAG_XENC_KEY_REFERENCE = new QName(WSSConstants.NS_XMLENC, "KeyReference");
+
+    // The namespaces of the schemas the JAXB Unmarshaller validates against. The (lax) validation of an extension
+    // attribute from one of these namespaces depends on the attribute, so such attributes are left to JAXB.
+    private static final Set<String> SCHEMA_NAMESPACES = new HashSet<>(Arrays.asList(
+        WSSConstants.NS_WSSE10, WSSConstants.NS_WSSE11, WSSConstants.NS_WSU10, WSSConstants.NS_WSC_05_02,
+        WSSConstants.NS_WSC_05_12, WSSConstants.NS_SOAP11, WSSConstants.NS_SOAP12, WSSConstants.NS_XMLENC,
+        WSSConstants.NS_XMLENC11, WSSConstants.NS_DSIG, WSSConstants.NS_DSIG11, WSSConstants.NS_C14N_EXCL,
+        "http://www.w3.org/XML/1998/namespace", "http://www.w3.org/2001/XMLSchema-instance"
+    ));
+
+    private static final BigInteger MAX_UNSIGNED_LONG = new BigInteger("18446744073709551615");
+    private static final long MAX_UNSIGNED_INT = 4294967295L;
+
+    private static final NotBindableException NOT_BINDABLE = new NotBindableException();
+
+    private final List<XMLSecEvent> xmlSecEvents;
+    private int position;
+    private Set<String> ids;
+
+    private SecurityHeaderBinder(List<XMLSecEvent> xmlSecEvents) {
+        this.xmlSecEvents = xmlSecEvents;
+    }
+
+    /**
+     * @param xmlSecEvents the events of a security header element, from its start to its end element
+     * @return the bound element, as JAXB would return it, or null if the element has to be unmarshalled by JAXB
+     */
+    static Object bind(List<XMLSecEvent> xmlSecEvents) {
+        SecurityHeaderBinder binder = new SecurityHeaderBinder(xmlSecEvents);
+        try {
+            XMLSecEvent xmlSecEvent = binder.next();
+            if (xmlSecEvent.getEventType() != XMLStreamConstants.START_ELEMENT) {
+                return null;
+            }
+            Object structure = binder.bindElement(xmlSecEvent.asStartElement());
+            if (binder.position != xmlSecEvents.size()) {
+                return null;
+            }
+            return structure;
+        } catch (NotBindableException e) {
+            return null;
+        }
+    }
+
+    private Object bindElement(XMLSecStartElement element) throws NotBindableException {
+        QName name = element.getName();
+        if (WSSConstants.TAG_WSU_TIMESTAMP.equals(name)) {
+            return WSU_FACTORY.createTimestamp(bindTimestamp(element));
+        } else if (WSSConstants.TAG_WSSE_USERNAME_TOKEN.equals(name)) {
+            return WSSE_FACTORY.createUsernameToken(bindUsernameToken(element));
+        } else if (WSSConstants.TAG_WSSE_BINARY_SECURITY_TOKEN.equals(name)) {
+            return WSSE_FACTORY.createBinarySecurityToken(bindBinarySecurityToken(element));
+        } else if (WSSConstants.TAG_WSSE_SECURITY_TOKEN_REFERENCE.equals(name)) {
+            return WSSE_FACTORY.createSecurityTokenReference(bindSecurityTokenReference(element));
+        } else if (WSSConstants.TAG_WSSE11_SIG_CONF.equals(name)) {
+            return WSSE11_FACTORY.createSignatureConfirmation(bindSignatureConfirmation(element));
+        } else if (WSSConstants.TAG_WSC0512_DKT.equals(name)) {
+            return WSC13_FACTORY.createDerivedKeyToken(bindDerivedKeyToken(element, WSSConstants.NS_WSC_05_12));
+        } else if (WSSConstants.TAG_WSC0502_DKT.equals(name)) {
+            org.apache.wss4j.binding.wssc13.DerivedKeyTokenType derivedKeyToken =
+                bindDerivedKeyToken(element, WSSConstants.NS_WSC_05_02);
+            org.apache.wss4j.binding.wssc200502.DerivedKeyTokenType derivedKeyToken200502 =
+                new org.apache.wss4j.binding.wssc200502.DerivedKeyTokenType();
+            derivedKeyToken200502.setSecurityTokenReference(derivedKeyToken.getSecurityTokenReference());
+            derivedKeyToken200502.setGeneration(derivedKeyToken.getGeneration());
+            derivedKeyToken200502.setOffset(derivedKeyToken.getOffset());
+            derivedKeyToken200502.setLength(derivedKeyToken.getLength());
+            derivedKeyToken200502.setLabel(derivedKeyToken.getLabel());
+            derivedKeyToken200502.setNonce(derivedKeyToken.getNonce());
+            derivedKeyToken200502.setId(derivedKeyToken.getId());
+            derivedKeyToken200502.setAlgorithm(derivedKeyToken.getAlgorithm());
+            return WSC200502_FACTORY.createDerivedKeyToken(derivedKeyToken200502);
+        } else if (WSSConstants.TAG_xenc_ReferenceList.equals(name)) {
+            return bindReferenceList(element);
+        }
+        return null;
+    }
+
+    private TimestampType bindTimestamp(XMLSecStartElement element) throws NotBindableException {
+        TimestampType timestamp = new TimestampType();
+        for (XMLSecAttribute attribute : element.getOnElementDeclaredAttributes()) {
+            if (WSSConstants.ATT_WSU_ID.equals(attribute.getName())) {
+                timestamp.setId(id(attribute));
+            } else {
+                otherAttribute(attribute, timestamp.getOtherAttributes());
+            }
+        }
+        XMLSecStartElement child = nextChildElement();
+        if (child != null && WSSConstants.TAG_WSU_CREATED.equals(child.getName())) {
+            timestamp.setCreated(bindAttributedDateTime(child));
+            child = nextChildElement();
+        }
+        if (child != null && WSSConstants.TAG_WSU_EXPIRES.equals(child.getName())) {
+            timestamp.setExpires(bindAttributedDateTime(child));
+            child = nextChildElement();
+        }
+        if (child != null) {
+            throw NOT_BINDABLE;
+        }
+        return timestamp;
+    }
+
+    private AttributedDateTime bindAttributedDateTime(XMLSecStartElement element) throws NotBindableException {
+        AttributedDateTime attributedDateTime = new AttributedDateTime();
+        for (XMLSecAttribute attribute : element.getOnElementDeclaredAttributes()) {
+            if (WSSConstants.ATT_WSU_ID.equals(attribute.getName())) {
+                attributedDateTime.setId(id(attribute));
+            } else {
+                otherAttribute(attribute, attributedDateTime.getOtherAttributes());
+            }
+        }
+        attributedDateTime.setValue(text());
+        return attributedDateTime;
+    }
+
+    private UsernameTokenType bindUsernameToken(XMLSecStartElement element) throws NotBindableException {
+        UsernameTokenType usernameToken = new UsernameTokenType();
+        for (XMLSecAttribute attribute : element.getOnElementDeclaredAttributes()) {
+            if (WSSConstants.ATT_WSU_ID.equals(attribute.getName())) {
+                usernameToken.setId(id(attribute));
+            } else {
+                otherAttribute(attribute, usernameToken.getOtherAttributes());
+            }
+        }
+        XMLSecStartElement child = nextChildElement();
+        if (child == null || !WSSConstants.TAG_WSSE_USERNAME.equals(child.getName())) {
+            throw NOT_BINDABLE;
+        }
+        AttributedString username = new AttributedString();
+        bindAttributedString(child, username);
+        username.setValue(text());
+        usernameToken.setUsername(username);
+
+        List<Object> any = usernameToken.getAny();
+        for (child = nextChildElement(); child != null; child = nextChildElement()) {
+            QName name = child.getName();
+            if (WSSConstants.TAG_WSSE_PASSWORD.equals(name)) {
+                PasswordString password = new PasswordString();
+                for (XMLSecAttribute attribute : child.getOnElementDeclaredAttributes()) {
+                    if (WSSConstants.ATT_NULL_Type.equals(attribute.getName())) {
+                        password.setType(uri(attribute.getValue()));
+                    } else if (WSSConstants.ATT_WSU_ID.equals(attribute.getName())) {
+                        password.setId(id(attribute));
+                    } else {
+                        otherAttribute(attribute, password.getOtherAttributes());
+                    }
+                }
+                password.setValue(text());
+                any.add(WSSE_FACTORY.createPassword(password));
+            } else if (WSSConstants.TAG_WSSE_NONCE.equals(name)) {
+                EncodedString nonce = new EncodedString();
+                bindEncodedString(child, nonce);
+                nonce.setValue(text());
+                any.add(WSSE_FACTORY.createNonce(nonce));
+            } else if (WSSConstants.TAG_WSU_CREATED.equals(name)) {
+                any.add(WSU_FACTORY.createCreated(bindAttributedDateTime(child)));
+            } else if (WSSConstants.TAG_WSSE11_SALT.equals(name)) {
+                noAttributes(child);
+                any.add(WSSE11_FACTORY.createSalt(base64Binary(text())));
+            } else if (WSSConstants.TAG_WSSE11_ITERATION.equals(name)) {
+                noAttributes(child);
+                any.add(WSSE11_FACTORY.createIteration(unsignedInt(text())));
+            } else {
+                throw NOT_BINDABLE;
+            }
+        }
+        return usernameToken;
+    }
+
+    private BinarySecurityTokenType bindBinarySecurityToken(XMLSecStartElement element) throws NotBindableException {
+        BinarySecurityTokenType binarySecurityToken = new BinarySecurityTokenType();
+        for (XMLSecAttribute attribute : element.getOnElementDeclaredAttributes()) {
+            QName name = attribute.getName();
+            if (WSSConstants.ATT_NULL_VALUE_TYPE.equals(name)) {
+                binarySecurityToken.setValueType(uri(attribute.getValue()));
+            } else if (WSSConstants.ATT_NULL_ENCODING_TYPE.equals(name)) {
+                binarySecurityToken.setEncodingType(uri(attribute.getValue()));
+            } else if (WSSConstants.ATT_WSU_ID.equals(name)) {
+                binarySecurityToken.setId(id(attribute));
+            } else {
+                otherAttribute(attribute, binarySecurityToken.getOtherAttributes());
+            }
+        }
+        binarySecurityToken.setValue(text());
+        return binarySecurityToken;
+    }
+
+    private SecurityTokenReferenceType bindSecurityTokenReference(XMLSecStartElement element)
+        throws NotBindableException {
+        SecurityTokenReferenceType securityTokenReference = new SecurityTokenReferenceType();
+        for (XMLSecAttribute attribute : element.getOnElementDeclaredAttributes()) {
+            QName name = attribute.getName();
+            if (WSSConstants.ATT_WSU_ID.equals(name)) {
+                securityTokenReference.setId(id(attribute));
+            } else if (WSSConstants.ATT_WSSE11_TOKEN_TYPE.equals(name)) {
+                securityTokenReference.getOtherAttributes().put(name, uri(attribute.getValue()));
+            } else {
+                otherAttribute(attribute, securityTokenReference.getOtherAttributes());
+            }
+        }
+        List<Object> any = securityTokenReference.getAny();
+        for (XMLSecStartElement child = nextChildElement(); child != null; child = nextChildElement()) {
+            QName name = child.getName();
+            if (WSSConstants.TAG_WSSE_KEY_IDENTIFIER.equals(name)) {
+                KeyIdentifierType keyIdentifier = new KeyIdentifierType();
+                for (XMLSecAttribute attribute : child.getOnElementDeclaredAttributes()) {
+                    if (WSSConstants.ATT_NULL_VALUE_TYPE.equals(attribute.getName())) {
+                        keyIdentifier.setValueType(uri(attribute.getValue()));
+                    } else if (WSSConstants.ATT_NULL_ENCODING_TYPE.equals(attribute.getName())) {
+                        keyIdentifier.setEncodingType(uri(attribute.getValue()));
+                    } else if (WSSConstants.ATT_WSU_ID.equals(attribute.getName())) {
+                        keyIdentifier.setId(id(attribute));
+                    } else {
+                        otherAttribute(attribute, keyIdentifier.getOtherAttributes());
+                    }
+                }
+                keyIdentifier.setValue(text());
+                any.add(WSSE_FACTORY.createKeyIdentifier(keyIdentifier));
+            } else if (WSSConstants.TAG_WSSE_REFERENCE.equals(name)) {
+                ReferenceType reference = new ReferenceType();
+                for (XMLSecAttribute attribute : child.getOnElementDeclaredAttributes()) {
+                    if (WSSConstants.ATT_NULL_URI.equals(attribute.getName())) {
+                        reference.setURI(uri(attribute.getValue()));
+                    } else if (WSSConstants.ATT_NULL_VALUE_TYPE.equals(attribute.getName())) {
+                        reference.setValueType(uri(attribute.getValue()));
+                    } else {
+                        otherAttribute(attribute, reference.getOtherAttributes());
+                    }
+                }
+                emptyContent();
+                any.add(WSSE_FACTORY.createReference(reference));
+            } else {
+                throw NOT_BINDABLE;
+            }
+        }
+        return securityTokenReference;
+    }
+
+    private SignatureConfirmationType bindSignatureConfirmation(XMLSecStartElement element)
+        throws NotBindableException {
+        SignatureConfirmationType signatureConfirmation = new SignatureConfirmationType();
+        boolean value = false;
+        for (XMLSecAttribute attribute : element.getOnElementDeclaredAttributes()) {
+            if (WSSConstants.ATT_NULL_VALUE.equals(attribute.getName())) {
+                signatureConfirmation.setValue(base64Binary(attribute.getValue()));
+                value = true;
+            } else if (WSSConstants.ATT_WSU_ID.equals(attribute.getName())) {
+                signatureConfirmation.setId(id(attribute));
+            } else {
+                throw NOT_BINDABLE;
+            }
+        }
+        if (!value) {
+            throw NOT_BINDABLE;
+        }
+        emptyContent();
+        return signatureConfirmation;
+    }
+
+    /**
+     * Binds a DerivedKeyToken of the given namespace. Both versions have the same content model, and the
+     * version 1.3 type is used to hold the values of either.
+     */
+    private org.apache.wss4j.binding.wssc13.DerivedKeyTokenType bindDerivedKeyToken(
+        XMLSecStartElement element, String namespace
+    ) throws NotBindableException {
+        org.apache.wss4j.binding.wssc13.DerivedKeyTokenType derivedKeyToken =
+            new org.apache.wss4j.binding.wssc13.DerivedKeyTokenType();
+        for (XMLSecAttribute attribute : element.getOnElementDeclaredAttributes()) {
+            if (WSSConstants.ATT_NULL_Algorithm.equals(attribute.getName())) {
+                derivedKeyToken.setAlgorithm(uri(attribute.getValue()));
+            } else if (WSSConstants.ATT_WSU_ID.equals(attribute.getName())) {
+                derivedKeyToken.setId(id(attribute));
+            } else {
+                throw NOT_BINDABLE;
+            }
+        }
+
+        XMLSecStartElement child = nextChildElement();
+        if (child != null && WSSConstants.TAG_WSSE_SECURITY_TOKEN_REFERENCE.equals(child.getName())) {
+            derivedKeyToken.setSecurityTokenReference(bindSecurityTokenReference(child));
+            child = nextChildElement();
+        }
+        // Properties are left to JAXB
+        if (child != null && namespace.equals(child.getName().getNamespaceURI())) {
+            String localName = child.getName().getLocalPart();
+            if ("Generation".equals(localName) || "Offset".equals(localName)) {
+                noAttributes(child);
+                if ("Generation".equals(localName)) {
+                    derivedKeyToken.setGeneration(unsignedLong(text()));
+                } else {
+                    derivedKeyToken.setOffset(unsignedLong(text()));
+                }
+                child = nextChildElement();
+                if (child != null && isElement(child, namespace, "Length")) {
+                    noAttributes(child);
+                    derivedKeyToken.setLength(unsignedLong(text()));
+                    child = nextChildElement();
+                }
+            }
+        }
+        if (child != null && isElement(child, namespace, "Label")) {
+            noAttributes(child);
+            derivedKeyToken.setLabel(text());
+            child = nextChildElement();
+        }
+        if (child != null && isElement(child, namespace, "Nonce")) {
+            noAttributes(child);
+            derivedKeyToken.setNonce(base64Binary(text()));
+            child = nextChildElement();
+        }
+        if (child != null) {
+            throw NOT_BINDABLE;
+        }
+        return derivedKeyToken;
+    }
+
+    private ReferenceList bindReferenceList(XMLSecStartElement element) throws NotBindableException {
+        noAttributes(element);
+        ReferenceList referenceList = XENC_FACTORY.createReferenceList();
+        List<JAXBElement<org.apache.xml.security.binding.xmlenc.ReferenceType>> references =
+            referenceList.getDataReferenceOrKeyReference();
+        for (XMLSecStartElement child = nextChildElement(); child != null; child = nextChildElement()) {
+            boolean dataReference = WSSConstants.TAG_xenc_DataReference.equals(child.getName());
+            if (!dataReference && !TAG_XENC_KEY_REFERENCE.equals(child.getName())) {
+                throw NOT_BINDABLE;
+            }
+            org.apache.xml.security.binding.xmlenc.ReferenceType reference = XENC_FACTORY.createReferenceType();
+            List<XMLSecAttribute> attributes = child.getOnElementDeclaredAttributes();
+            if (attributes.size() != 1 || !WSSConstants.ATT_NULL_URI.equals(attributes.get(0).getName())) {
+                throw NOT_BINDABLE;
+            }
+            reference.setURI(uri(attributes.get(0).getValue()));
+            if (nextChildElement() != null) {
+                throw NOT_BINDABLE;
+            }
+            if (dataReference) {
+                references.add(XENC_FACTORY.createReferenceListDataReference(reference));
+            } else {
+                references.add(XENC_FACTORY.createReferenceListKeyReference(reference));
+            }
+        }
+        if (references.isEmpty()) {
+            throw NOT_BINDABLE;
+        }
+        return referenceList;
+    }
+
+    private void bindAttributedString(XMLSecStartElement element, AttributedString attributedString)
+        throws NotBindableException {
+        for (XMLSecAttribute attribute : element.getOnElementDeclaredAttributes()) {
+            if (WSSConstants.ATT_WSU_ID.equals(attribute.getName())) {
+                attributedString.setId(id(attribute));
+            } else {
+                otherAttribute(attribute, attributedString.getOtherAttributes());
+            }
+        }
+    }
+
+    private void bindEncodedString(XMLSecStartElement element, EncodedString encodedString)
+        throws NotBindableException {
+        for (XMLSecAttribute attribute : element.getOnElementDeclaredAttributes()) {
+            if (WSSConstants.ATT_NULL_ENCODING_TYPE.equals(attribute.getName())) {
+                encodedString.setEncodingType(uri(attribute.getValue()));
+            } else if (WSSConstants.ATT_WSU_ID.equals(attribute.getName())) {
+                encodedString.setId(id(attribute));
+            } else {
+                otherAttribute(attribute, encodedString.getOtherAttributes());
+            }
+        }
+    }
+
+    private XMLSecEvent next() throws NotBindableException {
+        if (position == xmlSecEvents.size()) {
+            throw NOT_BINDABLE;
+        }
+        return xmlSecEvents.get(position++);
+    }
+
+    /**
+     * Returns the next child element of the current element, or null if the end element of the current element
+     * was reached. Only whitespace, comments and processing instructions may occur between the child elements.
+     */
+    private XMLSecStartElement nextChildElement() throws NotBindableException {
+        while (true) {
+            XMLSecEvent xmlSecEvent = next();
+            switch (xmlSecEvent.getEventType()) {
+            case XMLStreamConstants.START_ELEMENT:
+                return xmlSecEvent.asStartElement();
+            case XMLStreamConstants.END_ELEMENT:
+                return null;
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.SPACE:
+                if (!isWhitespace(xmlSecEvent.asCharacters().getText())) {
+                    throw NOT_BINDABLE;
+                }
+                break;
+            case XMLStreamConstants.COMMENT:
+            case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                break;
+            default:
+                throw NOT_BINDABLE;
+            }
+        }
+    }
+
+    /**
+     * Consumes the end element of an element with empty content, which must not even contain whitespace
+     */
+    private void emptyContent() throws NotBindableException {
+        while (true) {
+            int eventType = next().getEventType();
+            if (eventType == XMLStreamConstants.END_ELEMENT) {
+                return;
+            } else if (eventType != XMLStreamConstants.COMMENT
+                && eventType != XMLStreamConstants.PROCESSING_INSTRUCTION) {
+                throw NOT_BINDABLE;
+            }
+        }
+    }
+
+    /**
+     * Returns the (non-empty) text content of an element with simple content, and consumes its end element
+     */
+    private String text() throws NotBindableException {
+        StringBuilder text = new StringBuilder();
+        while (true) {
+            XMLSecEvent xmlSecEvent = next();
+            switch (xmlSecEvent.getEventType()) {
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+            case XMLStreamConstants.SPACE:
+                text.append(xmlSecEvent.asCharacters().getText());
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                if (text.length() == 0) {
+                    throw NOT_BINDABLE;
+                }
+                return text.toString();
+            default:
+                throw NOT_BINDABLE;
+            }
+        }
+    }
+
+    private String id(XMLSecAttribute attribute) throws NotBindableException {
+        String id = attribute.getValue();
+        // A conservative subset of the NCNames, which the (collapsing) JAXB adapter does not modify
+        if (id.isEmpty() || !isNameStartChar(id.charAt(0))) {
+            throw NOT_BINDABLE;
+        }
+        for (int i = 1; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (!isNameStartChar(c) && !(c >= '0' && c <= '9') && c != '-' && c != '.') {
+                throw NOT_BINDABLE;
+            }
+        }
+        if (ids == null) {
+            ids = new HashSet<>();
+        }
+        if (!ids.add(id)) {
+            throw NOT_BINDABLE;
+        }
+        return id;
+    }
+
+    private static boolean isNameStartChar(char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c == '_';
+    }
+
+    private static String uri(String value) throws NotBindableException {
+        try {
+            new URI(value);
+        } catch (URISyntaxException e) {
+            throw NOT_BINDABLE;
+        }
+        return value;
+    }
+
+    private static void otherAttribute(XMLSecAttribute attribute, Map<QName, String> otherAttributes)
+        throws NotBindableException {
+        String namespace = attribute.getName().getNamespaceURI();
+        if (namespace == null || namespace.isEmpty() || SCHEMA_NAMESPACES.contains(namespace)) {
+            throw NOT_BINDABLE;
+        }
+        otherAttributes.put(attribute.getName(), attribute.getValue());
+    }
+
+    private static void noAttributes(XMLSecStartElement element) throws NotBindableException {
+        if (!element.getOnElementDeclaredAttributes().isEmpty()) {
+            throw NOT_BINDABLE;
+        }
+    }
+
+    private static boolean isElement(XMLSecStartElement element, String namespace, String localName) {
+        QName name = element.getName();
+        return namespace.equals(name.getNamespaceURI()) && localName.equals(name.getLocalPart());
+    }
+
+    private static boolean isWhitespace(char[] text) {
+        for (char c : text) {
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes a base64Binary value without whitespace
+     */
+    private static byte[] base64Binary(String value) throws NotBindableException {
+        int length = value.length();
+        if (length % 4 != 0) {
+            throw NOT_BINDABLE;
+        }
+        int padding = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c == '=') {
+                padding++;
+            } else if (padding > 0 || !(c >= 'A' && c <= 'Z' || c >= 'a' && c <= 'z' || c >= '0' && c <= '9'
+                || c == '+' || c == '/')) {
+                throw NOT_BINDABLE;
+            }
+        }
+        // The schema requires the unused bits before the padding to be zero
+        if (padding > 2
+            || padding == 2 && "AQgw".indexOf(value.charAt(length - 3)) < 0
+            || padding == 1 && "AEIMQUYcgkosw048".indexOf(value.charAt(length - 2)) < 0) {
+            throw NOT_BINDABLE;
+        }
+        return Base64.getDecoder().decode(value);
+    }
+
+    private static BigInteger unsignedLong(String value) throws NotBindableException {
+        if (!isDigits(value) || value.length() > 20) {
+            throw NOT_BINDABLE;
+        }
+        BigInteger unsignedLong = new BigInteger(value);
+        if (unsignedLong.compareTo(MAX_UNSIGNED_LONG) > 0) {
+            throw NOT_BINDABLE;
+        }
+        return unsignedLong;
+    }
+
+    private static Long unsignedInt(String value) throws NotBindableException {
+        if (!isDigits(value) || value.length() > 10) {
+            throw NOT_BINDABLE;
+        }
+        long unsignedInt = Long.parseLong(value);
+        if (unsignedInt > MAX_UNSIGNED_INT) {
+            throw NOT_BINDABLE;
+        }
+        return unsignedInt;
+    }
+
+    private static boolean isDigits(String value) {
+        if (value.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class NotBindableException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        NotBindableException() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -24,7 +24,6 @@ import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.stax.ext.WSInboundSecurityContext;
 import org.apache.wss4j.stax.securityEvent.SignatureConfirmationSecurityEvent;
 import org.apache.xml.security.exceptions.XMLSecurityException;
-import org.apache.xml.security.stax.ext.AbstractInputSecurityHeaderHandler;
 import org.apache.xml.security.stax.ext.InputProcessorChain;
 import org.apache.xml.security.stax.ext.XMLSecurityProperties;
 import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
@@ -35,7 +34,7 @@ import java.util.Deque;
 /**
  * Processor for the SignatureConfirmation XML Structure
  */
-public class SignatureConfirmationInputHandler extends AbstractInputSecurityHeaderHandler {
+public class SignatureConfirmationInputHandler extends AbstractBindingInputSecurityHeaderHandler {
 
     @Override
     public void handle(final InputProcessorChain inputProcessorChain, final XMLSecurityProperties securityProperties,
@@ -29,7 +29,6 @@ import org.apache.wss4j.stax.validate.TimestampValidator;
 import org.apache.wss4j.stax.validate.TimestampValidatorImpl;
 import org.apache.wss4j.stax.validate.TokenContext;
 import org.apache.xml.security.exceptions.XMLSecurityException;
-import org.apache.xml.security.stax.ext.AbstractInputSecurityHeaderHandler;
 import org.apache.xml.security.stax.ext.InputProcessorChain;
 import org.apache.xml.security.stax.ext.XMLSecurityProperties;
 import org.apache.xml.security.stax.ext.XMLSecurityUtils;
@@ -47,7 +46,7 @@ import java.time.temporal.ChronoField;
 import java.util.Deque;
 import java.util.List;
 
-public class TimestampInputHandler extends AbstractInputSecurityHeaderHandler {
+public class TimestampInputHandler extends AbstractBindingInputSecurityHeaderHandler {
 
     @Override
     public void handle(final InputProcessorChain inputProcessorChain, final XMLSecurityProperties securityProperties,
@@ -54,7 +54,7 @@ import java.util.List;
 /**
  * Processor for the UsernameToken XML Structure
  */
-public class UsernameTokenInputHandler extends AbstractInputSecurityHeaderHandler {
+public class UsernameTokenInputHandler extends AbstractBindingInputSecurityHeaderHandler {
 
     @Override
     public void handle(final InputProcessorChain inputProcessorChain, final XMLSecurityProperties securityProperties,
@@ -18,20 +18,48 @@
  */
 package org.apache.wss4j.stax.impl.processor.input;
 
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.PublicKey;
+import java.security.cert.X509Certificate;
+import java.security.spec.MGF1ParameterSpec;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.OAEPParameterSpec;
+import javax.crypto.spec.PSource;
+import javax.crypto.spec.SecretKeySpec;
+
 import org.apache.wss4j.binding.wss10.ObjectFactory;
 import org.apache.wss4j.binding.wss10.ReferenceType;
 import org.apache.wss4j.binding.wss10.SecurityTokenReferenceType;
 import org.apache.wss4j.common.bsp.BSPRule;
+import org.apache.wss4j.common.cache.EncryptedKeyCache;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.KeyUtils;
 import org.apache.wss4j.stax.ext.WSInboundSecurityContext;
+import org.apache.xml.security.binding.xmldsig.DigestMethodType;
 import org.apache.xml.security.binding.xmldsig.KeyInfoType;
 import org.apache.xml.security.binding.xmlenc.EncryptedKeyType;
 import org.apache.xml.security.binding.xmlenc.EncryptionMethodType;
+import org.apache.xml.security.binding.xmlenc11.MGFType;
 import org.apache.xml.security.exceptions.XMLSecurityException;
+import org.apache.xml.security.stax.config.JCEAlgorithmMapper;
+import org.apache.xml.security.stax.ext.InboundSecurityContext;
 import org.apache.xml.security.stax.ext.InputProcessorChain;
+import org.apache.xml.security.stax.ext.XMLSecurityConstants;
 import org.apache.xml.security.stax.ext.XMLSecurityProperties;
+import org.apache.xml.security.stax.ext.XMLSecurityUtils;
 import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
 import org.apache.xml.security.stax.impl.processor.input.XMLEncryptedKeyInputHandler;
+import org.apache.xml.security.stax.impl.securityToken.AbstractInboundSecurityToken;
+import org.apache.xml.security.stax.securityEvent.AlgorithmSuiteSecurityEvent;
+import org.apache.xml.security.stax.securityToken.InboundSecurityToken;
+import org.apache.xml.security.stax.securityToken.SecurityTokenProvider;
+import org.apache.xml.security.utils.XMLUtils;
 import org.apache.wss4j.stax.ext.WSSConstants;
 import org.apache.wss4j.stax.ext.WSSSecurityProperties;
 
@@ -63,6 +91,177 @@ public class WSSEncryptedKeyInputHandler extends XMLEncryptedKeyInputHandler {
         }
 
         super.handle(inputProcessorChain, encryptedKeyType, responsibleXMLSecStartXMLEvent, securityProperties);
+
+        // Remember the EncryptedKey, so that its symmetric key can be taken from the cache when it is used
+        if (((WSSSecurityProperties) securityProperties).getEncryptedKeyCache() != null
+            && encryptedKeyType.getId() != null) {
+            InboundSecurityContext securityContext = inputProcessorChain.getSecurityContext();
+            Map<String, EncryptedKeyType> encryptedKeys = securityContext.get(WSSConstants.PROP_ENCRYPTED_KEYS);
+            if (encryptedKeys == null) {
+                encryptedKeys = new HashMap<>();
+                securityContext.put(WSSConstants.PROP_ENCRYPTED_KEYS, encryptedKeys);
+            }
+            encryptedKeys.put(encryptedKeyType.getId(), encryptedKeyType);
+        }
+    }
+
+    /**
+     * Set the symmetric key of an EncryptedKey token from the EncryptedKeyCache, or unwrap it and cache it
+     * if it is not cached yet. The private key of the recipient is still retrieved from the key wrapping
+     * token, so that the same checks and security events apply as for an EncryptedKey that is not cached.
+     * Nothing is done if the cache is not enabled, if the token is not a received EncryptedKey, or if the
+     * EncryptedKey is not wrapped with a public key.
+     */
+    static void setCachedSecretKey(InboundSecurityToken inboundSecurityToken, String algorithmURI,
+                                   String correlationID, WSSSecurityProperties securityProperties,
+                                   InboundSecurityContext inboundSecurityContext) throws XMLSecurityException {
+        EncryptedKeyCache encryptedKeyCache = securityProperties.getEncryptedKeyCache();
+        if (encryptedKeyCache == null) {
+            return;
+        }
+        Map<String, EncryptedKeyType> encryptedKeys = inboundSecurityContext.get(WSSConstants.PROP_ENCRYPTED_KEYS);
+        EncryptedKeyType encryptedKeyType =
+            encryptedKeys == null ? null : encryptedKeys.get(inboundSecurityToken.getId());
+        if (encryptedKeyType == null || encryptedKeyType.getEncryptionMethod() == null) {
+            return;
+        }
+        // The given token is a proxy of the EncryptedKey token if it was referenced via a SecurityTokenReference
+        SecurityTokenProvider<? extends InboundSecurityToken> securityTokenProvider =
+            inboundSecurityContext.getSecurityTokenProvider(encryptedKeyType.getId());
+        if (securityTokenProvider == null
+            || !(securityTokenProvider.getSecurityToken() instanceof AbstractInboundSecurityToken)
+            || inboundSecurityToken.getSecretKey().containsKey(algorithmURI)) {
+            return;
+        }
+        AbstractInboundSecurityToken encryptedKeySecurityToken =
+            (AbstractInboundSecurityToken) securityTokenProvider.getSecurityToken();
+        String keyTransportAlgorithm = encryptedKeyType.getEncryptionMethod().getAlgorithm();
+        byte[] encryptedKey = getCipherValue(encryptedKeyType);
+        if (keyTransportAlgorithm == null || encryptedKey == null) {
+            return;
+        }
+
+        InboundSecurityToken wrappingSecurityToken = encryptedKeySecurityToken.getKeyWrappingToken();
+        if (wrappingSecurityToken == null || !wrappingSecurityToken.isAsymmetric()) {
+            return;
+        }
+        PublicKey publicKey = wrappingSecurityToken.getPublicKey();
+        X509Certificate[] certificates = wrappingSecurityToken.getX509Certificates();
+        if (certificates != null && certificates.length > 0) {
+            publicKey = certificates[0].getPublicKey();
+        }
+        if (publicKey == null) {
+            return;
+        }
+
+        List<Object> encryptionMethodContent = encryptedKeyType.getEncryptionMethod().getContent();
+        DigestMethodType digestMethodType =
+            XMLSecurityUtils.getQNameType(encryptionMethodContent, XMLSecurityConstants.TAG_dsig_DigestMethod);
+        MGFType mgfType = XMLSecurityUtils.getQNameType(encryptionMethodContent, XMLSecurityConstants.TAG_xenc11_MGF);
+        byte[] oaepParams =
+            XMLSecurityUtils.getQNameType(encryptionMethodContent, XMLSecurityConstants.TAG_xenc_OAEPparams);
+        boolean oaep = WSSConstants.NS_XENC11_RSAOAEP.equals(keyTransportAlgorithm)
+            || WSSConstants.NS_XENC_RSAOAEPMGF1P.equals(keyTransportAlgorithm);
+
+        // The private key is requested for every message
+        Key privateKey =
+            wrappingSecurityToken.getSecretKey(keyTransportAlgorithm, XMLSecurityConstants.Asym_Key_Wrap, correlationID);
+        if (oaep && digestMethodType != null) {
+            AlgorithmSuiteSecurityEvent algorithmSuiteSecurityEvent = new AlgorithmSuiteSecurityEvent();
+            algorithmSuiteSecurityEvent.setAlgorithmURI(digestMethodType.getAlgorithm());
+            algorithmSuiteSecurityEvent.setAlgorithmUsage(XMLSecurityConstants.EncDig);
+            algorithmSuiteSecurityEvent.setCorrelationID(correlationID);
+            inboundSecurityContext.registerSecurityEvent(algorithmSuiteSecurityEvent);
+        }
+
+        String cacheKey = EncryptedKeyCache.getCacheKey(
+            encryptedKey, keyTransportAlgorithm,
+            digestMethodType == null ? null : digestMethodType.getAlgorithm(),
+            mgfType == null ? null : mgfType.getAlgorithm(),
+            oaepParams, publicKey);
+        byte[] secret = encryptedKeyCache.get(cacheKey);
+        if (secret == null) {
+            secret = unwrap(encryptedKey, keyTransportAlgorithm, algorithmURI, privateKey,
+                            oaep, digestMethodType, mgfType, oaepParams, encryptedKeyCache, cacheKey);
+        }
+
+        encryptedKeySecurityToken.setSha1Identifier(XMLUtils.encodeToString(KeyUtils.generateDigest(encryptedKey)));
+        encryptedKeySecurityToken.setSecretKey(
+            algorithmURI, new SecretKeySpec(secret, JCEAlgorithmMapper.getJCEKeyAlgorithmFromURI(algorithmURI)));
+    }
+
+    private static byte[] unwrap(byte[] encryptedKey, String keyTransportAlgorithm, String algorithmURI,
+                                 Key privateKey, boolean oaep, DigestMethodType digestMethodType, MGFType mgfType,
+                                 byte[] oaepParams, EncryptedKeyCache encryptedKeyCache, String cacheKey)
+        throws XMLSecurityException {
+        String jceName = JCEAlgorithmMapper.translateURItoJCEID(keyTransportAlgorithm);
+        String jceProvider = JCEAlgorithmMapper.getJCEProviderFromURI(keyTransportAlgorithm);
+        if (jceName == null) {
+            throw new XMLSecurityException("algorithms.NoSuchMap",
+                                           new Object[] {keyTransportAlgorithm});
+        }
+
+        Cipher cipher;
+        try {
+            if (jceProvider == null) {
+                cipher = Cipher.getInstance(jceName);
+            } else {
+                cipher = Cipher.getInstance(jceName, jceProvider);
+            }
+            if (oaep) {
+                String jceDigestAlgorithm = "SHA-1";
+                if (digestMethodType != null) {
+                    jceDigestAlgorithm = JCEAlgorithmMapper.translateURItoJCEID(digestMethodType.getAlgorithm());
+                }
+                PSource.PSpecified pSource = PSource.PSpecified.DEFAULT;
+                if (oaepParams != null) {
+                    pSource = new PSource.PSpecified(oaepParams);
+                }
+                MGF1ParameterSpec mgfParameterSpec = new MGF1ParameterSpec("SHA-1");
+                if (mgfType != null) {
+                    mgfParameterSpec =
+                        new MGF1ParameterSpec(JCEAlgorithmMapper.translateURItoJCEID(mgfType.getAlgorithm()));
+                }
+                OAEPParameterSpec oaepParameterSpec =
+                    new OAEPParameterSpec(jceDigestAlgorithm, "MGF1", mgfParameterSpec, pSource);
+                cipher.init(Cipher.UNWRAP_MODE, privateKey, oaepParameterSpec);
+            } else {
+                cipher.init(Cipher.UNWRAP_MODE, privateKey);
+            }
+        } catch (GeneralSecurityException e) {
+            throw new XMLSecurityException(e);
+        }
+
+        try {
+            byte[] secret = cipher.unwrap(encryptedKey,
+                                          JCEAlgorithmMapper.getJCEKeyAlgorithmFromURI(algorithmURI),
+                                          Cipher.SECRET_KEY).getEncoded();
+            // Only a key that was unwrapped successfully is cached, never the random key below
+            encryptedKeyCache.put(cacheKey, secret);
+            return secret;
+        } catch (IllegalStateException e) {
+            throw new XMLSecurityException(e);
+        } catch (Exception e) {
+            LOG.warn("Unwrapping of the encrypted key failed with error: " + e.getMessage() + ". "
+                + "Generating a faked one to mitigate timing attacks.");
+            int keyLength = JCEAlgorithmMapper.getKeyLengthFromURI(algorithmURI);
+            return XMLSecurityConstants.generateBytes(keyLength / 8);
+        }
+    }
+
+    private static byte[] getCipherValue(EncryptedKeyType encryptedKeyType) {
+        if (encryptedKeyType.getCipherData() == null || encryptedKeyType.getCipherData().getCipherValue() == null) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Object content : encryptedKeyType.getCipherData().getCipherValue().getContent()) {
+            if (!(content instanceof String)) {
+                // The CipherValue is an attachment
+                return null;
+            }
+            sb.append((String) content);
+        }
+        return Base64.getMimeDecoder().decode(sb.toString());
     }
 
     //if this EncryptedKey structure contains a reference list, instantiate a new DecryptInputProcessor
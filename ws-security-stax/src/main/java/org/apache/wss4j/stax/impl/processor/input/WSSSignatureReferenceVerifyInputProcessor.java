@@ -18,18 +18,26 @@
  */
 package org.apache.wss4j.stax.impl.processor.input;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoField;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import javax.security.auth.callback.Callback;
 import javax.security.auth.callback.CallbackHandler;
@@ -43,6 +51,7 @@ import org.apache.wss4j.common.ext.Attachment;
 import org.apache.wss4j.common.ext.AttachmentRequestCallback;
 import org.apache.wss4j.common.ext.AttachmentResultCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.AttachmentUtils;
 import org.apache.wss4j.stax.ext.WSInboundSecurityContext;
 import org.apache.wss4j.stax.ext.WSSConstants;
 import org.apache.wss4j.stax.ext.WSSSecurityProperties;
@@ -77,8 +86,14 @@ import org.apache.xml.security.utils.UnsyncBufferedOutputStream;
 
 public class WSSSignatureReferenceVerifyInputProcessor extends AbstractSignatureReferenceVerifyInputProcessor {
 
+    private static final transient org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(WSSSignatureReferenceVerifyInputProcessor.class);
+
     private boolean replayChecked = false;
 
+    // The attachments that were digested in parallel, see WSSSecurityProperties#setReferenceVerificationExecutor
+    private Map<ReferenceType, AttachmentReference> verifiedAttachmentReferences = Collections.emptyMap();
+
     public WSSSignatureReferenceVerifyInputProcessor(InputProcessorChain inputProcessorChain,
             SignatureType signatureType, InboundSecurityToken inboundSecurityToken,
             XMLSecurityProperties securityProperties) throws XMLSecurityException {
@@ -89,94 +104,102 @@ public class WSSSignatureReferenceVerifyInputProcessor extends AbstractSignature
     }
 
     @Override
-    protected void verifyExternalReference(
-            InputProcessorChain inputProcessorChain, InputStream inputStream,
-            final ReferenceType referenceType) throws XMLSecurityException, XMLStreamException {
-
-        if (referenceType.getURI().startsWith("cid:")) {
+    public void doFinal(InputProcessorChain inputProcessorChain) throws XMLStreamException, XMLSecurityException {
+        Executor executor = ((WSSSecurityProperties) getSecurityProperties()).getReferenceVerificationExecutor();
+        if (executor != null) {
+            verifyAttachmentReferences(inputProcessorChain, executor);
+        }
+        super.doFinal(inputProcessorChain);
+    }
 
-            CallbackHandler attachmentCallbackHandler =
-                    ((WSSSecurityProperties) getSecurityProperties()).getAttachmentCallbackHandler();
-            if (attachmentCallbackHandler == null) {
-                throw new WSSecurityException(
-                        WSSecurityException.ErrorCode.INVALID_SECURITY,
-                        "empty", new Object[] {"no attachment callbackhandler supplied"}
-                );
+    /**
+     * Digest the signed attachments in parallel on the given Executor. The attachments are requested and
+     * the transformer chains (which register security events) are built on the calling thread, only the
+     * transformation and the digest calculation are executed concurrently.
+     */
+    private void verifyAttachmentReferences(InputProcessorChain inputProcessorChain, Executor executor)
+        throws XMLStreamException, XMLSecurityException {
+
+        List<ReferenceType> attachmentReferenceTypes = new ArrayList<>();
+        for (ReferenceType referenceType : getSignatureType().getSignedInfo().getReference()) {
+            if (referenceType.getURI() != null && referenceType.getURI().startsWith("cid:")) {
+                attachmentReferenceTypes.add(referenceType);
             }
+        }
+        if (attachmentReferenceTypes.size() < 2) {
+            return;
+        }
 
-            String attachmentId = referenceType.getURI().substring(4);
+        Map<ReferenceType, AttachmentReference> attachmentReferences = new HashMap<>();
+        CompletionService<AttachmentReference> completionService = new ExecutorCompletionService<>(executor);
+        List<Future<AttachmentReference>> futures = new ArrayList<>(attachmentReferenceTypes.size());
+        try {
+            for (ReferenceType referenceType : attachmentReferenceTypes) {
+                final AttachmentReference attachmentReference =
+                    createAttachmentReference(inputProcessorChain, referenceType);
+                attachmentReferences.put(referenceType, attachmentReference);
+                futures.add(completionService.submit(new Callable<AttachmentReference>() {
+                    @Override
+                    public AttachmentReference call() throws Exception {
+                        long start = System.nanoTime();
+                        attachmentReference.verifyDigest();
+                        if (LOG.isDebugEnabled()) {
+                            LOG.debug("Attachment reference " + attachmentReference.referenceType.getURI()
+                                + " verified in " + TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start) + " us");
+                        }
+                        return attachmentReference;
+                    }
+                }));
+            }
 
-            AttachmentRequestCallback attachmentRequestCallback = new AttachmentRequestCallback();
-            attachmentRequestCallback.setAttachmentId(attachmentId);
-            try {
-                attachmentCallbackHandler.handle(new Callback[]{attachmentRequestCallback});
-            } catch (Exception e) {
-                throw new WSSecurityException(
-                        WSSecurityException.ErrorCode.INVALID_SECURITY, e);
+            for (int i = 0; i < futures.size(); i++) {
+                completionService.take().get();
             }
-            List<Attachment> attachments = attachmentRequestCallback.getAttachments();
-            if (attachments == null || attachments.isEmpty() || !attachmentId.equals(attachments.get(0).getId())) {
-                throw new WSSecurityException(
-                        WSSecurityException.ErrorCode.INVALID_SECURITY,
-                        "empty", new Object[] {"Attachment not found"}
-                );
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new XMLSecurityException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof XMLSecurityException) {
+                throw (XMLSecurityException) e.getCause();
+            } else if (e.getCause() instanceof XMLStreamException) {
+                throw (XMLStreamException) e.getCause();
             }
-
-            final Attachment attachment = attachments.get(0);
-
-            InputStream attachmentInputStream = attachment.getSourceStream();
-            if (!attachmentInputStream.markSupported()) {
-                attachmentInputStream = new BufferedInputStream(attachmentInputStream);
+            throw new XMLSecurityException(e);
+        } finally {
+            // Fail fast: stop digesting the remaining attachments once the first one has failed
+            for (Future<AttachmentReference> future : futures) {
+                future.cancel(true);
             }
-            //todo workaround 2GB limit somehow?
-            attachmentInputStream.mark(Integer.MAX_VALUE); //we can process at maximum 2G with the standard jdk streams
-
-            try {
-                DigestOutputStream digestOutputStream =
-                        createMessageDigestOutputStream(referenceType, inputProcessorChain.getSecurityContext());
-                UnsyncBufferedOutputStream bufferedDigestOutputStream =
-                        new UnsyncBufferedOutputStream(digestOutputStream);
-
-                if (referenceType.getTransforms() != null) {
-                    Transformer transformer =
-                            buildTransformerChain(referenceType, bufferedDigestOutputStream, inputProcessorChain, null);
-                    if (!(transformer instanceof AttachmentContentSignatureTransform)) {
-                        throw new WSSecurityException(
-                                WSSecurityException.ErrorCode.INVALID_SECURITY,
-                                "empty",
-                                new Object[] {"First transform must be Attachment[Content|Complete]SignatureTransform"}
-                        );
-                    }
-                    Map<String, Object> transformerProperties = new HashMap<>(2);
-                    transformerProperties.put(
-                            AttachmentContentSignatureTransform.ATTACHMENT, attachment);
-                    transformer.setProperties(transformerProperties);
-
-                    transformer.transform(attachmentInputStream);
+        }
+        verifiedAttachmentReferences = attachmentReferences;
+    }
 
-                    bufferedDigestOutputStream.close();
-                } else {
-                    XMLSecurityUtils.copy(attachmentInputStream, bufferedDigestOutputStream);
-                    bufferedDigestOutputStream.close();
-                }
-                compareDigest(digestOutputStream.getDigestValue(), referenceType);
+    @Override
+    protected void verifyExternalReference(
+            InputProcessorChain inputProcessorChain, InputStream inputStream,
+            final ReferenceType referenceType) throws XMLSecurityException, XMLStreamException {
 
-                //reset the inputStream to be able to reuse it
-                attachmentInputStream.reset();
+        if (referenceType.getURI().startsWith("cid:")) {
 
-            } catch (IOException e) {
-                throw new XMLSecurityException(e);
+            AttachmentReference attachmentReference = verifiedAttachmentReferences.get(referenceType);
+            if (attachmentReference == null) {
+                attachmentReference = createAttachmentReference(inputProcessorChain, referenceType);
+                attachmentReference.verifyDigest();
             }
 
+            CallbackHandler attachmentCallbackHandler =
+                    ((WSSSecurityProperties) getSecurityProperties()).getAttachmentCallbackHandler();
+            final Attachment attachment = attachmentReference.attachment;
+
             //create a new attachment and do the result callback
             final Attachment resultAttachment = new Attachment();
-            resultAttachment.setId(attachmentId);
+            resultAttachment.setId(attachmentReference.attachmentId);
             resultAttachment.setMimeType(attachment.getMimeType());
             resultAttachment.addHeaders(attachment.getHeaders());
-            resultAttachment.setSourceStream(attachmentInputStream);
+            resultAttachment.setSourceStream(attachmentReference.attachmentInputStream);
 
             AttachmentResultCallback attachmentResultCallback = new AttachmentResultCallback();
-            attachmentResultCallback.setAttachmentId(attachmentId);
+            attachmentResultCallback.setAttachmentId(attachmentReference.attachmentId);
             attachmentResultCallback.setAttachment(resultAttachment);
             try {
                 attachmentCallbackHandler.handle(new Callback[]{attachmentResultCallback});
@@ -198,6 +221,76 @@ public class WSSSignatureReferenceVerifyInputProcessor extends AbstractSignature
         }
     }
 
+    /**
+     * Request the attachment of the given reference, and set up the digest calculation
+     */
+    private AttachmentReference createAttachmentReference(
+            InputProcessorChain inputProcessorChain, ReferenceType referenceType) throws XMLSecurityException {
+
+        CallbackHandler attachmentCallbackHandler =
+                ((WSSSecurityProperties) getSecurityProperties()).getAttachmentCallbackHandler();
+        if (attachmentCallbackHandler == null) {
+            throw new WSSecurityException(
+                    WSSecurityException.ErrorCode.INVALID_SECURITY,
+                    "empty", new Object[] {"no attachment callbackhandler supplied"}
+            );
+        }
+
+        String attachmentId = referenceType.getURI().substring(4);
+
+        AttachmentRequestCallback attachmentRequestCallback = new AttachmentRequestCallback();
+        attachmentRequestCallback.setAttachmentId(attachmentId);
+        try {
+            attachmentCallbackHandler.handle(new Callback[]{attachmentRequestCallback});
+        } catch (Exception e) {
+            throw new WSSecurityException(
+                    WSSecurityException.ErrorCode.INVALID_SECURITY, e);
+        }
+        List<Attachment> attachments = attachmentRequestCallback.getAttachments();
+        if (attachments == null || attachments.isEmpty() || !attachmentId.equals(attachments.get(0).getId())) {
+            throw new WSSecurityException(
+                    WSSecurityException.ErrorCode.INVALID_SECURITY,
+                    "empty", new Object[] {"Attachment not found"}
+            );
+        }
+
+        AttachmentReference attachmentReference = new AttachmentReference();
+        attachmentReference.referenceType = referenceType;
+        attachmentReference.attachmentId = attachmentId;
+        attachmentReference.attachment = attachments.get(0);
+
+        WSSSecurityProperties securityProperties = (WSSSecurityProperties) getSecurityProperties();
+        attachmentReference.attachmentInputStream =
+                AttachmentUtils.setupResettableAttachmentStream(
+                        attachmentReference.attachment.getSourceStream(),
+                        securityProperties.getAttachmentMemoryThreshold(),
+                        securityProperties.getAttachmentTempDirectory());
+
+        attachmentReference.digestOutputStream =
+                createMessageDigestOutputStream(referenceType, inputProcessorChain.getSecurityContext());
+        attachmentReference.bufferedDigestOutputStream =
+                new UnsyncBufferedOutputStream(attachmentReference.digestOutputStream);
+
+        if (referenceType.getTransforms() != null) {
+            Transformer transformer =
+                    buildTransformerChain(referenceType, attachmentReference.bufferedDigestOutputStream,
+                                          inputProcessorChain, null);
+            if (!(transformer instanceof AttachmentContentSignatureTransform)) {
+                throw new WSSecurityException(
+                        WSSecurityException.ErrorCode.INVALID_SECURITY,
+                        "empty",
+                        new Object[] {"First transform must be Attachment[Content|Complete]SignatureTransform"}
+                );
+            }
+            Map<String, Object> transformerProperties = new HashMap<>(2);
+            transformerProperties.put(
+                    AttachmentContentSignatureTransform.ATTACHMENT, attachmentReference.attachment);
+            transformer.setProperties(transformerProperties);
+            attachmentReference.transformer = transformer;
+        }
+        return attachmentReference;
+    }
+
     private void checkBSPCompliance(WSInboundSecurityContext securityContext) throws WSSecurityException {
         List<ReferenceType> references = getSignatureType().getSignedInfo().getReference();
         for (int i = 0; i < references.size(); i++) {
@@ -446,4 +539,34 @@ public class WSSSignatureReferenceVerifyInputProcessor extends AbstractSignature
             this.addAfterProcessor(WSSSignatureReferenceVerifyInputProcessor.class.getName());
         }
     }
+
+    /**
+     * A signed attachment, and the state of its digest calculation
+     */
+    private final class AttachmentReference {
+        private ReferenceType referenceType;
+        private String attachmentId;
+        private Attachment attachment;
+        private InputStream attachmentInputStream;
+        private DigestOutputStream digestOutputStream;
+        private UnsyncBufferedOutputStream bufferedDigestOutputStream;
+        private Transformer transformer;
+
+        void verifyDigest() throws XMLSecurityException, XMLStreamException {
+            try {
+                if (transformer != null) {
+                    transformer.transform(attachmentInputStream);
+                } else {
+                    XMLSecurityUtils.copy(attachmentInputStream, bufferedDigestOutputStream);
+                }
+                bufferedDigestOutputStream.close();
+                compareDigest(digestOutputStream.getDigestValue(), referenceType);
+
+                //reset the inputStream to be able to reuse it
+                attachmentInputStream.reset();
+            } catch (IOException e) {
+                throw new XMLSecurityException(e);
+            }
+        }
+    }
 }
@@ -389,6 +389,9 @@ public class EncryptOutputProcessor extends AbstractEncryptOutputProcessor {
             }
 
             KeyIdentifier keyIdentifier = ((WSSSecurityProperties) getSecurityProperties()).getEncryptionKeyIdentifier();
+            if (Boolean.TRUE.equals(outputProcessorChain.getSecurityContext().get(WSSConstants.PROP_REUSE_ENCRYPTED_KEY))) {
+                keyIdentifier = WSSecurityTokenConstants.KEYIDENTIFIER_ENCRYPTED_KEY_SHA1_IDENTIFIER;
+            }
             if (WSSecurityTokenConstants.KEYIDENTIFIER_ENCRYPTED_KEY_SHA1_IDENTIFIER.equals(keyIdentifier)) {
                 List<XMLSecAttribute> attributes = new ArrayList<>(1);
                 attributes.add(createAttribute(WSSConstants.ATT_WSSE11_TOKEN_TYPE, WSSConstants.NS_WSS_ENC_KEY_VALUE_TYPE));
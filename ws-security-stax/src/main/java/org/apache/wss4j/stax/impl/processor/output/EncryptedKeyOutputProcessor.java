@@ -40,6 +40,7 @@ import javax.security.auth.callback.UnsupportedCallbackException;
 import javax.xml.namespace.QName;
 import javax.xml.stream.XMLStreamException;
 
+import org.apache.wss4j.common.cache.EncryptedKeySessionCache;
 import org.apache.wss4j.common.ext.WSPasswordCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.stax.ext.WSSConstants;
@@ -68,6 +69,17 @@ public class EncryptedKeyOutputProcessor extends AbstractOutputProcessor {
     @Override
     public void processEvent(XMLSecEvent xmlSecEvent, OutputProcessorChain outputProcessorChain)
         throws XMLStreamException, XMLSecurityException {
+        if (Boolean.TRUE.equals(outputProcessorChain.getSecurityContext().get(WSSConstants.PROP_REUSE_ENCRYPTED_KEY))) {
+            // The key of an EncryptedKey that was sent before is reused, so only a ReferenceList is needed
+            ReferenceListOutputProcessor referenceListOutputProcessor = new ReferenceListOutputProcessor();
+            referenceListOutputProcessor.addAfterProcessor(EncryptEndingOutputProcessor.class.getName());
+            referenceListOutputProcessor.setXMLSecurityProperties(getSecurityProperties());
+            referenceListOutputProcessor.setAction(getAction());
+            referenceListOutputProcessor.init(outputProcessorChain);
+            outputProcessorChain.removeProcessor(this);
+            outputProcessorChain.processEvent(xmlSecEvent);
+            return;
+        }
         try {
 
             String tokenId = outputProcessorChain.getSecurityContext().get(WSSConstants.PROP_USE_THIS_TOKEN_ID_FOR_ENCRYPTED_KEY);
@@ -318,6 +330,14 @@ public class EncryptedKeyOutputProcessor extends AbstractOutputProcessor {
                     }
                     byte[] encryptedEphemeralKey = cipher.wrap(secretKey);
 
+                    String sessionId =
+                        outputProcessorChain.getSecurityContext().get(WSSConstants.PROP_ENCRYPTED_KEY_SESSION_ID);
+                    EncryptedKeySessionCache sessionCache =
+                        ((WSSSecurityProperties)getSecurityProperties()).getEncryptedKeySessionCache();
+                    if (sessionId != null && sessionCache != null) {
+                        sessionCache.putSessionKey(sessionId, secretKey.getEncoded(), encryptedEphemeralKey);
+                    }
+
                     if (((WSSSecurityProperties)getSecurityProperties()).getCallbackHandler() != null) {
                         // Store the Encrypted Key in the CallbackHandler for processing on the inbound side
                         WSPasswordCallback callback =
@@ -18,14 +18,14 @@
  */
 package org.apache.wss4j.stax.impl.processor.output;
 
-import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
-import java.util.Deque;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.Set;
 
 import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
@@ -50,14 +50,33 @@ import org.apache.xml.security.stax.impl.processor.output.FinalOutputProcessor;
  * means that the timestamp is below the signature in the sec-header. Because of the highly dynamic nature
  * of the processor chain (and encryption makes it far more worse) we have to order the headers afterwards.
  * So that is what this processor does, the final header reordering...
+ *
+ * The events of all the headers are buffered in a single list. Every header only records the range of
+ * its events in that list, and the ranges are output in the final order when the security header ends.
  */
 public class SecurityHeaderReorderProcessor extends AbstractOutputProcessor {
 
-    private final Map<XMLSecurityConstants.Action, Map<SecurityHeaderOrder, Deque<XMLSecEvent>>> actionEventMap =
-            new LinkedHashMap<XMLSecurityConstants.Action, Map<SecurityHeaderOrder, Deque<XMLSecEvent>>>();
+    private static final Comparator<HeaderSlot> HEADER_SLOT_COMPARATOR = new Comparator<HeaderSlot>() {
+        @Override
+        public int compare(HeaderSlot o1, HeaderSlot o2) {
+            if (o1.actionIndex != o2.actionIndex) {
+                return o1.actionIndex < o2.actionIndex ? -1 : 1;
+            }
+            //the signature of an action is output after the other headers of the action
+            if (o1.signature != o2.signature) {
+                return o1.signature ? 1 : -1;
+            }
+            return 0;
+        }
+    };
+
+    private final Map<XMLSecurityConstants.Action, Integer> actionIndexMap = new HashMap<>();
+    private final Set<XMLSecurityConstants.Action> encryptActions = new HashSet<>();
+    private final List<XMLSecEvent> headerEvents = new ArrayList<>();
+    private final List<HeaderSlot> headerSlots = new ArrayList<>();
 
     private int securityHeaderIndex;
-    private Deque<XMLSecEvent> currentDeque;
+    private HeaderSlot currentSlot;
 
     public SecurityHeaderReorderProcessor() throws XMLSecurityException {
         super();
@@ -69,20 +88,16 @@ public class SecurityHeaderReorderProcessor extends AbstractOutputProcessor {
     public void init(OutputProcessorChain outputProcessorChain) throws XMLSecurityException {
         super.init(outputProcessorChain);
 
+        //the headers of the last action come first
         List<XMLSecurityConstants.Action> outActions = getSecurityProperties().getActions();
         for (int i = outActions.size() - 1; i >= 0; i--) {
             XMLSecurityConstants.Action outAction = outActions.get(i);
-            actionEventMap.put(outAction, new TreeMap<SecurityHeaderOrder, Deque<XMLSecEvent>>(new Comparator<SecurityHeaderOrder>() {
-                @Override
-                public int compare(SecurityHeaderOrder o1, SecurityHeaderOrder o2) {
-                    if (WSSConstants.TAG_dsig_Signature.equals(o1.getSecurityHeaderElementName())) {
-                        return 1;
-                    } else if (WSSConstants.TAG_dsig_Signature.equals(o2.getSecurityHeaderElementName())) {
-                        return -1;
-                    }
-                    return 1;
-                }
-            }));
+            if (!actionIndexMap.containsKey(outAction)) {
+                actionIndexMap.put(outAction, actionIndexMap.size());
+            }
+            if (outAction.getName().contains("Encrypt")) {
+                encryptActions.add(outAction);
+            }
         }
     }
 
@@ -101,54 +116,7 @@ public class SecurityHeaderReorderProcessor extends AbstractOutputProcessor {
 
         if (documentLevel == 3) {
             if (xmlSecEvent.isEndElement() && xmlSecEvent.asEndElement().getName().equals(WSSConstants.TAG_WSSE_SECURITY)) {
-                OutputProcessorChain subOutputProcessorChain = outputProcessorChain.createSubChain(this);
-
-                Iterator<Map.Entry<XMLSecurityConstants.Action, Map<SecurityHeaderOrder, Deque<XMLSecEvent>>>> iterator =
-                    actionEventMap.entrySet().iterator();
-                loop:
-                while (iterator.hasNext()) {
-                    Map.Entry<XMLSecurityConstants.Action, Map<SecurityHeaderOrder, Deque<XMLSecEvent>>> next = iterator.next();
-
-                    boolean encryptAction = false;
-                    Iterator<Map.Entry<SecurityHeaderOrder, Deque<XMLSecEvent>>> entryIterator = next.getValue().entrySet().iterator();
-                    while (entryIterator.hasNext()) {
-                        Map.Entry<SecurityHeaderOrder, Deque<XMLSecEvent>> entry = entryIterator.next();
-                        //output all non encrypted headers until...
-                        if (!entry.getKey().isEncrypted()) {
-                            Deque<XMLSecEvent> xmlSecEvents = entry.getValue();
-                            while (!xmlSecEvents.isEmpty()) {
-                                XMLSecEvent event = xmlSecEvents.pop();
-                                subOutputProcessorChain.reset();
-                                subOutputProcessorChain.processEvent(event);
-                            }
-                            //remove the actual header so that it won't be output twice in the loop below
-                            entryIterator.remove();
-                        }
-                        //... the action is encryption and...
-                        if (entry.getKey().getAction().getName().contains("Encrypt")) {
-                            encryptAction = true;
-                        }
-                    }
-                    //...output the rest of the encrypt action and...
-                    if (encryptAction) {
-                        break loop;
-                    }
-                }
-                //...loop again over the headers and output the leftover headers
-                iterator = actionEventMap.entrySet().iterator();
-                while (iterator.hasNext()) {
-                    Map.Entry<XMLSecurityConstants.Action, Map<SecurityHeaderOrder, Deque<XMLSecEvent>>> next = iterator.next();
-                    Iterator<Map.Entry<SecurityHeaderOrder, Deque<XMLSecEvent>>> entryIterator = next.getValue().entrySet().iterator();
-                    while (entryIterator.hasNext()) {
-                        Map.Entry<SecurityHeaderOrder, Deque<XMLSecEvent>> entry = entryIterator.next();
-                        Deque<XMLSecEvent> xmlSecEvents = entry.getValue();
-                        while (!xmlSecEvents.isEmpty()) {
-                            XMLSecEvent event = xmlSecEvents.pop();
-                            subOutputProcessorChain.reset();
-                            subOutputProcessorChain.processEvent(event);
-                        }
-                    }
-                }
+                outputHeaders(outputProcessorChain.createSubChain(this));
                 outputProcessorChain.removeProcessor(this);
             }
             outputProcessorChain.processEvent(xmlSecEvent);
@@ -170,14 +138,83 @@ public class SecurityHeaderReorderProcessor extends AbstractOutputProcessor {
                                 + " but got " + xmlSecStartElement.getName()});
                     }
 
-                    Map<SecurityHeaderOrder, Deque<XMLSecEvent>> map = actionEventMap.get(securityHeaderOrder.getAction());
-                    currentDeque = new ArrayDeque<XMLSecEvent>();
-                    map.put(securityHeaderOrder, currentDeque);
+                    XMLSecurityConstants.Action action = securityHeaderOrder.getAction();
+                    currentSlot = new HeaderSlot(securityHeaderOrder, actionIndexMap.get(action),
+                                                 encryptActions.contains(action), headerEvents.size());
+                    headerSlots.add(currentSlot);
 
                     securityHeaderIndex++;
                     break;
             }
         }
-        currentDeque.offer(xmlSecEvent);
+        headerEvents.add(xmlSecEvent);
+        currentSlot.end = headerEvents.size();
+    }
+
+    private void outputHeaders(OutputProcessorChain subOutputProcessorChain)
+        throws XMLStreamException, XMLSecurityException {
+
+        //a stable sort, so the headers of an action stay in the order in which they were written
+        List<HeaderSlot> orderedSlots = new ArrayList<>(headerSlots);
+        Collections.sort(orderedSlots, HEADER_SLOT_COMPARATOR);
+
+        //output all non encrypted headers until the headers of an encrypt action are reached...
+        int size = orderedSlots.size();
+        int i = 0;
+        while (i < size) {
+            HeaderSlot first = orderedSlots.get(i);
+            while (i < size && orderedSlots.get(i).actionIndex == first.actionIndex) {
+                HeaderSlot headerSlot = orderedSlots.get(i);
+                if (!headerSlot.securityHeaderOrder.isEncrypted()) {
+                    outputHeader(headerSlot, subOutputProcessorChain);
+                }
+                i++;
+            }
+            if (first.encryptAction) {
+                break;
+            }
+        }
+        //...and then output the leftover headers
+        for (int j = 0; j < size; j++) {
+            outputHeader(orderedSlots.get(j), subOutputProcessorChain);
+        }
+        headerEvents.clear();
+        headerSlots.clear();
+    }
+
+    private void outputHeader(HeaderSlot headerSlot, OutputProcessorChain subOutputProcessorChain)
+        throws XMLStreamException, XMLSecurityException {
+        if (headerSlot.output) {
+            return;
+        }
+        headerSlot.output = true;
+        for (int i = headerSlot.start; i < headerSlot.end; i++) {
+            subOutputProcessorChain.reset();
+            subOutputProcessorChain.processEvent(headerEvents.get(i));
+            headerEvents.set(i, null);
+        }
+    }
+
+    /**
+     * The range of the events of a single header in the event buffer
+     */
+    private static final class HeaderSlot {
+
+        private final SecurityHeaderOrder securityHeaderOrder;
+        private final int actionIndex;
+        private final boolean signature;
+        private final boolean encryptAction;
+        private final int start;
+        private int end;
+        private boolean output;
+
+        HeaderSlot(SecurityHeaderOrder securityHeaderOrder, int actionIndex, boolean encryptAction, int start) {
+            this.securityHeaderOrder = securityHeaderOrder;
+            this.actionIndex = actionIndex;
+            this.signature = WSSConstants.TAG_dsig_Signature.equals(securityHeaderOrder.getSecurityHeaderElementName());
+            this.encryptAction = encryptAction;
+            this.start = start;
+            this.end = start;
+        }
     }
 }
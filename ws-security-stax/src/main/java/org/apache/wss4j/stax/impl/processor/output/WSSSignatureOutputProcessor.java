@@ -18,7 +18,6 @@
  */
 package org.apache.wss4j.stax.impl.processor.output;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -36,6 +35,7 @@ import org.apache.wss4j.common.ext.Attachment;
 import org.apache.wss4j.common.ext.AttachmentRequestCallback;
 import org.apache.wss4j.common.ext.AttachmentResultCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.AttachmentUtils;
 import org.apache.wss4j.stax.ext.WSSConstants;
 import org.apache.wss4j.stax.ext.WSSSecurityProperties;
 import org.apache.wss4j.stax.impl.transformer.AttachmentContentSignatureTransform;
@@ -195,11 +195,12 @@ public class WSSSignatureOutputProcessor extends AbstractSignatureOutputProcesso
                     }
 
                     DigestOutputStream digestOutputStream = createMessageDigestOutputStream(signaturePartDef.getDigestAlgo());
-                    InputStream inputStream = attachment.getSourceStream();
-                    if (!inputStream.markSupported()) {
-                        inputStream = new BufferedInputStream(inputStream);
-                    }
-                    inputStream.mark(Integer.MAX_VALUE); //we can process at maximum 2G with the standard jdk streams
+                    WSSSecurityProperties securityProperties = (WSSSecurityProperties) getSecurityProperties();
+                    InputStream inputStream =
+                        AttachmentUtils.setupResettableAttachmentStream(
+                            attachment.getSourceStream(),
+                            securityProperties.getAttachmentMemoryThreshold(),
+                            securityProperties.getAttachmentTempDirectory());
 
                     try {
                         Transformer transformer = buildTransformerChain(digestOutputStream, signaturePartDef, null);
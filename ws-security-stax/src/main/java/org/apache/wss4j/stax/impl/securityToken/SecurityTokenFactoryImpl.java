@@ -22,8 +22,6 @@ import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.security.Principal;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
@@ -39,6 +37,7 @@ import org.apache.wss4j.binding.wss10.SecurityTokenReferenceType;
 import org.apache.wss4j.common.bsp.BSPRule;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.KeyUtils;
 import org.apache.wss4j.stax.ext.WSInboundSecurityContext;
 import org.apache.wss4j.stax.ext.WSSConstants;
 import org.apache.wss4j.stax.ext.WSSSecurityProperties;
@@ -73,6 +72,17 @@ import org.apache.xml.security.utils.XMLUtils;
  */
 public class SecurityTokenFactoryImpl extends SecurityTokenFactory {
 
+    //the number of nested token references that the current thread is resolving, to prevent a recursive key
+    //reference DOS. A thread (and not the InboundSecurityContext) is the scope, as the decryption thread may
+    //resolve tokens of the same message concurrently
+    private static final ThreadLocal<int[]> REFERENCE_DEPTH =
+        new ThreadLocal<int[]>() {
+            @Override
+            protected int[] initialValue() {
+                return new int[1];
+            }
+        };
+
     public SecurityTokenFactoryImpl() {
     }
 
@@ -174,7 +184,7 @@ public class SecurityTokenFactoryImpl extends SecurityTokenFactory {
             }
             throw new WSSecurityException(WSSecurityException.ErrorCode.INVALID_SECURITY, "noKeyinfo");
         } finally {
-            inboundSecurityContext.remove("" + Thread.currentThread().hashCode());
+            REFERENCE_DEPTH.get()[0] = 0;
         }
     }
 
@@ -275,7 +285,6 @@ public class SecurityTokenFactoryImpl extends SecurityTokenFactory {
                     securityTokenReferenceId, securityProperties);
         } else if (WSSConstants.NS_THUMBPRINT.equals(valueType)) {
             try {
-                MessageDigest messageDigest = MessageDigest.getInstance("SHA-1");
                 //first look if the token is included in the message (necessary for TokenInclusion policy)...
                 List<SecurityTokenProvider<? extends InboundSecurityToken>> securityTokenProviders =
                         inboundSecurityContext.getRegisteredSecurityTokenProviders();
@@ -284,7 +293,7 @@ public class SecurityTokenFactoryImpl extends SecurityTokenFactory {
                     InboundSecurityToken inboundSecurityToken = tokenProvider.getSecurityToken();
                     if (inboundSecurityToken instanceof X509SecurityToken) {
                         X509SecurityToken x509SecurityToken = (X509SecurityToken)inboundSecurityToken;
-                        byte[] tokenDigest = messageDigest.digest(x509SecurityToken.getX509Certificates()[0].getEncoded());
+                        byte[] tokenDigest = KeyUtils.generateDigest(x509SecurityToken.getX509Certificates()[0].getEncoded());
 
                         if (Arrays.equals(tokenDigest, binaryContent)) {
                             return createSecurityTokenProxy(inboundSecurityToken,
@@ -292,8 +301,6 @@ public class SecurityTokenFactoryImpl extends SecurityTokenFactory {
                         }
                     }
                 }
-            } catch (NoSuchAlgorithmException e) {
-                throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e);
             } catch (CertificateEncodingException e) {
                 throw new WSSecurityException(WSSecurityException.ErrorCode.INVALID_SECURITY_TOKEN);
             }
@@ -333,26 +340,21 @@ public class SecurityTokenFactoryImpl extends SecurityTokenFactory {
                         WSSecurityTokenConstants.KEYIDENTIFIER_SECURITY_TOKEN_DIRECT_REFERENCE);
             }
 
-            try {
-                //ok we have to find the token via digesting...
-                MessageDigest messageDigest = MessageDigest.getInstance("SHA-1");
-                List<SecurityTokenProvider<? extends InboundSecurityToken>> securityTokenProviders =
-                        inboundSecurityContext.getRegisteredSecurityTokenProviders();
-                for (int i = 0; i < securityTokenProviders.size(); i++) {
-                    SecurityTokenProvider<? extends InboundSecurityToken> tokenProvider = securityTokenProviders.get(i);
-                    InboundSecurityToken inboundSecurityToken = tokenProvider.getSecurityToken();
-                    if (inboundSecurityToken instanceof KerberosServiceSecurityToken) {
-                        KerberosServiceSecurityToken kerberosSecurityToken =
-                            (KerberosServiceSecurityToken)inboundSecurityToken;
-                        byte[] tokenDigest = messageDigest.digest(kerberosSecurityToken.getBinaryContent());
-                        if (Arrays.equals(tokenDigest, binaryContent)) {
-                            return createSecurityTokenProxy(inboundSecurityToken,
-                                    WSSecurityTokenConstants.KEYIDENTIFIER_THUMBPRINT_IDENTIFIER);
-                        }
+            //ok we have to find the token via digesting...
+            List<SecurityTokenProvider<? extends InboundSecurityToken>> securityTokenProviders =
+                    inboundSecurityContext.getRegisteredSecurityTokenProviders();
+            for (int i = 0; i < securityTokenProviders.size(); i++) {
+                SecurityTokenProvider<? extends InboundSecurityToken> tokenProvider = securityTokenProviders.get(i);
+                InboundSecurityToken inboundSecurityToken = tokenProvider.getSecurityToken();
+                if (inboundSecurityToken instanceof KerberosServiceSecurityToken) {
+                    KerberosServiceSecurityToken kerberosSecurityToken =
+                        (KerberosServiceSecurityToken)inboundSecurityToken;
+                    byte[] tokenDigest = KeyUtils.generateDigest(kerberosSecurityToken.getBinaryContent());
+                    if (Arrays.equals(tokenDigest, binaryContent)) {
+                        return createSecurityTokenProxy(inboundSecurityToken,
+                                WSSecurityTokenConstants.KEYIDENTIFIER_THUMBPRINT_IDENTIFIER);
                     }
                 }
-            } catch (NoSuchAlgorithmException e) {
-                throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e);
             }
 
             // Finally, just delegate to a Callback as per EncryptedKeySHA1
@@ -398,15 +400,10 @@ public class SecurityTokenFactoryImpl extends SecurityTokenFactory {
         //stored in the context. Otherwise we will abort now.
 
         //prevent recursive key reference DOS:
-        Integer invokeCount = inboundSecurityContext.<Integer>get("" + Thread.currentThread().hashCode());
-        if (invokeCount == null) {
-            invokeCount = 0;
-        }
-        invokeCount++;
-        if (invokeCount == 10) {
+        int[] referenceDepth = REFERENCE_DEPTH.get();
+        if (++referenceDepth[0] == 10) {
             throw new WSSecurityException(WSSecurityException.ErrorCode.INVALID_SECURITY_TOKEN);
         }
-        inboundSecurityContext.put("" + Thread.currentThread().hashCode(), invokeCount);
 
         SecurityTokenProvider<? extends InboundSecurityToken> securityTokenProvider =
                 inboundSecurityContext.getSecurityTokenProvider(uri);
@@ -0,0 +1,45 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.stax.securityEvent;
+
+import java.util.List;
+
+import org.apache.xml.security.exceptions.XMLSecurityException;
+import org.apache.xml.security.stax.securityEvent.SecurityEvent;
+import org.apache.xml.security.stax.securityEvent.SecurityEventListener;
+
+/**
+ * A SecurityEventListener that accepts several SecurityEvents in one call. The SecurityEvents of the
+ * security header, which are held back until the OperationSecurityEvent occurs, are delivered to such a
+ * listener as a single batch (which ends with the OperationSecurityEvent), instead of one call per event.
+ * Any other SecurityEvent is still delivered via registerSecurityEvent. The listeners are called in the
+ * order they were added to the security context, whether they take batches or single SecurityEvents.
+ */
+public interface BatchSecurityEventListener extends SecurityEventListener {
+
+    /**
+     * Processes the given SecurityEvents in the order of the list. The list must not be retained after
+     * the call, as the caller may reuse it.
+     *
+     * @param securityEvents the SecurityEvents to process
+     * @throws XMLSecurityException if a SecurityEvent is not acceptable
+     */
+    void registerSecurityEvents(List<SecurityEvent> securityEvents) throws XMLSecurityException;
+}
@@ -23,12 +23,14 @@ import java.security.Key;
 import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
 import java.security.cert.X509Certificate;
+import java.util.Arrays;
 import java.util.List;
 
 import javax.crypto.KeyGenerator;
 import javax.crypto.spec.SecretKeySpec;
 import javax.xml.stream.XMLStreamWriter;
 
+import org.apache.wss4j.common.cache.EncryptedKeySessionCache;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.CryptoType;
 import org.apache.wss4j.common.ext.WSPasswordCallback;
@@ -182,7 +184,7 @@ public class OutboundWSSec {
                 setupSignatureKey(outputProcessorChain, securityProperties, configuredAction.signedSAML);
             }
             if (configuredAction.encryptionAction) {
-                setupEncryptionKey(outputProcessorChain, securityProperties);
+                setupEncryptionKey(outputProcessorChain, securityProperties, !configuredAction.derivedEncryption);
             }
             if (configuredAction.kerberos) {
                 setupKerberosKey(outputProcessorChain, securityProperties,
@@ -322,16 +324,48 @@ public class OutboundWSSec {
 
     private void setupEncryptionKey(
         OutputProcessorChainImpl outputProcessorChain,
-        WSSSecurityProperties securityProperties
+        WSSSecurityProperties securityProperties,
+        boolean reuseKey
     ) throws XMLSecurityException {
         final String symmetricEncryptionAlgorithm = securityProperties.getEncryptionSymAlgorithm();
 
         // First check to see if a Symmetric key is available
         GenericOutboundSecurityToken securityToken =
             getOutboundSecurityToken(outputProcessorChain, WSSConstants.PROP_USE_THIS_TOKEN_ID_FOR_ENCRYPTION);
+        GenericOutboundSecurityToken encryptedKeyToken = null;
         if (securityToken == null || securityToken.getSecretKey(symmetricEncryptionAlgorithm) == null) {
-            //prepare the symmetric session key for all encryption parts
             String keyAlgorithm = JCEAlgorithmMapper.getJCEKeyAlgorithmFromURI(securityProperties.getEncryptionSymAlgorithm());
+
+            // See if the key of an EncryptedKey that was sent to the same recipient before can be reused
+            EncryptedKeySessionCache sessionCache = securityProperties.getEncryptedKeySessionCache();
+            if (reuseKey && sessionCache != null && securityProperties.isEncryptSymmetricEncryptionKey()) {
+                encryptedKeyToken = createEncryptedKeyToken(outputProcessorChain, securityProperties);
+                PublicKey publicKey = null;
+                if (encryptedKeyToken.getX509Certificates() != null && encryptedKeyToken.getX509Certificates().length > 0) {
+                    publicKey = encryptedKeyToken.getX509Certificates()[0].getPublicKey();
+                } else {
+                    publicKey = encryptedKeyToken.getPublicKey();
+                }
+                String sessionId =
+                    EncryptedKeySessionCache.getSessionId(publicKey, symmetricEncryptionAlgorithm,
+                                                          securityProperties.getEncryptionKeyTransportAlgorithm(),
+                                                          securityProperties.getEncryptionKeyTransportDigestAlgorithm(),
+                                                          securityProperties.getEncryptionKeyTransportMGFAlgorithm());
+                EncryptedKeySessionCache.SessionKey sessionKey = sessionCache.getSessionKey(sessionId);
+                if (sessionKey != null) {
+                    byte[] key = sessionKey.getKey();
+                    GenericOutboundSecurityToken symmetricSecurityToken =
+                        registerSymmetricKey(outputProcessorChain, new SecretKeySpec(key, keyAlgorithm));
+                    Arrays.fill(key, (byte) 0);
+                    symmetricSecurityToken.setSha1Identifier(sessionKey.getSha1Identifier());
+                    // No EncryptedKey is added to the message, the EncryptedData refer to the EncryptedKeySHA1
+                    outputProcessorChain.getSecurityContext().put(WSSConstants.PROP_REUSE_ENCRYPTED_KEY, Boolean.TRUE);
+                    return;
+                }
+                outputProcessorChain.getSecurityContext().put(WSSConstants.PROP_ENCRYPTED_KEY_SESSION_ID, sessionId);
+            }
+
+            //prepare the symmetric session key for all encryption parts
             KeyGenerator keyGen;
             try {
                 keyGen = KeyGenerator.getInstance(keyAlgorithm);
@@ -345,28 +379,7 @@ public class OutboundWSSec {
                 keyGen.init(keyLength);
             }
 
-            final Key symmetricKey = keyGen.generateKey();
-            final String symmId = IDGenerator.generateID(null);
-
-            final GenericOutboundSecurityToken symmetricSecurityToken =
-                new GenericOutboundSecurityToken(symmId, WSSecurityTokenConstants.EncryptedKeyToken, symmetricKey);
-            securityToken = symmetricSecurityToken;
-            final SecurityTokenProvider<OutboundSecurityToken> securityTokenProvider =
-                new SecurityTokenProvider<OutboundSecurityToken>() {
-
-                @Override
-                public OutboundSecurityToken getSecurityToken() throws XMLSecurityException {
-                    return symmetricSecurityToken;
-                }
-
-                @Override
-                public String getId() {
-                    return symmId;
-                }
-            };
-
-            outputProcessorChain.getSecurityContext().registerSecurityTokenProvider(symmId, securityTokenProvider);
-            outputProcessorChain.getSecurityContext().put(WSSConstants.PROP_USE_THIS_TOKEN_ID_FOR_ENCRYPTION, symmId);
+            securityToken = registerSymmetricKey(outputProcessorChain, keyGen.generateKey());
         }
 
         if (!securityProperties.isEncryptSymmetricEncryptionKey()) {
@@ -374,6 +387,44 @@ public class OutboundWSSec {
             return;
         }
 
+        if (encryptedKeyToken == null) {
+            encryptedKeyToken = createEncryptedKeyToken(outputProcessorChain, securityProperties);
+        }
+        encryptedKeyToken.addWrappedToken(securityToken);
+        securityToken.setKeyWrappingToken(encryptedKeyToken);
+        outputProcessorChain.getSecurityContext().put(WSSConstants.PROP_USE_THIS_TOKEN_ID_FOR_ENCRYPTED_KEY, encryptedKeyToken.getId());
+    }
+
+    private GenericOutboundSecurityToken registerSymmetricKey(
+        OutputProcessorChainImpl outputProcessorChain, Key symmetricKey
+    ) throws XMLSecurityException {
+        final String symmId = IDGenerator.generateID(null);
+
+        final GenericOutboundSecurityToken symmetricSecurityToken =
+            new GenericOutboundSecurityToken(symmId, WSSecurityTokenConstants.EncryptedKeyToken, symmetricKey);
+        final SecurityTokenProvider<OutboundSecurityToken> securityTokenProvider =
+            new SecurityTokenProvider<OutboundSecurityToken>() {
+
+            @Override
+            public OutboundSecurityToken getSecurityToken() throws XMLSecurityException {
+                return symmetricSecurityToken;
+            }
+
+            @Override
+            public String getId() {
+                return symmId;
+            }
+        };
+
+        outputProcessorChain.getSecurityContext().registerSecurityTokenProvider(symmId, securityTokenProvider);
+        outputProcessorChain.getSecurityContext().put(WSSConstants.PROP_USE_THIS_TOKEN_ID_FOR_ENCRYPTION, symmId);
+        return symmetricSecurityToken;
+    }
+
+    private GenericOutboundSecurityToken createEncryptedKeyToken(
+        OutputProcessorChainImpl outputProcessorChain,
+        WSSSecurityProperties securityProperties
+    ) throws XMLSecurityException {
         // Set up a security token with the certs required to encrypt the symmetric key
         X509Certificate[] x509Certificates = null;
         PublicKey publicKey = null;
@@ -413,9 +464,6 @@ public class OutboundWSSec {
         final GenericOutboundSecurityToken encryptedKeyToken =
             new GenericOutboundSecurityToken(id, WSSecurityTokenConstants.X509V3Token, publicKey, x509Certificates);
 
-        encryptedKeyToken.addWrappedToken(securityToken);
-        securityToken.setKeyWrappingToken(encryptedKeyToken);
-
         // binarySecurityToken.setSha1Identifier(reference);
         final SecurityTokenProvider<OutboundSecurityToken> encryptedKeyTokenProvider =
             new SecurityTokenProvider<OutboundSecurityToken>() {
@@ -432,7 +480,7 @@ public class OutboundWSSec {
         };
 
         outputProcessorChain.getSecurityContext().registerSecurityTokenProvider(id, encryptedKeyTokenProvider);
-        outputProcessorChain.getSecurityContext().put(WSSConstants.PROP_USE_THIS_TOKEN_ID_FOR_ENCRYPTED_KEY, id);
+        return encryptedKeyToken;
     }
 
     private void setupKerberosKey(
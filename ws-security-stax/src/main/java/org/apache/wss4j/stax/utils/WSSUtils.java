@@ -21,8 +21,6 @@ package org.apache.wss4j.stax.utils;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.security.Key;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
@@ -41,6 +39,7 @@ import javax.xml.stream.events.Attribute;
 
 import org.apache.wss4j.common.crypto.Merlin;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.KeyUtils;
 import org.apache.wss4j.stax.ext.WSSConstants;
 import org.apache.wss4j.stax.ext.WSSSecurityProperties;
 import org.apache.wss4j.stax.securityEvent.DerivedKeyTokenSecurityEvent;
@@ -114,27 +113,20 @@ public class WSSUtils extends XMLSecurityUtils {
     }
 
     public static String doPasswordDigest(byte[] nonce, String created, String password) throws WSSecurityException {
-        try {
-            byte[] b1 = nonce != null ? nonce : new byte[0];
-            byte[] b2 = created != null ? created.getBytes(StandardCharsets.UTF_8) : new byte[0];
-            byte[] b3 = password.getBytes(StandardCharsets.UTF_8);
-            byte[] b4 = new byte[b1.length + b2.length + b3.length];
-            int offset = 0;
-            System.arraycopy(b1, 0, b4, offset, b1.length);
-            offset += b1.length;
-
-            System.arraycopy(b2, 0, b4, offset, b2.length);
-            offset += b2.length;
-
-            System.arraycopy(b3, 0, b4, offset, b3.length);
-
-            MessageDigest sha = MessageDigest.getInstance("SHA-1");
-            sha.reset();
-            sha.update(b4);
-            return XMLUtils.encodeToString(sha.digest());
-        } catch (NoSuchAlgorithmException e) {
-            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e, "decoding.general");
-        }
+        byte[] b1 = nonce != null ? nonce : new byte[0];
+        byte[] b2 = created != null ? created.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        byte[] b3 = password.getBytes(StandardCharsets.UTF_8);
+        byte[] b4 = new byte[b1.length + b2.length + b3.length];
+        int offset = 0;
+        System.arraycopy(b1, 0, b4, offset, b1.length);
+        offset += b1.length;
+
+        System.arraycopy(b2, 0, b4, offset, b2.length);
+        offset += b2.length;
+
+        System.arraycopy(b3, 0, b4, offset, b3.length);
+
+        return XMLUtils.encodeToString(KeyUtils.generateDigest(b4));
     }
 
     public static String getSOAPMessageVersionNamespace(XMLSecEvent xmlSecEvent) {
@@ -332,11 +324,10 @@ public class WSSUtils extends XMLSecurityUtils {
                                                                    WSSConstants.TAG_WSSE_KEY_IDENTIFIER,
                                                                    false, attributes);
         try {
-            MessageDigest sha = MessageDigest.getInstance("SHA-1");
-            byte[] data = sha.digest(x509Certificates[0].getEncoded());
+            byte[] data = KeyUtils.generateDigest(x509Certificates[0].getEncoded());
             abstractOutputProcessor.createCharactersAndOutputAsEvent(outputProcessorChain,
                                                                      XMLUtils.encodeToString(data));
-        } catch (CertificateEncodingException | NoSuchAlgorithmException e) {
+        } catch (CertificateEncodingException e) {
             throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e);
         }
         abstractOutputProcessor.createEndElementAndOutputAsEvent(outputProcessorChain, WSSConstants.TAG_WSSE_KEY_IDENTIFIER);
@@ -346,14 +337,9 @@ public class WSSUtils extends XMLSecurityUtils {
                                                                  OutputProcessorChain outputProcessorChain, Key key)
             throws XMLStreamException, XMLSecurityException {
 
-        try {
-            MessageDigest sha = MessageDigest.getInstance("SHA-1");
-            byte[] data = sha.digest(key.getEncoded());
-            createEncryptedKeySha1IdentifierStructure(abstractOutputProcessor, outputProcessorChain,
-                                                      XMLUtils.encodeToString(data));
-        } catch (NoSuchAlgorithmException e) {
-            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e);
-        }
+        byte[] data = KeyUtils.generateDigest(key.getEncoded());
+        createEncryptedKeySha1IdentifierStructure(abstractOutputProcessor, outputProcessorChain,
+                                                  XMLUtils.encodeToString(data));
     }
 
     public static void createEncryptedKeySha1IdentifierStructure(AbstractOutputProcessor abstractOutputProcessor,
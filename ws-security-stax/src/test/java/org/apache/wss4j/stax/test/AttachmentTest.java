@@ -31,6 +31,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.security.auth.callback.Callback;
 import javax.security.auth.callback.CallbackHandler;
@@ -409,6 +411,104 @@ public class AttachmentTest extends AbstractTestBase {
         Assert.assertEquals("text/xml", responseAttachment.getMimeType());
     }
 
+    @Test
+    public void testMultipleAttachmentSignatureParallelVerification() throws Exception {
+        Attachment[] attachment = createAttachments(3);
+        byte[] signedMessage = signAttachments(attachment);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        AttachmentCallbackHandler attachmentCallbackHandler =
+            new AttachmentCallbackHandler(Arrays.asList(attachment));
+        try {
+            WSSSecurityProperties securityProperties = new WSSSecurityProperties();
+            securityProperties.loadSignatureVerificationKeystore(this.getClass().getClassLoader().getResource("receiver.jks"), "default".toCharArray());
+            securityProperties.setAttachmentCallbackHandler(attachmentCallbackHandler);
+            securityProperties.setReferenceVerificationExecutor(executor);
+
+            InboundWSSec wsSecIn = WSSec.getInboundWSSec(securityProperties);
+            XMLStreamReader xmlStreamReader = wsSecIn.processInMessage(xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(signedMessage)));
+            Document document = StAX2DOM.readDoc(documentBuilderFactory.newDocumentBuilder(), xmlStreamReader);
+
+            NodeList sigReferences = document.getElementsByTagNameNS(WSConstants.SIG_NS, "Reference");
+            Assert.assertEquals(4, sigReferences.getLength());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // The result callbacks are still made in the order of the references
+        Assert.assertEquals(3, attachmentCallbackHandler.getResponseAttachments().size());
+        for (int i = 0; i < attachment.length; i++) {
+            Attachment responseAttachment = attachmentCallbackHandler.getResponseAttachments().get(i);
+            Assert.assertEquals(attachment[i].getId(), responseAttachment.getId());
+            byte[] attachmentBytes = readInputStream(responseAttachment.getSourceStream());
+            Assert.assertTrue(Arrays.equals(attachmentBytes, SOAPUtil.SAMPLE_SOAP_MSG.getBytes(StandardCharsets.UTF_8)));
+        }
+    }
+
+    @Test
+    public void testInvalidMultipleAttachmentSignatureParallelVerification() throws Exception {
+        Attachment[] attachment = createAttachments(3);
+        byte[] signedMessage = signAttachments(attachment);
+
+        attachment[2].setSourceStream(new ByteArrayInputStream(
+            SOAPUtil.SAMPLE_SOAP_MSG.replace("15", "16").getBytes(StandardCharsets.UTF_8)));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            WSSSecurityProperties securityProperties = new WSSSecurityProperties();
+            securityProperties.loadSignatureVerificationKeystore(this.getClass().getClassLoader().getResource("receiver.jks"), "default".toCharArray());
+            securityProperties.setAttachmentCallbackHandler(new AttachmentCallbackHandler(Arrays.asList(attachment)));
+            securityProperties.setReferenceVerificationExecutor(executor);
+
+            InboundWSSec wsSecIn = WSSec.getInboundWSSec(securityProperties);
+            XMLStreamReader xmlStreamReader = wsSecIn.processInMessage(xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(signedMessage)));
+            StAX2DOM.readDoc(documentBuilderFactory.newDocumentBuilder(), xmlStreamReader);
+            Assert.fail("Exception expected");
+        } catch (XMLStreamException e) {
+            Assert.assertTrue(e.getCause() instanceof XMLSecurityException);
+            Assert.assertEquals("Invalid digest of reference cid:" + attachment[2].getId(), e.getCause().getMessage());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Attachment[] createAttachments(int count) {
+        Attachment[] attachment = new Attachment[count];
+        for (int i = 0; i < count; i++) {
+            String attachmentId = UUID.randomUUID().toString();
+            attachment[i] = new Attachment();
+            attachment[i].setMimeType("text/xml");
+            attachment[i].addHeaders(getHeaders(attachmentId));
+            attachment[i].setId(attachmentId);
+            attachment[i].setSourceStream(new ByteArrayInputStream(SOAPUtil.SAMPLE_SOAP_MSG.getBytes(StandardCharsets.UTF_8)));
+        }
+        return attachment;
+    }
+
+    private byte[] signAttachments(Attachment[] attachment) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        WSSSecurityProperties securityProperties = new WSSSecurityProperties();
+        List<WSSConstants.Action> actions = new ArrayList<WSSConstants.Action>();
+        actions.add(WSSConstants.SIGNATURE);
+        securityProperties.setActions(actions);
+        securityProperties.loadSignatureKeyStore(this.getClass().getClassLoader().getResource("transmitter.jks"), "default".toCharArray());
+        securityProperties.setSignatureUser("transmitter");
+        securityProperties.addSignaturePart(new SecurePart(new QName("http://schemas.xmlsoap.org/soap/envelope/", "Body"), SecurePart.Modifier.Element));
+        securityProperties.addSignaturePart(new SecurePart("cid:Attachments", SecurePart.Modifier.Element));
+        securityProperties.setCallbackHandler(new CallbackHandlerImpl());
+        securityProperties.setAttachmentCallbackHandler(new AttachmentCallbackHandler(Arrays.asList(attachment)));
+
+        OutboundWSSec wsSecOut = WSSec.getOutboundWSSec(securityProperties);
+        XMLStreamWriter xmlStreamWriter = wsSecOut.processOutMessage(baos, StandardCharsets.UTF_8.name(), new ArrayList<SecurityEvent>());
+        XMLStreamReader xmlStreamReader = xmlInputFactory.createXMLStreamReader(this.getClass().getClassLoader().getResourceAsStream("testdata/plain-soap-1.1.xml"));
+        XmlReaderToWriter.writeAll(xmlStreamReader, xmlStreamWriter);
+        xmlStreamWriter.close();
+
+        for (Attachment signedAttachment : attachment) {
+            signedAttachment.setSourceStream(new ByteArrayInputStream(SOAPUtil.SAMPLE_SOAP_MSG.getBytes(StandardCharsets.UTF_8)));
+        }
+        return baos.toByteArray();
+    }
+
     @Test
     public void testXMLAttachmentContentEncryption() throws Exception {
 
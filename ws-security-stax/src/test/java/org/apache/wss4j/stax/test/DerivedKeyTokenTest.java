@@ -29,6 +29,7 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Properties;
 
+import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
 import javax.xml.stream.XMLStreamWriter;
 import javax.xml.transform.dom.DOMSource;
@@ -38,6 +39,7 @@ import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.CryptoFactory;
 import org.apache.wss4j.common.crypto.CryptoType;
 import org.apache.wss4j.common.derivedKey.ConversationConstants;
+import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.token.SecurityTokenReference;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.engine.WSSConfig;
@@ -70,6 +72,7 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized.Parameters;
 import org.w3c.dom.Attr;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 
 @RunWith(value = org.junit.runners.Parameterized.class)
@@ -507,6 +510,74 @@ public class DerivedKeyTokenTest extends AbstractTestBase {
         }
     }
 
+    @Test
+    public void testSignaturePSHA256Inbound() throws Exception {
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        {
+            Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+            WSSecHeader secHeader = new WSSecHeader(doc);
+            secHeader.insertSecurityHeader();
+
+            //EncryptedKey
+            WSSecEncryptedKey encrKeyBuilder = new WSSecEncryptedKey(secHeader);
+            encrKeyBuilder.setUserInfo("receiver");
+            encrKeyBuilder.setKeyIdentifierType(WSConstants.THUMBPRINT_IDENTIFIER);
+            Crypto crypto = CryptoFactory.getInstance("transmitter-crypto.properties");
+            encrKeyBuilder.prepare(crypto);
+
+            //Key information from the EncryptedKey
+            byte[] ek = encrKeyBuilder.getEphemeralKey();
+            String tokenIdentifier = encrKeyBuilder.getId();
+
+            //Derived key signature with the WSS4J specific P_SHA256 algorithm
+            WSSecDKSign sigBuilder = new WSSecDKSign(secHeader);
+            sigBuilder.setWscVersion(version);
+            sigBuilder.setExternalKey(ek, tokenIdentifier);
+            sigBuilder.setDerivationAlgorithm(WSSConstants.P_SHA_256);
+            sigBuilder.setSignatureAlgorithm(WSConstants.HMAC_SHA256);
+            sigBuilder.build();
+
+            encrKeyBuilder.prependToHeader();
+            encrKeyBuilder.prependBSTElementToHeader();
+
+            //the schema only allows an unqualified Algorithm attribute
+            String wscNs = ConversationConstants.getWSCNs(version);
+            Element derivedKeyToken = (Element) doc.getElementsByTagNameNS(wscNs, "DerivedKeyToken").item(0);
+            derivedKeyToken.removeAttributeNS(wscNs, "Algorithm");
+            derivedKeyToken.setAttributeNS(null, "Algorithm", WSSConstants.P_SHA_256);
+
+            javax.xml.transform.Transformer transformer = TRANSFORMER_FACTORY.newTransformer();
+            transformer.transform(new DOMSource(doc), new StreamResult(baos));
+        }
+
+        WSSSecurityProperties securityProperties = new WSSSecurityProperties();
+        securityProperties.loadSignatureVerificationKeystore(this.getClass().getClassLoader().getResource("receiver.jks"), "default".toCharArray());
+        securityProperties.loadDecryptionKeystore(this.getClass().getClassLoader().getResource("receiver.jks"), "default".toCharArray());
+        securityProperties.setCallbackHandler(new CallbackHandlerImpl());
+
+        //P_SHA256 is rejected unless it is explicitly allowed
+        try {
+            InboundWSSec wsSecIn = WSSec.getInboundWSSec(securityProperties, false, true);
+            XMLStreamReader xmlStreamReader = wsSecIn.processInMessage(xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(baos.toByteArray())));
+            StAX2DOM.readDoc(documentBuilderFactory.newDocumentBuilder(), xmlStreamReader);
+            Assert.fail("XMLStreamException expected");
+        } catch (XMLStreamException e) {
+            Assert.assertTrue(e.getCause() instanceof WSSecurityException);
+            Assert.assertEquals(WSSecurityException.ErrorCode.UNSUPPORTED_ALGORITHM,
+                                ((WSSecurityException) e.getCause()).getErrorCode());
+        }
+
+        securityProperties.setAllowPSha256DerivedKeyAlgorithm(true);
+        InboundWSSec wsSecIn = WSSec.getInboundWSSec(securityProperties);
+        XMLStreamReader xmlStreamReader = wsSecIn.processInMessage(xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(baos.toByteArray())));
+
+        Document document = StAX2DOM.readDoc(documentBuilderFactory.newDocumentBuilder(), xmlStreamReader);
+
+        NodeList nodeList = document.getElementsByTagNameNS(WSSConstants.TAG_dsig_Signature.getNamespaceURI(), WSSConstants.TAG_dsig_Signature.getLocalPart());
+        Assert.assertEquals(nodeList.getLength(), 1);
+    }
+
     @Test
     public void testSignatureInboundAction() throws Exception {
 
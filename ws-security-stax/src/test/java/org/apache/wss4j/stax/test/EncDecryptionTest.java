@@ -51,11 +51,15 @@ import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
 import org.apache.wss4j.common.ConfigurationConstants;
 import org.apache.wss4j.common.WSEncryptionPart;
 import org.apache.wss4j.common.bsp.BSPRule;
+import org.apache.wss4j.common.cache.EncryptedKeyCache;
+import org.apache.wss4j.common.cache.EncryptedKeySessionCache;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.CryptoFactory;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.dom.WSConstants;
+import org.apache.wss4j.dom.engine.WSSecurityEngineResult;
 import org.apache.wss4j.dom.handler.WSHandlerConstants;
+import org.apache.wss4j.dom.handler.WSHandlerResult;
 import org.apache.wss4j.dom.message.WSSecEncrypt;
 import org.apache.wss4j.dom.message.WSSecHeader;
 import org.apache.wss4j.stax.ext.WSSConstants;
@@ -231,6 +235,107 @@ public class EncDecryptionTest extends AbstractTestBase {
         }
     }
 
+    @Test
+    public void testEncDecryptionEncryptedKeyCacheInbound() throws Exception {
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+        {
+            InputStream sourceDocument = this.getClass().getClassLoader().getResourceAsStream("testdata/plain-soap-1.1.xml");
+            String action = WSHandlerConstants.ENCRYPT;
+            Document securedDocument = doOutboundSecurityWithWSS4J(sourceDocument, action, new Properties());
+
+            Transformer transformer = TRANSFORMER_FACTORY.newTransformer();
+            transformer.transform(new DOMSource(securedDocument), new StreamResult(baos));
+        }
+        //test streaming decryption of the same message twice
+        {
+            EncryptedKeyCache encryptedKeyCache = new EncryptedKeyCache();
+            WSSSecurityProperties securityProperties = new WSSSecurityProperties();
+            securityProperties.loadDecryptionKeystore(this.getClass().getClassLoader().getResource("receiver.jks"), "default".toCharArray());
+            securityProperties.setCallbackHandler(new CallbackHandlerImpl());
+            securityProperties.setEncryptedKeyCache(encryptedKeyCache);
+
+            for (int i = 0; i < 2; i++) {
+                // The same security events are fired when the key is taken from the cache
+                WSSecurityEventConstants.Event[] expectedSecurityEvents = new WSSecurityEventConstants.Event[]{
+                        WSSecurityEventConstants.AlgorithmSuite,
+                        WSSecurityEventConstants.AlgorithmSuite,
+                        WSSecurityEventConstants.X509Token,
+                        WSSecurityEventConstants.ENCRYPTED_PART,
+                        WSSecurityEventConstants.OPERATION,
+                };
+                final TestSecurityEventListener securityEventListener = new TestSecurityEventListener(expectedSecurityEvents);
+
+                Document document = doInboundSecurity(securityProperties, xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(baos.toByteArray())), securityEventListener);
+
+                NodeList nodeList = document.getElementsByTagNameNS(WSSConstants.TAG_xenc_EncryptedData.getNamespaceURI(), WSSConstants.TAG_xenc_EncryptedData.getLocalPart());
+                Assert.assertEquals(nodeList.getLength(), 0);
+
+                securityEventListener.compare();
+            }
+
+            Assert.assertEquals(1, encryptedKeyCache.getMissCount());
+            Assert.assertEquals(1, encryptedKeyCache.getHitCount());
+        }
+    }
+
+    @Test
+    public void testEncDecryptionEncryptedKeySessionOutbound() throws Exception {
+        EncryptedKeySessionCache sessionCache =
+            new EncryptedKeySessionCache(EncryptedKeySessionCache.DEFAULT_LIFETIME, 2);
+
+        WSSSecurityProperties securityProperties = new WSSSecurityProperties();
+        List<WSSConstants.Action> actions = new ArrayList<>();
+        actions.add(WSSConstants.ENCRYPT);
+        securityProperties.setActions(actions);
+        securityProperties.loadEncryptionKeystore(this.getClass().getClassLoader().getResource("transmitter.jks"), "default".toCharArray());
+        securityProperties.setEncryptionUser("receiver");
+        securityProperties.setEncryptedKeySessionCache(sessionCache);
+
+        //the first message carries the EncryptedKey
+        InputStream sourceDocument = this.getClass().getClassLoader().getResourceAsStream("testdata/plain-soap-1.1.xml");
+        ByteArrayOutputStream baos = doOutboundSecurity(securityProperties, sourceDocument);
+        Document document = documentBuilderFactory.newDocumentBuilder().parse(new ByteArrayInputStream(baos.toByteArray()));
+        NodeList nodeList = document.getElementsByTagNameNS(WSSConstants.TAG_xenc_EncryptedKey.getNamespaceURI(), WSSConstants.TAG_xenc_EncryptedKey.getLocalPart());
+        Assert.assertEquals(nodeList.getLength(), 1);
+
+        Map<String, Object> messageContext = doInboundSecurityWithWSS4J_1(document, WSHandlerConstants.ENCRYPT);
+        @SuppressWarnings("unchecked")
+        List<WSHandlerResult> results = (List<WSHandlerResult>) messageContext.get(WSHandlerConstants.RECV_RESULTS);
+        WSSecurityEngineResult actionResult = results.get(0).getActionResults().get(WSConstants.ENCR).get(0);
+        byte[] secret = (byte[]) actionResult.get(WSSecurityEngineResult.TAG_SECRET);
+
+        //the second message refers to it via the EncryptedKeySHA1
+        sourceDocument = this.getClass().getClassLoader().getResourceAsStream("testdata/plain-soap-1.1.xml");
+        baos = doOutboundSecurity(securityProperties, sourceDocument);
+        document = documentBuilderFactory.newDocumentBuilder().parse(new ByteArrayInputStream(baos.toByteArray()));
+        nodeList = document.getElementsByTagNameNS(WSSConstants.TAG_xenc_EncryptedKey.getNamespaceURI(), WSSConstants.TAG_xenc_EncryptedKey.getLocalPart());
+        Assert.assertEquals(nodeList.getLength(), 0);
+        nodeList = document.getElementsByTagNameNS(WSSConstants.TAG_xenc_ReferenceList.getNamespaceURI(), WSSConstants.TAG_xenc_ReferenceList.getLocalPart());
+        Assert.assertEquals(nodeList.getLength(), 1);
+        Assert.assertEquals(nodeList.item(0).getParentNode().getLocalName(), WSSConstants.TAG_WSSE_SECURITY.getLocalPart());
+        XPathExpression xPathExpression = getXPath("/soap:Envelope/soap:Body/xenc:EncryptedData/dsig:KeyInfo/wsse:SecurityTokenReference/wsse:KeyIdentifier[@ValueType='http://docs.oasis-open.org/wss/oasis-wss-soap-message-security-1.1#EncryptedKeySHA1']");
+        Assert.assertNotNull(xPathExpression.evaluate(document, XPathConstants.NODE));
+
+        WSSSecurityProperties inboundSecurityProperties = new WSSSecurityProperties();
+        inboundSecurityProperties.loadDecryptionKeystore(this.getClass().getClassLoader().getResource("receiver.jks"), "default".toCharArray());
+        inboundSecurityProperties.setCallbackHandler(new org.apache.wss4j.stax.test.CallbackHandlerImpl(secret));
+        document = doInboundSecurity(inboundSecurityProperties, xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(baos.toByteArray())));
+        nodeList = document.getElementsByTagNameNS(WSSConstants.TAG_xenc_EncryptedData.getNamespaceURI(), WSSConstants.TAG_xenc_EncryptedData.getLocalPart());
+        Assert.assertEquals(nodeList.getLength(), 0);
+
+        //the session is exhausted, so the third message carries a new EncryptedKey
+        sourceDocument = this.getClass().getClassLoader().getResourceAsStream("testdata/plain-soap-1.1.xml");
+        baos = doOutboundSecurity(securityProperties, sourceDocument);
+        document = documentBuilderFactory.newDocumentBuilder().parse(new ByteArrayInputStream(baos.toByteArray()));
+        nodeList = document.getElementsByTagNameNS(WSSConstants.TAG_xenc_EncryptedKey.getNamespaceURI(), WSSConstants.TAG_xenc_EncryptedKey.getLocalPart());
+        Assert.assertEquals(nodeList.getLength(), 1);
+
+        Assert.assertEquals(1, sessionCache.getHitCount());
+        Assert.assertEquals(2, sessionCache.getMissCount());
+    }
+
     @Test
     public void testEncDecryptionCryptoPropertiesOutbound() throws Exception {
 
@@ -2680,4 +2785,117 @@ public class EncDecryptionTest extends AbstractTestBase {
             Assert.assertEquals(nodeList.getLength(), 0);
         }
     }
+
+    @Test
+    public void testInlineDecryptionInbound() throws Exception {
+        InputStream sourceDocument = this.getClass().getClassLoader().getResourceAsStream("testdata/plain-soap-1.1.xml");
+        byte[] securedMessage = encryptWithWSS4J(sourceDocument, new Properties());
+
+        String decrypted = decryptToString(securedMessage, true);
+        Assert.assertFalse(decrypted.contains("EncryptedData"));
+        Assert.assertEquals(decryptToString(securedMessage, false), decrypted);
+    }
+
+    @Test
+    public void testInlineDecryptionLargeContentInbound() throws Exception {
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append("<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\"><soap:Header/>");
+        stringBuilder.append("<soap:Body><ns1:test xmlns:ns1=\"http://www.example.com\">");
+        for (int i = 0; i < 20000; i++) {
+            stringBuilder.append("<ns1:item id=\"").append(i).append("\">Some content of item ").append(i).append("</ns1:item>");
+        }
+        stringBuilder.append("</ns1:test></soap:Body></soap:Envelope>");
+
+        InputStream sourceDocument = new ByteArrayInputStream(stringBuilder.toString().getBytes(StandardCharsets.UTF_8));
+        byte[] securedMessage = encryptWithWSS4J(sourceDocument, new Properties());
+
+        String decrypted = decryptToString(securedMessage, true);
+        Assert.assertFalse(decrypted.contains("EncryptedData"));
+        Assert.assertTrue(decrypted.contains("Some content of item 19999"));
+        Assert.assertEquals(decryptToString(securedMessage, false), decrypted);
+    }
+
+    @Test
+    public void testInlineDecryptionAESGCMInbound() throws Exception {
+        InputStream sourceDocument = this.getClass().getClassLoader().getResourceAsStream("testdata/plain-soap-1.1.xml");
+        Properties properties = new Properties();
+        properties.put(WSHandlerConstants.ENC_SYM_ALGO, "http://www.w3.org/2009/xmlenc11#aes128-gcm");
+        byte[] securedMessage = encryptWithWSS4J(sourceDocument, properties);
+
+        String decrypted = decryptToString(securedMessage, true);
+        Assert.assertFalse(decrypted.contains("EncryptedData"));
+        Assert.assertEquals(decryptToString(securedMessage, false), decrypted);
+    }
+
+    @Test
+    public void testInlineDecryptionEncryptedHeaderInbound() throws Exception {
+        InputStream sourceDocument = this.getClass().getClassLoader().getResourceAsStream("testdata/plain-soap-encryptedHeader.xml");
+        Properties properties = new Properties();
+        properties.setProperty(WSHandlerConstants.ENCRYPTION_PARTS,
+                               "{Header}{http://www.example.com}testEncryptedHeader;{Content}{http://schemas.xmlsoap.org/soap/envelope/}Body;");
+        byte[] securedMessage = encryptWithWSS4J(sourceDocument, properties);
+
+        WSSSecurityProperties securityProperties = new WSSSecurityProperties();
+        securityProperties.loadDecryptionKeystore(this.getClass().getClassLoader().getResource("receiver.jks"), "default".toCharArray());
+        securityProperties.setCallbackHandler(new CallbackHandlerImpl());
+        securityProperties.setInlineDecryption(true);
+
+        WSSecurityEventConstants.Event[] expectedSecurityEvents = new WSSecurityEventConstants.Event[]{
+                WSSecurityEventConstants.AlgorithmSuite,
+                WSSecurityEventConstants.AlgorithmSuite,
+                WSSecurityEventConstants.AlgorithmSuite,
+                WSSecurityEventConstants.X509Token,
+                WSSecurityEventConstants.ENCRYPTED_PART,
+                WSSecurityEventConstants.ENCRYPTED_PART,
+                WSSecurityEventConstants.OPERATION,
+        };
+        final TestSecurityEventListener securityEventListener = new TestSecurityEventListener(expectedSecurityEvents);
+        doInboundSecurity(
+            securityProperties, xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(securedMessage)), securityEventListener);
+        securityEventListener.compare();
+
+        Assert.assertEquals(decryptToString(securedMessage, false), decryptToString(securedMessage, true));
+    }
+
+    @Test
+    public void testInlineDecryptionWrongKeyInbound() throws Exception {
+        InputStream sourceDocument = this.getClass().getClassLoader().getResourceAsStream("testdata/plain-soap-1.1.xml");
+        byte[] securedMessage = encryptWithWSS4J(sourceDocument, new Properties());
+
+        // corrupt the cipher value of the EncryptedData element in the soap body
+        String securedString = new String(securedMessage, StandardCharsets.UTF_8);
+        int bodyIndex = securedString.indexOf("Body");
+        int cipherValueIndex = securedString.indexOf("CipherValue>", bodyIndex) + "CipherValue>".length();
+        String corrupted = securedString.substring(0, cipherValueIndex + 24) + "AAAAAAAAAAAAAAAAAAAAAAAA"
+            + securedString.substring(cipherValueIndex + 48);
+
+        try {
+            decryptToString(corrupted.getBytes(StandardCharsets.UTF_8), true);
+            Assert.fail("XMLStreamException expected");
+        } catch (XMLStreamException e) {
+            Assert.assertNotNull(e.getMessage());
+        }
+    }
+
+    private byte[] encryptWithWSS4J(InputStream sourceDocument, Properties properties) throws Exception {
+        Document securedDocument = doOutboundSecurityWithWSS4J(sourceDocument, WSHandlerConstants.ENCRYPT, properties);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        Transformer transformer = TRANSFORMER_FACTORY.newTransformer();
+        transformer.transform(new DOMSource(securedDocument), new StreamResult(baos));
+        return baos.toByteArray();
+    }
+
+    private String decryptToString(byte[] securedMessage, boolean inlineDecryption) throws Exception {
+        WSSSecurityProperties securityProperties = new WSSSecurityProperties();
+        securityProperties.loadDecryptionKeystore(this.getClass().getClassLoader().getResource("receiver.jks"), "default".toCharArray());
+        securityProperties.setCallbackHandler(new CallbackHandlerImpl());
+        securityProperties.setInlineDecryption(inlineDecryption);
+        Document document = doInboundSecurity(
+            securityProperties, xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(securedMessage)));
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        Transformer transformer = TRANSFORMER_FACTORY.newTransformer();
+        transformer.transform(new DOMSource(document), new StreamResult(baos));
+        return new String(baos.toByteArray(), StandardCharsets.UTF_8);
+    }
 }
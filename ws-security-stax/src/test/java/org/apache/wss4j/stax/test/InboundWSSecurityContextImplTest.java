@@ -24,6 +24,8 @@ import java.security.cert.Certificate;
 import java.security.cert.X509Certificate;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -42,6 +44,7 @@ import org.apache.wss4j.stax.impl.securityToken.HttpsSecurityTokenImpl;
 import org.apache.wss4j.stax.impl.securityToken.SamlSecurityTokenImpl;
 import org.apache.wss4j.stax.impl.securityToken.UsernameSecurityTokenImpl;
 import org.apache.wss4j.stax.impl.securityToken.X509SecurityTokenImpl;
+import org.apache.wss4j.stax.securityEvent.BatchSecurityEventListener;
 import org.apache.wss4j.stax.securityEvent.EncryptedPartSecurityEvent;
 import org.apache.wss4j.stax.securityEvent.HttpsTokenSecurityEvent;
 import org.apache.wss4j.stax.securityEvent.OperationSecurityEvent;
@@ -51,6 +54,7 @@ import org.apache.wss4j.stax.securityEvent.SignatureConfirmationSecurityEvent;
 import org.apache.wss4j.stax.securityEvent.SignedPartSecurityEvent;
 import org.apache.wss4j.stax.securityEvent.TimestampSecurityEvent;
 import org.apache.wss4j.stax.securityEvent.UsernameTokenSecurityEvent;
+import org.apache.wss4j.stax.securityEvent.WSSecurityEventConstants;
 import org.apache.wss4j.stax.securityEvent.X509TokenSecurityEvent;
 import org.apache.wss4j.stax.securityToken.WSSecurityTokenConstants;
 import org.apache.wss4j.stax.setup.WSSec;
@@ -103,6 +107,123 @@ public class InboundWSSecurityContextImplTest {
         }
     }
 
+    @Test
+    public void testBatchSecurityEventListener() throws Exception {
+
+        final List<SecurityEvent> securityEventList = new ArrayList<>();
+        SecurityEventListener securityEventListener = new SecurityEventListener() {
+            @Override
+            public void registerSecurityEvent(SecurityEvent securityEvent) throws WSSecurityException {
+                securityEventList.add(securityEvent);
+            }
+        };
+
+        final List<List<SecurityEvent>> batches = new ArrayList<>();
+        BatchSecurityEventListener batchSecurityEventListener = new BatchSecurityEventListener() {
+            @Override
+            public void registerSecurityEvent(SecurityEvent securityEvent) throws WSSecurityException {
+                batches.add(Collections.singletonList(securityEvent));
+            }
+
+            @Override
+            public void registerSecurityEvents(List<SecurityEvent> securityEvents) throws XMLSecurityException {
+                batches.add(new ArrayList<>(securityEvents));
+            }
+        };
+
+        InboundWSSecurityContextImpl inboundWSSecurityContext = new InboundWSSecurityContextImpl();
+        inboundWSSecurityContext.addSecurityEventListener(securityEventListener);
+        inboundWSSecurityContext.addSecurityEventListener(batchSecurityEventListener);
+        inboundWSSecurityContext.put(WSSConstants.TRANSPORT_SECURITY_ACTIVE, Boolean.TRUE);
+
+        HttpsTokenSecurityEvent httpsTokenSecurityEvent = new HttpsTokenSecurityEvent();
+        httpsTokenSecurityEvent.setSecurityToken(
+                new HttpsSecurityTokenImpl(
+                        getX509Token(WSSecurityTokenConstants.X509V3Token).getX509Certificates()[0]));
+        inboundWSSecurityContext.registerSecurityEvent(httpsTokenSecurityEvent);
+
+        TimestampSecurityEvent timestampSecurityEvent = new TimestampSecurityEvent();
+        inboundWSSecurityContext.registerSecurityEvent(timestampSecurityEvent);
+
+        //nothing is forwarded before the operation security event occurs...
+        Assert.assertTrue(securityEventList.isEmpty());
+        Assert.assertTrue(batches.isEmpty());
+
+        OperationSecurityEvent operationSecurityEvent = new OperationSecurityEvent();
+        operationSecurityEvent.setOperation(new QName("definitions"));
+        inboundWSSecurityContext.registerSecurityEvent(operationSecurityEvent);
+
+        //...then the batch listener gets the same events as a single batch...
+        Assert.assertEquals(1, batches.size());
+        Assert.assertEquals(securityEventList, batches.get(0));
+        Assert.assertEquals(3, securityEventList.size());
+        Assert.assertSame(operationSecurityEvent, securityEventList.get(2));
+
+        //...and the following events one by one
+        SignedPartSecurityEvent signedPartSecurityEvent = new SignedPartSecurityEvent(null, false, null);
+        signedPartSecurityEvent.setElementPath(WSSConstants.SOAP_11_BODY_PATH);
+        inboundWSSecurityContext.registerSecurityEvent(signedPartSecurityEvent);
+
+        Assert.assertEquals(2, batches.size());
+        Assert.assertEquals(Collections.singletonList(signedPartSecurityEvent), batches.get(1));
+        Assert.assertSame(signedPartSecurityEvent, securityEventList.get(3));
+    }
+
+    @Test
+    public void testListenerOrderWithBatchSecurityEventListener() throws Exception {
+
+        final List<String> calls = new ArrayList<>();
+        SecurityEventListener firstListener = new SecurityEventListener() {
+            @Override
+            public void registerSecurityEvent(SecurityEvent securityEvent) throws WSSecurityException {
+                calls.add("first " + securityEvent.getSecurityEventType());
+            }
+        };
+        BatchSecurityEventListener batchSecurityEventListener = new BatchSecurityEventListener() {
+            @Override
+            public void registerSecurityEvent(SecurityEvent securityEvent) throws WSSecurityException {
+                calls.add("batch " + securityEvent.getSecurityEventType());
+            }
+
+            @Override
+            public void registerSecurityEvents(List<SecurityEvent> securityEvents) throws XMLSecurityException {
+                calls.add("batch of " + securityEvents.size());
+            }
+        };
+        SecurityEventListener lastListener = new SecurityEventListener() {
+            @Override
+            public void registerSecurityEvent(SecurityEvent securityEvent) throws WSSecurityException {
+                calls.add("last " + securityEvent.getSecurityEventType());
+            }
+        };
+
+        InboundWSSecurityContextImpl inboundWSSecurityContext = new InboundWSSecurityContextImpl();
+        inboundWSSecurityContext.addSecurityEventListener(firstListener);
+        inboundWSSecurityContext.addSecurityEventListener(batchSecurityEventListener);
+        inboundWSSecurityContext.addSecurityEventListener(lastListener);
+
+        inboundWSSecurityContext.registerSecurityEvent(new TimestampSecurityEvent());
+        OperationSecurityEvent operationSecurityEvent = new OperationSecurityEvent();
+        operationSecurityEvent.setOperation(new QName("definitions"));
+        inboundWSSecurityContext.registerSecurityEvent(operationSecurityEvent);
+
+        SignedPartSecurityEvent signedPartSecurityEvent = new SignedPartSecurityEvent(null, false, null);
+        signedPartSecurityEvent.setElementPath(WSSConstants.SOAP_11_BODY_PATH);
+        inboundWSSecurityContext.registerSecurityEvent(signedPartSecurityEvent);
+
+        //the listeners are called in the order they were added, for the batch as well as for single events
+        List<String> expected = new ArrayList<>();
+        expected.add("first " + WSSecurityEventConstants.TIMESTAMP);
+        expected.add("first " + WSSecurityEventConstants.OPERATION);
+        expected.add("batch of 2");
+        expected.add("last " + WSSecurityEventConstants.TIMESTAMP);
+        expected.add("last " + WSSecurityEventConstants.OPERATION);
+        expected.add("first " + WSSecurityEventConstants.SIGNED_PART);
+        expected.add("batch " + WSSecurityEventConstants.SIGNED_PART);
+        expected.add("last " + WSSecurityEventConstants.SIGNED_PART);
+        Assert.assertEquals(expected, calls);
+    }
+
     public List<SecurityEvent> generateTransportBindingSecurityEvents() throws Exception {
 
         final List<SecurityEvent> securityEventList = new LinkedList<SecurityEvent>();
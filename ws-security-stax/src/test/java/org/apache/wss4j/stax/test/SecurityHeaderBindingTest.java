@@ -0,0 +1,284 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.stax.test;
+
+import java.io.StringReader;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+import javax.xml.bind.JAXBElement;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.wss4j.binding.wss10.BinarySecurityTokenType;
+import org.apache.wss4j.stax.ext.WSSSecurityProperties;
+import org.apache.wss4j.stax.impl.processor.input.TimestampInputHandler;
+import org.apache.wss4j.stax.setup.WSSec;
+import org.apache.xml.security.exceptions.XMLSecurityException;
+import org.apache.xml.security.stax.ext.XMLSecurityConstants;
+import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
+import org.apache.xml.security.stax.ext.stax.XMLSecEventFactory;
+import org.apache.xml.security.stax.ext.stax.XMLSecStartElement;
+import org.apache.xml.security.stax.impl.XMLSecurityEventReader;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.w3c.dom.Node;
+
+/**
+ * Test that the security header elements which are bound without JAXB result in the same structures as the
+ * JAXB Unmarshaller returns, and that anything else is still unmarshalled (and validated) by JAXB.
+ */
+public class SecurityHeaderBindingTest extends org.junit.Assert {
+
+    private static final String NAMESPACES =
+        " xmlns:wsse=\"http://docs.oasis-open.org/wss/2004/01/oasis-200401-wss-wssecurity-secext-1.0.xsd\""
+        + " xmlns:wsse11=\"http://docs.oasis-open.org/wss/oasis-wss-wssecurity-secext-1.1.xsd\""
+        + " xmlns:wsu=\"http://docs.oasis-open.org/wss/2004/01/oasis-200401-wss-wssecurity-utility-1.0.xsd\""
+        + " xmlns:wsc=\"http://docs.oasis-open.org/ws-sx/ws-secureconversation/200512\""
+        + " xmlns:wsc0502=\"http://schemas.xmlsoap.org/ws/2005/02/sc\""
+        + " xmlns:xenc=\"http://www.w3.org/2001/04/xmlenc#\""
+        + " xmlns:ext=\"urn:extension\"";
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        WSSec.init();
+    }
+
+    @Test
+    public void testTimestamp() throws Exception {
+        assertBinding(
+            "<wsu:Timestamp" + NAMESPACES + " wsu:Id=\"TS-1\" ext:attr=\"value\">\n"
+            + "  <!-- comment -->\n"
+            + "  <wsu:Created>2018-01-01T12:00:00.000Z</wsu:Created>\n"
+            + "  <wsu:Expires wsu:Id=\"E-1\">2018-01-01T12:05:00.000Z</wsu:Expires>\n"
+            + "</wsu:Timestamp>"
+        );
+        assertBinding("<wsu:Timestamp" + NAMESPACES + "/>");
+    }
+
+    @Test
+    public void testUsernameToken() throws Exception {
+        assertBinding(
+            "<wsse:UsernameToken" + NAMESPACES + " wsu:Id=\"UT-1\">"
+            + "<wsse:Username ext:attr=\"value\">wernerd</wsse:Username>"
+            + "<wsse:Password Type=\"http://docs.oasis-open.org/wss/2004/01/oasis-200401-wss-username-token-profile-1.0"
+            + "#PasswordDigest\">Hgb4LsqGuf0c7eLQBQDbqgqEYnA=</wsse:Password>"
+            + "<wsse:Nonce EncodingType=\"http://docs.oasis-open.org/wss/2004/01/oasis-200401-wss-soap-message-security-"
+            + "1.0#Base64Binary\">MTIzNDU2Nzg5MDEyMzQ1Ng==</wsse:Nonce>"
+            + "<wsu:Created>2018-01-01T12:00:00.000Z</wsu:Created>"
+            + "</wsse:UsernameToken>"
+        );
+        assertBinding(
+            "<wsse:UsernameToken" + NAMESPACES + ">"
+            + "<wsse:Username>wernerd</wsse:Username>"
+            + "<wsse11:Salt>AQIDBAUGBwgJCgsMDQ4PEA==</wsse11:Salt>"
+            + "<wsse11:Iteration>1000</wsse11:Iteration>"
+            + "</wsse:UsernameToken>"
+        );
+    }
+
+    @Test
+    public void testBinarySecurityToken() throws Exception {
+        assertBinding(
+            "<wsse:BinarySecurityToken" + NAMESPACES + " wsu:Id=\"X509-1\""
+            + " EncodingType=\"http://docs.oasis-open.org/wss/2004/01/oasis-200401-wss-soap-message-security-1.0"
+            + "#Base64Binary\" ValueType=\"http://docs.oasis-open.org/wss/2004/01/oasis-200401-wss-x509-token-profile-"
+            + "1.0#X509v3\">MIIBszCCAVygAwIBAgIBATAN\nBgkqhkiG9w0BAQUFADAW</wsse:BinarySecurityToken>"
+        );
+    }
+
+    @Test
+    public void testSecurityTokenReference() throws Exception {
+        assertBinding(
+            "<wsse:SecurityTokenReference" + NAMESPACES + " wsu:Id=\"STR-1\">"
+            + "<wsse:KeyIdentifier EncodingType=\"http://docs.oasis-open.org/wss/2004/01/oasis-200401-wss-soap-message-"
+            + "security-1.0#Base64Binary\" ValueType=\"http://docs.oasis-open.org/wss/oasis-wss-soap-message-security-"
+            + "1.1#ThumbprintSHA1\">2kdd2mFtYmBxA8NrSBkLhtaYtl0=</wsse:KeyIdentifier>"
+            + "</wsse:SecurityTokenReference>"
+        );
+        assertBinding(
+            "<wsse:SecurityTokenReference" + NAMESPACES + " wsse11:TokenType=\"http://docs.oasis-open.org/wss/"
+            + "oasis-wss-soap-message-security-1.1#EncryptedKey\">\n"
+            + "  <wsse:Reference URI=\"#EK-1\" ValueType=\"http://docs.oasis-open.org/wss/2004/01/"
+            + "oasis-200401-wss-x509-token-profile-1.0#X509v3\"/>\n"
+            + "</wsse:SecurityTokenReference>"
+        );
+    }
+
+    @Test
+    public void testSignatureConfirmation() throws Exception {
+        assertBinding(
+            "<wsse11:SignatureConfirmation" + NAMESPACES + " wsu:Id=\"SC-1\""
+            + " Value=\"VdUHYiyq9NuklQMpmBdlkdKV+HdsxH/QORkiFPZ21HMv71AgKpYUsQ==\"/>"
+        );
+    }
+
+    @Test
+    public void testDerivedKeyToken() throws Exception {
+        assertBinding(
+            "<wsc:DerivedKeyToken" + NAMESPACES + " wsu:Id=\"DK-1\""
+            + " Algorithm=\"http://docs.oasis-open.org/ws-sx/ws-secureconversation/200512/dk/p_sha1\">"
+            + "<wsse:SecurityTokenReference><wsse:Reference URI=\"#EK-1\"/></wsse:SecurityTokenReference>"
+            + "<wsc:Offset>0</wsc:Offset><wsc:Length>32</wsc:Length>"
+            + "<wsc:Nonce>AuZqasIk62Q8kDSXHv4fXA==</wsc:Nonce>"
+            + "</wsc:DerivedKeyToken>"
+        );
+        assertBinding(
+            "<wsc0502:DerivedKeyToken" + NAMESPACES + ">"
+            + "<wsc0502:Generation>18446744073709551615</wsc0502:Generation>"
+            + "<wsc0502:Label>WS-SecureConversation</wsc0502:Label>"
+            + "</wsc0502:DerivedKeyToken>"
+        );
+    }
+
+    @Test
+    public void testReferenceList() throws Exception {
+        assertBinding(
+            "<xenc:ReferenceList" + NAMESPACES + ">"
+            + "<xenc:DataReference URI=\"#ED-1\"/><xenc:KeyReference URI=\"#EK-1\"></xenc:KeyReference>"
+            + "</xenc:ReferenceList>"
+        );
+    }
+
+    @Test
+    public void testJAXBFallback() throws Exception {
+        // An extension element, an attribute in a schema namespace, a collapsed Id and a Nonce with a line break
+        assertBinding(
+            "<wsu:Timestamp" + NAMESPACES + "><wsu:Created>2018-01-01T12:00:00.000Z</wsu:Created>"
+            + "<ext:Extension/></wsu:Timestamp>"
+        );
+        assertBinding(
+            "<wsse:BinarySecurityToken" + NAMESPACES + " wsu:Id=\" X509-1 \" xenc:attr=\"value\">"
+            + "MIIBszCCAVygAwIBAgIBATAN</wsse:BinarySecurityToken>"
+        );
+        assertBinding(
+            "<wsc:DerivedKeyToken" + NAMESPACES + "><wsc:Nonce>AuZqasIk62Q8\nkDSXHv4fXA==</wsc:Nonce>"
+            + "</wsc:DerivedKeyToken>"
+        );
+        @SuppressWarnings("unchecked")
+        BinarySecurityTokenType binarySecurityToken = ((JAXBElement<BinarySecurityTokenType>) parse(
+            "<wsse:BinarySecurityToken" + NAMESPACES + " wsu:Id=\" X509-1 \">MIIB</wsse:BinarySecurityToken>"
+        )).getValue();
+        assertEquals("X509-1", binarySecurityToken.getId());
+
+        // Invalid elements are still rejected by the schema validation
+        assertInvalid(
+            "<wsu:Timestamp" + NAMESPACES + "><wsu:Expires>2018-01-01T12:05:00.000Z</wsu:Expires>"
+            + "<wsu:Created>2018-01-01T12:00:00.000Z</wsu:Created></wsu:Timestamp>"
+        );
+        assertInvalid(
+            "<wsse:UsernameToken" + NAMESPACES + "><wsse11:Iteration>-1</wsse11:Iteration></wsse:UsernameToken>"
+        );
+        assertInvalid(
+            "<wsc:DerivedKeyToken" + NAMESPACES + "><wsc:Length>32</wsc:Length></wsc:DerivedKeyToken>"
+        );
+        assertInvalid("<xenc:ReferenceList" + NAMESPACES + "/>");
+    }
+
+    private void assertBinding(String xml) throws Exception {
+        Object expected = XMLSecurityConstants.getJaxbUnmarshaller(false).unmarshal(
+            new XMLSecurityEventReader(createEventDeque(xml), 0));
+        assertStructureEquals(expected, parse(xml));
+    }
+
+    private void assertInvalid(String xml) throws Exception {
+        try {
+            parse(xml);
+            fail("Expected an XMLSecurityException");
+        } catch (XMLSecurityException e) {
+            assertNotNull(e.getCause());
+        }
+    }
+
+    private Object parse(String xml) throws Exception {
+        return new ParsingInputHandler().parse(createEventDeque(xml));
+    }
+
+    /**
+     * The binding classes do not implement equals, so compare their fields
+     */
+    private static void assertStructureEquals(Object expected, Object actual) throws Exception {
+        if (expected == null || actual == null) {
+            assertSame(expected, actual);
+            return;
+        }
+        assertSame(expected.getClass(), actual.getClass());
+        if (expected instanceof JAXBElement) {
+            assertEquals(((JAXBElement<?>) expected).getName(), ((JAXBElement<?>) actual).getName());
+            assertStructureEquals(((JAXBElement<?>) expected).getValue(), ((JAXBElement<?>) actual).getValue());
+        } else if (expected instanceof byte[]) {
+            assertArrayEquals((byte[]) expected, (byte[]) actual);
+        } else if (expected instanceof List) {
+            List<?> expectedList = (List<?>) expected;
+            List<?> actualList = (List<?>) actual;
+            assertEquals(expectedList.size(), actualList.size());
+            for (int i = 0; i < expectedList.size(); i++) {
+                assertStructureEquals(expectedList.get(i), actualList.get(i));
+            }
+        } else if (expected instanceof Node) {
+            assertTrue(((Node) expected).isEqualNode((Node) actual));
+        } else if (expected.getClass().getName().startsWith("org.apache.")) {
+            for (Class<?> clazz = expected.getClass(); clazz != Object.class; clazz = clazz.getSuperclass()) {
+                for (Field field : clazz.getDeclaredFields()) {
+                    if (!Modifier.isStatic(field.getModifiers())) {
+                        field.setAccessible(true);
+                        assertStructureEquals(field.get(expected), field.get(actual));
+                    }
+                }
+            }
+        } else {
+            assertEquals(expected, actual);
+        }
+    }
+
+    private static Deque<XMLSecEvent> createEventDeque(String xml) throws Exception {
+        XMLStreamReader xmlStreamReader = XMLInputFactory.newInstance().createXMLStreamReader(new StringReader(xml));
+        Deque<XMLSecEvent> eventDeque = new ArrayDeque<>();
+        XMLSecStartElement parentXMLSecStartElement = null;
+        while (xmlStreamReader.hasNext()) {
+            int eventType = xmlStreamReader.next();
+            if (eventType == XMLStreamConstants.END_DOCUMENT) {
+                break;
+            }
+            XMLSecEvent xmlSecEvent = XMLSecEventFactory.allocate(xmlStreamReader, parentXMLSecStartElement);
+            if (eventType == XMLStreamConstants.START_ELEMENT) {
+                parentXMLSecStartElement = xmlSecEvent.asStartElement();
+            } else if (eventType == XMLStreamConstants.END_ELEMENT) {
+                parentXMLSecStartElement = parentXMLSecStartElement.getParentXMLSecStartElement();
+            }
+            eventDeque.push(xmlSecEvent);
+        }
+        return eventDeque;
+    }
+
+    /**
+     * The parsing of the security header elements is shared by all the handlers
+     */
+    private static class ParsingInputHandler extends TimestampInputHandler {
+
+        Object parse(Deque<XMLSecEvent> eventDeque) throws XMLSecurityException {
+            return parseStructure(eventDeque, 0, new WSSSecurityProperties());
+        }
+    }
+}
@@ -58,11 +58,14 @@ import org.w3c.dom.NodeList;
 
 /**
  * Test for processing an xop:Include inside a CipherValue Element
- * TODO Not supported yet.
  */
-@org.junit.Ignore
 public class XOPAttachmentTest extends AbstractTestBase {
 
+    private static final String SOAP_BODY =
+        "<add xmlns=\"http://ws.apache.org/counter/counter_port_type\">"
+        + "<value xmlns=\"\">15</value>"
+        + "</add>";
+
     public XOPAttachmentTest() throws Exception {
     }
 
@@ -79,10 +82,12 @@ public class XOPAttachmentTest extends AbstractTestBase {
     // Set up a test to encrypt the SOAP Body + an attachment, which is the same content as
     // the SOAP Body. Then replace the encrypted SOAP Body with a xop:Include to the attachment,
     // and modify the request to remove the encryption stuff pointing to the attachment.
+    // TODO Not supported yet by the decryption thread.
     @Test
+    @org.junit.Ignore
     public void testEncryptedSOAPBody() throws Exception {
         Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
-        List<Attachment> attachments = createEncryptedBodyInAttachment(doc);
+        List<Attachment> attachments = createEncryptedBodyInAttachment(doc, SOAPUtil.SAMPLE_SOAP_MSG);
         // System.out.println("DOC: " + DOM2Writer.nodeToString(doc));
 
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
@@ -112,7 +117,38 @@ public class XOPAttachmentTest extends AbstractTestBase {
         Assert.assertEquals("text/xml", responseAttachment.getMimeType());
     }
 
-    private List<Attachment> createEncryptedBodyInAttachment(Document doc) throws Exception {
+    @Test
+    public void testEncryptedSOAPBodyInlineDecryption() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        List<Attachment> attachments = createEncryptedBodyInAttachment(doc, SOAP_BODY);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        javax.xml.transform.Transformer transformer = TRANSFORMER_FACTORY.newTransformer();
+        transformer.transform(new DOMSource(doc), new StreamResult(baos));
+
+        {
+            WSSSecurityProperties securityProperties = new WSSSecurityProperties();
+            securityProperties.loadDecryptionKeystore(this.getClass().getClassLoader().getResource("receiver.jks"), "default".toCharArray());
+            securityProperties.setCallbackHandler(new CallbackHandlerImpl());
+            securityProperties.setAttachmentCallbackHandler(new AttachmentCallbackHandler(attachments));
+            securityProperties.setInlineDecryption(true);
+
+            InboundWSSec wsSecIn = WSSec.getInboundWSSec(securityProperties);
+            XMLStreamReader xmlStreamReader = wsSecIn.processInMessage(xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(baos.toByteArray())));
+            Document document = StAX2DOM.readDoc(documentBuilderFactory.newDocumentBuilder(), xmlStreamReader);
+
+            NodeList nodeList = document.getElementsByTagNameNS(WSConstants.ENC_NS, "EncryptedData");
+            Assert.assertEquals(0, nodeList.getLength());
+
+            nodeList = document.getElementsByTagNameNS("http://ws.apache.org/counter/counter_port_type", "add");
+            Assert.assertEquals(1, nodeList.getLength());
+            Element soapBody = WSSecurityUtil.findBodyElement(document);
+            Assert.assertEquals(soapBody, nodeList.item(0).getParentNode());
+            Assert.assertEquals("15", nodeList.item(0).getTextContent());
+        }
+    }
+
+    private List<Attachment> createEncryptedBodyInAttachment(Document doc, String attachmentContent) throws Exception {
         WSSecHeader secHeader = new WSSecHeader(doc);
         secHeader.insertSecurityHeader();
 
@@ -126,7 +162,7 @@ public class XOPAttachmentTest extends AbstractTestBase {
         String attachmentId = UUID.randomUUID().toString();
         final Attachment attachment = new Attachment();
         attachment.setId(attachmentId);
-        attachment.setSourceStream(new ByteArrayInputStream(SOAPUtil.SAMPLE_SOAP_MSG.getBytes(StandardCharsets.UTF_8)));
+        attachment.setSourceStream(new ByteArrayInputStream(attachmentContent.getBytes(StandardCharsets.UTF_8)));
 
         AttachmentCallbackHandler attachmentCallbackHandler =
             new AttachmentCallbackHandler(Collections.singletonList(attachment));